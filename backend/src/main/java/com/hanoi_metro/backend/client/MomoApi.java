@@ -1,15 +1,20 @@
 package com.hanoi_metro.backend.client;
 
 import com.hanoi_metro.backend.dto.request.CreateMomoRequest;
+import com.hanoi_metro.backend.dto.request.MomoQueryRequest;
 import com.hanoi_metro.backend.dto.response.CreateMomoResponse;
+import com.hanoi_metro.backend.dto.response.MomoQueryResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 
-@FeignClient(name = "momo", url = "${momo.end-point}")
+@FeignClient(name = "momo", url = "${momo.end-point}", configuration = MomoFeignConfig.class)
 public interface MomoApi {
 
     @PostMapping("/create")
     CreateMomoResponse createMomoQR(@RequestBody CreateMomoRequest createMomoRequest);
+
+    @PostMapping("/query")
+    MomoQueryResponse queryTransaction(@RequestBody MomoQueryRequest momoQueryRequest);
 }
 
@@ -0,0 +1,35 @@
+package com.hanoi_metro.backend.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.Bean;
+
+import com.hanoi_metro.backend.configuration.OutboundHttpProperties;
+import com.hanoi_metro.backend.service.OutboundHttpRegistry;
+
+import feign.Client;
+import feign.Request;
+
+/**
+ * Cấu hình riêng cho MomoApi (không đánh dấu @Configuration để không áp dụng cho Feign client khác):
+ * timeout và bulkhead/đo độ trễ theo outbound-http.destinations.momo.
+ */
+public class MomoFeignConfig {
+
+    @Bean
+    public Request.Options momoRequestOptions(OutboundHttpRegistry outboundHttpRegistry) {
+        OutboundHttpProperties.Destination config =
+                outboundHttpRegistry.destination("momo").config();
+        return new Request.Options(
+                config.getConnectTimeoutMs(), TimeUnit.MILLISECONDS,
+                config.getReadTimeoutMs(), TimeUnit.MILLISECONDS,
+                true);
+    }
+
+    @Bean
+    public Client momoFeignClient(OutboundHttpRegistry outboundHttpRegistry) {
+        OutboundHttpRegistry.Destination momo = outboundHttpRegistry.destination("momo");
+        Client delegate = new Client.Default(null, null);
+        return (request, options) -> momo.call(() -> delegate.execute(request, options));
+    }
+}
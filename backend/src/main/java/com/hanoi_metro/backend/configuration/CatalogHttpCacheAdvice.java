@@ -0,0 +1,69 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.service.CatalogHttpCache;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Giữ lại body JSON đã serialize của các GET catalog thành công mà CatalogHttpCacheInterceptor chưa có trong cache.
+ * Dùng ObjectMapper của Spring nên bytes giống hệt response do MappingJackson2HttpMessageConverter ghi ra.
+ */
+@Slf4j
+@ControllerAdvice
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CatalogHttpCacheAdvice implements ResponseBodyAdvice<Object> {
+
+    CatalogHttpCache catalogHttpCache;
+    ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return MappingJackson2HttpMessageConverter.class.isAssignableFrom(converterType);
+    }
+
+    @Override
+    public Object beforeBodyWrite(
+            Object body,
+            MethodParameter returnType,
+            MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType,
+            ServerHttpRequest request,
+            ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)
+                || !(response instanceof ServletServerHttpResponse servletResponse)) {
+            return body;
+        }
+        Object attribute = servletRequest.getServletRequest().getAttribute(CatalogHttpCacheInterceptor.LOOKUP_ATTRIBUTE);
+        // Chỉ cache response thành công (lỗi từ GlobalExceptionHandler có status khác 200 hoặc code khác 1000)
+        if (attribute instanceof CatalogHttpCache.Lookup lookup
+                && servletResponse.getServletResponse().getStatus() == HttpStatus.OK.value()
+                && body instanceof ApiResponse<?> apiResponse
+                && apiResponse.getCode() == 1000) {
+            try {
+                catalogHttpCache.put(lookup, objectMapper.writeValueAsBytes(body), selectedContentType.toString());
+            } catch (JsonProcessingException e) {
+                log.debug("Could not cache response of {}: {}", lookup.key(), e.getMessage());
+            }
+        }
+        return body;
+    }
+}
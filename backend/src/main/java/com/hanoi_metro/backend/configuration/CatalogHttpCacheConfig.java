@@ -0,0 +1,24 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Configuration
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CatalogHttpCacheConfig implements WebMvcConfigurer {
+
+    CatalogHttpCacheInterceptor catalogHttpCacheInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(catalogHttpCacheInterceptor)
+                .addPathPatterns("/products/**", "/categories/**", "/banners/**",
+                        "/promotions/**", "/vouchers/**", "/reviews/**");
+    }
+}
@@ -0,0 +1,60 @@
+package com.hanoi_metro.backend.configuration;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import com.hanoi_metro.backend.service.CatalogHttpCache;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * GET catalog công khai: gắn ETag/Last-Modified/Cache-Control, trả 304 khi trình duyệt đã có bản mới nhất,
+ * trả bytes đã cache nếu có; còn lại để controller xử lý và CatalogHttpCacheAdvice giữ lại body.
+ * Chạy trong DispatcherServlet (sau CorsFilter và Spring Security) nên response từ cache vẫn có header CORS.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CatalogHttpCacheInterceptor implements HandlerInterceptor {
+
+    static final String LOOKUP_ATTRIBUTE = CatalogHttpCacheInterceptor.class.getName() + ".lookup";
+
+    CatalogHttpCache catalogHttpCache;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        if (!"GET".equals(request.getMethod())) {
+            return true;
+        }
+        CatalogHttpCache.Lookup lookup = catalogHttpCache.lookup(request.getServletPath(), request.getQueryString());
+        if (lookup == null) {
+            return true;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, catalogHttpCache.cacheControl().getHeaderValue());
+        // Đặt ETag/Last-Modified và trả 304 khi If-None-Match (hoặc If-Modified-Since) còn khớp
+        if (new ServletWebRequest(request, response).checkNotModified(lookup.etag(), lookup.lastModified())) {
+            catalogHttpCache.recordNotModified();
+            return false;
+        }
+
+        CatalogHttpCache.CachedBody cached = catalogHttpCache.get(lookup);
+        if (cached != null) {
+            response.setContentType(cached.contentType());
+            response.setContentLength(cached.body().length);
+            response.getOutputStream().write(cached.body());
+            return false;
+        }
+
+        request.setAttribute(LOOKUP_ATTRIBUTE, lookup);
+        return true;
+    }
+}
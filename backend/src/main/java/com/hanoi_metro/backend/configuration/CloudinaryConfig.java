@@ -1,6 +1,8 @@
 package com.hanoi_metro.backend.configuration;
 
 import com.cloudinary.Cloudinary;
+import com.hanoi_metro.backend.service.OutboundHttpRegistry;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -23,12 +25,20 @@ public class CloudinaryConfig {
     private boolean secure;
 
     @Bean
-    public Cloudinary cloudinary() {
+    public Cloudinary cloudinary(OutboundHttpRegistry outboundHttpRegistry) {
         final Map<String, Object> config = new HashMap<>();
         config.put("cloud_name", cloudName);
         config.put("api_key", apiKey);
         config.put("api_secret", apiSecret);
         config.put("secure", secure);
+
+        // Pool kết nối riêng cho Cloudinary (SDK http44 dùng connectionManager này thay cho pool mặc định)
+        OutboundHttpProperties.Destination destination =
+                outboundHttpRegistry.destination("cloudinary").config();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(destination.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(destination.getMaxConnections());
+        config.put("properties", Map.of("connectionManager", connectionManager));
         return new Cloudinary(config);
     }
 }
@@ -0,0 +1,30 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.ConversationSummaryService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job chạy một lần khi khởi động: dựng hộp thư chat (conversation_summaries) từ chat_messages.
+ * Bỏ qua nếu bảng đã có dữ liệu; hộp thư có từ trước thì chỉ dựng lại trạng thái yêu cầu hỗ trợ.
+ */
+@Configuration
+@Slf4j
+public class ConversationSummaryConfig {
+
+    @Bean
+    ApplicationRunner conversationSummaryRunner(ConversationSummaryService conversationSummaryService) {
+        return args -> {
+            try {
+                conversationSummaryService.backfill();
+                conversationSummaryService.backfillSupportStatus();
+            } catch (Exception e) {
+                log.error("Conversation summary backfill failed: {}", e.getMessage(), e);
+            }
+        };
+    }
+}
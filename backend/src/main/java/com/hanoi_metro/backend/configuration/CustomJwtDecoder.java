@@ -1,6 +1,9 @@
 package com.hanoi_metro.backend.configuration;
 
-import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -10,26 +13,49 @@ import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.stereotype.Component;
 
-import com.hanoi_metro.backend.dto.request.IntrospectRequest;
-import com.hanoi_metro.backend.service.AuthenticationService;
-import com.nimbusds.jose.JOSEException;
+import com.hanoi_metro.backend.service.TokenRevocationStore;
+import com.hanoi_metro.backend.service.UserStatusCache;
+import com.nimbusds.jwt.JWTParser;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Xác thực access token cho mỗi request:
+ * - Token đã xác thực được cache theo jti (giới hạn số entry, hết hạn theo exp): request lặp lại với cùng
+ *   token không phải kiểm tra chữ ký lại.
+ * - Token mới chỉ kiểm tra chữ ký một lần (NimbusJwtDecoder), không đi qua AuthenticationService.introspect.
+ * - Thu hồi (logout/refresh) và trạng thái khóa tài khoản được kiểm tra trên cache trong bộ nhớ,
+ *   request "nóng" không truy cập DB.
+ */
 @Slf4j
 @Component
 public class CustomJwtDecoder implements JwtDecoder {
     @Value("${jwt.signerKey}")
     private String signerKey;
 
+    @Value("${jwt.cache.max-entries:10000}")
+    private int maxCachedTokens;
+
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
     @Autowired
-    private AuthenticationService authenticationService;
+    private UserStatusCache userStatusCache;
 
     private NimbusJwtDecoder nimbusJwtDecoder = null;
 
+    // jti -> token đã xác thực (LRU)
+    private final Map<String, VerifiedToken> verifiedTokens = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+            return size() > maxCachedTokens;
+        }
+    };
+
     @Override
     public Jwt decode(String token) throws JwtException {
         if (token == null || token.trim().isEmpty()) {
@@ -37,42 +63,105 @@ public class CustomJwtDecoder implements JwtDecoder {
             throw new JwtException("Token is null or empty");
         }
 
-        try {
-            // Check token còn hiệu lực không, nếu không -> Exception
-            var response = authenticationService.introspect(
-                    IntrospectRequest.builder().token(token).build());
+        Jwt jwt = getCached(token);
+        if (jwt == null) {
+            jwt = verify(token);
+            cache(token, jwt);
+        }
 
-            if (!response.isValid()) {
-                log.warn("Token validation failed: token is invalid");
-                throw new JwtException("Token invalid");
-            }
-        } catch (JOSEException | ParseException e) {
+        // Token đã bị thu hồi (logout/refresh)
+        if (tokenRevocationStore.isRevoked(jwt.getId())) {
+            log.warn("Token validation failed: token has been revoked");
+            throw new JwtException("Token invalid");
+        }
+
+        // Tài khoản bị khóa hoặc không còn tồn tại
+        if (userStatusCache.status(jwt.getSubject()) != UserStatusCache.Status.ACTIVE) {
+            log.warn("Token validation failed: user is locked or does not exist");
+            throw new JwtException("Token invalid");
+        }
+
+        return jwt;
+    }
+
+    // Kiểm tra chữ ký, exp và loại token (chỉ chấp nhận access token)
+    private Jwt verify(String token) {
+        Jwt jwt;
+        try {
+            jwt = decoder().decode(token);
+        } catch (JwtException e) {
             log.warn("Token parsing/verification failed: {}", e.getMessage());
             throw new JwtException("Token invalid: " + e.getMessage());
         } catch (Exception e) {
-            // Catch any other unexpected exceptions
-            log.error("Unexpected error during token introspection: {}", e.getMessage(), e);
-            throw new JwtException("Token validation failed: " + e.getMessage());
+            log.error("Error decoding JWT token: {}", e.getMessage(), e);
+            throw new JwtException("Token decode failed: " + e.getMessage());
         }
 
-        // Nếu token còn hiệu lực
-        try {
-            if (Objects.isNull(nimbusJwtDecoder)) {
-                SecretKeySpec secretKeySpec = new SecretKeySpec(getSignerKeyBytes(), "HS512");
-                nimbusJwtDecoder = NimbusJwtDecoder.withSecretKey(secretKeySpec)
-                        .macAlgorithm(MacAlgorithm.HS512)
-                        .build();
+        if (!"access".equals(String.valueOf(jwt.getClaims().get("type")))) {
+            log.warn("Token validation failed: not an access token");
+            throw new JwtException("Token invalid");
+        }
+        return jwt;
+    }
+
+    private Jwt getCached(String token) {
+        String jti = jtiOf(token);
+        if (jti == null) {
+            return null;
+        }
+        VerifiedToken cached;
+        synchronized (verifiedTokens) {
+            cached = verifiedTokens.get(jti);
+        }
+        // jti chỉ là khóa tra cứu: phải khớp nguyên chuỗi token mới dùng lại kết quả đã xác thực
+        if (cached == null || !cached.token().equals(token)) {
+            return null;
+        }
+        Instant expiresAt = cached.jwt().getExpiresAt();
+        if (expiresAt == null || !expiresAt.isAfter(Instant.now())) {
+            synchronized (verifiedTokens) {
+                verifiedTokens.remove(cached.jwt().getId());
             }
+            return null;
+        }
+        return cached.jwt();
+    }
+
+    private void cache(String token, Jwt jwt) {
+        if (jwt.getId() == null || jwt.getExpiresAt() == null) {
+            return;
+        }
+        synchronized (verifiedTokens) {
+            verifiedTokens.put(jwt.getId(), new VerifiedToken(token, jwt));
+        }
+    }
 
-            return nimbusJwtDecoder.decode(token);
+    // Đọc jti từ payload mà không kiểm tra chữ ký (chỉ để tra cache)
+    private String jtiOf(String token) {
+        try {
+            return JWTParser.parse(token).getJWTClaimsSet().getJWTID();
         } catch (Exception e) {
-            log.error("Error decoding JWT token: {}", e.getMessage(), e);
-            throw new JwtException("Token decode failed: " + e.getMessage());
+            return null;
         }
     }
 
+    private NimbusJwtDecoder decoder() {
+        if (Objects.isNull(nimbusJwtDecoder)) {
+            SecretKeySpec secretKeySpec = new SecretKeySpec(getSignerKeyBytes(), "HS512");
+            NimbusJwtDecoder decoder = NimbusJwtDecoder.withSecretKey(secretKeySpec)
+                    .macAlgorithm(MacAlgorithm.HS512)
+                    .build();
+            // Không cho phép lệch giờ: token hết hạn là bị từ chối ngay (giống kiểm tra exp trước đây)
+            decoder.setJwtValidator(new JwtTimestampValidator(Duration.ZERO));
+            nimbusJwtDecoder = decoder;
+        }
+        return nimbusJwtDecoder;
+    }
+
     private byte[] getSignerKeyBytes() {
         String sanitized = (signerKey == null) ? "" : signerKey.replaceAll("\\s", "");  // xóa khoảng trắng
         return sanitized.getBytes();
     }
+
+    private record VerifiedToken(String token, Jwt jwt) {}
 }
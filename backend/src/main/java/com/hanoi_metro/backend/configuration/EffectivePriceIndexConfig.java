@@ -0,0 +1,19 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.EffectivePriceIndex;
+
+/**
+ * Dựng EffectivePriceIndex khi khởi động để request đầu tiên không phải chờ dựng index.
+ */
+@Configuration
+public class EffectivePriceIndexConfig {
+
+    @Bean
+    ApplicationRunner effectivePriceIndexWarmup(EffectivePriceIndex effectivePriceIndex) {
+        return args -> effectivePriceIndex.rebuildAll();
+    }
+}
@@ -0,0 +1,42 @@
+package com.hanoi_metro.backend.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Cấu hình kết nối ra ngoài theo từng đối tác (ghn, gemini, brevo, momo, cloudinary).
+ * Đối tác không khai báo dùng giá trị mặc định của {@link Destination}.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "outbound-http")
+public class OutboundHttpProperties {
+    private Map<String, Destination> destinations = new HashMap<>();
+
+    public Destination destination(String name) {
+        return destinations.computeIfAbsent(name, n -> new Destination());
+    }
+
+    @Getter
+    @Setter
+    public static class Destination {
+        private long connectTimeoutMs = 3000;
+        private long readTimeoutMs = 10000;
+        // Kích thước pool kết nối (Reactor Netty, Apache HttpClient)
+        private int maxConnections = 20;
+        // Thời gian chờ tối đa để lấy kết nối từ pool / slot của bulkhead
+        private long acquireTimeoutMs = 1000;
+        // Bulkhead: số request đồng thời tối đa tới đối tác này
+        private int maxConcurrent = 20;
+        // Chỉ retry khi không kết nối được (request chưa được gửi đi)
+        private int maxRetries = 1;
+        private long retryBackoffMs = 200;
+    }
+}
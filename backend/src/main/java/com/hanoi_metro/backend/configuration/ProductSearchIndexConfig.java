@@ -0,0 +1,28 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.ProductSearchIndex;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dựng chỉ mục tìm kiếm sản phẩm khi khởi động; sau đó ProductService cập nhật từng sản phẩm.
+ */
+@Configuration
+@Slf4j
+public class ProductSearchIndexConfig {
+
+    @Bean
+    ApplicationRunner productSearchIndexRunner(ProductSearchIndex productSearchIndex) {
+        return args -> {
+            try {
+                productSearchIndex.rebuildAll();
+            } catch (Exception e) {
+                log.error("Product search index build failed: {}", e.getMessage(), e);
+            }
+        };
+    }
+}
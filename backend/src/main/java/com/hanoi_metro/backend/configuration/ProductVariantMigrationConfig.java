@@ -0,0 +1,29 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.ProductVariantService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job chạy một lần khi khởi động: chuyển biến thể màu đang nằm trong JSON manufacturingLocation
+ * sang bảng product_variants. Sản phẩm đã được migrate sẽ bị bỏ qua.
+ */
+@Configuration
+@Slf4j
+public class ProductVariantMigrationConfig {
+
+    @Bean
+    ApplicationRunner productVariantMigrationRunner(ProductVariantService productVariantService) {
+        return args -> {
+            try {
+                productVariantService.migrateLegacyVariants();
+            } catch (Exception e) {
+                log.error("Product variant migration failed: {}", e.getMessage(), e);
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.RevenueRollupService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job chạy một lần khi khởi động: dựng bảng rollup doanh thu từ financial_records.
+ * Bỏ qua nếu bảng đã có dữ liệu.
+ */
+@Configuration
+@Slf4j
+public class RevenueRollupConfig {
+
+    @Bean
+    ApplicationRunner revenueRollupRunner(RevenueRollupService revenueRollupService) {
+        return args -> {
+            try {
+                revenueRollupService.backfill();
+            } catch (Exception e) {
+                log.error("Revenue rollup backfill failed: {}", e.getMessage(), e);
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.ReviewService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job chạy khi khởi động: tính lại tổng hợp đánh giá (số review, tổng sao, phân bố sao) trên bảng products
+ * từ bảng reviews. Lần đầu triển khai dùng để điền dữ liệu; các lần sau sửa sai lệch nếu có.
+ */
+@Configuration
+@Slf4j
+public class ReviewAggregateConfig {
+
+    @Bean
+    ApplicationRunner reviewAggregateRunner(ReviewService reviewService) {
+        return args -> {
+            try {
+                reviewService.reconcileRatingAggregates();
+            } catch (Exception e) {
+                log.error("Product rating aggregate recompute failed: {}", e.getMessage(), e);
+            }
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package com.hanoi_metro.backend.configuration;
 
+import jakarta.servlet.DispatcherType;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -36,6 +38,7 @@ public class SecurityConfig {
         "/shipments/ghn/leadtime",
         "/api/momo/ipn-handler",
         "/api/chatbot/ask",
+        "/api/chatbot/stream",
         "/api/tickets",  // Cho phép tạo ticket từ chatbot mà không cần authentication
         "/chat/chatbot/send"  // Cho phép gửi chat message từ chatbot mà không cần authentication
     };
@@ -52,6 +55,7 @@ public class SecurityConfig {
         "/products/**",
         "/categories/**",
         "/uploads/**",
+        "/media/files/**",  // File của storage local
         "/assets/**",
         "/banners/**",
         "/shipments/ghn/provinces",
@@ -70,6 +74,8 @@ public class SecurityConfig {
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity httpSecurity) throws Exception {
         httpSecurity.authorizeHttpRequests(request -> request
+                // Lượt dispatch ASYNC của SSE (/push/stream, /chatbot/stream) đã được xác thực ở request gốc
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers(HttpMethod.GET,PUBLIC_GET_ENDPOINTS).permitAll()
                 .requestMatchers(HttpMethod.POST, PUBLIC_POST_ENDPOINTS).permitAll()
                 .anyRequest()
@@ -0,0 +1,29 @@
+package com.hanoi_metro.backend.configuration;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hanoi_metro.backend.service.VoucherUsageService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job chạy một lần khi khởi động: dựng bảng voucher_usages từ các đơn hàng đã áp voucher.
+ * Bỏ qua nếu bảng đã có dữ liệu.
+ */
+@Configuration
+@Slf4j
+public class VoucherUsageLedgerConfig {
+
+    @Bean
+    ApplicationRunner voucherUsageLedgerRunner(VoucherUsageService voucherUsageService) {
+        return args -> {
+            try {
+                voucherUsageService.backfillFromOrders();
+            } catch (Exception e) {
+                log.error("Voucher usage ledger backfill failed: {}", e.getMessage(), e);
+            }
+        };
+    }
+}
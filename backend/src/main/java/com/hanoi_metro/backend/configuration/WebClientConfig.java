@@ -1,17 +1,51 @@
 package com.hanoi_metro.backend.configuration;
 
+import java.time.Duration;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.hanoi_metro.backend.service.OutboundHttpRegistry;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 @Configuration
 public class WebClientConfig {
 
+    static final String GEMINI_API_BASE_URL = "https://generativelanguage.googleapis.com/v1beta";
+
     @Bean
-    public WebClient ghnWebClient(GhnProperties ghnProperties) {
-        return WebClient.builder()
+    public WebClient ghnWebClient(GhnProperties ghnProperties, OutboundHttpRegistry outboundHttpRegistry) {
+        return webClient(outboundHttpRegistry.destination("ghn"))
                 .baseUrl(ghnProperties.getBaseUrl())
                 .build();
     }
-}
 
+    @Bean
+    public WebClient geminiWebClient(OutboundHttpRegistry outboundHttpRegistry) {
+        return webClient(outboundHttpRegistry.destination("gemini"))
+                .baseUrl(GEMINI_API_BASE_URL)
+                .build();
+    }
+
+    // Mỗi đối tác một pool kết nối riêng: pool của đối tác chậm đầy không ảnh hưởng đối tác khác
+    private WebClient.Builder webClient(OutboundHttpRegistry.Destination destination) {
+        OutboundHttpProperties.Destination config = destination.config();
+        ConnectionProvider pool = ConnectionProvider.builder(destination.name())
+                .maxConnections(config.getMaxConnections())
+                .pendingAcquireTimeout(Duration.ofMillis(config.getAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .build();
+        HttpClient httpClient = HttpClient.create(pool)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getConnectTimeoutMs())
+                .responseTimeout(Duration.ofMillis(config.getReadTimeoutMs()));
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(destination.filter());
+    }
+}
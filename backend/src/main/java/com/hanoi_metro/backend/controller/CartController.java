@@ -4,8 +4,8 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.dto.response.CartEngineStats;
 import com.hanoi_metro.backend.dto.response.CartResponse;
-import com.hanoi_metro.backend.mapper.CartMapper;
 import com.hanoi_metro.backend.service.CartService;
 
 import lombok.AccessLevel;
@@ -19,44 +19,48 @@ import lombok.experimental.FieldDefaults;
 public class CartController {
 
     CartService cartService;
-    CartMapper cartMapper;
 
     @GetMapping
     @PreAuthorize("hasRole('CUSTOMER')")
     ApiResponse<CartResponse> getCart() {
-        var cart = cartService.getOrCreateCartForCurrentCustomer();
         return ApiResponse.<CartResponse>builder()
-                .result(cartMapper.toResponse(cart))
+                .result(cartService.getCartView())
                 .build();
     }
 
     @PostMapping("/items")
     @PreAuthorize("hasRole('CUSTOMER')")
     ApiResponse<CartResponse> addItem(
-            @RequestParam("productId") String productId, 
+            @RequestParam("productId") String productId,
             @RequestParam("quantity") int quantity,
             @RequestParam(value = "colorCode", required = false) String colorCode) {
-        var cart = cartService.addItem(productId, quantity, colorCode);
         return ApiResponse.<CartResponse>builder()
-                .result(cartMapper.toResponse(cart))
+                .result(cartService.addItem(productId, quantity, colorCode))
                 .build();
     }
 
     @PostMapping("/apply-voucher")
     @PreAuthorize("hasRole('CUSTOMER')")
     ApiResponse<CartResponse> applyVoucher(@RequestParam("code") String code) {
-        var cart = cartService.applyVoucher(code);
         return ApiResponse.<CartResponse>builder()
-                .result(cartMapper.toResponse(cart))
+                .result(cartService.applyVoucher(code))
                 .build();
     }
 
     @DeleteMapping("/voucher")
     @PreAuthorize("hasRole('CUSTOMER')")
     ApiResponse<CartResponse> clearVoucher() {
-        var cart = cartService.clearVoucher();
         return ApiResponse.<CartResponse>builder()
-                .result(cartMapper.toResponse(cart))
+                .result(cartService.clearVoucher())
+                .build();
+    }
+
+    // Tỉ lệ trúng cache giỏ hàng, số lần xung đột version, số query và thời gian trung bình/tối đa mỗi thao tác
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    ApiResponse<CartEngineStats> stats() {
+        return ApiResponse.<CartEngineStats>builder()
+                .result(cartService.stats())
                 .build();
     }
 }
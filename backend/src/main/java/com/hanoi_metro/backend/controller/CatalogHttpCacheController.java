@@ -0,0 +1,32 @@
+package com.hanoi_metro.backend.controller;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.dto.response.CatalogHttpCacheStats;
+import com.hanoi_metro.backend.service.CatalogHttpCache;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@RestController
+@RequestMapping("/catalog-cache")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CatalogHttpCacheController {
+
+    CatalogHttpCache catalogHttpCache;
+
+    // Tỉ lệ trả từ bộ nhớ, số 304 và phiên bản từng nhóm dữ liệu của cache HTTP catalog
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<CatalogHttpCacheStats> stats() {
+        return ApiResponse.<CatalogHttpCacheStats>builder()
+                .result(catalogHttpCache.stats())
+                .build();
+    }
+}
@@ -7,7 +7,9 @@ import org.springframework.web.bind.annotation.*;
 import com.hanoi_metro.backend.dto.request.ApiResponse;
 import com.hanoi_metro.backend.dto.request.ChatbotChatRequest;
 import com.hanoi_metro.backend.dto.request.SendMessageRequest;
+import com.hanoi_metro.backend.dto.response.ChatConversationPageResponse;
 import com.hanoi_metro.backend.dto.response.ChatConversationResponse;
+import com.hanoi_metro.backend.dto.response.ChatMessagePageResponse;
 import com.hanoi_metro.backend.dto.response.ChatMessageResponse;
 import com.hanoi_metro.backend.dto.response.UserResponse;
 import com.hanoi_metro.backend.service.ChatService;
@@ -35,11 +37,23 @@ public class ChatController {
         return ApiResponse.<ChatMessageResponse>builder().result(response).build();
     }
 
+    /**
+     * Hộp thư theo keyset: truyền nextCursor của trang trước vào cursor.
+     */
     @GetMapping("/conversations")
-    public ApiResponse<List<ChatConversationResponse>> getConversations() {
-        log.info("Getting all conversations for current user");
-        List<ChatConversationResponse> conversations = chatService.getConversations();
-        return ApiResponse.<List<ChatConversationResponse>>builder().result(conversations).build();
+    public ApiResponse<ChatConversationPageResponse> getConversations(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        log.info("Getting conversations for current user");
+        ChatConversationPageResponse conversations = chatService.getConversations(cursor, limit);
+        return ApiResponse.<ChatConversationPageResponse>builder().result(conversations).build();
+    }
+
+    @GetMapping("/conversations/{partnerId}")
+    public ApiResponse<ChatConversationResponse> getConversationSummary(@PathVariable String partnerId) {
+        return ApiResponse.<ChatConversationResponse>builder()
+                .result(chatService.getConversationSummary(partnerId))
+                .build();
     }
 
     @GetMapping("/conversation/{partnerId}")
@@ -49,6 +63,18 @@ public class ChatController {
         return ApiResponse.<List<ChatMessageResponse>>builder().result(messages).build();
     }
 
+    /**
+     * Lịch sử tin nhắn theo keyset, mới nhất trước: truyền nextCursor để lấy các tin cũ hơn.
+     */
+    @GetMapping("/conversation/{partnerId}/messages")
+    public ApiResponse<ChatMessagePageResponse> getConversationPage(
+            @PathVariable String partnerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        ChatMessagePageResponse page = chatService.getConversationPage(partnerId, cursor, limit);
+        return ApiResponse.<ChatMessagePageResponse>builder().result(page).build();
+    }
+
     @PostMapping("/conversation/{partnerId}/read")
     public ApiResponse<String> markAsRead(@PathVariable String partnerId) {
         log.info("Marking conversation as read with partner: {}", partnerId);
@@ -3,7 +3,12 @@ package com.hanoi_metro.backend.controller;
 import com.hanoi_metro.backend.dto.request.ApiResponse;
 import com.hanoi_metro.backend.dto.request.ChatRequest;
 import com.hanoi_metro.backend.dto.response.ChatResponse;
+import com.hanoi_metro.backend.dto.response.ChatbotCacheStats;
+import com.hanoi_metro.backend.dto.response.ChatbotSessionStats;
+import com.hanoi_metro.backend.dto.response.ChatbotStreamStats;
+import com.hanoi_metro.backend.service.ChatbotResponseCache;
 import com.hanoi_metro.backend.service.ChatbotService;
+import com.hanoi_metro.backend.service.ChatbotSessionStore;
 
 import jakarta.validation.Valid;
 import lombok.AccessLevel;
@@ -11,11 +16,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 @RestController
 @RequestMapping("/api/chatbot")
 @RequiredArgsConstructor
@@ -24,15 +36,50 @@ import org.springframework.web.bind.annotation.RestController;
 public class ChatbotController {
 
     ChatbotService chatbotService;
+    ChatbotSessionStore chatbotSessionStore;
+    ChatbotResponseCache chatbotResponseCache;
 
     @PostMapping("/ask")
-    public ApiResponse<ChatResponse> ask(@Valid @RequestBody ChatRequest request) {
+    public Mono<ApiResponse<ChatResponse>> ask(@Valid @RequestBody ChatRequest request) {
         log.info("Chatbot request received: {}", request.getMessage());
-        ChatResponse response = chatbotService.ask(request);
-        return ApiResponse.<ChatResponse>builder()
-                .result(response)
+        // Trả về Mono: luồng Tomcat được giải phóng trong lúc chờ Gemini
+        return chatbotService.ask(request)
+                .map(response -> ApiResponse.<ChatResponse>builder()
+                        .result(response)
+                        .build());
+    }
+
+    // Stream câu trả lời theo từng đoạn (SSE): event "token" cho mỗi đoạn, "done" chứa toàn bộ câu trả lời
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ChatResponse>> stream(@Valid @RequestBody ChatRequest request) {
+        log.info("Chatbot stream request received: {}", request.getMessage());
+        return chatbotService.askStream(request);
+    }
+
+    // Số phiên và bộ nhớ ước lượng của lịch sử hội thoại chatbot
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<ChatbotSessionStats> stats() {
+        return ApiResponse.<ChatbotSessionStats>builder()
+                .result(chatbotSessionStore.stats())
                 .build();
     }
-}
 
+    // Tỉ lệ trúng cache câu trả lời chatbot
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<ChatbotCacheStats> cacheStats() {
+        return ApiResponse.<ChatbotCacheStats>builder()
+                .result(chatbotResponseCache.stats())
+                .build();
+    }
 
+    // Thời gian tới token đầu tiên của /stream
+    @GetMapping("/stream/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<ChatbotStreamStats> streamStats() {
+        return ApiResponse.<ChatbotStreamStats>builder()
+                .result(chatbotService.streamStats())
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package com.hanoi_metro.backend.controller;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.dto.response.EmailOutboxStats;
+import com.hanoi_metro.backend.service.EmailOutboxService;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@RestController
+@RequestMapping("/email-outbox")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class EmailOutboxController {
+
+    EmailOutboxService emailOutboxService;
+
+    // Độ sâu hàng đợi email và độ trễ gửi
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<EmailOutboxStats> stats() {
+        return ApiResponse.<EmailOutboxStats>builder()
+                .result(emailOutboxService.stats())
+                .build();
+    }
+}
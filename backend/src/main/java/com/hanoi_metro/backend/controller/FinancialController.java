@@ -10,6 +10,7 @@ import com.hanoi_metro.backend.dto.request.ApiResponse;
 import com.hanoi_metro.backend.dto.response.FinancialSummary;
 import com.hanoi_metro.backend.dto.response.PaymentRevenue;
 import com.hanoi_metro.backend.dto.response.ProductRevenue;
+import com.hanoi_metro.backend.dto.response.RevenueReconciliation;
 import com.hanoi_metro.backend.dto.response.RevenuePoint;
 import com.hanoi_metro.backend.dto.response.RevenueSummary;
 import com.hanoi_metro.backend.service.FinancialService;
@@ -61,6 +62,16 @@ public class FinancialController {
                 .build();
     }
 
+    // Đối chiếu bảng rollup với truy vấn doanh thu cũ (chỉ đơn DELIVERED) theo từng ngày
+    @GetMapping("/reconcile")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<List<RevenueReconciliation>> reconcile(
+            @RequestParam LocalDate start, @RequestParam LocalDate end) {
+        return ApiResponse.<List<RevenueReconciliation>>builder()
+                .result(financialService.reconcile(start, end))
+                .build();
+    }
+
     @GetMapping("/top-products")
     @PreAuthorize("hasRole('ADMIN')")
     public ApiResponse<List<ProductRevenue>> topProductsByRevenue(
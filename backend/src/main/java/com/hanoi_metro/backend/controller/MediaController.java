@@ -1,9 +1,13 @@
 package com.hanoi_metro.backend.controller;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -11,6 +15,7 @@ import org.springframework.web.multipart.MultipartFile;
 import com.hanoi_metro.backend.dto.request.ApiResponse;
 import com.hanoi_metro.backend.service.CloudinarySignatureService;
 import com.hanoi_metro.backend.service.FileStorageService;
+import com.hanoi_metro.backend.service.LocalMediaStorage;
 
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -24,6 +29,7 @@ public class MediaController {
 
     FileStorageService fileStorageService;
     CloudinarySignatureService cloudinarySignatureService;
+    LocalMediaStorage localMediaStorage;
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ApiResponse<List<String>> uploadProfileMedia(@RequestPart("files") List<MultipartFile> files) {
@@ -71,4 +77,15 @@ public class MediaController {
         return ApiResponse.<Map<String, Object>>builder().result(signature).build();
     }
 
+    // File của storage local (media.storage.backend=local), hỗ trợ Range cho video
+    @GetMapping("/files/{folder}/{filename:.+}")
+    public void serveFile(
+            @PathVariable String folder,
+            @PathVariable String filename,
+            HttpServletRequest request,
+            HttpServletResponse response)
+            throws IOException {
+        localMediaStorage.serve(folder, filename, request, response);
+    }
+
 }
@@ -18,6 +18,7 @@ import com.hanoi_metro.backend.dto.request.RejectRefundRequest;
 import com.hanoi_metro.backend.dto.request.ReturnProcessRequest;
 import com.hanoi_metro.backend.dto.request.ReturnRequestRequest;
 import com.hanoi_metro.backend.dto.response.CheckoutInitResponse;
+import com.hanoi_metro.backend.dto.response.OrderCursorPageResponse;
 import com.hanoi_metro.backend.dto.response.OrderDetailResponse;
 import com.hanoi_metro.backend.dto.response.OrderItemResponse;
 import com.hanoi_metro.backend.dto.response.OrderPageResponse;
@@ -25,6 +26,8 @@ import com.hanoi_metro.backend.dto.response.OrderResponse;
 import com.hanoi_metro.backend.dto.response.OrderStatistics;
 import com.hanoi_metro.backend.entity.Address;
 import com.hanoi_metro.backend.entity.Order;
+import com.hanoi_metro.backend.enums.OrderStatus;
+import com.hanoi_metro.backend.enums.PaymentMethod;
 import com.hanoi_metro.backend.service.OrderService;
 
 import lombok.AccessLevel;
@@ -66,12 +69,21 @@ public class OrderController {
                 .build();
     }
 
+    /**
+     * Danh sách đơn hàng cho staff/admin theo keyset: truyền nextCursor của trang trước vào cursor.
+     * Lọc tùy chọn theo trạng thái, phương thức thanh toán và khoảng ngày đặt hàng (yyyy-MM-dd, bao gồm hai đầu).
+     */
     @GetMapping
     @PreAuthorize("hasAnyRole('STAFF','ADMIN')")
-    public ApiResponse<List<OrderResponse>> getAllOrders() {
-        List<Order> orders = orderService.getAllOrders();
-        return ApiResponse.<List<OrderResponse>>builder()
-                .result(orders.stream().map(this::toResponse).toList())
+    public ApiResponse<OrderCursorPageResponse> getAllOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) OrderStatus status,
+            @RequestParam(required = false) PaymentMethod paymentMethod,
+            @RequestParam(required = false) LocalDate from,
+            @RequestParam(required = false) LocalDate to) {
+        return ApiResponse.<OrderCursorPageResponse>builder()
+                .result(orderService.getOrdersPage(cursor, limit, status, paymentMethod, from, to))
                 .build();
     }
 
@@ -232,6 +244,16 @@ public class OrderController {
                 .build();
     }
 
+    @PostMapping("/{id}/deliver")
+    @PreAuthorize("hasAnyRole('STAFF','ADMIN')")
+    public ApiResponse<OrderDetailResponse> markDelivered(@PathVariable String id) {
+        Order order = orderService.markDelivered(id);
+        return ApiResponse.<OrderDetailResponse>builder()
+                .result(toDetailResponse(order))
+                .message("Đã xác nhận giao hàng thành công.")
+                .build();
+    }
+
     private OrderResponse toResponse(Order order) {
         if (order == null) {
             return null;
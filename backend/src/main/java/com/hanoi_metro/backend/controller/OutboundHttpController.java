@@ -0,0 +1,34 @@
+package com.hanoi_metro.backend.controller;
+
+import java.util.List;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.dto.response.OutboundHttpStats;
+import com.hanoi_metro.backend.service.OutboundHttpRegistry;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@RestController
+@RequestMapping("/outbound-http")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OutboundHttpController {
+
+    OutboundHttpRegistry outboundHttpRegistry;
+
+    // Độ trễ, lỗi và số request bị bulkhead từ chối theo từng đối tác
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<List<OutboundHttpStats>> stats() {
+        return ApiResponse.<List<OutboundHttpStats>>builder()
+                .result(outboundHttpRegistry.stats())
+                .build();
+    }
+}
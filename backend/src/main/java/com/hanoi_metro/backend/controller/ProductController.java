@@ -10,6 +10,7 @@ import org.springframework.web.bind.annotation.*;
 import com.hanoi_metro.backend.dto.request.ApiResponse;
 import com.hanoi_metro.backend.dto.request.ProductCreationRequest;
 import com.hanoi_metro.backend.dto.request.ProductUpdateRequest;
+import com.hanoi_metro.backend.dto.request.VariantStockAdjustRequest;
 import com.hanoi_metro.backend.dto.response.ProductResponse;
 import com.hanoi_metro.backend.service.ProductService;
 
@@ -84,9 +85,12 @@ public class ProductController {
     }
 
     @GetMapping("/search")
-    ApiResponse<List<ProductResponse>> searchProducts(@RequestParam String keyword) {
+    ApiResponse<List<ProductResponse>> searchProducts(
+            @RequestParam String keyword,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size) {
         return ApiResponse.<List<ProductResponse>>builder()
-                .result(productService.searchProducts(keyword))
+                .result(productService.searchProducts(keyword, page, size))
                 .build();
     }
 
@@ -107,6 +111,17 @@ public class ProductController {
                 .build();
     }
 
+    // Nhập/xuất kho theo mã màu (delta dương: nhập thêm, âm: bớt)
+    @PostMapping("/{productId}/variants/{colorCode}/stock")
+    ApiResponse<ProductResponse> adjustVariantStock(
+            @PathVariable String productId,
+            @PathVariable String colorCode,
+            @RequestBody @Valid VariantStockAdjustRequest request) {
+        return ApiResponse.<ProductResponse>builder()
+                .result(productService.adjustVariantStock(productId, colorCode, request))
+                .build();
+    }
+
     // Set default media by URL
     @PostMapping("/{productId}/default-media")
     ApiResponse<ProductResponse> setDefaultMedia(
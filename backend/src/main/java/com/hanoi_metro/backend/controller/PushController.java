@@ -0,0 +1,52 @@
+package com.hanoi_metro.backend.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.dto.response.PushStats;
+import com.hanoi_metro.backend.dto.response.UserEvent;
+import com.hanoi_metro.backend.entity.User;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+import com.hanoi_metro.backend.repository.UserRepository;
+import com.hanoi_metro.backend.service.UserEventHub;
+import com.hanoi_metro.backend.util.SecurityUtil;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/push")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class PushController {
+
+    UserEventHub userEventHub;
+    UserRepository userRepository;
+
+    // Luồng SSE của user hiện tại: CHAT_MESSAGE, NOTIFICATION, UNREAD
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public Flux<ServerSentEvent<UserEvent>> stream() {
+        String email = SecurityUtil.getCurrentUserEmail();
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
+        return userEventHub.subscribe(user.getId());
+    }
+
+    // Số kết nối đang mở và số sự kiện đã phát / bị bỏ
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<PushStats> stats() {
+        return ApiResponse.<PushStats>builder()
+                .result(userEventHub.stats())
+                .build();
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.*;
 import com.hanoi_metro.backend.dto.request.ApiResponse;
 import com.hanoi_metro.backend.dto.request.ReviewCreationRequest;
 import com.hanoi_metro.backend.dto.request.ReviewReplyRequest;
+import com.hanoi_metro.backend.dto.response.ReviewPageResponse;
 import com.hanoi_metro.backend.dto.response.ReviewResponse;
 import com.hanoi_metro.backend.service.ReviewService;
 
@@ -40,6 +41,17 @@ public class ReviewController {
                 .build();
     }
 
+    // Trang review của sản phẩm kèm tổng hợp đánh giá, phân trang theo cursor
+    @GetMapping("/product/{productId}/page")
+    ApiResponse<ReviewPageResponse> getReviewPageByProduct(
+            @PathVariable String productId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return ApiResponse.<ReviewPageResponse>builder()
+                .result(reviewService.getReviewPageByProduct(productId, cursor, limit))
+                .build();
+    }
+
     @GetMapping("/my-reviews")
     ApiResponse<List<ReviewResponse>> getMyReviews() {
         return ApiResponse.<List<ReviewResponse>>builder()
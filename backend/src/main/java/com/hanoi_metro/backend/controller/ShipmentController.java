@@ -1,10 +1,28 @@
 package com.hanoi_metro.backend.controller;
 
+import java.time.Duration;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import com.hanoi_metro.backend.dto.request.ApiResponse;
+import com.hanoi_metro.backend.dto.request.GhnCalculateFeeRequest;
+import com.hanoi_metro.backend.dto.request.GhnLeadtimeRequest;
+import com.hanoi_metro.backend.dto.response.GhnDistrictResponse;
+import com.hanoi_metro.backend.dto.response.GhnFeeResponse;
+import com.hanoi_metro.backend.dto.response.GhnLeadtimeResponse;
+import com.hanoi_metro.backend.dto.response.GhnProvinceResponse;
+import com.hanoi_metro.backend.dto.response.GhnWardResponse;
 import com.hanoi_metro.backend.dto.response.ShipmentResponse;
+import com.hanoi_metro.backend.dto.response.ShippingQuoteStats;
+import com.hanoi_metro.backend.service.GhnMasterDataCache;
 import com.hanoi_metro.backend.service.ShipmentService;
+import com.hanoi_metro.backend.service.ShippingQuoteService;
 
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +34,8 @@ import lombok.experimental.FieldDefaults;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class ShipmentController {
     ShipmentService shipmentService;
+    GhnMasterDataCache ghnMasterDataCache;
+    ShippingQuoteService shippingQuoteService;
 
     // Lấy thông tin shipment theo order ID.
     @GetMapping("/order/{orderId}")
@@ -32,4 +52,63 @@ public class ShipmentController {
                 .result(shipmentService.getShipmentByOrderCode(orderCode))
                 .build();
     }
+
+    // Danh sách tỉnh/thành (GHN master data, phục vụ từ cache, hỗ trợ If-None-Match)
+    @GetMapping("/ghn/provinces")
+    public ResponseEntity<ApiResponse<List<GhnProvinceResponse>>> getProvinces() {
+        return masterData(ghnMasterDataCache.provinces());
+    }
+
+    @GetMapping("/ghn/districts")
+    public ResponseEntity<ApiResponse<List<GhnDistrictResponse>>> getDistricts(@RequestParam Integer provinceId) {
+        return masterData(ghnMasterDataCache.districts(provinceId));
+    }
+
+    @GetMapping("/ghn/wards")
+    public ResponseEntity<ApiResponse<List<GhnWardResponse>>> getWards(@RequestParam Integer districtId) {
+        return masterData(ghnMasterDataCache.wards(districtId));
+    }
+
+    // Phí vận chuyển (báo giá được cache và gộp request trùng)
+    @PostMapping("/ghn/fees")
+    public ApiResponse<GhnFeeResponse> calculateFee(
+            @RequestBody GhnCalculateFeeRequest request, HttpServletRequest httpRequest) {
+        return ApiResponse.<GhnFeeResponse>builder()
+                .result(shippingQuoteService.calculateFee(request, clientKey(httpRequest)))
+                .build();
+    }
+
+    // Thời gian giao hàng dự kiến
+    @PostMapping("/ghn/leadtime")
+    public ApiResponse<GhnLeadtimeResponse> getLeadtime(
+            @RequestBody GhnLeadtimeRequest request, HttpServletRequest httpRequest) {
+        return ApiResponse.<GhnLeadtimeResponse>builder()
+                .result(shippingQuoteService.getLeadtime(request, clientKey(httpRequest)))
+                .build();
+    }
+
+    // Tỉ lệ trúng cache báo giá và số request bị giới hạn
+    @GetMapping("/ghn/quotes/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ApiResponse<ShippingQuoteStats> quoteStats() {
+        return ApiResponse.<ShippingQuoteStats>builder()
+                .result(shippingQuoteService.stats())
+                .build();
+    }
+
+    // Người dùng đã đăng nhập giới hạn theo tài khoản, khách vãng lai theo IP
+    private String clientKey(HttpServletRequest request) {
+        if (request.getUserPrincipal() != null) {
+            return "user:" + request.getUserPrincipal().getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    // Spring trả 304 Not Modified khi If-None-Match khớp ETag
+    private <T> ResponseEntity<ApiResponse<List<T>>> masterData(GhnMasterDataCache.Entry<T> entry) {
+        return ResponseEntity.ok()
+                .eTag(entry.etag())
+                .cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePublic())
+                .body(ApiResponse.<List<T>>builder().result(entry.items()).build());
+    }
 }
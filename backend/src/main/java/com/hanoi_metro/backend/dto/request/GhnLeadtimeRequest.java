@@ -27,6 +27,3 @@ public class GhnLeadtimeRequest {
     @JsonProperty("service_type_id")
     Integer serviceTypeId;
 }
-
-
-
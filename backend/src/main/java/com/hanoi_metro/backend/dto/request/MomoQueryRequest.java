@@ -0,0 +1,16 @@
+package com.hanoi_metro.backend.dto.request;
+
+import lombok.*;
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class MomoQueryRequest {
+    private String partnerCode;
+    private String requestId;
+    private String orderId;
+    private String lang;
+    private String signature;
+}
@@ -0,0 +1,17 @@
+package com.hanoi_metro.backend.dto.request;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VariantStockAdjustRequest {
+    /**
+     * Số lượng cộng thêm (dương) hoặc bớt đi (âm) so với tồn kho hiện tại của biến thể.
+     */
+    @NotNull(message = "Số lượng thay đổi không được để trống")
+    private Integer delta;
+}
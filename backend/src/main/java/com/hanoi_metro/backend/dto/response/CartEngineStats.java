@@ -0,0 +1,25 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CartEngineStats {
+    Integer size; // Số giỏ hàng đang cache
+    Integer maxEntries;
+    Long hits;
+    Long misses; // Phải nạp giỏ từ DB
+    Double hitRate; // hits / (hits + misses)
+    Long conflicts; // Ghi theo version thất bại (giỏ bị sửa ở nơi khác), phải nạp lại và tính lại
+    Map<String, CartOperationStats> operations; // Theo thao tác: ADD_ITEM, APPLY_VOUCHER, ...
+}
@@ -0,0 +1,21 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CartOperationStats {
+    Long count;
+    Double averageQueries; // Số câu SQL trung bình mỗi lần (kể cả lần nạp giỏ khi cache miss)
+    Long maxQueries;
+    Double averageLatencyMs;
+    Double maxLatencyMs;
+}
@@ -0,0 +1,26 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CatalogHttpCacheStats {
+    Integer size; // Số response đang giữ bytes
+    Integer maxEntries;
+    Long hits; // Trả bytes từ bộ nhớ
+    Long misses; // Phải gọi controller
+    Double hitRate; // hits / (hits + misses)
+    Long notModified; // Trả 304 nhờ If-None-Match/If-Modified-Since
+    Long evictions; // Bị loại do LRU, hết TTL hoặc dữ liệu thay đổi
+    Map<String, Long> versions; // Phiên bản hiện tại của từng nhóm dữ liệu
+}
@@ -0,0 +1,26 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.List;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatConversationPageResponse {
+    // Hội thoại trong trang hiện tại, mới nhất trước (không kèm tin nhắn, xem lịch sử qua /chat/conversation/{partnerId}/messages)
+    List<ChatConversationResponse> conversations;
+
+    // Truyền lại qua tham số cursor để lấy trang tiếp theo; null nếu đã hết
+    String nextCursor;
+
+    // Có trang tiếp theo không
+    Boolean hasNext;
+
+    // Số phần tử tối đa mỗi trang
+    Integer limit;
+}
@@ -1,7 +1,8 @@
 package com.hanoi_metro.backend.dto.response;
 
 import java.time.LocalDateTime;
-import java.util.List;
+
+import com.hanoi_metro.backend.enums.SupportChatStatus;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
@@ -16,9 +17,13 @@ public class ChatConversationResponse {
     String partnerName;
     String partnerEmail;
     String lastMessage;
+    String lastSenderId;
     LocalDateTime lastMessageTime;
     Long unreadCount;
-    List<ChatMessageResponse> messages;
+    // Hội thoại khách hàng - CSKH: trạng thái yêu cầu hỗ trợ và CSKH đã tiếp nhận (null với các hội thoại khác)
+    SupportChatStatus supportStatus;
+    String acceptedById;
+    String acceptedByName;
 }
 
 
@@ -0,0 +1,26 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.List;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatMessagePageResponse {
+    // Tin nhắn trong trang hiện tại theo thứ tự thời gian tăng dần
+    List<ChatMessageResponse> messages;
+
+    // Truyền lại qua tham số cursor để lấy các tin cũ hơn; null nếu đã hết
+    String nextCursor;
+
+    // Còn tin cũ hơn không
+    Boolean hasNext;
+
+    // Số phần tử tối đa mỗi trang
+    Integer limit;
+}
@@ -0,0 +1,24 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatbotCacheStats {
+    Integer size; // Số câu trả lời đang cache
+    Integer maxEntries;
+    Long hits;
+    Long misses;
+    Double hitRate; // hits / (hits + misses)
+    Long evictions; // Bị loại do LRU hoặc hết TTL
+    Long catalogVersion; // Tăng mỗi khi sản phẩm thay đổi
+    Long categoryVersion; // Tăng mỗi khi cây danh mục thay đổi
+}
@@ -0,0 +1,23 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatbotSessionStats {
+    Integer sessionCount; // Số phiên đang giữ trong bộ nhớ
+    Integer maxSessions;
+    Long totalTurns; // Tổng số lượt hỏi/đáp đang giữ
+    Long estimatedTokens; // Ước lượng token của toàn bộ lịch sử
+    Long estimatedBytes; // Ước lượng bộ nhớ (UTF-16) của lịch sử
+    Long evictedSessions; // Số phiên đã bị loại (quá số lượng hoặc hết hạn) từ khi khởi động
+    Boolean persistenceEnabled;
+}
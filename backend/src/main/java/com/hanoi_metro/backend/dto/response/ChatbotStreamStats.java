@@ -0,0 +1,23 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatbotStreamStats {
+    Long streams; // Tổng số request /stream
+    Long completedStreams; // Stream Gemini kết thúc bình thường
+    Long fallbackStreams; // Trả lời fallback (mạch mở, quá tải, lỗi trước token đầu tiên)
+    Long interruptedStreams; // Lỗi giữa chừng sau khi đã gửi token
+    Long averageTimeToFirstTokenMs;
+    Long maxTimeToFirstTokenMs;
+    Long lastTimeToFirstTokenMs;
+}
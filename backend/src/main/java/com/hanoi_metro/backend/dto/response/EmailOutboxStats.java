@@ -0,0 +1,24 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class EmailOutboxStats {
+    Long pending; // Độ sâu hàng đợi: email chờ gửi hoặc chờ retry
+    Long sending;
+    Long dead; // Email bị bỏ (dead-letter), cần xử lý thủ công
+    Long sentSinceStart;
+    Long failedAttemptsSinceStart;
+    Long averageSendLatencyMs; // Thời gian gọi Brevo API
+    Long maxSendLatencyMs;
+    Long averageQueueDelayMs; // Từ lúc ghi outbox đến lúc gửi thành công
+}
@@ -0,0 +1,22 @@
+package com.hanoi_metro.backend.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.*;
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MomoQueryResponse {
+    private String partnerCode;
+    private String orderId;
+    private String requestId;
+    private Long amount;
+    private Long transId;
+    private Integer resultCode;
+    private String message;
+    private String payType;
+    private Long responseTime;
+}
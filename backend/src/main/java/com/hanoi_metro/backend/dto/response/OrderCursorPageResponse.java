@@ -0,0 +1,26 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.List;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OrderCursorPageResponse {
+    // Danh sách đơn hàng trong trang hiện tại (không kèm items, xem chi tiết qua GET /orders/{id})
+    List<OrderResponse> orders;
+
+    // Truyền lại qua tham số cursor để lấy trang tiếp theo; null nếu đã hết
+    String nextCursor;
+
+    // Có trang tiếp theo không
+    Boolean hasNext;
+
+    // Số phần tử tối đa mỗi trang
+    Integer limit;
+}
@@ -0,0 +1,28 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OutboundHttpStats {
+    String destination; // ghn, gemini, brevo, momo, cloudinary
+    Integer inFlight; // Request đang chạy
+    Integer maxConcurrent; // Giới hạn của bulkhead
+    Long calls;
+    Long errors; // Lỗi kết nối, timeout hoặc 5xx
+    Long rejected; // Bị bulkhead từ chối
+    Long retries;
+    Long averageLatencyMs;
+    Long maxLatencyMs;
+    Map<String, Long> latencyHistogram; // "<=100ms" -> số request
+}
@@ -3,6 +3,7 @@ package com.hanoi_metro.backend.dto.response;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
@@ -62,6 +63,7 @@ public class ProductResponse {
     // Review info
     Integer reviewCount;
     Double averageRating;
+    Map<Integer, Integer> ratingHistogram; // Số đánh giá theo mức sao 1-5
 
     // Inventory info
     Integer stockQuantity;
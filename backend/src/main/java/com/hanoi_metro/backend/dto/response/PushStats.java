@@ -0,0 +1,21 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PushStats {
+    Integer connectedUsers; // Số user đang mở /push/stream
+    Integer connections; // Số kết nối (một user có thể mở nhiều tab)
+    Long published; // Sự kiện đã đưa vào hàng đợi của kết nối
+    Long dropped; // Sự kiện bị bỏ vì hàng đợi của kết nối đầy (client đọc quá chậm)
+    Integer cachedUnreadCounters; // Số user đang có bộ đếm chưa đọc trong bộ nhớ
+}
@@ -0,0 +1,21 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.time.LocalDate;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+// Đối chiếu doanh thu một ngày: truy vấn cũ (chỉ đơn DELIVERED), bản ghi doanh thu và bảng rollup.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RevenueReconciliation {
+    LocalDate date;
+    Double legacyDeliveredRevenue; // Truy vấn cũ: bản ghi ORDER_PAYMENT của đơn PAID + DELIVERED
+    Double recordedRevenue; // Tổng mọi bản ghi ORDER_PAYMENT trong ngày
+    Double rollupRevenue; // revenue_daily_rollups
+    Boolean rollupMatchesRecords; // Bảng rollup phải luôn khớp bản ghi
+    Double undeliveredRevenue; // recordedRevenue - legacyDeliveredRevenue: đơn đã trả tiền nhưng chưa/không còn DELIVERED
+}
@@ -0,0 +1,32 @@
+package com.hanoi_metro.backend.dto.response;
+
+import java.util.List;
+import java.util.Map;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ReviewPageResponse {
+    // Review trong trang hiện tại, mới nhất trước
+    List<ReviewResponse> reviews;
+
+    // Truyền lại qua tham số cursor để lấy trang kế tiếp; null nếu đã hết
+    String nextCursor;
+
+    // Còn trang sau không
+    Boolean hasNext;
+
+    // Số phần tử tối đa mỗi trang
+    Integer limit;
+
+    // Tổng hợp đánh giá của sản phẩm (đọc từ cột tổng hợp, không đếm lại)
+    Integer reviewCount;
+    Double averageRating;
+    Map<Integer, Integer> ratingHistogram;
+}
@@ -0,0 +1,24 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ShippingQuoteStats {
+    Integer size; // Số báo giá đang cache
+    Integer maxEntries;
+    Long hits;
+    Long misses; // Số lần gọi GHN
+    Long coalesced; // Request chờ chung một lần gọi GHN đang chạy
+    Double hitRate; // (hits + coalesced) / tổng request
+    Long rateLimited; // Request bị từ chối do vượt giới hạn mỗi client
+    Integer trackedClients;
+}
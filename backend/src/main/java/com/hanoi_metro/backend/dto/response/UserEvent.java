@@ -0,0 +1,27 @@
+package com.hanoi_metro.backend.dto.response;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Sự kiện đẩy tới một user qua /push/stream.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UserEvent {
+    public static final String CHAT_MESSAGE = "CHAT_MESSAGE"; // data: ChatMessageResponse
+    public static final String NOTIFICATION = "NOTIFICATION"; // data: NotificationResponse
+    public static final String UNREAD = "UNREAD"; // Chỉ cập nhật số chưa đọc
+
+    String type;
+    Object data;
+    Long unreadMessages; // null: server chưa có số đếm, client tự gọi /chat/unread-count
+    Long unreadNotifications;
+}
@@ -31,4 +31,8 @@ public class Cart {
     String appliedVoucherId; // ID voucher đang áp dụng
     Double voucherDiscount;
     Double totalAmount; // subtotal - voucherDiscount
+
+    // Tăng mỗi lần giỏ hàng thay đổi; CartService ghi có điều kiện theo version để phát hiện bản cache đã cũ
+    @Column(insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    Long version;
 }
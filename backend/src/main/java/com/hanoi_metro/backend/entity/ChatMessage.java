@@ -14,7 +14,12 @@ import lombok.experimental.FieldDefaults;
 @AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Entity
-@Table(name = "chat_messages")
+@Table(
+        name = "chat_messages",
+        indexes = {
+            @Index(name = "idx_chat_sender_receiver_created", columnList = "sender_id, receiver_id, created_at, id"),
+            @Index(name = "idx_chat_receiver_sender_created", columnList = "receiver_id, sender_id, created_at, id")
+        })
 public class ChatMessage {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -0,0 +1,34 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Lịch sử hội thoại chatbot được lưu xuống DB (tùy chọn) để không mất khi khởi động lại.
+ * Lịch sử lưu dạng JSON [{role, text}, ...] đã được cắt theo ngân sách token.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "chatbot_sessions",
+        indexes = {@Index(name = "idx_chatbot_session_updated", columnList = "updated_at")})
+public class ChatbotSession {
+    @Id
+    @Column(name = "session_id", length = 64)
+    String sessionId;
+
+    @Column(name = "history", columnDefinition = "TEXT")
+    String history;
+
+    @Column(name = "updated_at", nullable = false)
+    LocalDateTime updatedAt;
+}
@@ -0,0 +1,71 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import com.hanoi_metro.backend.enums.SupportChatStatus;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Một dòng trong hộp thư chat của một người tham gia: tin nhắn cuối và số tin chưa đọc với một đối tác.
+ * Cập nhật khi gửi tin và khi đánh dấu đã đọc, nên danh sách hội thoại không phải đọc lại lịch sử tin nhắn.
+ *
+ * Hội thoại khách hàng - CSKH dùng chung cho cả đội CSKH: ownerId = {@link #SUPPORT_TEAM}, partnerId = khách hàng.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "conversation_summaries",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_conversation_owner_partner",
+                columnNames = {"owner_id", "partner_id"}),
+        indexes = {
+            @Index(name = "idx_conversation_owner_last", columnList = "owner_id, last_message_at, id")
+        })
+public class ConversationSummary {
+    public static final String SUPPORT_TEAM = "CUSTOMER_SUPPORT";
+
+    // Độ dài tối đa của bản xem trước tin nhắn cuối
+    public static final int PREVIEW_LENGTH = 255;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "owner_id", nullable = false, length = 36)
+    String ownerId;
+
+    @Column(name = "partner_id", nullable = false, length = 36)
+    String partnerId;
+
+    @Column(name = "last_message", length = PREVIEW_LENGTH)
+    String lastMessage;
+
+    @Column(name = "last_sender_id", length = 36)
+    String lastSenderId;
+
+    @Column(name = "last_message_at", nullable = false)
+    LocalDateTime lastMessageAt;
+
+    @Column(name = "unread_count", nullable = false)
+    Long unreadCount;
+
+    // Chỉ dùng cho dòng của đội CSKH (ownerId = SUPPORT_TEAM): trạng thái yêu cầu hỗ trợ và CSKH đã tiếp nhận
+    @Enumerated(EnumType.STRING)
+    @Column(name = "support_status", length = 20)
+    SupportChatStatus supportStatus;
+
+    @Column(name = "accepted_by_id", length = 36)
+    String acceptedById;
+
+    @Column(name = "accepted_by_name")
+    String acceptedByName;
+}
@@ -0,0 +1,66 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import com.hanoi_metro.backend.enums.EmailOutboxStatus;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Email chờ gửi (transactional outbox): được ghi cùng transaction với thay đổi trạng thái đơn hàng/tài khoản,
+ * EmailOutboxDispatcher gửi qua Brevo ở nền. payload là JSON request body của Brevo.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "email_outbox",
+        indexes = {
+            @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, next_attempt_at")
+        })
+public class EmailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "recipient", nullable = false)
+    String recipient;
+
+    @Column(name = "subject")
+    String subject;
+
+    @Lob
+    @Column(name = "payload", nullable = false, columnDefinition = "LONGTEXT")
+    String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    EmailOutboxStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    int attempts;
+
+    // PENDING: thời điểm được gửi (lần đầu hoặc retry); SENDING: hết hạn lease
+    @Column(name = "next_attempt_at", nullable = false)
+    LocalDateTime nextAttemptAt;
+
+    // Token của lần nhận (claim) đang giữ lease; chỉ lần nhận này được ghi kết quả gửi
+    @Column(name = "lease_owner", length = 36)
+    String leaseOwner;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    LocalDateTime sentAt;
+}
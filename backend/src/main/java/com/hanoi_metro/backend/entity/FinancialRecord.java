@@ -34,6 +34,13 @@ public class FinancialRecord {
     @Column(name = "amount", nullable = false)
     Double amount;
 
+    // Số lượng và giá vốn (purchasePrice x quantity) tại thời điểm bán, dùng cho bảng rollup doanh thu
+    @Column(name = "quantity")
+    Integer quantity;
+
+    @Column(name = "cost_amount")
+    Double costAmount;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "payment_method")
     PaymentMethod paymentMethod;
@@ -2,6 +2,7 @@ package com.hanoi_metro.backend.entity;
 
 import java.util.Date;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 
@@ -20,4 +21,8 @@ public class InvalidatedToken {
     String id;
 
     Date expiryTime;
+
+    // Thời điểm thu hồi, để các node khác đồng bộ Bloom filter theo các dòng mới (TokenRevocationStore.sync)
+    @Column(name = "revoked_at")
+    Date revokedAt;
 }
@@ -0,0 +1,44 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * IPN MoMo đã nhận. Unique (order_code, request_id) khiến IPN gửi lại hoặc gửi trùng không được xử lý lần hai.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "momo_ipn_events",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_momo_ipn_order_request",
+                columnNames = {"order_code", "request_id"}))
+public class MomoIpnEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "order_code", nullable = false)
+    String orderCode;
+
+    @Column(name = "request_id", nullable = false)
+    String requestId;
+
+    @Column(name = "trans_id")
+    Long transId;
+
+    @Column(name = "result_code")
+    Integer resultCode;
+
+    @Column(name = "received_at", nullable = false)
+    LocalDateTime receivedAt;
+}
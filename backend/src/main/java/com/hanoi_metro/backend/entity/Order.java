@@ -21,7 +21,14 @@ import lombok.experimental.FieldDefaults;
 @AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Entity
-@Table(name = "orders")
+@Table(
+        name = "orders",
+        indexes = {
+            // Danh sách đơn hàng theo keyset (order_date_time DESC, id DESC), có/không lọc trạng thái, thanh toán
+            @Index(name = "idx_orders_datetime_id", columnList = "order_date_time, id"),
+            @Index(name = "idx_orders_status_datetime_id", columnList = "status, order_date_time, id"),
+            @Index(name = "idx_orders_payment_datetime_id", columnList = "payment_method, order_date_time, id")
+        })
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
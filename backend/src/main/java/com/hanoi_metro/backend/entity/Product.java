@@ -95,6 +95,30 @@ public class Product {
     @Column(name = "quantity_sold")
     Integer quantitySold;
 
+    // Tổng hợp đánh giá: chỉ thay đổi qua UPDATE cộng dồn (ProductRepository.addRating) cùng transaction
+    // với việc tạo/xóa review, không bao giờ ghi đè từ entity nên không bị mất khi lưu sản phẩm
+    @Column(name = "review_count", insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    Integer reviewCount;
+
+    @Column(name = "rating_sum", insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    Long ratingSum;
+
+    // Số đánh giá theo từng mức sao
+    @Column(name = "one_star_count", insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    Integer oneStarCount;
+
+    @Column(name = "two_star_count", insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    Integer twoStarCount;
+
+    @Column(name = "three_star_count", insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    Integer threeStarCount;
+
+    @Column(name = "four_star_count", insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    Integer fourStarCount;
+
+    @Column(name = "five_star_count", insertable = false, updatable = false, columnDefinition = "INT NOT NULL DEFAULT 0")
+    Integer fiveStarCount;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "status", nullable = false)
     ProductStatus status;
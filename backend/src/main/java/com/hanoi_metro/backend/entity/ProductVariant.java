@@ -0,0 +1,51 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Biến thể màu của sản phẩm (trước đây chỉ nằm trong JSON manufacturingLocation).
+ * code được chuẩn hóa (trim + lowercase) để tra cứu theo (product_id, code).
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "product_variants",
+        uniqueConstraints = @UniqueConstraint(name = "uk_product_variant_code", columnNames = {"product_id", "code"}),
+        indexes = @Index(name = "idx_product_variant_product_code", columnList = "product_id, code"))
+public class ProductVariant {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", nullable = false)
+    Product product;
+
+    @Column(name = "code", nullable = false, length = 100)
+    String code;
+
+    @Column(name = "name")
+    String name;
+
+    @Column(name = "price")
+    Double price;
+
+    @Column(name = "stock_quantity", nullable = false)
+    Integer stockQuantity;
+
+    @Column(name = "quantity_sold", nullable = false)
+    Integer quantitySold;
+
+    @Column(name = "updated_at")
+    LocalDateTime updatedAt;
+}
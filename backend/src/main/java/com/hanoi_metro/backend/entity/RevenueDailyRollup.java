@@ -0,0 +1,54 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Doanh thu cộng dồn theo ngày x sản phẩm x phương thức thanh toán, cập nhật cùng transaction với FinancialRecord.
+ * Dòng productId = "" giữ số liệu cấp đơn hàng (số đơn, hoàn tiền/bồi thường).
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "revenue_daily_rollups",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_revenue_daily_bucket",
+                columnNames = {"bucket_date", "product_id", "payment_method"}))
+public class RevenueDailyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "bucket_date", nullable = false)
+    LocalDate bucketDate;
+
+    @Column(name = "product_id", nullable = false, length = 36)
+    String productId;
+
+    @Column(name = "payment_method", nullable = false, length = 20)
+    String paymentMethod;
+
+    @Column(name = "revenue", nullable = false)
+    Double revenue;
+
+    @Column(name = "cost_of_goods", nullable = false)
+    Double costOfGoods;
+
+    @Column(name = "units", nullable = false)
+    Long units;
+
+    @Column(name = "refunds", nullable = false)
+    Double refunds;
+
+    @Column(name = "order_count", nullable = false)
+    Long orderCount;
+}
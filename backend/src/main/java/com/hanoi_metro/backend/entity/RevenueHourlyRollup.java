@@ -0,0 +1,44 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Doanh thu cộng dồn theo giờ x phương thức thanh toán (biểu đồ trong ngày).
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "revenue_hourly_rollups",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_revenue_hourly_bucket",
+                columnNames = {"bucket_hour", "payment_method"}))
+public class RevenueHourlyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "bucket_hour", nullable = false)
+    LocalDateTime bucketHour;
+
+    @Column(name = "payment_method", nullable = false, length = 20)
+    String paymentMethod;
+
+    @Column(name = "revenue", nullable = false)
+    Double revenue;
+
+    @Column(name = "refunds", nullable = false)
+    Double refunds;
+
+    @Column(name = "order_count", nullable = false)
+    Long orderCount;
+}
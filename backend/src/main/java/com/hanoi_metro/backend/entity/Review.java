@@ -14,7 +14,9 @@ import lombok.experimental.FieldDefaults;
 @AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Entity
-@Table(name = "reviews")
+@Table(
+        name = "reviews",
+        indexes = @Index(name = "idx_reviews_product_created", columnList = "product_id, created_at, id"))
 public class Review {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -0,0 +1,55 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import com.hanoi_metro.backend.enums.ReservationStatus;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Giữ chỗ tồn kho cho đơn hàng MoMo đang chờ thanh toán.
+ * Tồn kho đã được trừ khi tạo bản ghi; bản ghi HELD quá hạn sẽ được hoàn lại tồn kho.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "stock_reservations",
+        indexes = {
+            @Index(name = "idx_stock_reservation_order", columnList = "order_id"),
+            @Index(name = "idx_stock_reservation_status_expiry", columnList = "status, expires_at")
+        })
+public class StockReservation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "order_id", nullable = false)
+    String orderId;
+
+    @Column(name = "product_id", nullable = false)
+    String productId;
+
+    @Column(name = "color_code")
+    String colorCode; // Mã màu đã chuẩn hóa (null nếu trừ tồn kho tổng)
+
+    @Column(name = "quantity", nullable = false)
+    Integer quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    ReservationStatus status;
+
+    @Column(name = "created_at", nullable = false)
+    LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    LocalDateTime expiresAt;
+}
@@ -0,0 +1,43 @@
+package com.hanoi_metro.backend.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Số lần mỗi user đã dùng một voucher (không tính đơn đã hủy/hoàn tiền).
+ * Mỗi cặp (voucher, user) có đúng một dòng; tăng/giảm bằng UPDATE có điều kiện nên không vượt usagePerUser
+ * kể cả khi nhiều đơn được đặt đồng thời.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity
+@Table(
+        name = "voucher_usages",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_voucher_usage_voucher_user",
+                columnNames = {"voucher_id", "user_id"}))
+public class VoucherUsage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    String id;
+
+    @Column(name = "voucher_id", nullable = false)
+    String voucherId;
+
+    @Column(name = "user_id", nullable = false)
+    String userId;
+
+    @Column(name = "used_count", nullable = false)
+    int usedCount;
+
+    @Column(name = "updated_at")
+    LocalDateTime updatedAt;
+}
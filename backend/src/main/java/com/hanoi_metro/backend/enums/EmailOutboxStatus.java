@@ -0,0 +1,8 @@
+package com.hanoi_metro.backend.enums;
+
+public enum EmailOutboxStatus {
+    PENDING, // Chờ gửi (mới tạo hoặc chờ retry)
+    SENDING, // Dispatcher đang gửi; quá hạn lease thì được gửi lại
+    SENT, // Brevo đã nhận
+    DEAD // Lỗi không thể retry hoặc hết số lần retry
+}
@@ -0,0 +1,7 @@
+package com.hanoi_metro.backend.enums;
+
+public enum ReservationStatus {
+    HELD, // Đã trừ tồn kho, chờ thanh toán
+    COMMITTED, // Thanh toán thành công, đã ghi nhận bán hàng
+    RELEASED // Đã hoàn tồn kho (hủy đơn, thanh toán thất bại hoặc hết hạn)
+}
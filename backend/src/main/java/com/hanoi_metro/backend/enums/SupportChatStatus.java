@@ -0,0 +1,8 @@
+package com.hanoi_metro.backend.enums;
+
+// Trạng thái yêu cầu hỗ trợ trực tiếp của khách hàng trong hộp thư chung của đội CSKH
+public enum SupportChatStatus {
+    PENDING, // Khách hàng yêu cầu chat với CSKH từ chatbot, chưa ai tiếp nhận
+    ACCEPTED, // Đã có CSKH tiếp nhận
+    DISCONNECTED // Khách hàng đã ngắt kết nối
+}
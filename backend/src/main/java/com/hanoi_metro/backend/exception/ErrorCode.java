@@ -62,6 +62,7 @@ public enum ErrorCode {
     CATEGORY_CANNOT_CHANGE_ID_HAS_CHILDREN(6008, "Không thể đổi ID danh mục. Vui lòng xóa danh mục con trước",
             HttpStatus.BAD_REQUEST),
     OUT_OF_STOCK(6002, "Hết hàng", HttpStatus.BAD_REQUEST),
+    PRODUCT_VARIANT_NOT_EXISTED(6009, "Mã màu của sản phẩm không tồn tại", HttpStatus.NOT_FOUND),
 
     // ORDER - SHIPMENT - CART - ADDRESS
     CART_ITEM_NOT_EXISTED(7001, "Không tồn tại sản phẩm trong giỏ hàng", HttpStatus.NOT_FOUND),
@@ -71,9 +72,17 @@ public enum ErrorCode {
     ADDRESS_IN_USE(7007, "Không thể xóa địa chỉ này vì đang được sử dụng trong đơn hàng", HttpStatus.BAD_REQUEST),
     SHIPMENT_NOT_EXISTED(7005, "Vận đơn không tồn tại", HttpStatus.NOT_FOUND),
     BAD_REQUEST(7006, "Yêu cầu không hợp lệ", HttpStatus.BAD_REQUEST),
+    SHIPPING_QUOTE_RATE_LIMITED(7008, "Bạn thao tác quá nhanh, vui lòng thử lại sau giây lát",
+            HttpStatus.TOO_MANY_REQUESTS),
+    EXTERNAL_SERVICE_BUSY(7009, "Dịch vụ bên ngoài đang quá tải, vui lòng thử lại sau",
+            HttpStatus.SERVICE_UNAVAILABLE),
 
     // FILE UPLOAD
     FILE_UPLOAD_FAILED(8001, "Không thể upload file", HttpStatus.INTERNAL_SERVER_ERROR),
+    MEDIA_UPLOAD_BUSY(8002, "Đang có nhiều file được upload, vui lòng thử lại sau",
+            HttpStatus.SERVICE_UNAVAILABLE),
+    FILE_NOT_EXISTED(8003, "File không tồn tại", HttpStatus.NOT_FOUND),
+    FILE_TYPE_NOT_ALLOWED(8004, "Chỉ hỗ trợ file ảnh hoặc video", HttpStatus.BAD_REQUEST),
 
     // NOTIFICATION
     NOTIFICATION_NOT_EXISTED(9001, "Thông báo không tồn tại", HttpStatus.NOT_FOUND);
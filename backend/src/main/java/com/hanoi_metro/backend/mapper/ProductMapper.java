@@ -1,6 +1,8 @@
 package com.hanoi_metro.backend.mapper;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.hanoi_metro.backend.entity.*;
 import org.mapstruct.Mapper;
@@ -26,8 +28,9 @@ public interface ProductMapper {
     @Mapping(target = "promotionExpiryDate", source = "promotionApply", qualifiedByName = "mapPromotionExpiryDate")
     @Mapping(target = "mediaUrls", source = "mediaList", qualifiedByName = "mapMediaUrls")
     @Mapping(target = "defaultMediaUrl", source = "defaultMedia", qualifiedByName = "mapDefaultMediaUrl")
-    @Mapping(target = "reviewCount", source = "reviews", qualifiedByName = "mapReviewCount")
-    @Mapping(target = "averageRating", source = "reviews", qualifiedByName = "mapAverageRating")
+    @Mapping(target = "reviewCount", source = "reviewCount", qualifiedByName = "mapReviewCount")
+    @Mapping(target = "averageRating", source = ".", qualifiedByName = "mapAverageRating")
+    @Mapping(target = "ratingHistogram", source = ".", qualifiedByName = "mapRatingHistogram")
     @Mapping(target = "stockQuantity", source = "inventory", qualifiedByName = "mapStockQuantity")
     ProductResponse toResponse(Product product);
 
@@ -44,6 +47,13 @@ public interface ProductMapper {
     @Mapping(target = "inventory", ignore = true)
     @Mapping(target = "banners", ignore = true)
     @Mapping(target = "quantitySold", ignore = true)
+    @Mapping(target = "reviewCount", ignore = true)
+    @Mapping(target = "ratingSum", ignore = true)
+    @Mapping(target = "oneStarCount", ignore = true)
+    @Mapping(target = "twoStarCount", ignore = true)
+    @Mapping(target = "threeStarCount", ignore = true)
+    @Mapping(target = "fourStarCount", ignore = true)
+    @Mapping(target = "fiveStarCount", ignore = true)
     @Mapping(target = "detailedDescription", ignore = true)
     @Mapping(target = "approvedBy", ignore = true)
     @Mapping(target = "approvedAt", ignore = true)
@@ -65,6 +75,13 @@ public interface ProductMapper {
     @Mapping(target = "inventory", ignore = true)
     @Mapping(target = "banners", ignore = true)
     @Mapping(target = "quantitySold", ignore = true)
+    @Mapping(target = "reviewCount", ignore = true)
+    @Mapping(target = "ratingSum", ignore = true)
+    @Mapping(target = "oneStarCount", ignore = true)
+    @Mapping(target = "twoStarCount", ignore = true)
+    @Mapping(target = "threeStarCount", ignore = true)
+    @Mapping(target = "fourStarCount", ignore = true)
+    @Mapping(target = "fiveStarCount", ignore = true)
     @Mapping(target = "status", ignore = true) // Giữ nguyên status hiện tại, chỉ admin mới có thể thay đổi
     @Mapping(target = "manufacturingLocation", ignore = true) // Xử lý thủ công trong service để hỗ trợ null
     @Mapping(target = "approvedBy", ignore = true)
@@ -84,15 +101,33 @@ public interface ProductMapper {
                 .toList();
     }
 
+    // Đọc từ cột tổng hợp của sản phẩm, không tải danh sách review
     @Named("mapReviewCount")
-    default Integer mapReviewCount(List<Review> reviews) {
-        return reviews != null ? reviews.size() : 0;
+    default Integer mapReviewCount(Integer reviewCount) {
+        return reviewCount != null ? reviewCount : 0;
     }
 
     @Named("mapAverageRating")
-    default Double mapAverageRating(List<Review> reviews) {
-        if (reviews == null || reviews.isEmpty()) return 0.0;
-        return reviews.stream().mapToDouble(Review::getRating).average().orElse(0.0);
+    default Double mapAverageRating(Product product) {
+        Integer count = product.getReviewCount();
+        if (count == null || count == 0 || product.getRatingSum() == null) return 0.0;
+        return (double) product.getRatingSum() / count;
+    }
+
+    // Số đánh giá theo mức sao 1-5
+    @Named("mapRatingHistogram")
+    default Map<Integer, Integer> mapRatingHistogram(Product product) {
+        Map<Integer, Integer> histogram = new LinkedHashMap<>();
+        histogram.put(1, orZero(product.getOneStarCount()));
+        histogram.put(2, orZero(product.getTwoStarCount()));
+        histogram.put(3, orZero(product.getThreeStarCount()));
+        histogram.put(4, orZero(product.getFourStarCount()));
+        histogram.put(5, orZero(product.getFiveStarCount()));
+        return histogram;
+    }
+
+    private static int orZero(Integer value) {
+        return value != null ? value : 0;
     }
 
     @Named("mapDefaultMediaUrl")
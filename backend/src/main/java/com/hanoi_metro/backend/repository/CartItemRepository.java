@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -35,4 +36,18 @@ public interface CartItemRepository extends JpaRepository<CartItem, String> {
 
     @Query("select ci from CartItem ci where ci.product.id = :productId")
     List<CartItem> findByProductId(@Param("productId") String productId);
+
+    // Cập nhật số lượng/thành tiền của một item thuộc giỏ cartId (0 dòng = item không còn)
+    @Modifying(flushAutomatically = true)
+    @Query("update CartItem ci set ci.quantity = :quantity, ci.finalPrice = :finalPrice "
+            + "where ci.id = :itemId and ci.cart.id = :cartId")
+    int updateQuantity(
+            @Param("cartId") String cartId,
+            @Param("itemId") String itemId,
+            @Param("quantity") int quantity,
+            @Param("finalPrice") double finalPrice);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from CartItem ci where ci.id = :itemId and ci.cart.id = :cartId")
+    int deleteFromCart(@Param("cartId") String cartId, @Param("itemId") String itemId);
 }
@@ -2,7 +2,11 @@ package com.hanoi_metro.backend.repository;
 
 import java.util.Optional;
 
+import jakarta.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -12,4 +16,37 @@ public interface CartRepository extends JpaRepository<Cart, String> {
 
     @Query("select c from Cart c where c.user.id = :userId")
     Optional<Cart> findByUserId(@Param("userId") String userId);
+
+    // Giỏ hàng kèm item và sản phẩm của user trong một câu query (dựng CartAggregate)
+    @Query("select distinct c from Cart c left join fetch c.cartItems ci left join fetch ci.product "
+            + "where c.user.email = :email")
+    Optional<Cart> findByUserEmailWithItems(@Param("email") String email);
+
+    // Như trên nhưng khóa dòng và đọc bản mới nhất (dùng khi ghi theo version thất bại)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select distinct c from Cart c left join fetch c.cartItems ci left join fetch ci.product "
+            + "where c.user.email = :email")
+    Optional<Cart> findByUserEmailWithItemsForUpdate(@Param("email") String email);
+
+    // Ghi tổng tiền/voucher và tăng version chỉ khi version vẫn là expectedVersion (0 dòng = bản cache đã cũ)
+    @Modifying(flushAutomatically = true)
+    @Query(
+            value = "UPDATE cart SET subtotal = :subtotal, applied_voucher_code = :voucherCode, "
+                    + "applied_voucher_id = :voucherId, voucher_discount = :voucherDiscount, "
+                    + "total_amount = :totalAmount, version = version + 1 "
+                    + "WHERE id = :cartId AND version = :expectedVersion",
+            nativeQuery = true)
+    int updateTotalsIfVersion(
+            @Param("cartId") String cartId,
+            @Param("expectedVersion") long expectedVersion,
+            @Param("subtotal") double subtotal,
+            @Param("voucherCode") String voucherCode,
+            @Param("voucherId") String voucherId,
+            @Param("voucherDiscount") double voucherDiscount,
+            @Param("totalAmount") double totalAmount);
+
+    // Giỏ hàng bị sửa qua entity (đặt hàng, xóa sản phẩm): tăng version để bản cache cũ không ghi đè được
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE cart SET version = version + 1 WHERE id = :cartId", nativeQuery = true)
+    int bumpVersion(@Param("cartId") String cartId);
 }
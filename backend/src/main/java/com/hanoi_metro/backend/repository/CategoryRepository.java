@@ -1,5 +1,6 @@
 package com.hanoi_metro.backend.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,4 +33,12 @@ public interface CategoryRepository extends JpaRepository<Category, String> {
 
     @Query("SELECT COUNT(c) FROM Category c WHERE c.parentCategory.id = :categoryId")
     long countSubCategoriesByCategoryId(@Param("categoryId") String categoryId);
+
+    // (id, name, status, parentId) của mọi category, dùng để dựng CategoryTreeCache mà không load entity
+    @Query("SELECT c.id, c.name, c.status, pc.id FROM Category c LEFT JOIN c.parentCategory pc")
+    List<Object[]> findAllTreeNodes();
+
+    // (categoryId, số sản phẩm) của các category
+    @Query("SELECT p.category.id, COUNT(p) FROM Product p WHERE p.category.id IN :categoryIds GROUP BY p.category.id")
+    List<Object[]> countProductsByCategoryIds(@Param("categoryIds") Collection<String> categoryIds);
 }
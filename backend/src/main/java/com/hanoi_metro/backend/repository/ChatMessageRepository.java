@@ -1,8 +1,11 @@
 package com.hanoi_metro.backend.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -63,6 +66,68 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, String
                     + " (m.receiver.id = :customerId AND m.sender.role.name = 'CUSTOMER_SUPPORT')) "
                     + "ORDER BY m.createdAt ASC")
     List<ChatMessage> findCustomerConversationWithAnySupport(@Param("customerId") String customerId);
-}
 
+    // Điều kiện keyset (createdAt DESC, id DESC): cursor là tin cũ nhất của trang trước, null cho trang đầu
+    String BEFORE_CURSOR = "AND (:cursorTime IS NULL OR m.createdAt < :cursorTime "
+            + "OR (m.createdAt = :cursorTime AND m.id < :cursorId)) "
+            + "ORDER BY m.createdAt DESC, m.id DESC";
+
+    // Một trang tin nhắn giữa 2 user, mới nhất trước
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender JOIN FETCH m.receiver WHERE "
+            + "((m.sender.id = :userId1 AND m.receiver.id = :userId2) OR "
+            + "(m.sender.id = :userId2 AND m.receiver.id = :userId1)) "
+            + BEFORE_CURSOR)
+    List<ChatMessage> findConversationPageBefore(
+            @Param("userId1") String userId1,
+            @Param("userId2") String userId2,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") String cursorId,
+            Pageable pageable);
+
+    // Một trang tin nhắn của customer với bất kỳ CSKH nào, mới nhất trước
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender s JOIN FETCH m.receiver r WHERE "
+            + "((s.id = :customerId AND r.role.name = 'CUSTOMER_SUPPORT') OR "
+            + " (r.id = :customerId AND s.role.name = 'CUSTOMER_SUPPORT')) "
+            + BEFORE_CURSOR)
+    List<ChatMessage> findCustomerConversationPageBefore(
+            @Param("customerId") String customerId,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") String cursorId,
+            Pageable pageable);
+
+    // Đánh dấu đã đọc các tin partner gửi cho user
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatMessage m SET m.isRead = true, m.readAt = :readAt "
+            + "WHERE m.sender.id = :partnerId AND m.receiver.id = :userId AND m.isRead = false")
+    int markReadFrom(
+            @Param("partnerId") String partnerId,
+            @Param("userId") String userId,
+            @Param("readAt") LocalDateTime readAt);
 
+    // Đánh dấu đã đọc các tin customer gửi cho bất kỳ CSKH nào (hội thoại dùng chung của đội CSKH)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ChatMessage m SET m.isRead = true, m.readAt = :readAt "
+            + "WHERE m.sender.id = :customerId AND m.isRead = false AND m.receiver.id IN "
+            + "(SELECT u.id FROM User u WHERE u.role.name = 'CUSTOMER_SUPPORT')")
+    int markCustomerMessagesReadBySupport(
+            @Param("customerId") String customerId, @Param("readAt") LocalDateTime readAt);
+
+    // Đọc lần lượt toàn bộ tin nhắn (dựng conversation_summaries lần đầu)
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender s LEFT JOIN FETCH s.role "
+            + "JOIN FETCH m.receiver r LEFT JOIN FETCH r.role ORDER BY m.createdAt, m.id")
+    List<ChatMessage> findAllInOrder(Pageable pageable);
+
+    // Tin nhắn khách hàng - CSKH chứa một trong các mốc trạng thái hỗ trợ (dựng lại support_status cho hộp thư cũ)
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender s JOIN FETCH s.role sr "
+            + "JOIN FETCH m.receiver r JOIN FETCH r.role rr "
+            + "WHERE sr.name IN ('CUSTOMER', 'CUSTOMER_SUPPORT') AND rr.name IN ('CUSTOMER', 'CUSTOMER_SUPPORT') "
+            + "AND sr.name <> rr.name "
+            + "AND (m.message LIKE CONCAT('%', :request, '%') OR m.message LIKE CONCAT('%', :accept, '%') "
+            + "OR m.message LIKE CONCAT('%', :disconnect, '%')) "
+            + "ORDER BY m.createdAt, m.id")
+    List<ChatMessage> findSupportMarkersInOrder(
+            @Param("request") String request,
+            @Param("accept") String accept,
+            @Param("disconnect") String disconnect,
+            Pageable pageable);
+}
@@ -0,0 +1,22 @@
+package com.hanoi_metro.backend.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hanoi_metro.backend.entity.ChatbotSession;
+
+@Repository
+public interface ChatbotSessionRepository extends JpaRepository<ChatbotSession, String> {
+
+    // Xóa các phiên không hoạt động từ trước thời điểm cutoff
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ChatbotSession s WHERE s.updatedAt < :cutoff")
+    int deleteIdleBefore(@Param("cutoff") LocalDateTime cutoff);
+}
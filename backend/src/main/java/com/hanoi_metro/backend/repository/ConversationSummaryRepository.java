@@ -0,0 +1,109 @@
+package com.hanoi_metro.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.ConversationSummary;
+import com.hanoi_metro.backend.enums.SupportChatStatus;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, String> {
+
+    // Ghi tin nhắn mới vào hộp thư của owner; tạo dòng nếu chưa có. Tin đến muộn hơn tin đã ghi
+    // (hai request đồng thời) không ghi đè tin cuối nhưng vẫn cộng unread.
+    @Modifying
+    @Query(
+            value = "INSERT INTO conversation_summaries "
+                    + "(id, owner_id, partner_id, last_message, last_sender_id, last_message_at, unread_count) "
+                    + "VALUES (UUID(), :ownerId, :partnerId, :message, :senderId, :sentAt, :unread) "
+                    + "ON DUPLICATE KEY UPDATE "
+                    + "last_message = IF(VALUES(last_message_at) >= last_message_at, VALUES(last_message), last_message), "
+                    + "last_sender_id = IF(VALUES(last_message_at) >= last_message_at, VALUES(last_sender_id), last_sender_id), "
+                    + "last_message_at = GREATEST(last_message_at, VALUES(last_message_at)), "
+                    + "unread_count = unread_count + VALUES(unread_count)",
+            nativeQuery = true)
+    int recordMessage(
+            @Param("ownerId") String ownerId,
+            @Param("partnerId") String partnerId,
+            @Param("message") String message,
+            @Param("senderId") String senderId,
+            @Param("sentAt") LocalDateTime sentAt,
+            @Param("unread") long unread);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ConversationSummary s SET s.unreadCount = 0 "
+            + "WHERE s.ownerId = :ownerId AND s.partnerId = :partnerId AND s.unreadCount > 0")
+    int markRead(@Param("ownerId") String ownerId, @Param("partnerId") String partnerId);
+
+    // Khách hàng yêu cầu hỗ trợ lại hoặc ngắt kết nối: bỏ CSKH đã tiếp nhận
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.supportStatus = :status, s.acceptedById = null, s.acceptedByName = null "
+            + "WHERE s.ownerId = '" + ConversationSummary.SUPPORT_TEAM + "' AND s.partnerId = :customerId")
+    int markSupportStatus(@Param("customerId") String customerId, @Param("status") SupportChatStatus status);
+
+    // Chỉ CSKH tiếp nhận đầu tiên được ghi; yêu cầu đã ngắt kết nối thì không nhận lại được
+    @Modifying
+    @Query("UPDATE ConversationSummary s SET s.supportStatus = com.hanoi_metro.backend.enums.SupportChatStatus.ACCEPTED, "
+            + "s.acceptedById = :supportId, s.acceptedByName = :supportName "
+            + "WHERE s.ownerId = '" + ConversationSummary.SUPPORT_TEAM + "' AND s.partnerId = :customerId "
+            + "AND (s.supportStatus IS NULL OR s.supportStatus = com.hanoi_metro.backend.enums.SupportChatStatus.PENDING)")
+    int markSupportAccepted(
+            @Param("customerId") String customerId,
+            @Param("supportId") String supportId,
+            @Param("supportName") String supportName);
+
+    boolean existsBySupportStatusIsNotNull();
+
+    // Một dòng hộp thư của owner với partner (trang chi tiết hội thoại)
+    @Query("SELECT s.id AS id, s.partnerId AS partnerId, u.fullName AS partnerName, u.email AS partnerEmail, "
+            + "s.lastMessage AS lastMessage, s.lastSenderId AS lastSenderId, "
+            + "s.lastMessageAt AS lastMessageAt, s.unreadCount AS unreadCount, s.supportStatus AS supportStatus, "
+            + "s.acceptedById AS acceptedById, s.acceptedByName AS acceptedByName "
+            + "FROM ConversationSummary s JOIN User u ON u.id = s.partnerId "
+            + "WHERE s.ownerId = :ownerId AND s.partnerId = :partnerId")
+    Optional<InboxRow> findInboxRow(@Param("ownerId") String ownerId, @Param("partnerId") String partnerId);
+
+    /**
+     * Hộp thư theo keyset (lastMessageAt DESC, id DESC) kèm thông tin đối tác trong cùng một truy vấn.
+     * Cursor là (lastMessageAt, id) của dòng cuối trang trước, null cho trang đầu.
+     */
+    @Query("SELECT s.id AS id, s.partnerId AS partnerId, u.fullName AS partnerName, u.email AS partnerEmail, "
+            + "s.lastMessage AS lastMessage, s.lastSenderId AS lastSenderId, "
+            + "s.lastMessageAt AS lastMessageAt, s.unreadCount AS unreadCount, s.supportStatus AS supportStatus, "
+            + "s.acceptedById AS acceptedById, s.acceptedByName AS acceptedByName "
+            + "FROM ConversationSummary s JOIN User u ON u.id = s.partnerId "
+            + "WHERE s.ownerId = :ownerId "
+            + "AND (:cursorTime IS NULL OR s.lastMessageAt < :cursorTime "
+            + "OR (s.lastMessageAt = :cursorTime AND s.id < :cursorId)) "
+            + "ORDER BY s.lastMessageAt DESC, s.id DESC")
+    List<InboxRow> findInboxAfter(
+            @Param("ownerId") String ownerId,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") String cursorId,
+            Pageable pageable);
+
+    /**
+     * Projection một dòng hộp thư.
+     */
+    interface InboxRow {
+        String getId();
+        String getPartnerId();
+        String getPartnerName();
+        String getPartnerEmail();
+        String getLastMessage();
+        String getLastSenderId();
+        LocalDateTime getLastMessageAt();
+        Long getUnreadCount();
+        SupportChatStatus getSupportStatus();
+        String getAcceptedById();
+        String getAcceptedByName();
+    }
+}
@@ -0,0 +1,75 @@
+package com.hanoi_metro.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hanoi_metro.backend.entity.EmailOutbox;
+import com.hanoi_metro.backend.enums.EmailOutboxStatus;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, String> {
+
+    // Email đến hạn gửi: PENDING tới hạn hoặc SENDING quá hạn lease (dispatcher trước đó bị dừng giữa chừng)
+    @Query("SELECT e.id FROM EmailOutbox e WHERE e.status IN ('PENDING', 'SENDING') AND e.nextAttemptAt <= :now "
+            + "ORDER BY e.nextAttemptAt")
+    List<String> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận email để gửi - chỉ một dispatcher (kể cả ở instance khác) thắng. Nhận lại email SENDING hết lease
+    // (dispatcher trước chết giữa lúc gửi) tính là một lần thử, để email làm dispatcher chết không lặp mãi.
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = 'SENDING', e.nextAttemptAt = :leaseUntil, e.leaseOwner = :owner, "
+            + "e.attempts = e.attempts + CASE WHEN e.status = 'SENDING' THEN 1 ELSE 0 END "
+            + "WHERE e.id = :id AND e.status IN ('PENDING', 'SENDING') AND e.nextAttemptAt <= :now")
+    int claim(
+            @Param("id") String id,
+            @Param("owner") String owner,
+            @Param("now") LocalDateTime now,
+            @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Các cập nhật kết quả chỉ có hiệu lực khi lần nhận này còn giữ lease (chưa bị dispatcher khác nhận lại)
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = 'SENT', e.attempts = e.attempts + 1, e.sentAt = :now, "
+            + "e.lastError = NULL, e.leaseOwner = NULL "
+            + "WHERE e.id = :id AND e.status = 'SENDING' AND e.leaseOwner = :owner")
+    int markSent(@Param("id") String id, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.attempts = e.attempts + 1, "
+            + "e.nextAttemptAt = :nextAttemptAt, e.lastError = :error, e.leaseOwner = NULL "
+            + "WHERE e.id = :id AND e.status = 'SENDING' AND e.leaseOwner = :owner")
+    int markFailed(
+            @Param("id") String id,
+            @Param("owner") String owner,
+            @Param("status") EmailOutboxStatus status,
+            @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+            @Param("error") String error);
+
+    // Trả email đã nhận về hàng đợi mà không tính lần thử (request chưa được gửi đi)
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = 'PENDING', e.nextAttemptAt = :nextAttemptAt, e.leaseOwner = NULL "
+            + "WHERE e.id = :id AND e.status = 'SENDING' AND e.leaseOwner = :owner")
+    int defer(
+            @Param("id") String id,
+            @Param("owner") String owner,
+            @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    long countByStatus(EmailOutboxStatus status);
+
+    // Dọn email đã gửi quá lâu
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM EmailOutbox e WHERE e.status = 'SENT' AND e.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
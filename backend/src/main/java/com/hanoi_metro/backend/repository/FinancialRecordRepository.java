@@ -4,6 +4,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -83,6 +84,18 @@ public interface FinancialRecordRepository extends JpaRepository<FinancialRecord
             @Param("start") LocalDateTime start,
             @Param("end") LocalDateTime end);
 
+    // Tổng mọi bản ghi theo ngày (không lọc trạng thái đơn), dùng để đối chiếu với bảng rollup
+    @Query(
+            "select year(fr.occurredAt), month(fr.occurredAt), day(fr.occurredAt), sum(fr.amount) "
+                    + "from FinancialRecord fr "
+                    + "where fr.recordType = :type "
+                    + "and fr.occurredAt between :start and :end "
+                    + "group by year(fr.occurredAt), month(fr.occurredAt), day(fr.occurredAt)")
+    List<Object[]> revenueByDay(
+            @Param("type") FinancialRecordType type,
+            @Param("start") LocalDateTime start,
+            @Param("end") LocalDateTime end);
+
     // Lấy tất cả bản ghi tài chính trong khoảng thời gian.
     List<FinancialRecord> findByOccurredAtBetween(LocalDateTime start, LocalDateTime end);
 
@@ -94,4 +107,17 @@ public interface FinancialRecordRepository extends JpaRepository<FinancialRecord
 
     // Lấy tất cả FinancialRecord của một product
     List<FinancialRecord> findByProductId(String productId);
+
+    // Bổ sung số lượng và giá vốn cho các bản ghi doanh thu tạo trước khi có hai cột này
+    @Modifying
+    @Query(
+            value = "UPDATE financial_records fr "
+                    + "JOIN (SELECT oi.order_id, oi.product_id, SUM(oi.quantity) AS qty FROM order_items oi "
+                    + "GROUP BY oi.order_id, oi.product_id) q "
+                    + "ON q.order_id = fr.order_id AND q.product_id = fr.product_id "
+                    + "JOIN products p ON p.id = fr.product_id "
+                    + "SET fr.quantity = q.qty, fr.cost_amount = q.qty * GREATEST(COALESCE(p.purchase_price, 0), 0) "
+                    + "WHERE fr.record_type = 'ORDER_PAYMENT' AND fr.quantity IS NULL",
+            nativeQuery = true)
+    int backfillQuantityAndCost();
 }
@@ -1,7 +1,9 @@
 package com.hanoi_metro.backend.repository;
 
 import java.util.Date;
+import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -19,7 +21,21 @@ public interface InvalidatedTokenRepository extends JpaRepository<InvalidatedTok
     @Transactional
     @Query(
             value =
-                    "INSERT INTO invalidated_token (id, expiry_time) VALUES (:id, :expiryTime) ON DUPLICATE KEY UPDATE expiry_time = :expiryTime",
+                    "INSERT INTO invalidated_token (id, expiry_time, revoked_at) VALUES (:id, :expiryTime, :revokedAt) "
+                            + "ON DUPLICATE KEY UPDATE expiry_time = :expiryTime, revoked_at = :revokedAt",
             nativeQuery = true)
-    void saveOrUpdate(@Param("id") String id, @Param("expiryTime") Date expiryTime);
+    void saveOrUpdate(
+            @Param("id") String id, @Param("expiryTime") Date expiryTime, @Param("revokedAt") Date revokedAt);
+
+    // jti của các token bị thu hồi còn hạn, nạp vào Bloom filter của TokenRevocationStore khi khởi động
+    @Query("SELECT t.id FROM InvalidatedToken t WHERE t.expiryTime > :now")
+    List<String> findLiveIds(@Param("now") Date now);
+
+    // jti còn hạn bị thu hồi từ thời điểm since (kể cả trên node khác), để đồng bộ Bloom filter định kỳ
+    @Query("SELECT t.id FROM InvalidatedToken t WHERE t.revokedAt >= :since AND t.expiryTime > :now")
+    List<String> findLiveIdsRevokedSince(@Param("since") Date since, @Param("now") Date now);
+
+    // Một lô jti đã hết hạn để xóa (job dọn bảng)
+    @Query("SELECT t.id FROM InvalidatedToken t WHERE t.expiryTime <= :now")
+    List<String> findExpiredIds(@Param("now") Date now, Pageable pageable);
 }
@@ -1,10 +1,13 @@
 package com.hanoi_metro.backend.repository;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.hanoi_metro.backend.entity.Inventory;
@@ -15,6 +18,22 @@ public interface InventoryRepository extends JpaRepository<Inventory, String> {
     // Tìm inventory theo product
     Optional<Inventory> findByProductId(String productId);
 
+    boolean existsByProductId(String productId);
+
+    // Trừ tồn kho có điều kiện: chỉ thành công khi còn đủ hàng (không đọc-sửa-ghi, không oversell)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.stockQuantity = i.stockQuantity - :quantity, i.lastUpdated = :today "
+            + "WHERE i.product.id = :productId AND i.stockQuantity >= :quantity")
+    int decrementIfAvailable(
+            @Param("productId") String productId, @Param("quantity") int quantity, @Param("today") LocalDate today);
+
+    // Hoàn lại tồn kho (hủy giữ chỗ)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.stockQuantity = i.stockQuantity + :quantity, i.lastUpdated = :today "
+            + "WHERE i.product.id = :productId")
+    int increment(
+            @Param("productId") String productId, @Param("quantity") int quantity, @Param("today") LocalDate today);
+
     // Tìm inventory hết hàng
     @Query("SELECT i FROM Inventory i WHERE i.stockQuantity = 0")
     List<Inventory> findOutOfStockItems();
@@ -0,0 +1,25 @@
+package com.hanoi_metro.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.MomoIpnEvent;
+
+@Repository
+public interface MomoIpnEventRepository extends JpaRepository<MomoIpnEvent, String> {
+
+    // Trả về 0 nếu IPN này đã được ghi nhận (IPN trùng chờ transaction đầu tiên commit rồi nhận 0)
+    @Modifying
+    @Query(
+            value = "INSERT IGNORE INTO momo_ipn_events (id, order_code, request_id, trans_id, result_code, received_at) "
+                    + "VALUES (UUID(), :orderCode, :requestId, :transId, :resultCode, NOW())",
+            nativeQuery = true)
+    int insertIfAbsent(
+            @Param("orderCode") String orderCode,
+            @Param("requestId") String requestId,
+            @Param("transId") Long transId,
+            @Param("resultCode") Integer resultCode);
+}
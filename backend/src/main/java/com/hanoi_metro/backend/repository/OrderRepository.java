@@ -6,10 +6,13 @@ import java.util.List;
 import java.util.Optional;
 
 import com.hanoi_metro.backend.enums.OrderStatus;
+import com.hanoi_metro.backend.enums.PaymentMethod;
+import com.hanoi_metro.backend.enums.PaymentStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -129,6 +132,120 @@ public interface OrderRepository extends JpaRepository<Order, String> {
                         @Param("startDate") LocalDate startDate,
                         @Param("endDate") LocalDate endDate);
 
+        String LIST_ROW_COLUMNS = "o.id AS id, o.code AS code, o.orderDate AS orderDate, "
+                        + "o.orderDateTime AS orderDateTime, o.shippingAddress AS shippingAddress, "
+                        + "o.shippingFee AS shippingFee, o.totalAmount AS totalAmount, o.status AS status, "
+                        + "o.paymentMethod AS paymentMethod, o.paymentStatus AS paymentStatus, o.paid AS paid, "
+                        + "o.paymentReference AS paymentReference, "
+                        + "u.fullName AS userFullName, u.email AS userEmail, "
+                        + "a.recipientName AS recipientName, a.recipientPhoneNumber AS recipientPhone, "
+                        + "a.address AS addressLine, a.wardName AS wardName, a.districtName AS districtName, "
+                        + "a.provinceName AS provinceName, a.country AS country, "
+                        + "o.refundReasonType AS refundReasonType, o.refundDescription AS refundDescription, "
+                        + "o.refundEmail AS refundEmail, o.refundReturnAddress AS refundReturnAddress, "
+                        + "o.refundMethod AS refundMethod, o.refundBank AS refundBank, "
+                        + "o.refundAccountNumber AS refundAccountNumber, o.refundAccountHolder AS refundAccountHolder, "
+                        + "o.refundAmount AS refundAmount, o.refundReturnFee AS refundReturnFee";
+
+        String LIST_ROW_FILTERS = "(:status IS NULL OR o.status = :status) "
+                        + "AND (:paymentMethod IS NULL OR o.paymentMethod = :paymentMethod) ";
+
+        /**
+         * Trang đơn hàng cho staff/admin theo keyset (orderDateTime DESC, id DESC): chỉ đọc các cột cần cho
+         * danh sách, không nạp items/product/media. Cursor là (orderDateTime, id) của dòng cuối trang trước,
+         * null cho trang đầu. Dùng index (order_date_time, id) và (status|payment_method, order_date_time, id).
+         */
+        @Query("SELECT " + LIST_ROW_COLUMNS + " FROM Order o LEFT JOIN o.user u LEFT JOIN o.address a "
+                        + "WHERE o.orderDateTime IS NOT NULL AND " + LIST_ROW_FILTERS
+                        + "AND (:from IS NULL OR o.orderDateTime >= :from) "
+                        + "AND (:to IS NULL OR o.orderDateTime < :to) "
+                        + "AND (:cursorTime IS NULL OR o.orderDateTime < :cursorTime "
+                        + "OR (o.orderDateTime = :cursorTime AND o.id < :cursorId)) "
+                        + "ORDER BY o.orderDateTime DESC, o.id DESC")
+        List<OrderListRow> findListRowsAfter(
+                        @Param("status") OrderStatus status,
+                        @Param("paymentMethod") PaymentMethod paymentMethod,
+                        @Param("from") LocalDateTime from,
+                        @Param("to") LocalDateTime to,
+                        @Param("cursorTime") LocalDateTime cursorTime,
+                        @Param("cursorId") String cursorId,
+                        Pageable pageable);
+
+        /**
+         * Đơn cũ chưa có orderDateTime (chỉ có orderDate): trả về sau tất cả đơn có orderDateTime, theo id DESC.
+         */
+        @Query("SELECT " + LIST_ROW_COLUMNS + " FROM Order o LEFT JOIN o.user u LEFT JOIN o.address a "
+                        + "WHERE o.orderDateTime IS NULL AND " + LIST_ROW_FILTERS
+                        + "AND (:fromDate IS NULL OR o.orderDate >= :fromDate) "
+                        + "AND (:toDate IS NULL OR o.orderDate <= :toDate) "
+                        + "AND (:cursorId IS NULL OR o.id < :cursorId) "
+                        + "ORDER BY o.id DESC")
+        List<OrderListRow> findLegacyListRowsAfter(
+                        @Param("status") OrderStatus status,
+                        @Param("paymentMethod") PaymentMethod paymentMethod,
+                        @Param("fromDate") LocalDate fromDate,
+                        @Param("toDate") LocalDate toDate,
+                        @Param("cursorId") String cursorId,
+                        Pageable pageable);
+
+        // Số lần dùng voucher theo (voucherId, userId), không tính đơn hủy/hoàn tiền - dùng để dựng voucher_usages
+        @Query("SELECT o.appliedVoucherId, o.user.id, COUNT(o) FROM Order o "
+                        + "WHERE o.appliedVoucherId IS NOT NULL AND o.user IS NOT NULL "
+                        + "AND o.status NOT IN ('CANCELLED', 'REFUNDED') "
+                        + "GROUP BY o.appliedVoucherId, o.user.id")
+        List<Object[]> countActiveVoucherUsages();
+
+        // Đánh dấu đã thanh toán MoMo nếu chưa: IPN và redirect chạy đồng thời chỉ một bên nhận được 1
+        @Modifying(flushAutomatically = true)
+        @Query("UPDATE Order o SET o.paid = true, o.paymentStatus = 'PAID', "
+                        + "o.paymentReference = COALESCE(:paymentReference, o.paymentReference) "
+                        + "WHERE o.id = :orderId AND (o.paid IS NULL OR o.paid = false)")
+        int markPaidIfUnpaid(@Param("orderId") String orderId, @Param("paymentReference") String paymentReference);
+
+        // Đánh dấu thanh toán thất bại, không bao giờ ghi đè đơn đã thanh toán
+        @Modifying(flushAutomatically = true)
+        @Query("UPDATE Order o SET o.paymentStatus = 'FAILED' "
+                        + "WHERE o.id = :orderId AND (o.paid IS NULL OR o.paid = false) "
+                        + "AND (o.paymentStatus IS NULL OR o.paymentStatus <> 'FAILED')")
+        int markPaymentFailedIfUnpaid(@Param("orderId") String orderId);
+
         // Kiểm tra xem địa chỉ có đang được sử dụng bởi đơn hàng nào không
         boolean existsByAddressAddressId(String addressId);
+
+        /**
+         * Projection một dòng trong danh sách đơn hàng (không có items).
+         */
+        interface OrderListRow {
+                String getId();
+                String getCode();
+                LocalDate getOrderDate();
+                LocalDateTime getOrderDateTime();
+                String getShippingAddress();
+                Double getShippingFee();
+                Double getTotalAmount();
+                OrderStatus getStatus();
+                PaymentMethod getPaymentMethod();
+                PaymentStatus getPaymentStatus();
+                Boolean getPaid();
+                String getPaymentReference();
+                String getUserFullName();
+                String getUserEmail();
+                String getRecipientName();
+                String getRecipientPhone();
+                String getAddressLine();
+                String getWardName();
+                String getDistrictName();
+                String getProvinceName();
+                String getCountry();
+                String getRefundReasonType();
+                String getRefundDescription();
+                String getRefundEmail();
+                String getRefundReturnAddress();
+                String getRefundMethod();
+                String getRefundBank();
+                String getRefundAccountNumber();
+                String getRefundAccountHolder();
+                Double getRefundAmount();
+                Double getRefundReturnFee();
+        }
 }
@@ -1,8 +1,10 @@
 package com.hanoi_metro.backend.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -30,10 +32,64 @@ public interface ProductRepository extends JpaRepository<Product, String> {
            "WHERE p.status = :status")
     List<Product> findByStatusWithCategoryAndSubmittedBy(@Param("status") ProductStatus status);
     
+    // Products kèm category và promotion trực tiếp (dùng để dựng EffectivePriceIndex)
+    @Query("SELECT p FROM Product p " +
+           "LEFT JOIN FETCH p.category " +
+           "LEFT JOIN FETCH p.promotionApply " +
+           "WHERE p.status = :status")
+    List<Product> findByStatusWithCategoryAndPromotion(@Param("status") ProductStatus status);
+
+    // Load theo danh sách id kèm category (kết quả tìm kiếm từ ProductSearchIndex)
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.id IN :ids")
+    List<Product> findAllByIdWithCategory(@Param("ids") java.util.Collection<String> ids);
+
     // Find products by category ID with category loaded (for promotion calculation)
     @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.category.id = :categoryId")
     List<Product> findByCategoryIdWithCategory(@Param("categoryId") String categoryId);
 
+    // Sản phẩm thuộc một tập category (cây con lấy từ CategoryTreeCache) với category loaded
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.category.id IN :categoryIds AND p.status = :status")
+    List<Product> findByCategoryIdInWithCategory(
+            @Param("categoryIds") Collection<String> categoryIds, @Param("status") ProductStatus status);
+
+    // Sản phẩm còn lưu biến thể màu trong JSON (dùng cho job migrate sang product_variants)
+    @Query("SELECT p FROM Product p WHERE p.manufacturingLocation IS NOT NULL AND p.manufacturingLocation <> ''")
+    List<Product> findWithManufacturingLocation();
+
+    // Tăng số lượng đã bán bằng một câu UPDATE (không ghi đè các cột khác của product)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.quantitySold = COALESCE(p.quantitySold, 0) + :quantity WHERE p.id = :productId")
+    int addQuantitySold(@Param("productId") String productId, @Param("quantity") int quantity);
+
+    // Cộng (sign = 1) hoặc trừ (sign = -1) một đánh giá vào tổng hợp đánh giá của sản phẩm
+    @Modifying(flushAutomatically = true)
+    @Query(
+            value = "UPDATE products SET review_count = review_count + :sign, "
+                    + "rating_sum = rating_sum + :sign * :rating, "
+                    + "one_star_count = one_star_count + IF(:rating = 1, :sign, 0), "
+                    + "two_star_count = two_star_count + IF(:rating = 2, :sign, 0), "
+                    + "three_star_count = three_star_count + IF(:rating = 3, :sign, 0), "
+                    + "four_star_count = four_star_count + IF(:rating = 4, :sign, 0), "
+                    + "five_star_count = five_star_count + IF(:rating = 5, :sign, 0) "
+                    + "WHERE id = :productId",
+            nativeQuery = true)
+    int addRating(@Param("productId") String productId, @Param("rating") int rating, @Param("sign") int sign);
+
+    // Tính lại tổng hợp đánh giá của mọi sản phẩm từ bảng reviews
+    @Modifying(flushAutomatically = true)
+    @Query(
+            value = "UPDATE products p LEFT JOIN ("
+                    + "  SELECT product_id, COUNT(*) AS cnt, SUM(rating) AS total, "
+                    + "    SUM(rating = 1) AS r1, SUM(rating = 2) AS r2, SUM(rating = 3) AS r3, "
+                    + "    SUM(rating = 4) AS r4, SUM(rating = 5) AS r5 "
+                    + "  FROM reviews GROUP BY product_id) r ON r.product_id = p.id "
+                    + "SET p.review_count = COALESCE(r.cnt, 0), p.rating_sum = COALESCE(r.total, 0), "
+                    + "p.one_star_count = COALESCE(r.r1, 0), p.two_star_count = COALESCE(r.r2, 0), "
+                    + "p.three_star_count = COALESCE(r.r3, 0), p.four_star_count = COALESCE(r.r4, 0), "
+                    + "p.five_star_count = COALESCE(r.r5, 0)",
+            nativeQuery = true)
+    int recomputeRatingAggregates();
+
     // Tìm products theo name (case insensitive)
     List<Product> findByNameContainingIgnoreCase(String name);
 
@@ -0,0 +1,55 @@
+package com.hanoi_metro.backend.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.ProductVariant;
+
+@Repository
+public interface ProductVariantRepository extends JpaRepository<ProductVariant, String> {
+
+    // Tra cứu theo index (product_id, code) - code đã được chuẩn hóa lowercase
+    @Query("SELECT v FROM ProductVariant v WHERE v.product.id = :productId AND v.code = :code")
+    Optional<ProductVariant> findByProductIdAndCode(@Param("productId") String productId, @Param("code") String code);
+
+    @Query("SELECT v FROM ProductVariant v WHERE v.product.id = :productId")
+    List<ProductVariant> findByProductId(@Param("productId") String productId);
+
+    @Query("SELECT COUNT(v) > 0 FROM ProductVariant v WHERE v.product.id = :productId")
+    boolean existsByProductId(@Param("productId") String productId);
+
+    // Trừ tồn kho biến thể có điều kiện: chỉ thành công khi còn đủ hàng
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariant v SET v.stockQuantity = v.stockQuantity - :quantity, v.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE v.product.id = :productId AND v.code = :code AND v.stockQuantity >= :quantity")
+    int decrementIfAvailable(
+            @Param("productId") String productId, @Param("code") String code, @Param("quantity") int quantity);
+
+    // Hoàn lại tồn kho biến thể (hủy giữ chỗ)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariant v SET v.stockQuantity = v.stockQuantity + :quantity, v.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE v.product.id = :productId AND v.code = :code")
+    int increment(@Param("productId") String productId, @Param("code") String code, @Param("quantity") int quantity);
+
+    // Nhập/xuất kho thủ công theo số lượng thay đổi, không để tồn kho âm
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariant v SET v.stockQuantity = v.stockQuantity + :delta, v.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE v.product.id = :productId AND v.code = :code AND v.stockQuantity + :delta >= 0")
+    int adjustStock(@Param("productId") String productId, @Param("code") String code, @Param("delta") int delta);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariant v SET v.quantitySold = v.quantitySold + :quantity "
+            + "WHERE v.product.id = :productId AND v.code = :code")
+    int addQuantitySold(
+            @Param("productId") String productId, @Param("code") String code, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("DELETE FROM ProductVariant v WHERE v.product.id = :productId")
+    void deleteByProductId(@Param("productId") String productId);
+}
@@ -41,6 +41,15 @@ public interface PromotionRepository extends JpaRepository<Promotion, String> {
             + "AND (p.expiryDate IS NULL OR p.expiryDate >= :currentDate)")
     List<Promotion> findActivePromotions(@Param("currentDate") LocalDate currentDate);
 
+    // Promotion đang hiệu lực hôm nay kèm phạm vi áp dụng (dùng để dựng EffectivePriceIndex)
+    @Query("SELECT DISTINCT p FROM Promotion p "
+            + "LEFT JOIN FETCH p.productApply "
+            + "LEFT JOIN FETCH p.categoryApply "
+            + "WHERE p.status = 'APPROVED' AND p.isActive = true "
+            + "AND (p.startDate IS NULL OR p.startDate <= :today) "
+            + "AND (p.expiryDate IS NULL OR p.expiryDate >= :today)")
+    List<Promotion> findEffectiveWithTargets(@Param("today") LocalDate today);
+
     // Expiring promotions
     @Query("SELECT p FROM Promotion p WHERE p.status = 'APPROVED' AND p.expiryDate BETWEEN :startDate AND :endDate")
     List<Promotion> findPromotionsExpiringSoon(
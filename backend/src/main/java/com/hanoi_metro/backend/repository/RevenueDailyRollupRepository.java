@@ -0,0 +1,102 @@
+package com.hanoi_metro.backend.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.RevenueDailyRollup;
+
+@Repository
+public interface RevenueDailyRollupRepository extends JpaRepository<RevenueDailyRollup, String> {
+
+    // Điều kiện backfill (financial_records fr LEFT JOIN orders ord): bỏ doanh thu còn sót của đơn đã hủy/hoàn tiền,
+    // giống luồng ghi trực tiếp vốn xóa các bản ghi này lúc hủy/hoàn. Đơn đang trả hàng hoặc bị từ chối trả hàng vẫn
+    // được tính, vì luồng trực tiếp chỉ trừ doanh thu khi đơn chuyển sang REFUNDED.
+    String COUNTED_RECORD = "(fr.record_type <> 'ORDER_PAYMENT' OR ord.status IS NULL "
+            + "OR ord.status NOT IN ('CANCELLED', 'REFUNDED'))";
+
+    // Cộng delta vào ô (ngày, sản phẩm, phương thức); tạo ô nếu chưa có. Delta âm khi gỡ bản ghi tài chính.
+    @Modifying
+    @Query(
+            value = "INSERT INTO revenue_daily_rollups "
+                    + "(id, bucket_date, product_id, payment_method, revenue, cost_of_goods, units, refunds, order_count) "
+                    + "VALUES (UUID(), :bucketDate, :productId, :paymentMethod, :revenue, :cost, :units, :refunds, :orders) "
+                    + "ON DUPLICATE KEY UPDATE revenue = revenue + VALUES(revenue), "
+                    + "cost_of_goods = cost_of_goods + VALUES(cost_of_goods), units = units + VALUES(units), "
+                    + "refunds = refunds + VALUES(refunds), order_count = order_count + VALUES(order_count)",
+            nativeQuery = true)
+    int add(
+            @Param("bucketDate") LocalDate bucketDate,
+            @Param("productId") String productId,
+            @Param("paymentMethod") String paymentMethod,
+            @Param("revenue") double revenue,
+            @Param("cost") double cost,
+            @Param("units") long units,
+            @Param("refunds") double refunds,
+            @Param("orders") long orders);
+
+    // [doanh thu, giá vốn, hoàn tiền/bồi thường, số đơn]
+    @Query("select coalesce(sum(r.revenue), 0), coalesce(sum(r.costOfGoods), 0), "
+            + "coalesce(sum(r.refunds), 0), coalesce(sum(r.orderCount), 0) "
+            + "from RevenueDailyRollup r where r.bucketDate between :start and :end")
+    List<Object[]> totals(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    @Query("select r.bucketDate, sum(r.revenue) from RevenueDailyRollup r "
+            + "where r.bucketDate between :start and :end "
+            + "group by r.bucketDate order by r.bucketDate")
+    List<Object[]> revenueByDate(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    @Query("select r.paymentMethod, sum(r.revenue) from RevenueDailyRollup r "
+            + "where r.bucketDate between :start and :end and r.paymentMethod <> '' "
+            + "group by r.paymentMethod")
+    List<Object[]> revenueByPayment(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    // [productId, số lượng, doanh thu] sắp xếp theo doanh thu giảm dần
+    @Query("select r.productId, sum(r.units), sum(r.revenue) from RevenueDailyRollup r "
+            + "where r.bucketDate between :start and :end and r.productId <> '' "
+            + "group by r.productId having sum(r.revenue) > 0 "
+            + "order by sum(r.revenue) desc")
+    List<Object[]> topProducts(@Param("start") LocalDate start, @Param("end") LocalDate end, Pageable pageable);
+
+    // Dựng lại từ financial_records (chỉ dùng khi bảng rollup còn trống)
+    @Modifying
+    @Query(
+            value = "INSERT INTO revenue_daily_rollups "
+                    + "(id, bucket_date, product_id, payment_method, revenue, cost_of_goods, units, refunds, order_count) "
+                    + "SELECT UUID(), t.bucket_date, t.product_id, t.payment_method, "
+                    + "t.revenue, t.cost_of_goods, t.units, t.refunds, 0 FROM ("
+                    + "SELECT DATE(fr.occurred_at) AS bucket_date, "
+                    + "CASE WHEN fr.record_type = 'ORDER_PAYMENT' THEN COALESCE(fr.product_id, '') ELSE '' END AS product_id, "
+                    + "COALESCE(fr.payment_method, '') AS payment_method, "
+                    + "SUM(CASE WHEN fr.record_type = 'ORDER_PAYMENT' THEN fr.amount ELSE 0 END) AS revenue, "
+                    + "SUM(CASE WHEN fr.record_type = 'ORDER_PAYMENT' THEN COALESCE(fr.cost_amount, 0) ELSE 0 END) AS cost_of_goods, "
+                    + "SUM(CASE WHEN fr.record_type = 'ORDER_PAYMENT' THEN COALESCE(fr.quantity, 0) ELSE 0 END) AS units, "
+                    + "SUM(CASE WHEN fr.record_type <> 'ORDER_PAYMENT' THEN ABS(fr.amount) ELSE 0 END) AS refunds "
+                    + "FROM financial_records fr LEFT JOIN orders ord ON ord.id = fr.order_id "
+                    + "WHERE " + COUNTED_RECORD + " GROUP BY 1, 2, 3) t",
+            nativeQuery = true)
+    int backfillLines();
+
+    // Số đơn được tính ở ngày của dòng doanh thu sớm nhất của đơn, trên dòng cấp đơn hàng (product_id = '')
+    @Modifying
+    @Query(
+            value = "INSERT INTO revenue_daily_rollups "
+                    + "(id, bucket_date, product_id, payment_method, revenue, cost_of_goods, units, refunds, order_count) "
+                    + "SELECT UUID(), t.bucket_date, '', t.payment_method, 0, 0, 0, 0, t.orders FROM ("
+                    + "SELECT DATE(o.first_at) AS bucket_date, o.payment_method, COUNT(*) AS orders FROM ("
+                    + "SELECT fr.order_id, MIN(fr.occurred_at) AS first_at, "
+                    + "COALESCE(MAX(fr.payment_method), '') AS payment_method "
+                    + "FROM financial_records fr LEFT JOIN orders ord ON ord.id = fr.order_id "
+                    + "WHERE fr.record_type = 'ORDER_PAYMENT' AND fr.order_id IS NOT NULL "
+                    + "AND " + COUNTED_RECORD + " "
+                    + "GROUP BY fr.order_id) o GROUP BY 1, 2) t "
+                    + "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count)",
+            nativeQuery = true)
+    int backfillOrderCounts();
+}
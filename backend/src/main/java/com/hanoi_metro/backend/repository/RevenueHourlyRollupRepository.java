@@ -0,0 +1,69 @@
+package com.hanoi_metro.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.RevenueHourlyRollup;
+
+@Repository
+public interface RevenueHourlyRollupRepository extends JpaRepository<RevenueHourlyRollup, String> {
+
+    // Cộng delta vào ô (giờ, phương thức); tạo ô nếu chưa có
+    @Modifying
+    @Query(
+            value = "INSERT INTO revenue_hourly_rollups "
+                    + "(id, bucket_hour, payment_method, revenue, refunds, order_count) "
+                    + "VALUES (UUID(), :bucketHour, :paymentMethod, :revenue, :refunds, :orders) "
+                    + "ON DUPLICATE KEY UPDATE revenue = revenue + VALUES(revenue), "
+                    + "refunds = refunds + VALUES(refunds), order_count = order_count + VALUES(order_count)",
+            nativeQuery = true)
+    int add(
+            @Param("bucketHour") LocalDateTime bucketHour,
+            @Param("paymentMethod") String paymentMethod,
+            @Param("revenue") double revenue,
+            @Param("refunds") double refunds,
+            @Param("orders") long orders);
+
+    @Query("select r.bucketHour, sum(r.revenue) from RevenueHourlyRollup r "
+            + "where r.bucketHour between :start and :end "
+            + "group by r.bucketHour order by r.bucketHour")
+    List<Object[]> revenueByHour(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // Dựng lại từ financial_records (chỉ dùng khi bảng rollup còn trống)
+    @Modifying
+    @Query(
+            value = "INSERT INTO revenue_hourly_rollups "
+                    + "(id, bucket_hour, payment_method, revenue, refunds, order_count) "
+                    + "SELECT UUID(), t.bucket_hour, t.payment_method, t.revenue, t.refunds, 0 FROM ("
+                    + "SELECT TIMESTAMP(DATE(fr.occurred_at)) + INTERVAL HOUR(fr.occurred_at) HOUR AS bucket_hour, "
+                    + "COALESCE(fr.payment_method, '') AS payment_method, "
+                    + "SUM(CASE WHEN fr.record_type = 'ORDER_PAYMENT' THEN fr.amount ELSE 0 END) AS revenue, "
+                    + "SUM(CASE WHEN fr.record_type <> 'ORDER_PAYMENT' THEN ABS(fr.amount) ELSE 0 END) AS refunds "
+                    + "FROM financial_records fr LEFT JOIN orders ord ON ord.id = fr.order_id "
+                    + "WHERE " + RevenueDailyRollupRepository.COUNTED_RECORD + " GROUP BY 1, 2) t",
+            nativeQuery = true)
+    int backfillLines();
+
+    @Modifying
+    @Query(
+            value = "INSERT INTO revenue_hourly_rollups "
+                    + "(id, bucket_hour, payment_method, revenue, refunds, order_count) "
+                    + "SELECT UUID(), t.bucket_hour, t.payment_method, 0, 0, t.orders FROM ("
+                    + "SELECT TIMESTAMP(DATE(o.first_at)) + INTERVAL HOUR(o.first_at) HOUR AS bucket_hour, "
+                    + "o.payment_method, COUNT(*) AS orders FROM ("
+                    + "SELECT fr.order_id, MIN(fr.occurred_at) AS first_at, "
+                    + "COALESCE(MAX(fr.payment_method), '') AS payment_method "
+                    + "FROM financial_records fr LEFT JOIN orders ord ON ord.id = fr.order_id "
+                    + "WHERE fr.record_type = 'ORDER_PAYMENT' AND fr.order_id IS NOT NULL "
+                    + "AND " + RevenueDailyRollupRepository.COUNTED_RECORD + " "
+                    + "GROUP BY fr.order_id) o GROUP BY 1, 2) t "
+                    + "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count)",
+            nativeQuery = true)
+    int backfillOrderCounts();
+}
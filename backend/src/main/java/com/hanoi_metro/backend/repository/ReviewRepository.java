@@ -1,5 +1,6 @@
 package com.hanoi_metro.backend.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +20,18 @@ public interface ReviewRepository extends JpaRepository<Review, String> {
 
     List<Review> findByProductId(String productId);
 
+    // Một trang review của sản phẩm, mới nhất trước (keyset theo createdAt, id)
+    @Query("SELECT r FROM Review r JOIN FETCH r.user JOIN FETCH r.product LEFT JOIN FETCH r.orderItem "
+            + "WHERE r.product.id = :productId "
+            + "AND (:cursorTime IS NULL OR r.createdAt < :cursorTime "
+            + "OR (r.createdAt = :cursorTime AND r.id < :cursorId)) "
+            + "ORDER BY r.createdAt DESC, r.id DESC")
+    List<Review> findProductPageBefore(
+            @Param("productId") String productId,
+            @Param("cursorTime") LocalDateTime cursorTime,
+            @Param("cursorId") String cursorId,
+            Pageable pageable);
+
     List<Review> findByUserId(String userId);
 
     boolean existsByUserAndProduct(User user, Product product);
@@ -0,0 +1,31 @@
+package com.hanoi_metro.backend.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.StockReservation;
+import com.hanoi_metro.backend.enums.ReservationStatus;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, String> {
+
+    List<StockReservation> findByOrderIdAndStatus(String orderId, ReservationStatus status);
+
+    boolean existsByOrderId(String orderId);
+
+    // Các đơn có giữ chỗ đã quá hạn (mỗi đơn một dòng)
+    @Query("SELECT DISTINCT r.orderId FROM StockReservation r WHERE r.status = 'HELD' AND r.expiresAt < :now")
+    List<String> findExpiredHeldOrderIds(@Param("now") LocalDateTime now);
+
+    // Chuyển trạng thái có điều kiện - chỉ một luồng (IPN, polling, job hết hạn) thắng
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE StockReservation r SET r.status = :to WHERE r.id = :id AND r.status = :from")
+    int transition(
+            @Param("id") String id, @Param("from") ReservationStatus from, @Param("to") ReservationStatus to);
+}
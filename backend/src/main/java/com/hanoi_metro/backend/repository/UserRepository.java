@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.hanoi_metro.backend.entity.User;
@@ -21,4 +23,8 @@ public interface UserRepository extends JpaRepository<User, String> {
     
     // Find first user by email ordered by createAt DESC (newest first)
     Optional<User> findFirstByEmailOrderByCreateAtDesc(String email);
+
+    // Id của mọi user thuộc một role
+    @Query("SELECT u.id FROM User u WHERE u.role.name = :roleName")
+    List<String> findIdsByRoleName(@Param("roleName") String roleName);
 }
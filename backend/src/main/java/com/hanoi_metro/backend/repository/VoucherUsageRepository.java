@@ -0,0 +1,38 @@
+package com.hanoi_metro.backend.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.hanoi_metro.backend.entity.VoucherUsage;
+
+@Repository
+public interface VoucherUsageRepository extends JpaRepository<VoucherUsage, String> {
+
+    Optional<VoucherUsage> findByVoucherIdAndUserId(String voucherId, String userId);
+
+    // Tạo dòng đếm nếu chưa có; hai request đồng thời chỉ một dòng được tạo nhờ unique (voucher_id, user_id)
+    @Modifying
+    @Query(
+            value = "INSERT IGNORE INTO voucher_usages (id, voucher_id, user_id, used_count, updated_at) "
+                    + "VALUES (UUID(), :voucherId, :userId, 0, NOW())",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("voucherId") String voucherId, @Param("userId") String userId);
+
+    // Tăng có điều kiện: trả về 0 nếu đã đạt giới hạn (limit null = không giới hạn)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE VoucherUsage u SET u.usedCount = u.usedCount + 1, u.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE u.voucherId = :voucherId AND u.userId = :userId "
+            + "AND (:limit IS NULL OR u.usedCount < :limit)")
+    int incrementIfBelow(
+            @Param("voucherId") String voucherId, @Param("userId") String userId, @Param("limit") Integer limit);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE VoucherUsage u SET u.usedCount = u.usedCount - 1, u.updatedAt = CURRENT_TIMESTAMP "
+            + "WHERE u.voucherId = :voucherId AND u.userId = :userId AND u.usedCount > 0")
+    int decrement(@Param("voucherId") String voucherId, @Param("userId") String userId);
+}
@@ -26,7 +26,6 @@ import com.hanoi_metro.backend.entity.Role;
 import com.hanoi_metro.backend.entity.User;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
-import com.hanoi_metro.backend.repository.InvalidatedTokenRepository;
 import com.hanoi_metro.backend.repository.RoleRepository;
 import com.hanoi_metro.backend.repository.UserRepository;
 import com.nimbusds.jose.*;
@@ -47,7 +46,8 @@ import lombok.extern.slf4j.Slf4j;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class AuthenticationService {
     UserRepository userRepository;
-    InvalidatedTokenRepository invalidatedRepository;
+    TokenRevocationStore tokenRevocationStore;
+    UserStatusCache userStatusCache;
     RoleRepository roleRepository;
 
     @NonFinal
@@ -128,7 +128,7 @@ public class AuthenticationService {
             String jit = signToken.getJWTClaimsSet().getJWTID();
             Date expiryTime = signToken.getJWTClaimsSet().getExpirationTime();
 
-            invalidatedRepository.saveOrUpdate(jit, expiryTime);
+            tokenRevocationStore.revoke(jit, expiryTime);
         } catch (AppException ex) {
             log.info("Token already expired or invalid");
         }
@@ -145,7 +145,7 @@ public class AuthenticationService {
         var expiryTime = signJWT.getJWTClaimsSet().getExpirationTime();
 
         // invalidate old refresh token
-        invalidatedRepository.saveOrUpdate(jit, expiryTime);
+        tokenRevocationStore.revoke(jit, expiryTime);
 
         var email = signJWT.getJWTClaimsSet().getSubject();
         var user = findUserByEmailSafe(email).orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
@@ -230,7 +230,7 @@ public class AuthenticationService {
 
         // invalidated token
         String jti = signedJWT.getJWTClaimsSet().getJWTID();
-        if (invalidatedRepository.existsById(jti)) {
+        if (tokenRevocationStore.isRevoked(jti)) {
             throw new AppException(ErrorCode.UNAUTHENTICATED);
         }
 
@@ -244,12 +244,13 @@ public class AuthenticationService {
             if (!"access".equals(type)) throw new AppException(ErrorCode.UNAUTHENTICATED);
         }
 
-        // check user active
+        // check user active (cache, UserService xóa khi khóa/mở tài khoản)
         String email = signedJWT.getJWTClaimsSet().getSubject();
-        User user = findUserByEmailSafe(email)
-                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
-
-        if (!user.isActive()) {
+        UserStatusCache.Status status = userStatusCache.status(email);
+        if (status == UserStatusCache.Status.NOT_FOUND) {
+            throw new AppException(ErrorCode.USER_NOT_EXISTED);
+        }
+        if (status == UserStatusCache.Status.LOCKED) {
             throw new AppException(ErrorCode.ACCOUNT_LOCKED);
         }
 
@@ -37,6 +37,7 @@ public class BannerService {
     UserRepository userRepository;
     ProductRepository productRepository;
     BannerMapper bannerMapper;
+    CatalogHttpCache catalogHttpCache;
 
     @Transactional
     @PreAuthorize("hasRole('STAFF')")
@@ -74,6 +75,7 @@ public class BannerService {
         }
 
         Banner savedBanner = bannerRepository.save(banner);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.BANNERS);
         log.info("Banner created with ID: {} by user: {}", savedBanner.getId(), userEmail);
 
         return bannerMapper.toResponse(savedBanner);
@@ -180,6 +182,7 @@ public class BannerService {
         }
 
         Banner savedBanner = bannerRepository.save(banner);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.BANNERS);
         log.info(
                 "Banner updated: {} by user: {}",
                 bannerId,
@@ -195,6 +198,7 @@ public class BannerService {
                 bannerRepository.findById(bannerId).orElseThrow(() -> new AppException(ErrorCode.BANNER_NOT_EXISTED));
 
         bannerRepository.delete(banner);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.BANNERS);
         log.info(
                 "Banner deleted: {} by user: {}",
                 bannerId,
@@ -211,6 +215,7 @@ public class BannerService {
         banner.setUpdatedAt(LocalDateTime.now());
 
         Banner savedBanner = bannerRepository.save(banner);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.BANNERS);
         log.info("Banner order updated: {} to order: {}", bannerId, newOrderIndex);
 
         return bannerMapper.toResponse(savedBanner);
@@ -1,12 +1,15 @@
 package com.hanoi_metro.backend.service;
 
+import java.net.http.HttpClient;
 import java.text.NumberFormat;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -24,19 +27,44 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class BrevoEmailService {
 
-    RestTemplate restTemplate = new RestTemplate();
+    RestTemplate restTemplate;
+    EmailOutboxService emailOutboxService;
     String apiKey;
     String senderEmail;
 
     public BrevoEmailService(
-            @Value("${brevo.api.key}") String apiKey, @Value("${brevo.sender.email}") String senderEmail) {
+            @Value("${brevo.api.key}") String apiKey,
+            @Value("${brevo.sender.email}") String senderEmail,
+            EmailOutboxService emailOutboxService,
+            OutboundHttpRegistry outboundHttpRegistry) {
         this.apiKey = apiKey;
         this.senderEmail = senderEmail;
+        this.emailOutboxService = emailOutboxService;
+        // Một HttpClient dùng chung (giữ kết nối keep-alive tới Brevo), có timeout và bulkhead riêng của Brevo
+        OutboundHttpRegistry.Destination brevo = outboundHttpRegistry.destination("brevo");
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(brevo.config().getConnectTimeoutMs()))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(brevo.config().getReadTimeoutMs()));
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.restTemplate.getInterceptors().add(brevo.interceptor());
     }
 
     private static final String BREVO_API_URL =
             "https://api.brevo.com/v3/smtp/email"; // correct Brevo transactional email endpoint
 
+    /**
+     * Gửi một email đã lưu trong outbox (payload là JSON request body của Brevo). Lỗi HTTP được ném ra
+     * nguyên vẹn để EmailOutboxDispatcher quyết định retry hay dead-letter.
+     */
+    public void deliver(String payloadJson) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("api-key", apiKey);
+        restTemplate.postForEntity(BREVO_API_URL, new HttpEntity<>(payloadJson, headers), String.class);
+    }
+
     public void sendOtpEmail(String toEmail, String otpCode) {
         try {
             log.info("Sending OTP email via Brevo API to: {}", toEmail);
@@ -136,73 +164,49 @@ public class BrevoEmailService {
     }
 
     public void sendAccountLockedEmail(String toEmail, String userName, String roleName) {
-        try {
-            log.info("Sending account locked notification email via Brevo API to: {}", toEmail);
-
-            // Prepare headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("api-key", apiKey);
-
-            // Prepare request body
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty Admin"));
-            requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", userName != null ? userName : "User")});
-            requestBody.put("subject", "Thông báo: Tài khoản của bạn đã bị khóa - NovaBeauty");
-
-            String roleDisplayName = "Khách hàng";
-            if (roleName != null) {
-                switch (roleName.toUpperCase()) {
-                    case "STAFF":
-                        roleDisplayName = "Nhân viên";
-                        break;
-                    case "CUSTOMER_SUPPORT":
-                        roleDisplayName = "Nhân viên chăm sóc khách hàng";
-                        break;
-                    case "CUSTOMER":
-                    default:
-                        roleDisplayName = "Khách hàng";
-                        break;
-                }
-            }
-
-            String emailContent = String.format(
-                    "Xin chào %s,\n\n"
-                            + "Chúng tôi xin thông báo rằng tài khoản %s của bạn tại NovaBeauty đã bị khóa.\n\n"
-                            + "Thông tin tài khoản:\n"
-                            + "- Email: %s\n"
-                            + "- Vai trò: %s\n\n"
-                            + "Khi tài khoản bị khóa, bạn sẽ không thể đăng nhập vào hệ thống.\n\n"
-                            + "Nếu bạn cho rằng đây là sự nhầm lẫn hoặc cần được hỗ trợ, vui lòng liên hệ với chúng tôi:\n"
-                            + "- Email hỗ trợ: %s\n"
-                            + "- Hoặc liên hệ qua hotline:  \n\n"
-                            + "Chúng tôi sẽ xem xét và phản hồi yêu cầu của bạn trong thời gian sớm nhất.\n\n"
-                            + "Trân trọng,\n"
-                            + "Đội ngũ NovaBeauty",
-                    userName != null ? userName : "Quý khách", roleDisplayName, toEmail, roleDisplayName, senderEmail);
-
-            requestBody.put("textContent", emailContent);
-            requestBody.put("htmlContent", emailContent.replace("\n", "<br>"));
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
-            // Send request
-            @SuppressWarnings("rawtypes")
-            ResponseEntity<Map> response = restTemplate.postForEntity(BREVO_API_URL, request, Map.class);
-
-            if (response.getStatusCode() == HttpStatus.CREATED) {
-                log.info("Account locked notification email sent successfully to: {} via Brevo API", toEmail);
-            } else {
-                log.error("Failed to send account locked email via Brevo API. Status: {}", response.getStatusCode());
-                throw new AppException(ErrorCode.EMAIL_SEND_FAILED);
+        log.info("Queueing account locked notification email to: {}", toEmail);
+
+        // Prepare request body
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty Admin"));
+        requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", userName != null ? userName : "User")});
+        requestBody.put("subject", "Thông báo: Tài khoản của bạn đã bị khóa - NovaBeauty");
+
+        String roleDisplayName = "Khách hàng";
+        if (roleName != null) {
+            switch (roleName.toUpperCase()) {
+                case "STAFF":
+                    roleDisplayName = "Nhân viên";
+                    break;
+                case "CUSTOMER_SUPPORT":
+                    roleDisplayName = "Nhân viên chăm sóc khách hàng";
+                    break;
+                case "CUSTOMER":
+                default:
+                    roleDisplayName = "Khách hàng";
+                    break;
             }
-
-        } catch (Exception e) {
-            log.error(
-                    "Failed to send account locked email via Brevo API to: {} - Error: {}", toEmail, e.getMessage(), e);
-            // Don't throw exception here - account lock should succeed even if email fails
-            // Just log the error
         }
+
+        String emailContent = String.format(
+                "Xin chào %s,\n\n"
+                        + "Chúng tôi xin thông báo rằng tài khoản %s của bạn tại NovaBeauty đã bị khóa.\n\n"
+                        + "Thông tin tài khoản:\n"
+                        + "- Email: %s\n"
+                        + "- Vai trò: %s\n\n"
+                        + "Khi tài khoản bị khóa, bạn sẽ không thể đăng nhập vào hệ thống.\n\n"
+                        + "Nếu bạn cho rằng đây là sự nhầm lẫn hoặc cần được hỗ trợ, vui lòng liên hệ với chúng tôi:\n"
+                        + "- Email hỗ trợ: %s\n"
+                        + "- Hoặc liên hệ qua hotline:  \n\n"
+                        + "Chúng tôi sẽ xem xét và phản hồi yêu cầu của bạn trong thời gian sớm nhất.\n\n"
+                        + "Trân trọng,\n"
+                        + "Đội ngũ NovaBeauty",
+                userName != null ? userName : "Quý khách", roleDisplayName, toEmail, roleDisplayName, senderEmail);
+
+        requestBody.put("textContent", emailContent);
+        requestBody.put("htmlContent", emailContent.replace("\n", "<br>"));
+
+        emailOutboxService.enqueue(toEmail, (String) requestBody.get("subject"), requestBody);
     }
 
     public void sendProfileUpdatedEmail(String toEmail, String userName, String roleName) {
@@ -210,157 +214,167 @@ public class BrevoEmailService {
             return;
         }
 
-        try {
-            log.info("Sending profile updated notification email via Brevo API to: {}", toEmail);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("api-key", apiKey);
-
-            String roleDisplayName = "Người dùng";
-            if (roleName != null) {
-                switch (roleName.toUpperCase()) {
-                    case "STAFF":
-                        roleDisplayName = "Nhân viên";
-                        break;
-                    case "CUSTOMER_SUPPORT":
-                        roleDisplayName = "Nhân viên chăm sóc khách hàng";
-                        break;
-                    case "CUSTOMER":
-                        roleDisplayName = "Khách hàng";
-                        break;
-                    default:
-                        roleDisplayName = "Người dùng";
-                }
+        log.info("Queueing profile updated notification email to: {}", toEmail);
+
+        String roleDisplayName = "Người dùng";
+        if (roleName != null) {
+            switch (roleName.toUpperCase()) {
+                case "STAFF":
+                    roleDisplayName = "Nhân viên";
+                    break;
+                case "CUSTOMER_SUPPORT":
+                    roleDisplayName = "Nhân viên chăm sóc khách hàng";
+                    break;
+                case "CUSTOMER":
+                    roleDisplayName = "Khách hàng";
+                    break;
+                default:
+                    roleDisplayName = "Người dùng";
             }
-
-            String emailContent = String.format(
-                    "Xin chào %s,\n\n"
-                            + "Thông tin tài khoản %s của bạn tại NovaBeauty vừa được quản trị viên cập nhật.\n"
-                            + "Nếu bạn không yêu cầu thay đổi này, vui lòng liên hệ với chúng tôi để được hỗ trợ.\n\n"
-                            + "Trân trọng,\n"
-                            + "Đội ngũ NovaBeauty",
-                    userName != null && !userName.isBlank() ? userName : "Quý khách",
-                    roleDisplayName);
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty Admin"));
-            requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", userName != null ? userName : "User")});
-            requestBody.put("subject", "Thông báo cập nhật tài khoản - NovaBeauty");
-            requestBody.put("textContent", emailContent);
-            requestBody.put("htmlContent", emailContent.replace("\n", "<br>"));
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
-            @SuppressWarnings("rawtypes")
-            ResponseEntity<Map> response = restTemplate.postForEntity(BREVO_API_URL, request, Map.class);
-
-            if (response.getStatusCode() == HttpStatus.CREATED) {
-                log.info("Profile updated notification email sent to {}", toEmail);
-            } else {
-                log.error("Failed to send profile updated email via Brevo API. Status: {}", response.getStatusCode());
-            }
-        } catch (Exception e) {
-            log.error(
-                    "Failed to send profile updated email via Brevo API to: {} - Error: {}",
-                    toEmail,
-                    e.getMessage(),
-                    e);
         }
+
+        String emailContent = String.format(
+                "Xin chào %s,\n\n"
+                        + "Thông tin tài khoản %s của bạn tại NovaBeauty vừa được quản trị viên cập nhật.\n"
+                        + "Nếu bạn không yêu cầu thay đổi này, vui lòng liên hệ với chúng tôi để được hỗ trợ.\n\n"
+                        + "Trân trọng,\n"
+                        + "Đội ngũ NovaBeauty",
+                userName != null && !userName.isBlank() ? userName : "Quý khách",
+                roleDisplayName);
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty Admin"));
+        requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", userName != null ? userName : "User")});
+        requestBody.put("subject", "Thông báo cập nhật tài khoản - NovaBeauty");
+        requestBody.put("textContent", emailContent);
+        requestBody.put("htmlContent", emailContent.replace("\n", "<br>"));
+
+        emailOutboxService.enqueue(toEmail, (String) requestBody.get("subject"), requestBody);
     }
 
     public void sendOrderConfirmationEmail(Order order) {
         if (order == null || order.getUser() == null || order.getUser().getEmail() == null) {
             return;
         }
-        try {
-            String toEmail = order.getUser().getEmail();
-            String customerName = order.getUser().getFullName() != null
-                    ? order.getUser().getFullName()
-                    : "Quý khách";
-
-            log.info("Sending order confirmation email to {}", toEmail);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("api-key", apiKey);
-
-            NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.forLanguageTag("vi-VN"));
-
-            StringBuilder itemsBuilder = new StringBuilder();
-            if (order.getItems() != null) {
-                for (OrderItem item : order.getItems()) {
-                    String name = item.getProduct() != null ? item.getProduct().getName() : "Sản phẩm";
-                    itemsBuilder.append("- ")
-                            .append(name)
-                            .append(" x")
-                            .append(item.getQuantity())
-                            .append(" : ")
-                            .append(currencyFormat.format(item.getFinalPrice()))
-                            .append("\n");
-                }
-            }
-
-            String content = String.format(
-                    "Xin chào %s,\n\n"
-                            + "Cảm ơn bạn đã đặt hàng tại NovaBeauty. Đơn hàng %s của bạn đã được ghi nhận.\n\n"
-                            + "Tổng tiền: %s\n"
-                            + "Phí vận chuyển: %s\n"
-                            + "Phương thức thanh toán: %s\n\n"
-                            + "Chi tiết sản phẩm:\n%s\n"
-                            + "Địa chỉ giao hàng: %s\n\n"
-                            + "Chúng tôi sẽ liên hệ khi đơn hàng được giao cho đơn vị vận chuyển.\n\n"
-                            + "Trân trọng,\nĐội ngũ NovaBeauty",
-                    customerName,
-                    order.getCode(),
-                    currencyFormat.format(order.getTotalAmount()),
-                    currencyFormat.format(order.getShippingFee() != null ? order.getShippingFee() : 0),
-                    order.getPaymentMethod() != null ? order.getPaymentMethod().name() : "Không xác định",
-                    itemsBuilder.toString(),
-                    order.getShippingAddress());
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty"));
-            requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", customerName)});
-            requestBody.put("subject", "Xác nhận đơn hàng " + order.getCode());
-            requestBody.put("textContent", content);
-            requestBody.put("htmlContent", content.replace("\n", "<br>"));
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            @SuppressWarnings("rawtypes")
-            ResponseEntity<Map> response = restTemplate.postForEntity(BREVO_API_URL, request, Map.class);
-
-            if (response.getStatusCode() == HttpStatus.CREATED) {
-                log.info("Order confirmation email sent to {}", toEmail);
-            } else {
-                log.warn("Failed to send order confirmation email. Status {}", response.getStatusCode());
+        String toEmail = order.getUser().getEmail();
+        String customerName = order.getUser().getFullName() != null
+                ? order.getUser().getFullName()
+                : "Quý khách";
+
+        log.info("Queueing order confirmation email to {}", toEmail);
+
+        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.forLanguageTag("vi-VN"));
+
+        StringBuilder itemsBuilder = new StringBuilder();
+        if (order.getItems() != null) {
+            for (OrderItem item : order.getItems()) {
+                String name = item.getProduct() != null ? item.getProduct().getName() : "Sản phẩm";
+                itemsBuilder.append("- ")
+                        .append(name)
+                        .append(" x")
+                        .append(item.getQuantity())
+                        .append(" : ")
+                        .append(currencyFormat.format(item.getFinalPrice()))
+                        .append("\n");
             }
-        } catch (Exception e) {
-            log.error("Failed to send order confirmation email", e);
         }
+
+        String content = String.format(
+                "Xin chào %s,\n\n"
+                        + "Cảm ơn bạn đã đặt hàng tại NovaBeauty. Đơn hàng %s của bạn đã được ghi nhận.\n\n"
+                        + "Tổng tiền: %s\n"
+                        + "Phí vận chuyển: %s\n"
+                        + "Phương thức thanh toán: %s\n\n"
+                        + "Chi tiết sản phẩm:\n%s\n"
+                        + "Địa chỉ giao hàng: %s\n\n"
+                        + "Chúng tôi sẽ liên hệ khi đơn hàng được giao cho đơn vị vận chuyển.\n\n"
+                        + "Trân trọng,\nĐội ngũ NovaBeauty",
+                customerName,
+                order.getCode(),
+                currencyFormat.format(order.getTotalAmount()),
+                currencyFormat.format(order.getShippingFee() != null ? order.getShippingFee() : 0),
+                order.getPaymentMethod() != null ? order.getPaymentMethod().name() : "Không xác định",
+                itemsBuilder.toString(),
+                order.getShippingAddress());
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty"));
+        requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", customerName)});
+        requestBody.put("subject", "Xác nhận đơn hàng " + order.getCode());
+        requestBody.put("textContent", content);
+        requestBody.put("htmlContent", content.replace("\n", "<br>"));
+
+        emailOutboxService.enqueue(toEmail, (String) requestBody.get("subject"), requestBody);
     }
 
-    // ===== Stub methods for return/refund flow (ported from NovaBeauty, simplified) =====
+    // ===== Email cho luồng hoàn tiền / trả hàng (ghi vào outbox cùng transaction đổi trạng thái) =====
 
     public void sendReturnRejectedEmail(Order order) {
         if (order == null || order.getUser() == null || order.getUser().getEmail() == null) {
             return;
         }
-        log.info("sendReturnRejectedEmail stub called for order {}", order.getId());
-        // Bạn có thể triển khai gửi email chi tiết sau nếu muốn
+        String reason = order.getRefundRejectionReason() != null && !order.getRefundRejectionReason().isBlank()
+                ? order.getRefundRejectionReason()
+                : "Không đáp ứng điều kiện hoàn tiền";
+        queueOrderEmail(
+                order,
+                "Yêu cầu hoàn tiền đơn hàng " + order.getCode() + " đã bị từ chối",
+                String.format(
+                        "Yêu cầu hoàn tiền / trả hàng cho đơn hàng %s của bạn đã bị từ chối.\n\n"
+                                + "Lý do: %s\n\n"
+                                + "Nếu cần hỗ trợ thêm, vui lòng liên hệ với chúng tôi qua email %s.",
+                        order.getCode(), reason, senderEmail));
     }
 
     public void sendReturnCsConfirmedEmail(Order order) {
         if (order == null || order.getUser() == null || order.getUser().getEmail() == null) {
             return;
         }
-        log.info("sendReturnCsConfirmedEmail stub called for order {}", order.getId());
+        queueOrderEmail(
+                order,
+                "Yêu cầu hoàn tiền đơn hàng " + order.getCode() + " đã được tiếp nhận",
+                String.format(
+                        "Bộ phận chăm sóc khách hàng đã xác nhận yêu cầu hoàn tiền / trả hàng cho đơn hàng %s.\n\n"
+                                + "Vui lòng gửi trả sản phẩm theo hướng dẫn. Sau khi nhận hàng, nhân viên sẽ kiểm tra "
+                                + "và thông báo kết quả cho bạn.",
+                        order.getCode()));
     }
 
     public void sendReturnStaffInspectionEmail(Order order) {
         if (order == null || order.getUser() == null || order.getUser().getEmail() == null) {
             return;
         }
-        log.info("sendReturnStaffInspectionEmail stub called for order {}", order.getId());
+        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.forLanguageTag("vi-VN"));
+        StringBuilder content = new StringBuilder()
+                .append("Chúng tôi đã nhận và kiểm tra sản phẩm trả lại của đơn hàng ")
+                .append(order.getCode())
+                .append(".\n\n");
+        if (order.getStaffInspectionResult() != null && !order.getStaffInspectionResult().isBlank()) {
+            content.append("Kết quả kiểm tra: ").append(order.getStaffInspectionResult()).append("\n");
+        }
+        if (order.getRefundConfirmedAmount() != null) {
+            content.append("Số tiền hoàn dự kiến: ")
+                    .append(currencyFormat.format(order.getRefundConfirmedAmount()))
+                    .append("\n");
+        }
+        content.append("\nKhoản hoàn tiền sẽ được xử lý trong thời gian sớm nhất.");
+        queueOrderEmail(order, "Kết quả kiểm tra hàng hoàn trả - đơn hàng " + order.getCode(), content.toString());
+    }
+
+    private void queueOrderEmail(Order order, String subject, String body) {
+        String toEmail = order.getUser().getEmail();
+        String customerName = order.getUser().getFullName() != null
+                ? order.getUser().getFullName()
+                : "Quý khách";
+        String content = "Xin chào " + customerName + ",\n\n" + body + "\n\nTrân trọng,\nĐội ngũ NovaBeauty";
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("sender", Map.of("email", senderEmail, "name", "NovaBeauty"));
+        requestBody.put("to", new Object[] {Map.of("email", toEmail, "name", customerName)});
+        requestBody.put("subject", subject);
+        requestBody.put("textContent", content);
+        requestBody.put("htmlContent", content.replace("\n", "<br>"));
+
+        emailOutboxService.enqueue(toEmail, subject, requestBody);
     }
 }
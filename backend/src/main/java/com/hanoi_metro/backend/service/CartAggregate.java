@@ -0,0 +1,277 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.hanoi_metro.backend.dto.response.CartItemResponse;
+import com.hanoi_metro.backend.dto.response.CartResponse;
+import com.hanoi_metro.backend.entity.Cart;
+import com.hanoi_metro.backend.entity.CartItem;
+import com.hanoi_metro.backend.entity.Category;
+import com.hanoi_metro.backend.entity.Product;
+import com.hanoi_metro.backend.entity.Voucher;
+import com.hanoi_metro.backend.enums.DiscountApplyScope;
+import com.hanoi_metro.backend.enums.DiscountValueType;
+import com.hanoi_metro.backend.enums.VoucherStatus;
+
+/**
+ * Ảnh chụp bất biến giỏ hàng của một khách hàng: các dòng hàng, voucher đang áp dụng, tổng tiền và version
+ * của dòng cart trong DB.
+ *
+ * Tính tiền trong giỏ (tạm tính, điều kiện và mức giảm của voucher) là hàm thuần trên ảnh chụp này, không
+ * đọc DB; CartService chỉ ghi kết quả xuống DB.
+ */
+public record CartAggregate(
+        String cartId,
+        String userId,
+        long version,
+        List<Line> lines,
+        VoucherRule voucher,
+        double subtotal,
+        double voucherDiscount,
+        double totalAmount) {
+
+    public static CartAggregate of(Cart cart, List<CartItem> items, VoucherRule voucher) {
+        List<Line> lines = items == null ? List.of() : items.stream().map(Line::of).toList();
+        return new CartAggregate(
+                cart.getId(),
+                cart.getUser() != null ? cart.getUser().getId() : null,
+                cart.getVersion() != null ? cart.getVersion() : 0L,
+                lines,
+                voucher,
+                cart.getSubtotal() != null ? cart.getSubtotal() : 0.0,
+                cart.getVoucherDiscount() != null ? cart.getVoucherDiscount() : 0.0,
+                cart.getTotalAmount() != null ? cart.getTotalAmount() : 0.0);
+    }
+
+    // Dòng hàng cùng sản phẩm và màu (không có màu khớp với dòng không có màu)
+    public Optional<Line> findLine(String productId, String colorCode) {
+        return lines.stream()
+                .filter(line -> productId.equals(line.productId()))
+                .filter(line -> colorCode != null
+                        ? colorCode.equals(line.colorCode())
+                        : line.colorCode() == null || line.colorCode().isBlank())
+                .findFirst();
+    }
+
+    public Optional<Line> line(String itemId) {
+        return lines.stream().filter(line -> itemId.equals(line.itemId())).findFirst();
+    }
+
+    // Thay dòng cùng itemId hoặc thêm vào cuối
+    public CartAggregate withLine(Line line) {
+        List<Line> updated = new ArrayList<>(lines.size() + 1);
+        boolean replaced = false;
+        for (Line existing : lines) {
+            if (line.itemId() != null && line.itemId().equals(existing.itemId())) {
+                updated.add(line);
+                replaced = true;
+            } else {
+                updated.add(existing);
+            }
+        }
+        if (!replaced) {
+            updated.add(line);
+        }
+        return new CartAggregate(
+                cartId, userId, version, List.copyOf(updated), voucher, subtotal, voucherDiscount, totalAmount);
+    }
+
+    public CartAggregate withLines(List<Line> lines) {
+        return new CartAggregate(
+                cartId, userId, version, List.copyOf(lines), voucher, subtotal, voucherDiscount, totalAmount);
+    }
+
+    public CartAggregate withoutLine(String itemId) {
+        List<Line> updated = lines.stream().filter(line -> !itemId.equals(line.itemId())).toList();
+        return new CartAggregate(cartId, userId, version, updated, voucher, subtotal, voucherDiscount, totalAmount);
+    }
+
+    public CartAggregate withVoucher(VoucherRule voucher) {
+        return new CartAggregate(cartId, userId, version, lines, voucher, subtotal, voucherDiscount, totalAmount);
+    }
+
+    public CartAggregate withVersion(long version) {
+        return new CartAggregate(cartId, userId, version, lines, voucher, subtotal, voucherDiscount, totalAmount);
+    }
+
+    /**
+     * Tính lại tạm tính, giảm giá voucher và tổng tiền. Voucher không còn dùng được (hết hiệu lực, không đủ giá trị
+     * đơn tối thiểu) bị gỡ khỏi giỏ.
+     */
+    public CartAggregate priced(LocalDate today) {
+        // Làm tròn tạm tính về đơn vị đồng
+        double newSubtotal = Math.round(lines.stream().mapToDouble(Line::finalPrice).sum());
+        VoucherRule applied = voucher;
+        double discount = 0.0;
+        if (applied != null) {
+            double applicable = applied.applicableSubtotal(lines, newSubtotal);
+            if (applied.isUsableOn(today) && applied.meetsMinimum(applicable)) {
+                discount = applied.discountFor(applicable, newSubtotal);
+            } else {
+                applied = null;
+            }
+        }
+        // Tổng sau voucher cũng làm tròn về đồng
+        double total = Math.round(Math.max(0.0, newSubtotal - discount));
+        return new CartAggregate(cartId, userId, version, lines, applied, newSubtotal, discount, total);
+    }
+
+    public CartResponse toResponse() {
+        return CartResponse.builder()
+                .id(cartId)
+                .subtotal(subtotal)
+                .appliedVoucherCode(voucher != null ? voucher.code() : null)
+                .voucherDiscount(voucherDiscount)
+                .totalAmount(totalAmount)
+                .items(lines.stream().map(Line::toResponse).toList())
+                .build();
+    }
+
+    /**
+     * Một dòng hàng; itemId null khi dòng chưa được ghi xuống DB.
+     */
+    public record Line(
+            String itemId,
+            String productId,
+            String productName,
+            String categoryId,
+            String colorCode,
+            double unitPrice,
+            int quantity,
+            double finalPrice) {
+
+        static Line of(CartItem item) {
+            Product product = item.getProduct();
+            Category category = product != null ? product.getCategory() : null;
+            return new Line(
+                    item.getId(),
+                    product != null ? product.getId() : null,
+                    product != null ? product.getName() : null,
+                    category != null ? category.getId() : null,
+                    item.getColorCode(),
+                    item.getUnitPrice() != null ? item.getUnitPrice() : 0.0,
+                    item.getQuantity() != null ? item.getQuantity() : 0,
+                    item.getFinalPrice() != null ? item.getFinalPrice() : 0.0);
+        }
+
+        public static Line newLine(Product product, String colorCode, double unitPrice) {
+            return new Line(
+                    null,
+                    product.getId(),
+                    product.getName(),
+                    product.getCategory() != null ? product.getCategory().getId() : null,
+                    colorCode,
+                    unitPrice,
+                    0,
+                    0.0);
+        }
+
+        public Line withQuantity(int quantity) {
+            return new Line(
+                    itemId, productId, productName, categoryId, colorCode, unitPrice, quantity, quantity * unitPrice);
+        }
+
+        public Line withItemId(String itemId) {
+            return new Line(
+                    itemId, productId, productName, categoryId, colorCode, unitPrice, quantity, finalPrice);
+        }
+
+        CartItemResponse toResponse() {
+            return CartItemResponse.builder()
+                    .id(itemId)
+                    .productId(productId)
+                    .productName(productName)
+                    .unitPrice(unitPrice)
+                    .quantity(quantity)
+                    .finalPrice(finalPrice)
+                    .colorCode(colorCode)
+                    .build();
+        }
+    }
+
+    /**
+     * Các điều kiện và mức giảm của một voucher, tách khỏi entity để tính trong bộ nhớ.
+     */
+    public record VoucherRule(
+            String id,
+            String code,
+            boolean active,
+            VoucherStatus status,
+            LocalDate startDate,
+            LocalDate expiryDate,
+            Double minOrderValue,
+            DiscountValueType discountValueType,
+            double discountValue,
+            Double maxDiscountValue,
+            DiscountApplyScope applyScope,
+            Set<String> productIds,
+            Set<String> categoryIds) {
+
+        public static VoucherRule of(Voucher voucher) {
+            return new VoucherRule(
+                    voucher.getId(),
+                    voucher.getCode(),
+                    Boolean.TRUE.equals(voucher.getIsActive()),
+                    voucher.getStatus(),
+                    voucher.getStartDate(),
+                    voucher.getExpiryDate(),
+                    voucher.getMinOrderValue(),
+                    voucher.getDiscountValueType(),
+                    voucher.getDiscountValue() != null ? voucher.getDiscountValue() : 0.0,
+                    voucher.getMaxDiscountValue(),
+                    voucher.getApplyScope(),
+                    // Chỉ nạp danh sách áp dụng của đúng phạm vi voucher (mỗi danh sách là một query lazy)
+                    voucher.getApplyScope() != DiscountApplyScope.PRODUCT || voucher.getProductApply() == null
+                            ? Set.of()
+                            : voucher.getProductApply().stream().map(Product::getId).collect(Collectors.toSet()),
+                    voucher.getApplyScope() != DiscountApplyScope.CATEGORY || voucher.getCategoryApply() == null
+                            ? Set.of()
+                            : voucher.getCategoryApply().stream().map(Category::getId).collect(Collectors.toSet()));
+        }
+
+        public boolean isUsableOn(LocalDate today) {
+            return active
+                    && status == VoucherStatus.APPROVED
+                    && (startDate == null || !today.isBefore(startDate))
+                    && (expiryDate == null || !today.isAfter(expiryDate));
+        }
+
+        // Tổng giá trị các dòng hàng thuộc phạm vi áp dụng của voucher
+        public double applicableSubtotal(List<Line> lines, double subtotal) {
+            if (applyScope == null || applyScope == DiscountApplyScope.ORDER) {
+                return subtotal;
+            }
+            return lines.stream()
+                    .filter(line -> applyScope == DiscountApplyScope.PRODUCT
+                            ? line.productId() != null && productIds.contains(line.productId())
+                            : applyScope == DiscountApplyScope.CATEGORY
+                                    && line.categoryId() != null
+                                    && categoryIds.contains(line.categoryId()))
+                    .mapToDouble(Line::finalPrice)
+                    .sum();
+        }
+
+        public boolean meetsMinimum(double applicableSubtotal) {
+            return minOrderValue == null || minOrderValue <= 0 || applicableSubtotal >= minOrderValue;
+        }
+
+        public double discountFor(double applicableSubtotal, double subtotal) {
+            double discount = discountValueType == DiscountValueType.PERCENTAGE
+                    ? applicableSubtotal * (discountValue / 100.0)
+                    : discountValue;
+            if (maxDiscountValue != null && maxDiscountValue > 0) {
+                discount = Math.min(discount, maxDiscountValue);
+            }
+            // Voucher toàn đơn giới hạn bởi tạm tính, voucher theo sản phẩm/danh mục giới hạn bởi phần áp dụng
+            if (applyScope == null || applyScope == DiscountApplyScope.ORDER) {
+                return Math.min(discount, subtotal);
+            }
+            return Math.min(discount, applicableSubtotal);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.dto.response.CartEngineStats;
+import com.hanoi_metro.backend.dto.response.CartOperationStats;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Cache CartAggregate theo email khách hàng (tên của Authentication), để thao tác giỏ hàng không phải nạp lại
+ * user, cart, item và voucher mỗi lần bấm.
+ *
+ * Chỉ nhận ảnh chụp sau khi transaction commit; ảnh chụp có version nhỏ hơn bản đang giữ bị bỏ qua. Giỏ bị sửa
+ * qua đường khác (đặt hàng, xóa sản phẩm, sửa voucher) thì bị bỏ khỏi cache. LRU giới hạn số giỏ, TTL giới hạn
+ * tuổi (tên sản phẩm trong giỏ có thể đổi).
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CartAggregateCache {
+
+    int maxEntries;
+    long ttlMillis;
+
+    AtomicLong hits = new AtomicLong();
+    AtomicLong misses = new AtomicLong();
+    AtomicLong conflicts = new AtomicLong();
+    Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    Map<String, Cached> entries;
+
+    public CartAggregateCache(
+            @Value("${cart.cache.max-entries:5000}") int maxEntries,
+            @Value("${cart.cache.ttl-seconds:1800}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > CartAggregateCache.this.maxEntries;
+            }
+        };
+    }
+
+    public CartAggregate get(String email) {
+        synchronized (entries) {
+            Cached cached = entries.get(email);
+            if (cached != null && System.currentTimeMillis() - cached.createdAt() <= ttlMillis) {
+                hits.incrementAndGet();
+                return cached.cart();
+            }
+            if (cached != null) {
+                entries.remove(email);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Giữ ảnh chụp sau khi transaction commit (rollback thì cache vẫn là bản trước)
+    public void put(String email, CartAggregate cart) {
+        TransactionUtil.afterCommit(() -> {
+            synchronized (entries) {
+                Cached current = entries.get(email);
+                if (current == null || current.cart().version() <= cart.version()) {
+                    entries.put(email, new Cached(cart, System.currentTimeMillis()));
+                }
+            }
+        });
+    }
+
+    public void invalidate(String email) {
+        TransactionUtil.afterCommit(() -> {
+            synchronized (entries) {
+                entries.remove(email);
+            }
+        });
+    }
+
+    // Sản phẩm hoặc voucher thay đổi: các giỏ đang cache có thể giữ tên/danh mục/điều kiện voucher cũ
+    public void invalidateAll() {
+        TransactionUtil.afterCommit(() -> {
+            synchronized (entries) {
+                entries.clear();
+            }
+        });
+    }
+
+    public void recordConflict() {
+        conflicts.incrementAndGet();
+    }
+
+    public void recordOperation(String operation, long latencyNanos, long queries) {
+        operations.computeIfAbsent(operation, k -> new OperationMetrics()).record(latencyNanos, queries);
+    }
+
+    public CartEngineStats stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, CartOperationStats> byOperation = new TreeMap<>();
+        operations.forEach((operation, metrics) -> byOperation.put(operation, metrics.stats()));
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return CartEngineStats.builder()
+                .size(size)
+                .maxEntries(maxEntries)
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRate(hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount))
+                .conflicts(conflicts.get())
+                .operations(byOperation)
+                .build();
+    }
+
+    private record Cached(CartAggregate cart, long createdAt) {}
+
+    private static final class OperationMetrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalQueries = new LongAdder();
+        final AtomicLong maxQueries = new AtomicLong();
+        final LongAdder totalLatencyNanos = new LongAdder();
+        final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        void record(long latencyNanos, long queries) {
+            count.increment();
+            totalQueries.add(queries);
+            maxQueries.accumulateAndGet(queries, Math::max);
+            totalLatencyNanos.add(latencyNanos);
+            maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+        }
+
+        CartOperationStats stats() {
+            long n = count.sum();
+            double nanosPerMs = TimeUnit.MILLISECONDS.toNanos(1);
+            return CartOperationStats.builder()
+                    .count(n)
+                    .averageQueries(n == 0 ? 0.0 : (double) totalQueries.sum() / n)
+                    .maxQueries(maxQueries.get())
+                    .averageLatencyMs(n == 0 ? 0.0 : totalLatencyNanos.sum() / nanosPerMs / n)
+                    .maxLatencyMs(maxLatencyNanos.get() / nanosPerMs)
+                    .build();
+        }
+    }
+}
@@ -1,35 +1,44 @@
 package com.hanoi_metro.backend.service;
 
-import com.hanoi_metro.backend.entity.*;
-import com.hanoi_metro.backend.enums.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.hanoi_metro.backend.dto.response.CartEngineStats;
+import com.hanoi_metro.backend.dto.response.CartResponse;
 import com.hanoi_metro.backend.entity.*;
+import com.hanoi_metro.backend.enums.ProductStatus;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
 import com.hanoi_metro.backend.repository.CartItemRepository;
 import com.hanoi_metro.backend.repository.CartRepository;
 import com.hanoi_metro.backend.repository.ProductRepository;
-import com.hanoi_metro.backend.repository.PromotionRepository;
 import com.hanoi_metro.backend.repository.UserRepository;
 import com.hanoi_metro.backend.repository.VoucherRepository;
-import com.hanoi_metro.backend.repository.OrderRepository;
+import com.hanoi_metro.backend.util.QueryCounter;
 import com.hanoi_metro.backend.util.SecurityUtil;
 
-import java.time.LocalDate;
-import java.util.List;
-import java.util.Locale;
-import java.util.Iterator;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 
+/**
+ * Giỏ hàng của khách hàng.
+ *
+ * Mọi thao tác của khách (thêm, đổi số lượng, xóa, áp/gỡ voucher) đi qua mutate:
+ * 1. Lấy CartAggregate từ CartAggregateCache (trượt cache thì đọc cart + item + sản phẩm bằng một query có khóa).
+ * 2. Áp thay đổi và tính lại tiền hoàn toàn trong bộ nhớ (CartAggregate.priced).
+ * 3. Ghi tổng tiền kèm điều kiện version (compare-and-set) rồi ghi đúng các dòng item thay đổi.
+ *    Version không khớp (giỏ vừa bị sửa ở nơi khác) thì đọc lại có khóa và làm lại một lần.
+ * Các đường sửa giỏ qua entity (đặt hàng) tăng version và bỏ ảnh chụp khỏi cache.
+ */
 @Service
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -39,10 +48,11 @@ public class CartService {
     CartItemRepository cartItemRepository;
     UserRepository userRepository;
     ProductRepository productRepository;
-    PromotionRepository promotionRepository;
+    EffectivePriceIndex effectivePriceIndex;
     VoucherRepository voucherRepository;
-    OrderRepository orderRepository;
-    ObjectMapper objectMapper = new ObjectMapper();
+    VoucherUsageService voucherUsageService;
+    ProductVariantService productVariantService;
+    CartAggregateCache cartAggregateCache;
 
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
@@ -58,6 +68,7 @@ public class CartService {
                 .orElseGet(() -> cartRepository.save(Cart.builder().user(user).build()));
     }
 
+    // Giỏ hàng dạng entity cho luồng đặt hàng (OrderService), tổng tiền được tính lại và ghi xuống DB
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
     public Cart getCart() {
@@ -73,9 +84,20 @@ public class CartService {
 
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
-    public Cart addItem(String productId, int quantity, String colorCode) {
-        Cart cart = getOrCreateCartForCurrentCustomer();
+    public CartResponse getCartView() {
+        String email = SecurityUtil.getAuthentication().getName();
+        CartAggregate cart = cartAggregateCache.get(email);
+        if (cart == null) {
+            cart = loadAggregate(email, false);
+            cartAggregateCache.put(email, cart);
+        }
+        // Ảnh chụp có thể được tính từ hôm trước: tính lại theo ngày hiện tại để voucher hết hạn không còn được trừ
+        return cart.priced(LocalDate.now()).toResponse();
+    }
 
+    @Transactional
+    @PreAuthorize("hasRole('CUSTOMER')")
+    public CartResponse addItem(String productId, int quantity, String colorCode) {
         Product product = productRepository
                 .findById(productId)
                 .orElseThrow(() -> new AppException(ErrorCode.PRODUCT_NOT_EXISTED));
@@ -90,65 +112,38 @@ public class CartService {
             throw new AppException(ErrorCode.PRODUCT_NOT_EXISTED);
         }
 
-        // Tìm cartItem theo productId và colorCode (nếu có)
-        CartItem cartItem = null;
         String normalizedColorCode = (colorCode != null && !colorCode.trim().isEmpty())
                 ? colorCode.trim()
                 : null;
 
-        if (normalizedColorCode != null) {
-            cartItem = cartItemRepository
-                    .findByCartIdAndProductIdAndColorCode(cart.getId(), productId, normalizedColorCode)
-                    .orElse(null);
-        } else {
-            // Nếu không có colorCode, tìm cartItem không có colorCode
-            cartItem = cartItemRepository
-                    .findByCartIdAndProductId(cart.getId(), productId)
-                    .orElse(null);
-        }
+        return mutate("addItem", cart -> {
+            // Tìm dòng hàng theo productId và colorCode (nếu có)
+            CartAggregate.Line line = cart.findLine(productId, normalizedColorCode).orElse(null);
 
-        // Nếu quantity <= 0 và không có item, không làm gì (cho phép quantity âm để giảm/xóa item đã có)
-        if (quantity <= 0 && cartItem == null) {
-            return cart;
-        }
-
-        // Nếu chưa có item và quantity dương, tạo mới
-        if (cartItem == null) {
-            cartItem = CartItem.builder()
-                    .cart(cart)
-                    .product(product)
-                    .unitPrice(calculateUnitPrice(product, normalizedColorCode))
-                    .quantity(0)
-                    .colorCode(normalizedColorCode)
-                    .build();
-        }
-
-        int newQuantity = cartItem.getQuantity() + quantity;
+            // Nếu quantity <= 0 và không có item, không làm gì (cho phép quantity âm để giảm/xóa item đã có)
+            if (quantity <= 0 && line == null) {
+                return cart;
+            }
 
-        // Nếu quantity mới <= 0, xóa item
-        if (newQuantity <= 0) {
-            cartItemRepository.delete(cartItem);
-            // Refresh cart để cập nhật cartItems collection
-            cartRepository.flush();
-            cart = cartRepository.findById(cart.getId()).orElse(cart);
-        } else {
-            cartItem.setQuantity(newQuantity);
-            double finalPrice = cartItem.getQuantity() * cartItem.getUnitPrice();
-            cartItem.setFinalPrice(finalPrice);
-            cartItemRepository.save(cartItem);
-        }
+            // Nếu chưa có item và quantity dương, tạo mới (đơn giá chỉ tính khi thật sự cần)
+            if (line == null) {
+                line = CartAggregate.Line.newLine(
+                        product, normalizedColorCode, calculateUnitPrice(product, normalizedColorCode));
+            }
 
-        recalcCartTotals(cart);
-        // Refresh cart một lần nữa để đảm bảo cartItems được cập nhật
-        cart = cartRepository.findById(cart.getId()).orElse(cart);
-        return cart;
+            int newQuantity = line.quantity() + quantity;
+            // Nếu quantity mới <= 0, xóa item
+            if (newQuantity <= 0) {
+                return cart.withoutLine(line.itemId());
+            }
+            return cart.withLine(line.withQuantity(newQuantity));
+        });
     }
 
-
     //Tính đơn giá sản phẩm cho giỏ hàng - giống logic frontend ProductDetail
 
     private double calculateUnitPrice(Product product, String colorCode) {
-        // Nếu có colorCode, tìm giá variant từ manufacturingLocation (giống frontend)
+        // Nếu có colorCode, tìm giá variant từ bảng product_variants
         if (colorCode != null && !colorCode.trim().isEmpty()) {
             Double variantPrice = resolveVariantPrice(product, colorCode.trim());
             if (variantPrice != null && variantPrice > 0) {
@@ -160,41 +155,17 @@ public class CartService {
                 double priceWithTax = variantPrice * (1.0 + tax);
                 
                 // Áp dụng discount từ promotion nếu có (giống như sản phẩm không có variant)
-                // Tìm promotion active (giống logic cho sản phẩm không có variant)
-                var today = java.time.LocalDate.now();
-                Promotion activePromotion = null;
-
-                // Kiểm tra promotion trực tiếp của product
-                if (product.getPromotion() != null && isPromotionActive(product.getPromotion(), today)) {
-                    activePromotion = product.getPromotion();
-                }
-
-                // Nếu chưa có, tìm promotion theo productId
-                if (activePromotion == null) {
-                    var promosByProduct = promotionRepository.findActiveByProductId(product.getId(), today);
-                    if (!promosByProduct.isEmpty()) {
-                        activePromotion = promosByProduct.get(0); // Lấy promotion đầu tiên
-                    }
-                }
-
-                // Nếu chưa có, tìm promotion theo category
-                if (activePromotion == null && product.getCategory() != null) {
-                    var promosByCategory = promotionRepository.findActiveByCategoryId(
-                            product.getCategory().getId(), today);
-                    if (!promosByCategory.isEmpty()) {
-                        activePromotion = promosByCategory.get(0); // Lấy promotion đầu tiên
-                    }
-                }
+                EffectivePriceIndex.EffectivePrice effective = effectivePriceIndex.get(product);
 
                 // Tính discount và final price cho variant (giống logic frontend)
-                if (activePromotion != null) {
+                if (effective != null && effective.hasPromotion()) {
                     // Tính tỷ lệ discount từ giá sản phẩm chung (unitPrice * (1 + tax))
                     double productUnitPrice = product.getUnitPrice() != null ? product.getUnitPrice() : 0.0;
                     double productTax = product.getTax() != null ? product.getTax() : 0.08;
                     double originalProductPriceWithTax = productUnitPrice * (1.0 + productTax);
                     
                     // Tính discount amount từ promotion cho giá sản phẩm chung
-                    double productDiscountAmount = calculateDiscountAmount(activePromotion, originalProductPriceWithTax);
+                    double productDiscountAmount = effective.discountFor(originalProductPriceWithTax);
                     
                     // Tính tỷ lệ discount thực tế đã được áp dụng
                     double discountRate = originalProductPriceWithTax > 0 
@@ -232,35 +203,12 @@ public class CartService {
         if (tax == null) tax = 0.08; // Mặc định 8%
         double priceWithTax = unitPrice * (1.0 + tax);
 
-        // Tìm promotion active (giống ProductService.findActivePromotionForProduct)
-        var today = java.time.LocalDate.now();
-        Promotion activePromotion = null;
-
-        // Kiểm tra promotion trực tiếp của product
-        if (product.getPromotion() != null && isPromotionActive(product.getPromotion(), today)) {
-            activePromotion = product.getPromotion();
-        }
-
-        // Nếu chưa có, tìm promotion theo productId
-        if (activePromotion == null) {
-            var promosByProduct = promotionRepository.findActiveByProductId(product.getId(), today);
-            if (!promosByProduct.isEmpty()) {
-                activePromotion = promosByProduct.get(0); // Lấy promotion đầu tiên
-            }
-        }
-
-        // Nếu chưa có, tìm promotion theo category
-        if (activePromotion == null && product.getCategory() != null) {
-            var promosByCategory = promotionRepository.findActiveByCategoryId(
-                    product.getCategory().getId(), today);
-            if (!promosByCategory.isEmpty()) {
-                activePromotion = promosByCategory.get(0); // Lấy promotion đầu tiên
-            }
-        }
+        // Promotion đang áp dụng lấy từ EffectivePriceIndex (cùng promotion với trang sản phẩm)
+        EffectivePriceIndex.EffectivePrice effective = effectivePriceIndex.get(product);
 
-        // Tính discount và final price (giống ProductService.calculateDiscountAmount)
-        if (activePromotion != null) {
-            double discountAmount = calculateDiscountAmount(activePromotion, priceWithTax);
+        // Tính discount và final price (giống EffectivePriceIndex.calculateDiscountAmount)
+        if (effective != null && effective.hasPromotion()) {
+            double discountAmount = effective.discountFor(priceWithTax);
             double finalPrice = Math.max(0, priceWithTax - discountAmount);
             return Math.round(finalPrice);
         } else {
@@ -270,7 +218,7 @@ public class CartService {
     }
 
     /**
-     * Tìm giá variant từ manufacturingLocation JSON (giống frontend normalizeVariantRecords)
+     * Tìm giá variant theo (productId, code) trong bảng product_variants
      * Trả về variant.price nếu tìm thấy, null nếu không có
      */
     private Double resolveVariantPrice(Product product, String colorCode) {
@@ -278,348 +226,83 @@ public class CartService {
             return null;
         }
 
-        String raw = product.getManufacturingLocation();
-        if (raw == null || raw.isBlank()) {
-            return null;
-        }
-
-        try {
-            JsonNode root = objectMapper.readTree(raw);
-            JsonNode variantsNode = extractVariantsNode(root);
-            if (variantsNode != null && variantsNode.isArray()) {
-                String normalized = colorCode.trim().toLowerCase(Locale.ROOT);
-                Iterator<JsonNode> it = variantsNode.elements();
-                while (it.hasNext()) {
-                    JsonNode node = it.next();
-                    String code = textLower(node.get("code"));
-                    String name = textLower(node.get("name"));
-
-                    // So khớp code hoặc name (giống frontend)
-                    if (normalized.equals(code) || normalized.equals(name)) {
-                        // Lấy variant.price (giống frontend: entry.price)
-                        if (node.hasNonNull("price")) {
-                            double price = node.get("price").asDouble(-1);
-                            if (price > 0) {
-                                return price;
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception ignored) {
-            // Nếu parse JSON lỗi, trả về null
-        }
-
-        return null;
-    }
-
-    private JsonNode extractVariantsNode(JsonNode root) {
-        if (root == null) return null;
-        if (root.isArray()) return root;
-        if (root.has("variants")) return root.get("variants");
-        if (root.has("colors")) return root.get("colors");
-        if (root.has("data")) return root.get("data");
-        return null;
-    }
-
-    private String textLower(JsonNode node) {
-        if (node == null || node.isNull()) return null;
-        String s = node.asText();
-        return s == null ? null : s.trim().toLowerCase(Locale.ROOT);
-    }
-
-    private void recalcCartTotals(Cart cart) {
-        // Query lại cartItems từ database để đảm bảo tính toán chính xác
-        List<CartItem> cartItems = cartItemRepository.findByCartId(cart.getId());
-        double subtotal = cartItems == null || cartItems.isEmpty()
-                ? 0.0
-                : cartItems.stream()
-                .mapToDouble(CartItem::getFinalPrice)
-                .sum();
-        // Làm tròn subtotal về đơn vị đồng
-        subtotal = Math.round(subtotal);
-        cart.setSubtotal(subtotal);
-
-        // Nếu có voucher đang được áp dụng, tính lại voucher discount dựa trên subtotal mới
-        double voucherDiscount = 0.0;
-        if (cart.getAppliedVoucherCode() != null && !cart.getAppliedVoucherCode().isEmpty()) {
-            voucherDiscount = recalculateVoucherDiscount(cart, subtotal);
-            cart.setVoucherDiscount(voucherDiscount);
-        } else {
-            // Nếu không có voucher, set voucherDiscount về 0
-            cart.setVoucherDiscount(0.0);
-        }
-
-        double total = Math.max(0.0, subtotal - voucherDiscount);
-        cart.setTotalAmount(total);
-        cartRepository.save(cart);
-    }
-
-    // Tính lại voucher discount khi số lượng sản phẩm thay đổi
-    private double recalculateVoucherDiscount(Cart cart, double subtotal) {
-        try {
-            // Lấy voucher từ database
-            var voucher = voucherRepository.findByCode(cart.getAppliedVoucherCode())
-                    .orElse(null);
-
-            // Nếu voucher không tồn tại hoặc không active, xóa voucher khỏi cart
-            if (voucher == null || !voucher.getIsActive() || voucher.getStatus() != VoucherStatus.APPROVED) {
-                cart.setAppliedVoucherCode(null);
-                cart.setAppliedVoucherId(null);
-                return 0.0;
-            }
-
-            // Kiểm tra voucher còn hiệu lực không
-            LocalDate today = LocalDate.now();
-            if ((voucher.getStartDate() != null && today.isBefore(voucher.getStartDate()))
-                    || (voucher.getExpiryDate() != null && today.isAfter(voucher.getExpiryDate()))) {
-                cart.setAppliedVoucherCode(null);
-                cart.setAppliedVoucherId(null);
-                return 0.0;
-            }
-
-            // Refresh cart để đảm bảo cartItems được load
-            cart = cartRepository.findById(cart.getId()).orElse(cart);
-            // Force load cartItems
-            if (cart.getCartItems() != null) {
-                cart.getCartItems().size(); // Trigger lazy loading
-            }
-
-            // Tính tổng giá trị đơn hàng có thể áp dụng voucher
-            double applicableSubtotal = calculateApplicableSubtotal(cart, voucher);
-
-            // Kiểm tra minOrderValue
-            if (voucher.getMinOrderValue() != null && voucher.getMinOrderValue() > 0
-                    && applicableSubtotal < voucher.getMinOrderValue()) {
-                // Nếu không đủ điều kiện, xóa voucher khỏi cart
-                cart.setAppliedVoucherCode(null);
-                cart.setAppliedVoucherId(null);
-                return 0.0;
-            }
-
-            // Tính giá trị giảm giá dựa trên loại giảm giá của voucher
-            double discountValue = voucher.getDiscountValue();
-            double discount;
-            if (voucher.getDiscountValueType() == DiscountValueType.PERCENTAGE) {
-                discount = applicableSubtotal * (discountValue / 100.0);
-            } else {
-                discount = discountValue;
-            }
-
-            // Áp dụng maxDiscountValue nếu có
-            if (voucher.getMaxDiscountValue() != null && voucher.getMaxDiscountValue() > 0) {
-                discount = Math.min(discount, voucher.getMaxDiscountValue());
-            }
-
-            // Giới hạn discount không được vượt quá giá trị đơn hàng
-            if (voucher.getApplyScope() == null || voucher.getApplyScope() == DiscountApplyScope.ORDER) {
-                discount = Math.min(discount, subtotal);
-            } else {
-                discount = Math.min(discount, applicableSubtotal);
-            }
-
-            return discount;
-        } catch (Exception e) {
-            // Nếu có lỗi, xóa voucher khỏi cart và trả về 0
-            cart.setAppliedVoucherCode(null);
-            cart.setAppliedVoucherId(null);
-            return 0.0;
-        }
+        return productVariantService.findVariant(product.getId(), colorCode)
+                .map(ProductVariant::getPrice)
+                .filter(price -> price > 0)
+                .orElse(null);
     }
 
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
-    public Cart applyVoucher(String code) {
-        Cart cart = getOrCreateCartForCurrentCustomer();
-        if (cart.getCartItems() == null || cart.getCartItems().isEmpty()) {
-            throw new AppException(ErrorCode.CART_ITEM_NOT_EXISTED);
-        }
-
+    public CartResponse applyVoucher(String code) {
         var voucher =
                 voucherRepository.findByCode(code).orElseThrow(() -> new AppException(ErrorCode.VOUCHER_NOT_EXISTED));
-
-        if (!voucher.getIsActive() || voucher.getStatus() != VoucherStatus.APPROVED) {
-            throw new AppException(ErrorCode.VOUCHER_NOT_EXISTED);
-        }
+        CartAggregate.VoucherRule rule = CartAggregate.VoucherRule.of(voucher);
         LocalDate today = LocalDate.now();
-        if ((voucher.getStartDate() != null && today.isBefore(voucher.getStartDate()))
-                || (voucher.getExpiryDate() != null && today.isAfter(voucher.getExpiryDate()))) {
+        if (!rule.isUsableOn(today)) {
             throw new AppException(ErrorCode.VOUCHER_NOT_EXISTED);
         }
 
-        // Lấy current user
-        User currentUser = cart.getUser();
-        if (currentUser == null) {
-            org.springframework.security.core.Authentication authentication = SecurityUtil.getAuthentication();
-            currentUser = userRepository.findByEmail(authentication.getName())
-                    .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
-        }
-
-
-        final String userId = currentUser.getId();
-
-
-        if (voucher.getUsagePerUser() != null && voucher.getUsagePerUser() > 0) {
-            // Đếm số lần user đã dùng voucher này (kiểm tra theo voucherId, không tính đơn hủy/hoàn tiền)
-            final String voucherId = voucher.getId();
-            long userUsageCount = orderRepository.findAll().stream()
-                    .filter(order -> order.getUser() != null && userId.equals(order.getUser().getId()))
-                    .filter(order -> order.getAppliedVoucherId() != null)
-                    .filter(order -> voucherId.equals(order.getAppliedVoucherId()))
-                    // Không tính đơn hàng đã hủy hoặc hoàn tiền (voucher đã được hoàn)
-                    .filter(order -> order.getStatus() != OrderStatus.CANCELLED
-                            && order.getStatus() != OrderStatus.REFUNDED)
-                    .count();
-
-            if (userUsageCount >= voucher.getUsagePerUser()) {
-                throw new AppException(ErrorCode.VOUCHER_USAGE_LIMIT_EXCEEDED);
+        return mutate("applyVoucher", cart -> {
+            if (cart.lines().isEmpty()) {
+                throw new AppException(ErrorCode.CART_ITEM_NOT_EXISTED);
             }
-        }
-
-        recalcCartTotals(cart);
-
-        // Tính tổng giá trị đơn hàng có thể áp dụng voucher
-        double applicableSubtotal = calculateApplicableSubtotal(cart, voucher);
-
-
-        if (voucher.getMinOrderValue() != null && voucher.getMinOrderValue() > 0
-                && applicableSubtotal < voucher.getMinOrderValue()) {
-            throw new AppException(ErrorCode.INVALID_VOUCHER_MINIUM);
-        }
-
-        // Lấy tổng giá trị đơn hàng để tính toán cuối cùng
-        double fullSubtotal = cart.getSubtotal();
-
-        // Tính giá trị giảm giá dựa trên loại giảm giá của voucher
-        double discountValue = voucher.getDiscountValue();
-        double discount;
-        if (voucher.getDiscountValueType() == DiscountValueType.PERCENTAGE) {
-            discount = applicableSubtotal * (discountValue / 100.0);
-        } else {
-            discount = discountValue;
-        }
 
-        // Nếu giá trị giảm giá vượt quá giá trị giảm giá tối đa của voucher, set giá trị giảm giá tối đa của voucher
-        if (voucher.getMaxDiscountValue() != null && voucher.getMaxDiscountValue() > 0) {
-            discount = Math.min(discount, voucher.getMaxDiscountValue());
-        }
-
-        // Giới hạn discount không được vượt quá giá trị đơn hàng
-        // Nếu voucher áp dụng cho toàn bộ đơn hàng (ORDER), giới hạn bởi fullSubtotal để đảm bảo maxDiscountValue được áp dụng đúng
-        // Nếu voucher áp dụng cho sản phẩm/category cụ thể, giới hạn bởi applicableSubtotal
-        if (voucher.getApplyScope() == null || voucher.getApplyScope() == DiscountApplyScope.ORDER) {
-            // Với voucher áp dụng cho toàn bộ đơn hàng, giới hạn bởi fullSubtotal để đảm bảo maxDiscountValue được áp dụng đúng
-            discount = Math.min(discount, fullSubtotal);
-        } else {
-            // Với voucher áp dụng cho sản phẩm/category cụ thể, giới hạn bởi applicableSubtotal
-            discount = Math.min(discount, applicableSubtotal);
-        }
-
-        cart.setAppliedVoucherCode(voucher.getCode());
-        cart.setAppliedVoucherId(voucher.getId());
-        cart.setVoucherDiscount(discount);
-        // Tổng sau voucher cũng làm tròn về đồng
-        cart.setTotalAmount((double) Math.round(Math.max(0.0, fullSubtotal - discount)));
-        return cartRepository.save(cart);
-    }
+            if (voucher.getUsagePerUser() != null && voucher.getUsagePerUser() > 0) {
+                // Số lần user đã dùng voucher này (sổ voucher_usages, không tính đơn hủy/hoàn tiền).
+                // Giới hạn được kiểm tra lại nguyên tử khi tạo đơn.
+                int userUsageCount = voucherUsageService.usedCount(voucher.getId(), cart.userId());
 
-    // Tính tổng giá trị đơn hàng có thể áp dụng voucher dựa trên phạm vi áp dụng của voucher
-    private double calculateApplicableSubtotal(Cart cart, Voucher voucher) {
-        if (voucher.getApplyScope() == null || voucher.getApplyScope() == DiscountApplyScope.ORDER) {
-
-            return cart.getSubtotal();
-        }
+                if (userUsageCount >= voucher.getUsagePerUser()) {
+                    throw new AppException(ErrorCode.VOUCHER_USAGE_LIMIT_EXCEEDED);
+                }
+            }
 
-        return cart.getCartItems().stream()
-                .filter(item -> {
-                    Product product = item.getProduct();
-                    if (product == null) {
-                        return false;
-                    }
-
-                    DiscountApplyScope scope = voucher.getApplyScope();
-                    if (scope == DiscountApplyScope.PRODUCT) {
-                        // Nếu sản phẩm có nằm trong danh sách sản phẩm của voucher, return true
-                        return voucher.getProductApply() != null
-                                && voucher.getProductApply().stream()
-                                .anyMatch(vp -> vp.getId().equals(product.getId()));
-                    } else if (scope == DiscountApplyScope.CATEGORY) {
-                        // Nếu danh mục sản phẩm có nằm trong danh sách danh mục của voucher, return true
-                        Category productCategory = product.getCategory();
-                        return productCategory != null
-                                && voucher.getCategoryApply() != null
-                                && voucher.getCategoryApply().stream()
-                                .anyMatch(vc -> vc.getId().equals(productCategory.getId()));
-                    }
-                    return false;
-                })
-                .mapToDouble(CartItem::getFinalPrice)
-                .sum();
+            // Tổng giá trị đơn hàng có thể áp dụng voucher, tính trên các dòng hàng trong bộ nhớ
+            double subtotal = cart.withVoucher(null).priced(today).subtotal();
+            if (!rule.meetsMinimum(rule.applicableSubtotal(cart.lines(), subtotal))) {
+                throw new AppException(ErrorCode.INVALID_VOUCHER_MINIUM);
+            }
+            return cart.withVoucher(rule);
+        });
     }
 
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
-    public Cart updateCartItemQuantity(String cartItemId, int quantity) {
-        Cart cart = getOrCreateCartForCurrentCustomer();
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new AppException(ErrorCode.CART_ITEM_NOT_EXISTED));
-
-        // Kiểm tra cartItem thuộc về cart của user hiện tại
-        if (!cartItem.getCart().getId().equals(cart.getId())) {
-            throw new AppException(ErrorCode.CART_ITEM_NOT_EXISTED);
-        }
-
-        // Nếu quantity <= 0, xóa item thay vì throw error
-        if (quantity <= 0) {
-            cartItemRepository.delete(cartItem);
-            cartRepository.flush();
-            cart = cartRepository.findById(cart.getId()).orElse(cart);
-        } else {
-            cartItem.setQuantity(quantity);
-            double finalPrice = cartItem.getQuantity() * cartItem.getUnitPrice();
-            cartItem.setFinalPrice(finalPrice);
-            cartItemRepository.save(cartItem);
-        }
-
-        recalcCartTotals(cart);
-        return cart;
+    public CartResponse updateCartItemQuantity(String cartItemId, int quantity) {
+        return mutate("updateQuantity", cart -> {
+            // Item phải thuộc giỏ của user hiện tại
+            CartAggregate.Line line = cart.line(cartItemId)
+                    .orElseThrow(() -> new AppException(ErrorCode.CART_ITEM_NOT_EXISTED));
+
+            // Nếu quantity <= 0, xóa item thay vì throw error
+            if (quantity <= 0) {
+                return cart.withoutLine(cartItemId);
+            }
+            return cart.withLine(line.withQuantity(quantity));
+        });
     }
 
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
-    public Cart removeCartItem(String cartItemId) {
-        Cart cart = getOrCreateCartForCurrentCustomer();
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new AppException(ErrorCode.CART_ITEM_NOT_EXISTED));
-
-        // Kiểm tra cartItem thuộc về cart của user hiện tại
-        if (!cartItem.getCart().getId().equals(cart.getId())) {
-            throw new AppException(ErrorCode.CART_ITEM_NOT_EXISTED);
-        }
-
-        // Xóa cartItem khỏi DB
-        cartItemRepository.delete(cartItem);
-
-        // Đồng bộ lại collection cartItems trong entity Cart hiện tại,
-        // tránh việc recalcCartTotals() save lại item vừa xóa.
-        if (cart.getCartItems() != null && !cart.getCartItems().isEmpty()) {
-            cart.getCartItems().removeIf(item -> cartItemId.equals(item.getId()));
-        }
-
-        // Tính lại tổng tiền sau khi đã loại bỏ item vừa xóa
-        recalcCartTotals(cart);
-        return cart;
+    public CartResponse removeCartItem(String cartItemId) {
+        return mutate("removeItem", cart -> {
+            // Item phải thuộc giỏ của user hiện tại
+            if (cart.line(cartItemId).isEmpty()) {
+                throw new AppException(ErrorCode.CART_ITEM_NOT_EXISTED);
+            }
+            return cart.withoutLine(cartItemId);
+        });
     }
 
     @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
-    public Cart clearVoucher() {
-        Cart cart = getOrCreateCartForCurrentCustomer();
-        cart.setAppliedVoucherCode(null);
-        cart.setAppliedVoucherId(null);
-        cart.setVoucherDiscount(0.0);
-        recalcCartTotals(cart);
-        return cart;
+    public CartResponse clearVoucher() {
+        return mutate("clearVoucher", cart -> cart.withVoucher(null));
+    }
+
+    public CartEngineStats stats() {
+        return cartAggregateCache.stats();
     }
 
     @Transactional
@@ -637,7 +320,7 @@ public class CartService {
     }
 
     @Transactional
-    public void removeCartItemsForOrder(User user, java.util.List<String> cartItemIds) {
+    public void removeCartItemsForOrder(User user, List<String> cartItemIds) {
         if (user == null || cartItemIds == null || cartItemIds.isEmpty()) {
             return;
         }
@@ -662,42 +345,135 @@ public class CartService {
         recalcCartTotals(cart);
     }
 
-    private boolean isPromotionActive(Promotion promotion, LocalDate today) {
-        if (promotion == null) return false;
+    /**
+     * Áp một thay đổi thuần lên giỏ hàng của user hiện tại và ghi kết quả; change trả lại chính cart nếu
+     * không có gì thay đổi. Ghi lại số query và thời gian của thao tác vào thống kê của CartAggregateCache.
+     */
+    private CartResponse mutate(String operation, UnaryOperator<CartAggregate> change) {
+        long startedAt = System.nanoTime();
+        long queriesBefore = QueryCounter.current();
+        String email = SecurityUtil.getAuthentication().getName();
 
-        if (promotion.getStatus() != PromotionStatus.APPROVED) {
-            return false;
+        CartAggregate current = cartAggregateCache.get(email);
+        if (current == null) {
+            // Trượt cache: đọc có khóa luôn vì thế nào cũng ghi
+            current = loadAggregate(email, true);
+        }
+        CartAggregate saved = write(current, change);
+        if (saved == null) {
+            // Bản cache đã cũ: đọc lại bản mới nhất có khóa, lần này không thể xung đột
+            cartAggregateCache.recordConflict();
+            saved = write(loadAggregate(email, true), change);
+            if (saved == null) {
+                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+            }
         }
-        if (!promotion.getIsActive()) {
-            return false;
+
+        cartAggregateCache.put(email, saved);
+        cartAggregateCache.recordOperation(
+                operation, System.nanoTime() - startedAt, QueryCounter.current() - queriesBefore);
+        return saved.toResponse();
+    }
+
+    /**
+     * Tính giỏ mới trong bộ nhớ rồi ghi: một UPDATE cart có điều kiện version, sau đó chỉ các dòng item
+     * được thêm/đổi số lượng/bị xóa. Trả về null nếu version hoặc item trong DB không còn khớp với current.
+     */
+    private CartAggregate write(CartAggregate current, UnaryOperator<CartAggregate> change) {
+        CartAggregate next = change.apply(current);
+        if (next == current) {
+            return current;
+        }
+        next = next.priced(LocalDate.now());
+
+        CartAggregate.VoucherRule voucher = next.voucher();
+        int updated = cartRepository.updateTotalsIfVersion(
+                next.cartId(),
+                current.version(),
+                next.subtotal(),
+                voucher != null ? voucher.code() : null,
+                voucher != null ? voucher.id() : null,
+                next.voucherDiscount(),
+                next.totalAmount());
+        if (updated == 0) {
+            return null;
         }
 
-        if (promotion.getStartDate() != null && promotion.getStartDate().isAfter(today)) {
-            return false;
+        Map<String, CartAggregate.Line> previous = new LinkedHashMap<>();
+        current.lines().forEach(line -> previous.put(line.itemId(), line));
+        List<CartAggregate.Line> lines = new ArrayList<>(next.lines().size());
+        for (CartAggregate.Line line : next.lines()) {
+            if (line.itemId() == null) {
+                CartItem item = cartItemRepository.save(CartItem.builder()
+                        .cart(cartRepository.getReferenceById(next.cartId()))
+                        .product(productRepository.getReferenceById(line.productId()))
+                        .unitPrice(line.unitPrice())
+                        .quantity(line.quantity())
+                        .finalPrice(line.finalPrice())
+                        .colorCode(line.colorCode())
+                        .build());
+                lines.add(line.withItemId(item.getId()));
+                continue;
+            }
+            CartAggregate.Line before = previous.remove(line.itemId());
+            if (before != null
+                    && before.quantity() != line.quantity()
+                    && cartItemRepository.updateQuantity(
+                                    next.cartId(), line.itemId(), line.quantity(), line.finalPrice())
+                            == 0) {
+                return null;
+            }
+            lines.add(line);
         }
-        if (promotion.getExpiryDate() != null && promotion.getExpiryDate().isBefore(today)) {
-            return false;
+        for (String removedId : previous.keySet()) {
+            if (cartItemRepository.deleteFromCart(next.cartId(), removedId) == 0) {
+                return null;
+            }
         }
-
-        return true;
+        return next.withLines(lines).withVersion(current.version() + 1);
     }
 
-    private double calculateDiscountAmount(Promotion promotion, double basePrice) {
-        if (basePrice <= 0 || promotion == null) return 0;
+    // Dựng CartAggregate từ DB: cart + item + sản phẩm trong một query, voucher đang áp dụng (nếu có) thêm một query
+    private CartAggregate loadAggregate(String email, boolean forUpdate) {
+        Cart cart = (forUpdate
+                        ? cartRepository.findByUserEmailWithItemsForUpdate(email)
+                        : cartRepository.findByUserEmailWithItems(email))
+                .orElseGet(() -> {
+                    User user = userRepository.findByEmail(email)
+                            .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
+                    return cartRepository.save(Cart.builder().user(user).build());
+                });
+        return CartAggregate.of(cart, cart.getCartItems(), voucherRuleOf(cart.getAppliedVoucherCode()));
+    }
 
-        double discountValue = promotion.getDiscountValue() != null ? promotion.getDiscountValue() : 0;
-        double discountAmount = 0;
+    private CartAggregate.VoucherRule voucherRuleOf(String code) {
+        if (code == null || code.isEmpty()) {
+            return null;
+        }
+        // Voucher không còn tồn tại: coi như không áp dụng, lần ghi kế tiếp sẽ gỡ khỏi giỏ
+        return voucherRepository.findByCode(code).map(CartAggregate.VoucherRule::of).orElse(null);
+    }
 
-        switch (promotion.getDiscountValueType()) {
-            case PERCENTAGE -> {
-                discountAmount = basePrice * (discountValue / 100.0);
-                Double maxDiscount = promotion.getMaxDiscountValue();
-                if (maxDiscount != null && maxDiscount > 0) {
-                    discountAmount = Math.min(discountAmount, maxDiscount);
-                }
-            }
-            case AMOUNT -> discountAmount = discountValue;
+    /**
+     * Tính lại tổng tiền cho giỏ hàng dạng entity (luồng đặt hàng) bằng cùng phép tính của CartAggregate,
+     * tăng version và bỏ ảnh chụp trong cache của user.
+     */
+    private void recalcCartTotals(Cart cart) {
+        // Query lại cartItems từ database để đảm bảo tính toán chính xác
+        List<CartItem> cartItems = cartItemRepository.findByCartId(cart.getId());
+        CartAggregate priced = CartAggregate.of(cart, cartItems, voucherRuleOf(cart.getAppliedVoucherCode()))
+                .priced(LocalDate.now());
+
+        // Voucher không còn dùng được thì bị gỡ khỏi cart
+        cart.setSubtotal(priced.subtotal());
+        cart.setAppliedVoucherCode(priced.voucher() != null ? priced.voucher().code() : null);
+        cart.setAppliedVoucherId(priced.voucher() != null ? priced.voucher().id() : null);
+        cart.setVoucherDiscount(priced.voucherDiscount());
+        cart.setTotalAmount(priced.totalAmount());
+        cartRepository.save(cart);
+        cartRepository.bumpVersion(cart.getId());
+        if (cart.getUser() != null) {
+            cartAggregateCache.invalidate(cart.getUser().getEmail());
         }
-        return Math.min(discountAmount, basePrice);
     }
 }
@@ -0,0 +1,251 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.dto.response.CatalogHttpCacheStats;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache HTTP cho các GET công khai của catalog (/products, /categories, /banners, /promotions, /vouchers, /reviews).
+ *
+ * - Mỗi nhóm dữ liệu (Family) có một phiên bản; các service gọi onChanged sau khi thay đổi dữ liệu,
+ *   phiên bản tăng khi transaction commit.
+ * - ETag mạnh = phiên bản của nhóm và các nhóm mà response của nó hiển thị (sản phẩm có giá khuyến mãi,
+ *   tên danh mục, điểm đánh giá, tồn kho...) + ngày hiện tại (khuyến mãi/voucher hiệu lực theo ngày) + URL.
+ *   ETag tính được mà không đọc DB nên If-None-Match khớp thì trả 304 ngay.
+ * - Body JSON đã serialize của các response được giữ trong LRU (giới hạn số entry, kích thước, TTL) và trả
+ *   thẳng bytes cho request sau khi ETag còn khớp.
+ * - Các endpoint theo người dùng hoặc cần quyền (my-*, pending, all-reviews) không bao giờ được cache.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CatalogHttpCache {
+
+    // Endpoint GET trả dữ liệu riêng của người đăng nhập hoặc yêu cầu quyền: luôn đi vào controller
+    private static final Set<String> EXCLUDED_PATHS = Set.of(
+            "/products/my-products",
+            "/products/pending",
+            "/promotions/my-promotions",
+            "/promotions/pending",
+            "/vouchers/my",
+            "/vouchers/pending",
+            "/reviews/my-reviews",
+            "/reviews/all-reviews");
+
+    public enum Family {
+        PRODUCTS("/products"),
+        CATEGORIES("/categories"),
+        BANNERS("/banners"),
+        PROMOTIONS("/promotions"),
+        VOUCHERS("/vouchers"),
+        REVIEWS("/reviews"),
+        // Tồn kho và số đã bán: chỉ hiển thị trong response sản phẩm, thay đổi theo từng đơn hàng
+        STOCK(null);
+
+        final String prefix;
+
+        Family(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    // Response của mỗi nhóm hiển thị dữ liệu của những nhóm nào
+    private static final Map<Family, Set<Family>> DEPENDENCIES = new EnumMap<>(Map.of(
+            Family.PRODUCTS, EnumSet.of(
+                    Family.PRODUCTS, Family.CATEGORIES, Family.PROMOTIONS, Family.REVIEWS, Family.STOCK),
+            Family.CATEGORIES, EnumSet.of(Family.CATEGORIES, Family.PRODUCTS),
+            Family.BANNERS, EnumSet.of(Family.BANNERS, Family.PRODUCTS),
+            Family.PROMOTIONS, EnumSet.of(Family.PROMOTIONS, Family.PRODUCTS, Family.CATEGORIES),
+            Family.VOUCHERS, EnumSet.of(Family.VOUCHERS, Family.PRODUCTS, Family.CATEGORIES),
+            Family.REVIEWS, EnumSet.of(Family.REVIEWS, Family.PRODUCTS),
+            Family.STOCK, EnumSet.of(Family.STOCK)));
+
+    int maxEntries;
+    int maxEntryBytes;
+    long ttlMillis;
+    CacheControl cacheControl;
+
+    // Phân biệt ETag giữa các lần khởi động (phiên bản bắt đầu lại từ 0)
+    long startedAt = System.currentTimeMillis();
+    AtomicLongArray versions = new AtomicLongArray(Family.values().length);
+    AtomicLongArray lastModified = new AtomicLongArray(Family.values().length);
+
+    AtomicLong hits = new AtomicLong();
+    AtomicLong misses = new AtomicLong();
+    AtomicLong notModified = new AtomicLong();
+    AtomicLong evictions = new AtomicLong();
+
+    Map<String, CachedBody> entries;
+
+    public CatalogHttpCache(
+            @Value("${http-cache.max-entries:500}") int maxEntries,
+            @Value("${http-cache.max-entry-kb:1024}") int maxEntryKb,
+            @Value("${http-cache.ttl-seconds:600}") long ttlSeconds,
+            @Value("${http-cache.max-age-seconds:0}") long maxAgeSeconds) {
+        this.maxEntries = maxEntries;
+        this.maxEntryBytes = maxEntryKb * 1024;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS)
+                .cachePublic()
+                .mustRevalidate();
+        for (int i = 0; i < lastModified.length(); i++) {
+            lastModified.set(i, startedAt);
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+                if (size() > CatalogHttpCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * ETag và Last-Modified hiện tại của một GET; null nếu đường dẫn không thuộc catalog công khai.
+     */
+    public Lookup lookup(String path, String query) {
+        Family family = familyOf(path);
+        if (family == null) {
+            return null;
+        }
+        long version = 0;
+        long modifiedAt = 0;
+        for (Family dependency : DEPENDENCIES.get(family)) {
+            version += versions.get(dependency.ordinal());
+            modifiedAt = Math.max(modifiedAt, lastModified.get(dependency.ordinal()));
+        }
+        LocalDate today = LocalDate.now();
+        long startOfDay = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String key = query != null ? path + "?" + query : path;
+        String etag = "\"" + Long.toHexString(startedAt)
+                + "-" + Long.toHexString(version)
+                + "-" + Long.toHexString(today.toEpochDay())
+                + "-" + Integer.toHexString(key.hashCode()) + "\"";
+        return new Lookup(family, key, etag, Math.max(modifiedAt, startOfDay));
+    }
+
+    public CacheControl cacheControl() {
+        return cacheControl;
+    }
+
+    public CachedBody get(Lookup lookup) {
+        synchronized (entries) {
+            CachedBody cached = entries.get(lookup.key());
+            if (cached != null
+                    && cached.etag().equals(lookup.etag())
+                    && System.currentTimeMillis() - cached.createdAt() <= ttlMillis) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            if (cached != null) {
+                entries.remove(lookup.key());
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // ETag của lookup được tính trước khi controller đọc DB nên body không bao giờ cũ hơn ETag của nó
+    public void put(Lookup lookup, byte[] body, String contentType) {
+        if (body.length > maxEntryBytes) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(lookup.key(),
+                    new CachedBody(lookup.family(), lookup.etag(), body, contentType, System.currentTimeMillis()));
+        }
+    }
+
+    public void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Dữ liệu của các nhóm thay đổi: tăng phiên bản sau khi transaction commit (không có transaction thì tăng ngay)
+     * và bỏ các body đã cache của những nhóm hiển thị dữ liệu đó.
+     */
+    public void onChanged(Family... families) {
+        TransactionUtil.afterCommit(() -> bump(families));
+    }
+
+    private void bump(Family... families) {
+        long now = System.currentTimeMillis();
+        Set<Family> changed = EnumSet.noneOf(Family.class);
+        for (Family family : families) {
+            versions.incrementAndGet(family.ordinal());
+            lastModified.accumulateAndGet(family.ordinal(), now, Math::max);
+            changed.add(family);
+        }
+        synchronized (entries) {
+            Iterator<CachedBody> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Set<Family> dependencies = DEPENDENCIES.get(it.next().family());
+                if (changed.stream().anyMatch(dependencies::contains)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public CatalogHttpCacheStats stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Long> familyVersions = new LinkedHashMap<>();
+        for (Family family : Family.values()) {
+            familyVersions.put(family.name(), versions.get(family.ordinal()));
+        }
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return CatalogHttpCacheStats.builder()
+                .size(size)
+                .maxEntries(maxEntries)
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRate(hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount))
+                .notModified(notModified.get())
+                .evictions(evictions.get())
+                .versions(familyVersions)
+                .build();
+    }
+
+    private static Family familyOf(String path) {
+        if (path == null || EXCLUDED_PATHS.contains(path)) {
+            return null;
+        }
+        for (Family family : Family.values()) {
+            if (family.prefix != null && (path.equals(family.prefix) || path.startsWith(family.prefix + "/"))) {
+                return family;
+            }
+        }
+        return null;
+    }
+
+    public record Lookup(Family family, String key, String etag, long lastModified) {}
+
+    public record CachedBody(Family family, String etag, byte[] body, String contentType, long createdAt) {}
+}
@@ -1,7 +1,10 @@
 package com.hanoi_metro.backend.service;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -30,6 +33,10 @@ public class CategoryService {
 
     CategoryRepository categoryRepository;
     CategoryMapper categoryMapper;
+    EffectivePriceIndex effectivePriceIndex;
+    ChatbotResponseCache chatbotResponseCache;
+    CategoryTreeCache categoryTreeCache;
+    CatalogHttpCache catalogHttpCache;
 
     @Transactional
     @PreAuthorize("hasRole('ADMIN')")
@@ -60,6 +67,9 @@ public class CategoryService {
 
         try {
             Category savedCategory = categoryRepository.save(category);
+            categoryTreeCache.onCategoryTreeChanged();
+            catalogHttpCache.onChanged(CatalogHttpCache.Family.CATEGORIES);
+            chatbotResponseCache.onCategoryTreeChanged();
             log.info("Category created with ID: {}", savedCategory.getId());
             return categoryMapper.toResponse(savedCategory);
         } catch (DataIntegrityViolationException e) {
@@ -77,6 +87,7 @@ public class CategoryService {
         return categoryMapper.toResponse(category);
     }
 
+    @Transactional(readOnly = true)
     public List<CategoryResponse> getAllCategories() {
         List<Category> categories = categoryRepository.findAll();
 
@@ -89,6 +100,7 @@ public class CategoryService {
         return rootCategories.stream().map(categoryMapper::toResponse).toList();
     }
 
+    @Transactional(readOnly = true)
     public List<CategoryResponse> getSubCategories(String parentId) {
         List<Category> subCategories = categoryRepository.findByParentCategoryId(parentId);
 
@@ -153,6 +165,11 @@ public class CategoryService {
             // Delete old category (since we already checked there are no subcategories, this is safe)
             categoryRepository.delete(category);
             
+            // Quan hệ cha-con có thể đổi: promotion theo danh mục áp dụng lại cho cây mới
+            categoryTreeCache.onCategoryTreeChanged();
+            catalogHttpCache.onChanged(CatalogHttpCache.Family.CATEGORIES);
+            effectivePriceIndex.invalidateAll();
+            chatbotResponseCache.onCategoryTreeChanged();
             log.info("Category updated: {} -> {}", categoryId, newId);
             return categoryMapper.toResponse(savedCategory);
         } else {
@@ -174,11 +191,28 @@ public class CategoryService {
 
 
             Category savedCategory = categoryRepository.save(category);
+            // Quan hệ cha-con có thể đổi: promotion theo danh mục áp dụng lại cho cây mới
+            categoryTreeCache.onCategoryTreeChanged();
+            catalogHttpCache.onChanged(CatalogHttpCache.Family.CATEGORIES);
+            effectivePriceIndex.invalidateAll();
+            chatbotResponseCache.onCategoryTreeChanged();
             log.info("Category updated: {}", categoryId);
             return categoryMapper.toResponse(savedCategory);
         }
     }
 
+    // Số sản phẩm của nhiều danh mục trong một câu query (danh mục không có sản phẩm không có trong map)
+    public Map<String, Long> productCounts(Collection<String> categoryIds) {
+        Map<String, Long> counts = new HashMap<>();
+        if (categoryIds.isEmpty()) {
+            return counts;
+        }
+        for (Object[] row : categoryRepository.countProductsByCategoryIds(categoryIds)) {
+            counts.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
     @Transactional
     @PreAuthorize("hasRole('ADMIN')")
     public void deleteCategory(String categoryId) {
@@ -197,6 +231,9 @@ public class CategoryService {
         }
 
         categoryRepository.delete(category);
+        categoryTreeCache.onCategoryTreeChanged();
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.CATEGORIES);
+        chatbotResponseCache.onCategoryTreeChanged();
         log.info("Category deleted: {}", categoryId);
     }
 }
@@ -0,0 +1,222 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.repository.CategoryRepository;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cây danh mục dựng sẵn trong bộ nhớ từ một câu query (id, tên, trạng thái, cha).
+ *
+ * - Duyệt cây theo thứ tự trước (Euler tour): mỗi danh mục giữ khoảng [enter, exit) trên thứ tự duyệt nên cây
+ *   con của nó là một đoạn liên tiếp, lấy danh sách con cháu là O(1) và kiểm tra "A thuộc cây con của B" là O(1).
+ * - Mỗi danh mục giữ sẵn đường đi tới gốc (chính nó, cha, ..., gốc).
+ * - CategoryService tạo/sửa/xóa danh mục thì cây được dựng lại sau khi transaction commit và thay tham chiếu
+ *   một lần (copy-on-write): người đọc luôn thấy một cây hoàn chỉnh mà không cần khóa.
+ * - Danh mục chưa có trong cây (vừa tạo, chưa commit) được coi là lá không có cha.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CategoryTreeCache {
+
+    CategoryRepository categoryRepository;
+
+    @NonFinal
+    volatile Tree tree;
+
+    public Tree tree() {
+        Tree current = tree;
+        return current != null ? current : rebuild();
+    }
+
+    public Optional<Node> node(String categoryId) {
+        return Optional.ofNullable(tree().nodes().get(categoryId));
+    }
+
+    // Danh mục và toàn bộ con cháu của nó (thứ tự duyệt cây)
+    public List<String> subtreeIds(String categoryId) {
+        Tree current = tree();
+        Node node = current.nodes().get(categoryId);
+        return node != null ? current.order().subList(node.enter(), node.exit()) : List.of(categoryId);
+    }
+
+    // Danh mục rồi lần lượt các danh mục cha tới gốc
+    public List<String> pathToRoot(String categoryId) {
+        if (categoryId == null) {
+            return List.of();
+        }
+        Node node = tree().nodes().get(categoryId);
+        return node != null ? node.pathToRoot() : List.of(categoryId);
+    }
+
+    // categoryId nằm trong cây con của rootId (kể cả chính rootId)
+    public boolean isInSubtree(String categoryId, String rootId) {
+        Tree current = tree();
+        Node node = current.nodes().get(categoryId);
+        Node root = current.nodes().get(rootId);
+        if (node == null || root == null) {
+            return categoryId != null && categoryId.equals(rootId);
+        }
+        return root.enter() <= node.enter() && node.enter() < root.exit();
+    }
+
+    public List<Node> children(String categoryId) {
+        Tree current = tree();
+        Node node = current.nodes().get(categoryId);
+        if (node == null) {
+            return List.of();
+        }
+        return node.childIds().stream().map(current.nodes()::get).toList();
+    }
+
+    public Collection<Node> all() {
+        return tree().nodes().values();
+    }
+
+    /**
+     * Cây danh mục thay đổi: dựng lại sau khi transaction commit (không có transaction thì dựng ngay).
+     */
+    public void onCategoryTreeChanged() {
+        TransactionUtil.afterCommit(this::rebuild);
+    }
+
+    public synchronized Tree rebuild() {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        for (Object[] row : categoryRepository.findAllTreeNodes()) {
+            if (row[0] != null) {
+                rows.put((String) row[0], new Row((String) row[0], (String) row[1], (Boolean) row[2], (String) row[3]));
+            }
+        }
+
+        Map<String, List<String>> childrenOf = new HashMap<>();
+        List<String> roots = new ArrayList<>();
+        for (Row row : rows.values()) {
+            if (row.parentId() != null && rows.containsKey(row.parentId())) {
+                childrenOf.computeIfAbsent(row.parentId(), k -> new ArrayList<>()).add(row.id());
+            } else {
+                roots.add(row.id());
+            }
+        }
+        Comparator<String> byName = Comparator.comparing(
+                (String id) -> rows.get(id).name(), Comparator.nullsLast(Comparator.naturalOrder()));
+        roots.sort(byName);
+        childrenOf.values().forEach(children -> children.sort(byName));
+
+        List<String> order = new ArrayList<>(rows.size());
+        Map<String, Integer> enter = new HashMap<>();
+        Map<String, Integer> exit = new HashMap<>();
+        Map<String, List<String>> paths = new HashMap<>();
+        Set<String> visited = new HashSet<>();
+        List<String> starts = new ArrayList<>(roots);
+        // Danh mục nằm trong vòng lặp cha-con (dữ liệu hỏng) không tới được từ gốc: coi như gốc riêng
+        rows.keySet().stream().sorted(byName).forEach(starts::add);
+        for (String start : starts) {
+            if (!visited.contains(start)) {
+                walk(start, childrenOf, visited, order, enter, exit, paths);
+            }
+        }
+
+        Map<String, Node> nodes = new HashMap<>();
+        List<String> frozenOrder = Collections.unmodifiableList(order);
+        for (Row row : rows.values()) {
+            nodes.put(row.id(), new Node(
+                    row.id(),
+                    row.name(),
+                    row.status(),
+                    row.parentId(),
+                    List.copyOf(childrenOf.getOrDefault(row.id(), List.of())),
+                    paths.get(row.id()),
+                    enter.get(row.id()),
+                    exit.get(row.id())));
+        }
+        Tree built = new Tree(Map.copyOf(nodes), frozenOrder, List.copyOf(roots));
+        tree = built;
+        log.info("Category tree rebuilt: {} categories, {} roots", nodes.size(), roots.size());
+        return built;
+    }
+
+    // DFS không đệ quy; enter = vị trí khi vào, exit = vị trí sau con cháu cuối cùng
+    private static void walk(
+            String start,
+            Map<String, List<String>> childrenOf,
+            Set<String> visited,
+            List<String> order,
+            Map<String, Integer> enter,
+            Map<String, Integer> exit,
+            Map<String, List<String>> paths) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        visited.add(start);
+        enter.put(start, order.size());
+        order.add(start);
+        paths.put(start, List.of(start));
+        stack.push(new Frame(start, 0));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.pop();
+            List<String> children = childrenOf.getOrDefault(frame.id(), List.of());
+            if (frame.nextChild() < children.size()) {
+                stack.push(new Frame(frame.id(), frame.nextChild() + 1));
+                String child = children.get(frame.nextChild());
+                if (visited.add(child)) {
+                    enter.put(child, order.size());
+                    order.add(child);
+                    List<String> path = new ArrayList<>(paths.get(frame.id()).size() + 1);
+                    path.add(child);
+                    path.addAll(paths.get(frame.id()));
+                    paths.put(child, List.copyOf(path));
+                    stack.push(new Frame(child, 0));
+                }
+            } else {
+                exit.put(frame.id(), order.size());
+            }
+        }
+    }
+
+    /**
+     * Ảnh chụp bất biến của cây.
+     */
+    public record Tree(Map<String, Node> nodes, List<String> order, List<String> roots) {}
+
+    /**
+     * Một danh mục trong cây: cây con là order[enter, exit).
+     */
+    public record Node(
+            String id,
+            String name,
+            Boolean status,
+            String parentId,
+            List<String> childIds,
+            List<String> pathToRoot,
+            int enter,
+            int exit) {
+
+        public boolean isActive() {
+            return Boolean.TRUE.equals(status);
+        }
+    }
+
+    private record Row(String id, String name, Boolean status, String parentId) {}
+
+    private record Frame(String id, int nextChild) {}
+}
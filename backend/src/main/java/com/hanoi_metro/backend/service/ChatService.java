@@ -1,24 +1,35 @@
 package com.hanoi_metro.backend.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.hanoi_metro.backend.dto.request.SendMessageRequest;
+import com.hanoi_metro.backend.dto.response.ChatConversationPageResponse;
 import com.hanoi_metro.backend.dto.response.ChatConversationResponse;
+import com.hanoi_metro.backend.dto.response.ChatMessagePageResponse;
 import com.hanoi_metro.backend.dto.response.ChatMessageResponse;
+import com.hanoi_metro.backend.dto.response.UserEvent;
 import com.hanoi_metro.backend.dto.response.UserResponse;
 import com.hanoi_metro.backend.entity.ChatMessage;
+import com.hanoi_metro.backend.entity.ConversationSummary;
 import com.hanoi_metro.backend.entity.User;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
 import com.hanoi_metro.backend.repository.ChatMessageRepository;
+import com.hanoi_metro.backend.repository.ConversationSummaryRepository;
 import com.hanoi_metro.backend.repository.UserRepository;
 import com.hanoi_metro.backend.util.SecurityUtil;
+import com.hanoi_metro.backend.util.TransactionUtil;
 
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -31,9 +42,16 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ChatService {
 
+    static final int DEFAULT_PAGE_SIZE = 30;
+    static final int MAX_PAGE_SIZE = 100;
+
     ChatMessageRepository chatMessageRepository;
+    ConversationSummaryRepository conversationSummaryRepository;
+    ConversationSummaryService conversationSummaryService;
     UserRepository userRepository;
     NotificationService notificationService;
+    UnreadCounters unreadCounters;
+    UserEventHub userEventHub;
 
     @Transactional
     @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
@@ -69,6 +87,9 @@ public class ChatService {
                         .build();
 
         ChatMessage saved = chatMessageRepository.save(chatMessage);
+        conversationSummaryService.record(saved);
+        ChatMessageResponse response = toResponse(saved);
+        publish(saved, response);
 
         // Gửi notification cho người nhận
         try {
@@ -85,7 +106,7 @@ public class ChatService {
             log.error("Failed to send notification for chat message: {}", e.getMessage());
         }
 
-        return toResponse(saved);
+        return response;
     }
 
     /**
@@ -120,6 +141,9 @@ public class ChatService {
                 .build();
 
         ChatMessage saved = chatMessageRepository.save(chatMessage);
+        conversationSummaryService.record(saved);
+        ChatMessageResponse response = toResponse(saved);
+        publish(saved, response);
 
         // Gửi notification cho CSKH
         try {
@@ -133,7 +157,7 @@ public class ChatService {
             log.error("Failed to send notification for chatbot message: {}", e.getMessage());
         }
 
-        return toResponse(saved);
+        return response;
     }
 
     @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
@@ -176,158 +200,136 @@ public class ChatService {
         return messages.stream().map(this::toResponse).collect(Collectors.toList());
     }
 
+    /**
+     * Một trang lịch sử tin nhắn với partner theo keyset (mới nhất trước), dùng cùng phạm vi hội thoại như
+     * {@link #getConversation(String)}. Tin nhắn trong trang trả về theo thời gian tăng dần.
+     *
+     * @param cursor nextCursor của trang trước (tin cũ hơn), null cho trang mới nhất
+     */
+    @Transactional(readOnly = true)
     @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
-    public List<ChatConversationResponse> getConversations() {
-        String currentUserEmail = SecurityUtil.getCurrentUserEmail();
-        User currentUser =
+    public ChatMessagePageResponse getConversationPage(String partnerId, String cursor, Integer limit) {
+        User currentUser = getCurrentUser();
+        User partner =
                 userRepository
-                        .findByEmail(currentUserEmail)
+                        .findById(partnerId)
                         .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
 
-        List<User> partners;
-        
-        // Nếu là CSKH, lấy TẤT CẢ customers có conversation với bất kỳ CSKH nào
-        if (currentUser.getRole() != null && "CUSTOMER_SUPPORT".equals(currentUser.getRole().getName())) {
-            List<User> customersAsSender = chatMessageRepository.findCustomersAsSender();
-            List<User> customersAsReceiver = chatMessageRepository.findCustomersAsReceiver();
-            
-            // Kết hợp và loại bỏ duplicate
-            java.util.Set<String> partnerIds = new java.util.HashSet<>();
-            partners = new java.util.ArrayList<>();
-            
-            for (User customer : customersAsSender) {
-                if (!partnerIds.contains(customer.getId())) {
-                    partnerIds.add(customer.getId());
-                    partners.add(customer);
-                }
-            }
-            for (User customer : customersAsReceiver) {
-                if (!partnerIds.contains(customer.getId())) {
-                    partnerIds.add(customer.getId());
-                    partners.add(customer);
-                }
-            }
-        } else {
-            // Nếu là CUSTOMER, giữ nguyên logic cũ
-            List<User> partnersAsSender =
-                    chatMessageRepository.findChatPartnersAsSender(currentUser.getId());
-            List<User> partnersAsReceiver =
-                    chatMessageRepository.findChatPartnersAsReceiver(currentUser.getId());
-
-            // Kết hợp và loại bỏ duplicate
-            java.util.Set<String> partnerIds = new java.util.HashSet<>();
-            partners = new java.util.ArrayList<>();
-
-            for (User partner : partnersAsSender) {
-                if (!partnerIds.contains(partner.getId())) {
-                    partnerIds.add(partner.getId());
-                    partners.add(partner);
-                }
-            }
-            for (User partner : partnersAsReceiver) {
-                if (!partnerIds.contains(partner.getId())) {
-                    partnerIds.add(partner.getId());
-                    partners.add(partner);
-                }
-            }
+        int size = pageSize(limit);
+        Cursor before = decodeCursor(cursor);
+        LocalDateTime cursorTime = before != null ? before.time() : null;
+        String cursorId = before != null ? before.id() : null;
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        String customerId = supportThreadCustomerId(currentUser, partner);
+        List<ChatMessage> rows = customerId != null
+                ? chatMessageRepository.findCustomerConversationPageBefore(customerId, cursorTime, cursorId, page)
+                : chatMessageRepository.findConversationPageBefore(
+                        currentUser.getId(), partner.getId(), cursorTime, cursorId, page);
+
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+        String nextCursor = hasNext
+                ? encodeCursor(rows.get(rows.size() - 1).getCreatedAt(), rows.get(rows.size() - 1).getId())
+                : null;
+        List<ChatMessageResponse> messages = new ArrayList<>(rows.stream().map(this::toResponse).toList());
+        Collections.reverse(messages);
+        return ChatMessagePageResponse.builder()
+                .messages(messages)
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .limit(size)
+                .build();
+    }
+
+    /**
+     * Hộp thư: một truy vấn phân trang trên conversation_summaries (tin cuối, số chưa đọc), không đọc
+     * lịch sử tin nhắn. CSKH dùng chung hộp thư các hội thoại với khách hàng.
+     *
+     * @param cursor nextCursor của trang trước, null cho trang đầu
+     */
+    @Transactional(readOnly = true)
+    @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
+    public ChatConversationPageResponse getConversations(String cursor, Integer limit) {
+        User currentUser = getCurrentUser();
+        int size = pageSize(limit);
+        Cursor after = decodeCursor(cursor);
+
+        List<ConversationSummaryRepository.InboxRow> rows = conversationSummaryRepository.findInboxAfter(
+                ConversationSummaryService.inboxOwnerOf(currentUser),
+                after != null ? after.time() : null,
+                after != null ? after.id() : null,
+                PageRequest.of(0, size + 1));
+
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
         }
+        String nextCursor = hasNext
+                ? encodeCursor(rows.get(rows.size() - 1).getLastMessageAt(), rows.get(rows.size() - 1).getId())
+                : null;
+        return ChatConversationPageResponse.builder()
+                .conversations(rows.stream().map(ChatService::toConversationResponse).toList())
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .limit(size)
+                .build();
+    }
 
-        return partners.stream()
-                .map(
-                        partner -> {
-                            List<ChatMessage> messages;
-                            
-                            // Nếu là CSKH, lấy TẤT CẢ messages của customer với bất kỳ CSKH nào
-                            if (currentUser.getRole() != null && "CUSTOMER_SUPPORT".equals(currentUser.getRole().getName())) {
-                                messages = chatMessageRepository.findCustomerConversationWithAnySupport(partner.getId());
-                            } else {
-                                // Nếu là CUSTOMER, lấy messages giữa currentUser và partner
-                                messages = chatMessageRepository.findConversationBetweenUsers(
-                                        currentUser.getId(), partner.getId());
-                            }
-
-                            ChatMessage lastMessage =
-                                    messages.isEmpty()
-                                            ? null
-                                            : messages.get(messages.size() - 1);
-
-                            // Đếm unread từ partner này (chỉ đếm messages mà currentUser là receiver)
-                            Long unreadFromPartner =
-                                    messages.stream()
-                                            .filter(
-                                                    m ->
-                                                            m.getReceiver()
-                                                                            .getId()
-                                                                            .equals(
-                                                                                    currentUser
-                                                                                            .getId())
-                                                                    && !m.getIsRead())
-                                            .count();
-
-                            return ChatConversationResponse.builder()
-                                    .partnerId(partner.getId())
-                                    .partnerName(
-                                            partner.getFullName() != null
-                                                    ? partner.getFullName()
-                                                    : partner.getEmail())
-                                    .partnerEmail(partner.getEmail())
-                                    .lastMessage(
-                                            lastMessage != null
-                                                    ? lastMessage.getMessage()
-                                                    : null)
-                                    .lastMessageTime(
-                                            lastMessage != null
-                                                    ? lastMessage.getCreatedAt()
-                                                    : null)
-                                    .unreadCount(unreadFromPartner)
-                                    .messages(
-                                            messages.stream()
-                                                    .map(this::toResponse)
-                                                    .collect(Collectors.toList()))
-                                    .build();
-                        })
-                .sorted(
-                        (a, b) -> {
-                            // Sắp xếp theo thời gian tin nhắn cuối cùng (mới nhất trước)
-                            if (a.getLastMessageTime() == null
-                                    && b.getLastMessageTime() == null) return 0;
-                            if (a.getLastMessageTime() == null) return 1;
-                            if (b.getLastMessageTime() == null) return -1;
-                            return b.getLastMessageTime().compareTo(a.getLastMessageTime());
-                        })
-                .collect(Collectors.toList());
+    /**
+     * Một hội thoại trong hộp thư của user hiện tại (tên/email đối tác, trạng thái hỗ trợ), không phụ thuộc
+     * hội thoại nằm ở trang nào của hộp thư.
+     */
+    @Transactional(readOnly = true)
+    @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
+    public ChatConversationResponse getConversationSummary(String partnerId) {
+        User currentUser = getCurrentUser();
+        return conversationSummaryRepository
+                .findInboxRow(ConversationSummaryService.inboxOwnerOf(currentUser), partnerId)
+                .map(ChatService::toConversationResponse)
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
+    }
+
+    private static ChatConversationResponse toConversationResponse(ConversationSummaryRepository.InboxRow row) {
+        return ChatConversationResponse.builder()
+                .partnerId(row.getPartnerId())
+                .partnerName(row.getPartnerName() != null ? row.getPartnerName() : row.getPartnerEmail())
+                .partnerEmail(row.getPartnerEmail())
+                .lastMessage(row.getLastMessage())
+                .lastSenderId(row.getLastSenderId())
+                .lastMessageTime(row.getLastMessageAt())
+                .unreadCount(row.getUnreadCount())
+                .supportStatus(row.getSupportStatus())
+                .acceptedById(row.getAcceptedById())
+                .acceptedByName(row.getAcceptedByName())
+                .build();
     }
 
     @Transactional
     @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
     public void markAsRead(String partnerId) {
-        String currentUserEmail = SecurityUtil.getCurrentUserEmail();
-        User currentUser =
-                userRepository
-                        .findByEmail(currentUserEmail)
-                        .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
-
+        User currentUser = getCurrentUser();
         User partner =
                 userRepository
                         .findById(partnerId)
                         .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
 
-        List<ChatMessage> unreadMessages =
-                chatMessageRepository.findConversationBetweenUsers(
-                                currentUser.getId(), partner.getId()).stream()
-                        .filter(
-                                m ->
-                                        m.getReceiver()
-                                                        .getId()
-                                                        .equals(currentUser.getId())
-                                                && !m.getIsRead())
-                        .collect(Collectors.toList());
-
-        for (ChatMessage message : unreadMessages) {
-            message.setIsRead(true);
-            message.setReadAt(LocalDateTime.now());
-            chatMessageRepository.save(message);
+        LocalDateTime now = LocalDateTime.now();
+        if (ConversationSummaryService.isSupport(currentUser) && ConversationSummaryService.isCustomer(partner)) {
+            // Hội thoại dùng chung của đội CSKH: một CSKH đọc là cả đội thấy đã đọc
+            chatMessageRepository.markCustomerMessagesReadBySupport(partner.getId(), now);
+            conversationSummaryService.markRead(ConversationSummary.SUPPORT_TEAM, partner.getId());
+            TransactionUtil.afterCommit(unreadCounters::invalidateAllChat);
+        } else {
+            chatMessageRepository.markReadFrom(partner.getId(), currentUser.getId(), now);
+            conversationSummaryService.markRead(currentUser.getId(), partner.getId());
+            String currentUserId = currentUser.getId();
+            TransactionUtil.afterCommit(() -> unreadCounters.invalidateChat(currentUserId));
         }
+        userEventHub.publishUnread(currentUser.getId());
     }
 
     @PreAuthorize("hasAnyRole('CUSTOMER', 'CUSTOMER_SUPPORT')")
@@ -338,7 +340,7 @@ public class ChatService {
                         .findByEmail(currentUserEmail)
                         .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
 
-        return chatMessageRepository.countUnreadMessages(currentUser.getId());
+        return unreadCounters.chat(currentUser.getId());
     }
 
     @PreAuthorize("hasRole('CUSTOMER')")
@@ -367,6 +369,70 @@ public class ChatService {
                 .build();
     }
 
+    private User getCurrentUser() {
+        return userRepository
+                .findByEmail(SecurityUtil.getCurrentUserEmail())
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
+    }
+
+    // Hội thoại khách hàng - CSKH gộp tin với mọi CSKH: trả về id khách hàng, null nếu là hội thoại hai người
+    private String supportThreadCustomerId(User currentUser, User partner) {
+        if (ConversationSummaryService.isSupport(currentUser) && ConversationSummaryService.isCustomer(partner)) {
+            return partner.getId();
+        }
+        if (ConversationSummaryService.isCustomer(currentUser) && ConversationSummaryService.isSupport(partner)) {
+            return currentUser.getId();
+        }
+        return null;
+    }
+
+    private static int pageSize(Integer limit) {
+        return limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    // Cursor = base64url("time|id")
+    private static String encodeCursor(LocalDateTime time, String id) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((time + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            String id = raw.substring(separator + 1);
+            if (separator < 0 || id.isBlank()) {
+                throw new AppException(ErrorCode.BAD_REQUEST);
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), id);
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Invalid chat cursor: {}", cursor);
+            throw new AppException(ErrorCode.BAD_REQUEST);
+        }
+    }
+
+    private record Cursor(LocalDateTime time, String id) {}
+
+    // Đẩy tin nhắn tới người nhận và các tab khác của người gửi, cộng số chưa đọc của người nhận (sau commit).
+    // Hội thoại khách hàng - CSKH dùng chung cho cả đội nên mọi CSKH đều nhận sự kiện.
+    private void publish(ChatMessage saved, ChatMessageResponse response) {
+        String receiverId = saved.getReceiver().getId();
+        TransactionUtil.afterCommit(() -> unreadCounters.incrementChat(receiverId));
+
+        List<String> recipients = new ArrayList<>(List.of(receiverId, saved.getSender().getId()));
+        if (ConversationSummaryService.isSupport(saved.getSender())
+                || ConversationSummaryService.isSupport(saved.getReceiver())) {
+            recipients.addAll(userRepository.findIdsByRoleName("CUSTOMER_SUPPORT"));
+        }
+        userEventHub.publish(recipients, UserEvent.CHAT_MESSAGE, response);
+    }
+
     private ChatMessageResponse toResponse(ChatMessage message) {
         return ChatMessageResponse.builder()
                 .id(message.getId())
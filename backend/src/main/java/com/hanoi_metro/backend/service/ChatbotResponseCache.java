@@ -0,0 +1,154 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.dto.response.ChatbotCacheStats;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache câu trả lời chatbot cho các câu hỏi lặp lại ("có son gì", "son dior", chào hỏi).
+ *
+ * Khóa = câu hỏi đã chuẩn hóa (bỏ dấu, bỏ dấu câu, tập từ không phụ thuộc thứ tự) + phiên bản catalog
+ * + phiên bản cây danh mục. ProductService/CategoryService tăng phiên bản khi dữ liệu thay đổi nên câu trả
+ * lời cũ không bao giờ được dùng lại. LRU giới hạn số entry, TTL giới hạn tuổi của câu trả lời.
+ * Chỉ cache câu hỏi đầu tiên của phiên vì câu trả lời giữa hội thoại phụ thuộc lịch sử.
+ *
+ * Khóa được tính một lần lúc tra cứu ({@link #keyOf}) và dùng lại khi ghi: câu trả lời dựng từ dữ liệu của
+ * phiên bản cũ (dữ liệu đổi trong lúc chờ Gemini) bị bỏ thay vì ghi dưới khóa của phiên bản mới.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatbotResponseCache {
+
+    int maxEntries;
+    long ttlMillis;
+
+    AtomicLong catalogVersion = new AtomicLong();
+    AtomicLong categoryVersion = new AtomicLong();
+    AtomicLong hits = new AtomicLong();
+    AtomicLong misses = new AtomicLong();
+    AtomicLong evictions = new AtomicLong();
+
+    Map<Key, CachedReply> entries;
+
+    public ChatbotResponseCache(
+            @Value("${chatbot.cache.max-entries:1000}") int maxEntries,
+            @Value("${chatbot.cache.ttl-minutes:30}") long ttlMinutes) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMinutes * 60_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedReply> eldest) {
+                if (size() > ChatbotResponseCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public String get(Key key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            CachedReply cached = entries.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.createdAt() <= ttlMillis) {
+                hits.incrementAndGet();
+                return cached.reply();
+            }
+            if (cached != null) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(Key key, String reply) {
+        if (key == null || reply == null || reply.isBlank()) {
+            return;
+        }
+        synchronized (entries) {
+            if (key.catalogVersion() == catalogVersion.get() && key.categoryVersion() == categoryVersion.get()) {
+                entries.put(key, new CachedReply(reply, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    // Tăng mỗi khi catalog hoặc cây danh mục đổi; cache khác dựng từ cùng dữ liệu dùng để biết khi nào cần làm mới
+    public long dataVersion() {
+        return catalogVersion.get() + categoryVersion.get();
+    }
+
+    // Sản phẩm (tên, giá, tồn kho...) thay đổi: bỏ các câu trả lời cũ sau khi transaction commit
+    public void onCatalogChanged() {
+        TransactionUtil.afterCommit(() -> {
+            catalogVersion.incrementAndGet();
+            clear();
+        });
+    }
+
+    // Cây danh mục thay đổi
+    public void onCategoryTreeChanged() {
+        TransactionUtil.afterCommit(() -> {
+            categoryVersion.incrementAndGet();
+            clear();
+        });
+    }
+
+    public ChatbotCacheStats stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return ChatbotCacheStats.builder()
+                .size(size)
+                .maxEntries(maxEntries)
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRate(total == 0 ? 0.0 : (double) hitCount / total)
+                .evictions(evictions.get())
+                .catalogVersion(catalogVersion.get())
+                .categoryVersion(categoryVersion.get())
+                .build();
+    }
+
+    private void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Khóa của câu hỏi theo phiên bản dữ liệu hiện tại, null nếu câu hỏi không có từ nào.
+     * Chuẩn hóa câu hỏi: bỏ dấu, chữ thường, bỏ dấu câu, tập từ sắp xếp ("Son Dior?" == "dior son").
+     */
+    public Key keyOf(String message) {
+        TreeSet<String> tokens = new TreeSet<>(ProductSearchIndex.tokenize(message));
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        return new Key(catalogVersion.get(), categoryVersion.get(), String.join(" ", tokens));
+    }
+
+    public record Key(long catalogVersion, long categoryVersion, String question) {}
+
+    private record CachedReply(String reply, long createdAt) {}
+}
@@ -1,9 +1,9 @@
 package com.hanoi_metro.backend.service;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.hanoi_metro.backend.dto.response.CategoryResponse;
 import com.hanoi_metro.backend.dto.request.ChatRequest;
 import com.hanoi_metro.backend.dto.response.ChatResponse;
+import com.hanoi_metro.backend.dto.response.ChatbotStreamStats;
 import com.hanoi_metro.backend.dto.response.ProductResponse;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
@@ -15,16 +15,31 @@ import lombok.NoArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -37,7 +52,6 @@ import java.util.UUID;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class ChatbotService {
 
-    static final String GEMINI_API_BASE_URL = "https://generativelanguage.googleapis.com/v1beta";
     static final String SYSTEM_PROMPT_BASE = "Bạn là trợ lý AI chuyên nghiệp của website Nova Beauty - một cửa hàng mỹ phẩm và chăm sóc sắc đẹp uy tín. "
             + "\n\nVAI TRÒ: Hỗ trợ khách hàng nhiệt tình, chuyên nghiệp, thân thiện. Tư vấn sản phẩm, giải đáp thắc mắc về đơn hàng, chính sách, vận chuyển, thanh toán. "
             + "\n\nQUY TẮC VÀNG (TUYỆT ĐỐI PHẢI TUÂN THỦ): "
@@ -114,28 +128,64 @@ public class ChatbotService {
     final ProductService productService;
     final PromotionService promotionService;
     final CategoryService categoryService;
+    final CategoryTreeCache categoryTreeCache;
+
+    // Lưu conversation history theo sessionId (giới hạn số phiên, hết hạn khi rảnh, ngân sách token)
+    final ChatbotSessionStore sessionStore;
+    final GeminiCircuitBreaker circuitBreaker;
+    final ChatbotResponseCache responseCache;
+
+    // Giới hạn số request Gemini đồng thời; vượt quá thì trả lời fallback thay vì xếp hàng
+    final Semaphore geminiPermits;
+    final int maxConcurrentCalls;
+
+    @Value("${chatbot.gemini.timeout-ms:15000}")
+    long geminiTimeoutMs;
+
+    @Value("${chatbot.gemini.max-retries:2}")
+    int geminiMaxRetries;
+
+    @Value("${chatbot.gemini.backoff-ms:500}")
+    long geminiBackoffMs;
 
-    // Lưu conversation history theo sessionId (có thể mở rộng dùng Redis sau)
-    final Map<String, List<GeminiContent>> conversationHistory = new HashMap<>();
+    // Chỉ số của /stream: thời gian tới token đầu tiên (time-to-first-token)
+    final AtomicLong streamCount = new AtomicLong();
+    final AtomicLong completedStreams = new AtomicLong();
+    final AtomicLong fallbackStreams = new AtomicLong();
+    final AtomicLong interruptedStreams = new AtomicLong();
+    final AtomicLong firstTokenSamples = new AtomicLong();
+    final AtomicLong firstTokenTotalMs = new AtomicLong();
+    final AtomicLong firstTokenMaxMs = new AtomicLong();
+    final AtomicLong firstTokenLastMs = new AtomicLong();
 
-    // Cache danh sách sản phẩm (refresh mỗi 30 phút)
+    // Cache danh sách sản phẩm (refresh mỗi 30 phút, hoặc ngay khi catalog/danh mục đổi phiên bản)
     String cachedProductsContext = "";
     long lastProductsCacheUpdate = 0;
+    volatile long productsContextVersion = -1;
     static final long PRODUCTS_CACHE_TTL = 30 * 60 * 1000; // 30 phút
 
     public ChatbotService(
-            WebClient.Builder webClientBuilder,
+            @Qualifier("geminiWebClient") WebClient webClient,
             ProductService productService,
             PromotionService promotionService,
             CategoryService categoryService,
+            CategoryTreeCache categoryTreeCache,
+            ChatbotSessionStore sessionStore,
+            GeminiCircuitBreaker circuitBreaker,
+            ChatbotResponseCache responseCache,
+            @Value("${chatbot.gemini.max-concurrent:8}") int maxConcurrentCalls,
             @Value("${gemini.apiKey}") String apiKey,
             @Value("${gemini.model}") String model) {
-        this.webClient = webClientBuilder
-                .baseUrl(GEMINI_API_BASE_URL)
-                .build();
+        this.webClient = webClient;
         this.productService = productService;
         this.promotionService = promotionService;
         this.categoryService = categoryService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.sessionStore = sessionStore;
+        this.circuitBreaker = circuitBreaker;
+        this.responseCache = responseCache;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.geminiPermits = new Semaphore(maxConcurrentCalls);
         this.apiKey = apiKey;
         this.model = model;
         // Load products context lần đầu (chỉ query database, không gọi Gemini API)
@@ -143,91 +193,270 @@ public class ChatbotService {
         // refreshProductsContext();
     }
 
-    public ChatResponse ask(ChatRequest request) {
-        try {
-            // Validate request
-            if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
-                log.error("Invalid chat request: message is null or blank");
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-            }
-            
-            // Tạo hoặc lấy sessionId
-            String sessionId = request.getSessionId();
-            if (sessionId == null || sessionId.isBlank()) {
-                sessionId = UUID.randomUUID().toString();
-            }
+    /**
+     * Trả lời câu hỏi không chặn luồng Tomcat: dựng prompt (query DB) trên boundedElastic, gọi Gemini
+     * bằng WebClient non-blocking. Khi Gemini quá tải (vượt số request đồng thời), mạch đang mở, hoặc lỗi
+     * sau khi retry, trả lời fallback từ dữ liệu sản phẩm local thay vì báo lỗi.
+     */
+    public Mono<ChatResponse> ask(ChatRequest request) {
+        // Validate request
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+            log.error("Invalid chat request: message is null or blank");
+            return Mono.error(new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION));
+        }
 
-            // Lấy conversation history nếu có
-            List<GeminiContent> history = conversationHistory.getOrDefault(sessionId, new ArrayList<>());
+        // Tạo hoặc lấy sessionId
+        String sessionId = request.getSessionId() == null || request.getSessionId().isBlank()
+                ? UUID.randomUUID().toString()
+                : request.getSessionId();
+        String message = request.getMessage();
 
-            // Tạo request body cho Gemini
-            GeminiRequest geminiRequest = buildGeminiRequest(request.getMessage(), history);
-            
-            // Validate Gemini request
-            if (geminiRequest == null || geminiRequest.getContents() == null || geminiRequest.getContents().isEmpty()) {
-                log.error("Failed to build Gemini request: contents is null or empty");
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+        // Câu hỏi đầu phiên lặp lại: trả lời từ cache, không dựng prompt và không gọi Gemini
+        boolean firstTurn = sessionStore.history(sessionId).isEmpty();
+        ChatbotResponseCache.Key cacheKey = firstTurn ? responseCache.keyOf(message) : null;
+        if (firstTurn) {
+            String cachedReply = responseCache.get(cacheKey);
+            if (cachedReply != null) {
+                sessionStore.append(sessionId, message, cachedReply);
+                return Mono.just(ChatResponse.builder().reply(cachedReply).sessionId(sessionId).build());
             }
+        }
 
-            // Gọi Gemini API với retry logic cho quota exceeded
-            log.debug("Calling Gemini API with model: {}, message length: {}", model, request.getMessage().length());
-            
-            GeminiResponse response = callGeminiWithRetry(geminiRequest, 3);
+        if (!circuitBreaker.tryAcquire()) {
+            log.debug("Gemini circuit open, answering from local catalog");
+            return fallbackReply(message, sessionId);
+        }
+        if (!geminiPermits.tryAcquire()) {
+            // Không xếp hàng chờ: quá tải thì trả lời fallback ngay
+            log.warn("Gemini concurrency limit ({}) reached, answering from local catalog", maxConcurrentCalls);
+            return fallbackReply(message, sessionId);
+        }
 
-            if (response == null) {
-                log.error("Gemini API returned null response");
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-            }
-            
-            if (response.getCandidates() == null || response.getCandidates().isEmpty()) {
-                log.error("Gemini API returned empty candidates. Response: {}", response);
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-            }
+        return Mono.fromCallable(() -> {
+                    // Lấy conversation history nếu có
+                    List<GeminiContent> history = sessionStore.history(sessionId).stream()
+                            .map(turn -> new GeminiContent(turn.role(), turn.text()))
+                            .toList();
+                    return buildGeminiRequest(message, history);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(geminiRequest -> {
+                    log.debug("Calling Gemini API with model: {}, message length: {}", model, message.length());
+                    return callGemini(geminiRequest);
+                })
+                .map(this::extractReply)
+                .doOnNext(reply -> {
+                    circuitBreaker.recordSuccess();
+                    // Lưu conversation vào history (store tự cắt theo ngân sách token)
+                    sessionStore.append(sessionId, message, reply);
+                    if (firstTurn) {
+                        responseCache.put(cacheKey, reply);
+                    }
+                })
+                .map(reply -> ChatResponse.builder().reply(reply).sessionId(sessionId).build())
+                .onErrorResume(e -> {
+                    circuitBreaker.recordFailure();
+                    log.error("Gemini call failed, answering from local catalog: {}", e.getMessage());
+                    return fallbackReply(message, sessionId);
+                })
+                .doFinally(signal -> geminiPermits.release());
+    }
 
-            GeminiContent content = response.getCandidates().get(0).getContent();
-            if (content == null || content.getParts() == null || content.getParts().isEmpty()) {
-                log.error("Gemini API returned empty parts. Content: {}", content);
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-            }
+    /**
+     * Trả lời dạng Server-Sent Events qua streamGenerateContent của Gemini: mỗi đoạn text được gửi ngay
+     * cho client (event "token"), kết thúc bằng event "done" chứa toàn bộ câu trả lời. Lịch sử hội thoại
+     * chỉ được ghi khi stream hoàn tất; client ngắt kết nối giữa chừng thì không ghi.
+     * Dùng chung giới hạn đồng thời, circuit breaker và fallback với ask().
+     */
+    public Flux<ServerSentEvent<ChatResponse>> askStream(ChatRequest request) {
+        if (request == null || request.getMessage() == null || request.getMessage().isBlank()) {
+            log.error("Invalid chat stream request: message is null or blank");
+            return Flux.error(new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION));
+        }
 
-            String reply = content.getParts().get(0).getText();
-            if (reply == null || reply.isBlank()) {
-                log.error("Gemini API returned blank reply");
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+        String sessionId = request.getSessionId() == null || request.getSessionId().isBlank()
+                ? UUID.randomUUID().toString()
+                : request.getSessionId();
+        String message = request.getMessage();
+        long startedAt = System.nanoTime();
+        streamCount.incrementAndGet();
+
+        boolean firstTurn = sessionStore.history(sessionId).isEmpty();
+        ChatbotResponseCache.Key cacheKey = firstTurn ? responseCache.keyOf(message) : null;
+        if (firstTurn) {
+            String cachedReply = responseCache.get(cacheKey);
+            if (cachedReply != null) {
+                sessionStore.append(sessionId, message, cachedReply);
+                recordTimeToFirstToken(startedAt);
+                completedStreams.incrementAndGet();
+                return Flux.just(
+                        streamEvent("token", cachedReply, sessionId),
+                        streamEvent("done", cachedReply, sessionId));
             }
-            
-            // Loại bỏ markdown formatting đơn giản (chỉ loại bỏ markers, giữ nguyên nội dung)
-            reply = reply.replace("***", "").replace("**", "").replace("*", "");
-            
-            log.debug("Gemini API response received, reply length: {}", reply.length());
+        }
 
-            // Lưu conversation vào history
-            history.add(new GeminiContent("user", request.getMessage()));
-            history.add(new GeminiContent("model", reply));
-            conversationHistory.put(sessionId, history);
+        if (!circuitBreaker.tryAcquire()) {
+            log.debug("Gemini circuit open, streaming answer from local catalog");
+            return fallbackStream(message, sessionId, startedAt);
+        }
+        if (!geminiPermits.tryAcquire()) {
+            log.warn("Gemini concurrency limit ({}) reached, streaming answer from local catalog", maxConcurrentCalls);
+            return fallbackStream(message, sessionId, startedAt);
+        }
 
-            // Giới hạn history để tránh quá dài (giữ 10 cặp Q&A gần nhất)
-            if (history.size() > 20) {
-                history.subList(0, history.size() - 20).clear();
-            }
+        AtomicBoolean awaitingFirstToken = new AtomicBoolean(true);
+        StringBuilder reply = new StringBuilder();
+
+        Flux<ServerSentEvent<ChatResponse>> tokens = Mono.fromCallable(() -> {
+                    List<GeminiContent> history = sessionStore.history(sessionId).stream()
+                            .map(turn -> new GeminiContent(turn.role(), turn.text()))
+                            .toList();
+                    return buildGeminiRequest(message, history);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(geminiRequest -> streamGemini(geminiRequest)
+                        // Bỏ markdown theo từng đoạn: chỉ xóa ký tự '*' nên kết quả giống hệt bỏ trên cả câu
+                        // trả lời, không cần giữ lại phần đuôi của đoạn trước
+                        .map(chunk -> chunk.replace("*", ""))
+                        .filter(chunk -> !chunk.isEmpty())
+                        .doOnNext(chunk -> {
+                            if (awaitingFirstToken.compareAndSet(true, false)) {
+                                recordTimeToFirstToken(startedAt);
+                            }
+                            reply.append(chunk);
+                        })
+                        // Chỉ retry khi chưa gửi token nào cho client, tránh lặp nội dung
+                        .retryWhen(Retry.backoff(geminiMaxRetries, Duration.ofMillis(geminiBackoffMs))
+                                .maxBackoff(Duration.ofSeconds(5))
+                                .jitter(0.5)
+                                .filter(e -> awaitingFirstToken.get() && isRetryable(e))
+                                .onRetryExhaustedThrow((spec, signal) -> signal.failure())))
+                .map(chunk -> streamEvent("token", chunk, sessionId));
 
-            return ChatResponse.builder()
-                    .reply(reply)
-                    .sessionId(sessionId)
-                    .build();
+        return tokens
+                .concatWith(Mono.fromCallable(() -> {
+                    String fullReply = reply.toString();
+                    if (fullReply.isBlank()) {
+                        log.error("Gemini stream returned blank reply");
+                        throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+                    }
+                    circuitBreaker.recordSuccess();
+                    sessionStore.append(sessionId, message, fullReply);
+                    if (firstTurn) {
+                        responseCache.put(cacheKey, fullReply);
+                    }
+                    completedStreams.incrementAndGet();
+                    return streamEvent("done", fullReply, sessionId);
+                }))
+                .onErrorResume(e -> {
+                    circuitBreaker.recordFailure();
+                    if (awaitingFirstToken.get()) {
+                        log.error("Gemini stream failed, answering from local catalog: {}", e.getMessage());
+                        return fallbackStream(message, sessionId, startedAt);
+                    }
+                    // Đã gửi một phần câu trả lời: báo lỗi, không ghi câu trả lời dở dang vào lịch sử
+                    interruptedStreams.incrementAndGet();
+                    log.error("Gemini stream interrupted after {} chars: {}", reply.length(), e.getMessage());
+                    return Flux.just(streamEvent(
+                            "error", "Xin lỗi, kết nối bị gián đoạn. Bạn vui lòng thử lại ạ.", sessionId));
+                })
+                .doFinally(signal -> geminiPermits.release());
+    }
+
+    public ChatbotStreamStats streamStats() {
+        long samples = firstTokenSamples.get();
+        return ChatbotStreamStats.builder()
+                .streams(streamCount.get())
+                .completedStreams(completedStreams.get())
+                .fallbackStreams(fallbackStreams.get())
+                .interruptedStreams(interruptedStreams.get())
+                .averageTimeToFirstTokenMs(samples == 0 ? 0 : firstTokenTotalMs.get() / samples)
+                .maxTimeToFirstTokenMs(firstTokenMaxMs.get())
+                .lastTimeToFirstTokenMs(firstTokenLastMs.get())
+                .build();
+    }
+
+    private Flux<ServerSentEvent<ChatResponse>> fallbackStream(String message, String sessionId, long startedAt) {
+        fallbackStreams.incrementAndGet();
+        return fallbackReply(message, sessionId)
+                .doOnNext(response -> recordTimeToFirstToken(startedAt))
+                .flatMapMany(response -> Flux.just(
+                        streamEvent("token", response.getReply(), sessionId),
+                        streamEvent("done", response.getReply(), sessionId)));
+    }
 
-        } catch (WebClientResponseException e) {
-            log.error("Error calling Gemini API: status={}, message={}, body={}", 
-                e.getStatusCode(), e.getMessage(), e.getResponseBodyAsString(), e);
+    private ServerSentEvent<ChatResponse> streamEvent(String event, String text, String sessionId) {
+        return ServerSentEvent.builder(ChatResponse.builder().reply(text).sessionId(sessionId).build())
+                .event(event)
+                .build();
+    }
+
+    private void recordTimeToFirstToken(long startedAt) {
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - startedAt).toMillis();
+        firstTokenSamples.incrementAndGet();
+        firstTokenTotalMs.addAndGet(elapsedMs);
+        firstTokenMaxMs.accumulateAndGet(elapsedMs, Math::max);
+        firstTokenLastMs.set(elapsedMs);
+        log.debug("Chatbot stream time-to-first-token: {} ms", elapsedMs);
+    }
+
+    private String extractReply(GeminiResponse response) {
+        if (response == null || response.getCandidates() == null || response.getCandidates().isEmpty()) {
+            log.error("Gemini API returned empty candidates. Response: {}", response);
             throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-        } catch (AppException e) {
-            // Re-throw AppException để giữ nguyên error code
-            throw e;
-        } catch (Exception e) {
-            log.error("Unexpected error in chatbot service: message={}, class={}", 
-                e.getMessage(), e.getClass().getName(), e);
+        }
+
+        GeminiContent content = response.getCandidates().get(0).getContent();
+        if (content == null || content.getParts() == null || content.getParts().isEmpty()) {
+            log.error("Gemini API returned empty parts. Content: {}", content);
+            throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+        }
+
+        String reply = content.getParts().get(0).getText();
+        if (reply == null || reply.isBlank()) {
+            log.error("Gemini API returned blank reply");
             throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
         }
+
+        log.debug("Gemini API response received, reply length: {}", reply.length());
+        // Loại bỏ markdown formatting đơn giản (chỉ loại bỏ markers, giữ nguyên nội dung)
+        return reply.replace("***", "").replace("**", "").replace("*", "");
+    }
+
+    /**
+     * Câu trả lời dự phòng khi không gọi được Gemini: gợi ý sản phẩm từ chỉ mục tìm kiếm local.
+     * Không lưu vào history để không làm lệch ngữ cảnh hội thoại với Gemini.
+     */
+    private Mono<ChatResponse> fallbackReply(String message, String sessionId) {
+        return Mono.fromCallable(() -> {
+                    StringBuilder reply = new StringBuilder();
+                    List<ProductResponse> products = isGreetingMessage(message)
+                            ? List.of()
+                            : productService.searchProducts(message, 0, 5);
+                    if (products.isEmpty()) {
+                        reply.append("Xin lỗi, trợ lý AI của Nova Beauty đang bận. ")
+                                .append("Bạn vui lòng thử lại sau ít phút hoặc liên hệ CSKH để được tư vấn thêm ạ.");
+                    } else {
+                        reply.append("Trợ lý AI đang bận, Nova Beauty gợi ý một số sản phẩm phù hợp với câu hỏi của bạn:\n\n");
+                        for (int i = 0; i < products.size(); i++) {
+                            ProductResponse product = products.get(i);
+                            reply.append(i + 1).append(". ").append(product.getName());
+                            if (product.getPrice() != null) {
+                                reply.append(String.format(" - %,.0f VNĐ", product.getPrice()));
+                            }
+                            reply.append(" [LINK:/product/").append(product.getId()).append("]\n");
+                        }
+                    }
+                    return ChatResponse.builder().reply(reply.toString()).sessionId(sessionId).build();
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("Chatbot fallback failed: {}", e.getMessage());
+                    return Mono.just(ChatResponse.builder()
+                            .reply("Xin lỗi, hệ thống đang bận. Bạn vui lòng thử lại sau ạ.")
+                            .sessionId(sessionId)
+                            .build());
+                });
     }
 
     private GeminiRequest buildGeminiRequest(String userMessage, List<GeminiContent> history) {
@@ -552,19 +781,19 @@ public class ChatbotService {
     @Transactional(readOnly = true)
     private String getSubCategoriesContext(String keyword, boolean useParentCategory) {
         try {
-            // Tìm category chính theo keyword
-            java.util.List<CategoryResponse> categories = categoryService.getAllCategories();
+            // Tìm category chính theo keyword (cây danh mục trong bộ nhớ, không query DB)
+            java.util.Collection<CategoryTreeCache.Node> categories = categoryTreeCache.all();
             
-            CategoryResponse mainCategory = null;
+            CategoryTreeCache.Node mainCategory = null;
             String lowerKeyword = keyword.toLowerCase();
             
             // Bước 1: Thử mapping keyword sang tên category
             String mappedCategoryName = mapKeywordToCategoryName(keyword);
             if (mappedCategoryName != null) {
-                for (CategoryResponse cat : categories) {
-                    if (cat.getName() != null && cat.getName().equals(mappedCategoryName)) {
+                for (CategoryTreeCache.Node cat : categories) {
+                    if (cat.name() != null && cat.name().equals(mappedCategoryName)) {
                         mainCategory = cat;
-                        log.debug("Found category via mapping: {} for keyword: {}", mainCategory.getName(), keyword);
+                        log.debug("Found category via mapping: {} for keyword: {}", mainCategory.name(), keyword);
                         break;
                     }
                 }
@@ -574,8 +803,8 @@ public class ChatbotService {
             // Ưu tiên exact match, sau đó là contains
             if (mainCategory == null) {
                 // Ưu tiên 1: Exact match (không phân biệt hoa thường)
-                for (CategoryResponse cat : categories) {
-                    if (cat.getName() != null && cat.getName().toLowerCase().equals(lowerKeyword)) {
+                for (CategoryTreeCache.Node cat : categories) {
+                    if (cat.name() != null && cat.name().toLowerCase().equals(lowerKeyword)) {
                         mainCategory = cat;
                         break;
                     }
@@ -584,8 +813,8 @@ public class ChatbotService {
             
             if (mainCategory == null) {
                 // Ưu tiên 2: Category name contains keyword
-                for (CategoryResponse cat : categories) {
-                    if (cat.getName() != null && cat.getName().toLowerCase().contains(lowerKeyword)) {
+                for (CategoryTreeCache.Node cat : categories) {
+                    if (cat.name() != null && cat.name().toLowerCase().contains(lowerKeyword)) {
                         mainCategory = cat;
                         break;
                     }
@@ -594,8 +823,8 @@ public class ChatbotService {
             
             if (mainCategory == null) {
                 // Ưu tiên 3: Keyword contains category name (ví dụ: "son môi" chứa "son")
-                for (CategoryResponse cat : categories) {
-                    if (cat.getName() != null && lowerKeyword.contains(cat.getName().toLowerCase())) {
+                for (CategoryTreeCache.Node cat : categories) {
+                    if (cat.name() != null && lowerKeyword.contains(cat.name().toLowerCase())) {
                         mainCategory = cat;
                         break;
                     }
@@ -609,53 +838,56 @@ public class ChatbotService {
             
             // Chỉ tìm parent category nếu useParentCategory = true (khi user hỏi chung)
             // Nếu useParentCategory = false (khi user chọn category cụ thể), lấy subcategories của chính category đó
-            if (useParentCategory && mainCategory.getParentId() != null && !mainCategory.getParentId().isEmpty()) {
+            if (useParentCategory && mainCategory.parentId() != null && !mainCategory.parentId().isEmpty()) {
                 // Tìm category cha
-                for (CategoryResponse cat : categories) {
-                    if (cat.getId() != null && cat.getId().equals(mainCategory.getParentId())) {
+                for (CategoryTreeCache.Node cat : categories) {
+                    if (cat.id() != null && cat.id().equals(mainCategory.parentId())) {
                         mainCategory = cat;
-                        log.debug("Using parent category: {} for keyword: {}", mainCategory.getName(), keyword);
+                        log.debug("Using parent category: {} for keyword: {}", mainCategory.name(), keyword);
                         break;
                     }
                 }
             } else if (!useParentCategory) {
-                log.debug("Using category directly: {} for keyword: {} (user selected specific category)", mainCategory.getName(), keyword);
+                log.debug("Using category directly: {} for keyword: {} (user selected specific category)", mainCategory.name(), keyword);
             }
             
-            log.debug("Found category: {} for keyword: {}", mainCategory.getName(), keyword);
+            log.debug("Found category: {} for keyword: {}", mainCategory.name(), keyword);
             
-            // Lưu mainCategory.getId() vào biến final để dùng trong lambda
-            final String mainCategoryId = mainCategory.getId();
+            // Lưu mainCategory.id() vào biến final để dùng trong lambda
+            final String mainCategoryId = mainCategory.id();
             
             // Lấy danh mục con (chỉ lấy danh mục active)
-            java.util.List<CategoryResponse> subCategories = categoryService.getSubCategories(mainCategoryId);
-            
             // Filter chỉ lấy danh mục active và đảm bảo không lấy chính parent category
-            subCategories = subCategories.stream()
-                .filter(cat -> cat.getStatus() != null && cat.getStatus())
-                .filter(cat -> !cat.getId().equals(mainCategoryId)) // Đảm bảo không lấy chính parent category
+            java.util.List<CategoryTreeCache.Node> subCategories = categoryTreeCache.children(mainCategoryId).stream()
+                .filter(CategoryTreeCache.Node::isActive)
+                .filter(cat -> !cat.id().equals(mainCategoryId)) // Đảm bảo không lấy chính parent category
                 .collect(java.util.stream.Collectors.toList());
             
-            if (subCategories == null || subCategories.isEmpty()) {
-                log.debug("No subcategories found for category: {}", mainCategory.getName());
+            if (subCategories.isEmpty()) {
+                log.debug("No subcategories found for category: {}", mainCategory.name());
                 return ""; // Không có danh mục con, để chatbot tự xử lý
             }
             
             log.info("Found {} subcategories for category {} (keyword: {}): {}", 
-                subCategories.size(), mainCategory.getName(), keyword,
-                subCategories.stream().map(cat -> cat.getName()).collect(java.util.stream.Collectors.joining(", ")));
-            log.debug("Found {} subcategories for category: {}", subCategories.size(), mainCategory.getName());
+                subCategories.size(), mainCategory.name(), keyword,
+                subCategories.stream().map(CategoryTreeCache.Node::name).collect(java.util.stream.Collectors.joining(", ")));
+            log.debug("Found {} subcategories for category: {}", subCategories.size(), mainCategory.name());
+            
+            // Số sản phẩm của các danh mục con: một câu query gộp
+            java.util.Map<String, Long> productCounts = categoryService.productCounts(
+                subCategories.stream().map(CategoryTreeCache.Node::id).toList());
             
             // Format context về danh mục con - format rõ ràng để chatbot dễ nhận biết
             StringBuilder context = new StringBuilder();
-            context.append("=== DANH MỤC CON CỦA ").append(mainCategory.getName().toUpperCase()).append(" ===\n");
+            context.append("=== DANH MỤC CON CỦA ").append(mainCategory.name().toUpperCase()).append(" ===\n");
             context.append("TUYỆT ĐỐI CHỈ LIỆT KÊ ĐÚNG Y HỆT CÁC DANH MỤC CON SAU, KHÔNG TỰ NGHĨ RA, KHÔNG THAY ĐỔI TÊN, KHÔNG RÚT GỌN, KHÔNG THÊM BẤT KỲ TEXT NÀO:\n\n");
             
             for (int i = 0; i < subCategories.size(); i++) {
-                CategoryResponse subCat = subCategories.get(i);
-                context.append(String.format("%d. %s", i + 1, subCat.getName()));
-                if (subCat.getProductCount() != null && subCat.getProductCount() > 0) {
-                    context.append(String.format(" (%d sản phẩm)", subCat.getProductCount()));
+                CategoryTreeCache.Node subCat = subCategories.get(i);
+                context.append(String.format("%d. %s", i + 1, subCat.name()));
+                long productCount = productCounts.getOrDefault(subCat.id(), 0L);
+                if (productCount > 0) {
+                    context.append(String.format(" (%d sản phẩm)", productCount));
                 }
                 context.append("\n");
             }
@@ -684,7 +916,7 @@ public class ChatbotService {
      * Lấy context về sản phẩm để đưa vào prompt (không filter)
      */
     private String getProductsContext() {
-        if (cachedProductsContext.isEmpty()) {
+        if (cachedProductsContext.isEmpty() || productsContextVersion != responseCache.dataVersion()) {
             refreshProductsContext();
         }
         return cachedProductsContext;
@@ -843,7 +1075,8 @@ public class ChatbotService {
             
             // Search sản phẩm theo từng keyword
             for (String keyword : keywords) {
-                java.util.List<ProductResponse> products = productService.searchProducts(keyword);
+                // Chỉ cần tối đa 50 sản phẩm liên quan nhất cho prompt
+                java.util.List<ProductResponse> products = productService.searchProducts(keyword, 0, 50);
                 for (ProductResponse product : products) {
                     // Tránh duplicate
                     if (!allProductIds.contains(product.getId())) {
@@ -948,7 +1181,8 @@ public class ChatbotService {
      */
     private void refreshProductsContextIfNeeded() {
         long now = System.currentTimeMillis();
-        if (now - lastProductsCacheUpdate > PRODUCTS_CACHE_TTL) {
+        if (now - lastProductsCacheUpdate > PRODUCTS_CACHE_TTL
+                || productsContextVersion != responseCache.dataVersion()) {
             refreshProductsContext();
         }
     }
@@ -958,12 +1192,15 @@ public class ChatbotService {
      */
     @Transactional(readOnly = true)
     private void refreshProductsContext() {
+        // Đọc phiên bản trước khi nạp: dữ liệu đổi trong lúc nạp thì lần sau vẫn thấy lệch và nạp lại
+        long version = responseCache.dataVersion();
         try {
             // Sử dụng method riêng để load đầy đủ relationships, tránh LazyInitializationException
             List<ProductResponse> products = productService.getActiveProductsForChatbot();
             
             if (products.isEmpty()) {
                 cachedProductsContext = "Hiện tại chưa có sản phẩm nào trong hệ thống.";
+                productsContextVersion = version;
                 return;
             }
 
@@ -1007,6 +1244,7 @@ public class ChatbotService {
 
             cachedProductsContext = context.toString();
             lastProductsCacheUpdate = System.currentTimeMillis();
+            productsContextVersion = version;
             
             log.info("Refreshed products context: {} products", products.size());
         } catch (Exception e) {
@@ -1016,144 +1254,105 @@ public class ChatbotService {
     }
 
     /**
-     * Gọi Gemini API với retry logic cho quota exceeded
-     * LƯU Ý: Khi gặp 429, chỉ retry nếu KHÔNG phải limit = 0
+     * Gọi Gemini API không chặn luồng, có timeout và retry với exponential backoff + jitter.
+     * Chỉ retry lỗi tạm thời (5xx, timeout, lỗi kết nối); 400/404/429 không retry để tránh lạm dụng quota.
      */
-    private GeminiResponse callGeminiWithRetry(GeminiRequest request, int maxRetries) {
-        int retryCount = 0;
-        long baseDelayMs = 2000; // 2 giây base delay
-        
-        while (retryCount <= maxRetries) {
-            try {
-                GeminiResponse response = webClient.post()
-                        .uri(uriBuilder -> uriBuilder
-                                .path("/models/{model}:generateContent")
-                                .queryParam("key", apiKey)
-                                .build(model))
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(request)
-                        .retrieve()
-                        .onStatus(HttpStatusCode::isError, clientResponse -> {
-                            int statusCode = clientResponse.statusCode().value();
-                            return clientResponse.bodyToMono(String.class)
-                                .flatMap(body -> {
-                                    // Xử lý 429 với limit = 0 ngay trong onStatus handler - không retry
-                                    // Kiểm tra cả "limit": 0 và limit: 0 (có/không có quotes)
-                                    // Cũng kiểm tra trong error message text
-                                    boolean isLimitZero = body != null && (
-                                        body.contains("\"limit\": 0") || 
-                                        body.contains("limit: 0") ||
-                                        body.contains("\"limit\":0") ||
-                                        body.contains("limit:0") ||
-                                        body.contains("limit: 0,") ||
-                                        body.contains("limit:0,") ||
-                                        body.matches(".*limit:\\s*0[,\\s].*") // Regex pattern
-                                    );
-                                    if (statusCode == 429 && isLimitZero) {
-                                        log.error("================================================");
-                                        log.error("Gemini API quota limit is 0 - STOPPING ALL RETRIES");
-                                        log.error("Possible reasons:");
-                                        log.error("1. Vietnam tier restriction - API key may be restricted for Vietnam region");
-                                        log.error("2. API key leaked - Someone else may be using your API key");
-                                        log.error("3. Account restrictions - Check your Google Cloud account status");
-                                        log.error("Solution: Create a new API key and keep it secure. Do not share it publicly.");
-                                        log.error("Error body: {}", body);
-                                        log.error("================================================");
-                                        // Throw AppException để không retry
-                                        return Mono.error(new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION));
-                                    }
-                                    
-                                    // Log các lỗi khác nhưng vẫn throw WebClientResponseException để catch block xử lý
-                                    if (statusCode == 429) {
-                                        log.warn("Gemini API quota exceeded, will retry: {}", body);
-                                    } else if (statusCode == 404) {
-                                        log.error("Gemini API model not found: {}. Error body: {}", model, body);
-                                    } else if (statusCode == 400) {
-                                        log.error("Gemini API BadRequest (400). Error body: {}", body);
-                                    } else {
-                                        log.error("Gemini API error: status={}, body={}", statusCode, body);
-                                    }
-                                    
-                                    // Throw WebClientResponseException để catch block có thể xử lý retry
-                                    return Mono.error(WebClientResponseException.create(
-                                        statusCode,
-                                        clientResponse.statusCode().toString(),
-                                        clientResponse.headers().asHttpHeaders(),
-                                        body != null ? body.getBytes() : null,
-                                        null
-                                    ));
-                                });
-                        })
-                        .bodyToMono(GeminiResponse.class)
-                        .block();
-                
-                return response;
-                
-            } catch (WebClientResponseException e) {
-                int statusCode = e.getStatusCode().value();
-                String errorBody = e.getResponseBodyAsString();
-                
-                // 400 BadRequest: Không retry - lỗi format request
-                if (statusCode == 400) {
-                    log.error("Gemini API BadRequest (400). This usually means:");
-                    log.error("1. Request body format is invalid");
-                    log.error("2. Missing required fields");
-                    log.error("3. Invalid parameter values");
-                    log.error("Error body: {}", errorBody);
-                    throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-                }
-                
-                // 404 NotFound: Không retry - model không tồn tại
-                if (statusCode == 404) {
-                    log.error("Gemini API NotFound (404). Model '{}' is not found or not available.", model);
-                    log.error("Available models: gemini-2.0-flash, gemini-1.5-flash, gemini-pro, gemini-1.5-pro");
-                    log.error("Error body: {}", errorBody);
-                    log.error("Solution: Update 'gemini.model' in application.yaml to a valid model name");
-                    throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-                }
-                
-                // 429 TooManyRequests: Retry với logic đặc biệt
-                if (statusCode == 429) {
-                    // Kiểm tra nếu limit = 0 (Vietnam tier restriction hoặc API key bị leak)
-                    // Kiểm tra cả "limit": 0 và limit: 0 (có/không có quotes)
-                    // Cũng kiểm tra trong error message text
-                    boolean isLimitZero = errorBody != null && (
-                        errorBody.contains("\"limit\": 0") || 
-                        errorBody.contains("limit: 0") ||
-                        errorBody.contains("\"limit\":0") ||
-                        errorBody.contains("limit:0") ||
-                        errorBody.contains("limit: 0,") ||
-                        errorBody.contains("limit:0,") ||
-                        errorBody.matches(".*limit:\\s*0[,\\s].*") // Regex pattern
-                    );
-                    if (isLimitZero) {
-                        log.error("================================================");
-                        log.error("Gemini API quota limit is 0 - STOPPING ALL RETRIES");
-                        log.error("Possible reasons:");
-                        log.error("1. Vietnam tier restriction - API key may be restricted for Vietnam region");
-                        log.error("2. API key leaked - Someone else may be using your API key");
-                        log.error("3. Account restrictions - Check your Google Cloud account status");
-                        log.error("Solution: Create a new API key and keep it secure. Do not share it publicly.");
-                        log.error("Error body: {}", errorBody);
-                        log.error("================================================");
-                        throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-                    }
-                    
-                    // Nếu không phải limit = 0, nhưng vẫn là 429, KHÔNG retry để tránh spam
-                    // Chỉ log và throw error
-                    log.error("Gemini API quota exceeded (429). NOT retrying to avoid quota abuse.");
-                    log.error("Please wait for quota reset or check your quota at: https://ai.dev/usage?tab=rate-limit");
-                    log.error("Error body: {}", errorBody);
-                    throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
-                }
-                
-                // Các lỗi khác: Không retry
-                log.error("Gemini API error: status={}, body={}", statusCode, errorBody);
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+    private Mono<GeminiResponse> callGemini(GeminiRequest request) {
+        return webClient.post()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/models/{model}:generateContent")
+                        .queryParam("key", apiKey)
+                        .build(model))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, this::toGeminiError)
+                .bodyToMono(GeminiResponse.class)
+                .timeout(Duration.ofMillis(geminiTimeoutMs))
+                .retryWhen(Retry.backoff(geminiMaxRetries, Duration.ofMillis(geminiBackoffMs))
+                        .maxBackoff(Duration.ofSeconds(5))
+                        .jitter(0.5)
+                        .filter(this::isRetryable)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Gọi streamGenerateContent (alt=sse): Gemini trả về từng GeminiResponse nhỏ dưới dạng SSE.
+     * Timeout áp dụng cho khoảng chờ giữa hai đoạn liên tiếp, không phải toàn bộ câu trả lời.
+     */
+    private Flux<String> streamGemini(GeminiRequest request) {
+        return webClient.post()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/models/{model}:streamGenerateContent")
+                        .queryParam("alt", "sse")
+                        .queryParam("key", apiKey)
+                        .build(model))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, this::toGeminiError)
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<GeminiResponse>>() {})
+                .timeout(Duration.ofMillis(geminiTimeoutMs))
+                .mapNotNull(ServerSentEvent::data)
+                .mapNotNull(this::chunkText);
+    }
+
+    private String chunkText(GeminiResponse response) {
+        if (response.getCandidates() == null || response.getCandidates().isEmpty()) {
+            return null;
+        }
+        GeminiContent content = response.getCandidates().get(0).getContent();
+        if (content == null || content.getParts() == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (GeminiPart part : content.getParts()) {
+            if (part.getText() != null) {
+                text.append(part.getText());
             }
         }
-        
-        throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+        return text.toString();
+    }
+
+    private Mono<? extends Throwable> toGeminiError(ClientResponse clientResponse) {
+        return clientResponse
+                .bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(body -> {
+                    logGeminiError(clientResponse.statusCode().value(), body);
+                    return Mono.error(WebClientResponseException.create(
+                            clientResponse.statusCode().value(),
+                            clientResponse.statusCode().toString(),
+                            clientResponse.headers().asHttpHeaders(),
+                            body.getBytes(),
+                            null));
+                });
+    }
+
+    private boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError();
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException;
+    }
+
+    private void logGeminiError(int statusCode, String body) {
+        // Kiểm tra cả "limit": 0 và limit: 0 (có/không có quotes)
+        boolean isLimitZero = body.contains("\"limit\": 0")
+                || body.contains("\"limit\":0")
+                || body.matches("(?s).*limit:\\s*0[,\\s].*");
+        if (statusCode == 429 && isLimitZero) {
+            log.error("Gemini API quota limit is 0 - check API key restrictions/region tier. Error body: {}", body);
+        } else if (statusCode == 429) {
+            log.error("Gemini API quota exceeded (429). NOT retrying to avoid quota abuse. Error body: {}", body);
+        } else if (statusCode == 404) {
+            log.error("Gemini API model not found: {}. Update 'gemini.model' in application.yaml. Error body: {}", model, body);
+        } else if (statusCode == 400) {
+            log.error("Gemini API BadRequest (400). Error body: {}", body);
+        } else {
+            log.error("Gemini API error: status={}, body={}", statusCode, body);
+        }
     }
 
     /**
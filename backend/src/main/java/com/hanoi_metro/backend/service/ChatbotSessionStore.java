@@ -0,0 +1,255 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hanoi_metro.backend.dto.response.ChatbotSessionStats;
+import com.hanoi_metro.backend.entity.ChatbotSession;
+import com.hanoi_metro.backend.repository.ChatbotSessionRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lưu lịch sử hội thoại chatbot theo sessionId, thay cho HashMap không giới hạn.
+ *
+ * - Thread-safe: ConcurrentHashMap, mỗi phiên tự đồng bộ khi đọc/ghi lịch sử.
+ * - Giới hạn số phiên: vượt max-sessions thì loại các phiên lâu không dùng nhất.
+ * - Hết hạn theo thời gian rảnh: job định kỳ xóa phiên không hoạt động quá idle-minutes.
+ * - Ngân sách token mỗi phiên: bỏ các lượt hỏi/đáp cũ nhất khi vượt max-tokens hoặc max-turns.
+ * - Lưu xuống bảng chatbot_sessions nếu bật persist, để không mất hội thoại khi khởi động lại.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatbotSessionStore {
+
+    // Ước lượng thô: ~4 ký tự / token
+    private static final int CHARS_PER_TOKEN = 4;
+
+    ChatbotSessionRepository chatbotSessionRepository;
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    Map<String, Session> sessions = new ConcurrentHashMap<>();
+    AtomicLong evictedSessions = new AtomicLong();
+
+    @NonFinal
+    @Value("${chatbot.session.max-sessions:5000}")
+    int maxSessions;
+
+    @NonFinal
+    @Value("${chatbot.session.idle-minutes:30}")
+    long idleMinutes;
+
+    @NonFinal
+    @Value("${chatbot.session.max-tokens:4000}")
+    int maxTokensPerSession;
+
+    @NonFinal
+    @Value("${chatbot.session.max-turns:20}")
+    int maxTurnsPerSession;
+
+    @NonFinal
+    @Value("${chatbot.session.persist:false}")
+    boolean persist;
+
+    /**
+     * Bản sao lịch sử của phiên (rỗng nếu phiên mới hoặc đã hết hạn).
+     */
+    public List<Turn> history(String sessionId) {
+        if (sessionId == null) {
+            return List.of();
+        }
+        Session session = sessions.get(sessionId);
+        if (session == null && persist) {
+            session = loadPersisted(sessionId);
+        }
+        if (session == null) {
+            return List.of();
+        }
+        synchronized (session) {
+            session.lastAccess = System.currentTimeMillis();
+            return new ArrayList<>(session.turns);
+        }
+    }
+
+    /**
+     * Ghi một lượt hỏi/đáp vào phiên, cắt lịch sử theo ngân sách token.
+     */
+    public void append(String sessionId, String userMessage, String reply) {
+        if (sessionId == null) {
+            return;
+        }
+        Session session = sessions.computeIfAbsent(sessionId, id -> new Session());
+        List<Turn> snapshot;
+        synchronized (session) {
+            session.add(new Turn("user", userMessage));
+            session.add(new Turn("model", reply));
+            // Bỏ từng cặp hỏi/đáp cũ nhất, luôn giữ lại cặp vừa thêm
+            while (session.turns.size() > 2
+                    && (session.turns.size() > maxTurnsPerSession || session.tokens > maxTokensPerSession)) {
+                session.removeOldest();
+                session.removeOldest();
+            }
+            session.lastAccess = System.currentTimeMillis();
+            snapshot = persist ? new ArrayList<>(session.turns) : null;
+        }
+        if (sessions.size() > maxSessions) {
+            evictLeastRecentlyUsed();
+        }
+        if (snapshot != null) {
+            savePersisted(sessionId, snapshot);
+        }
+    }
+
+    public ChatbotSessionStats stats() {
+        long turns = 0;
+        long tokens = 0;
+        long chars = 0;
+        for (Session session : sessions.values()) {
+            synchronized (session) {
+                turns += session.turns.size();
+                tokens += session.tokens;
+                chars += session.chars;
+            }
+        }
+        return ChatbotSessionStats.builder()
+                .sessionCount(sessions.size())
+                .maxSessions(maxSessions)
+                .totalTurns(turns)
+                .estimatedTokens(tokens)
+                .estimatedBytes(chars * 2)
+                .evictedSessions(evictedSessions.get())
+                .persistenceEnabled(persist)
+                .build();
+    }
+
+    // Mỗi phút xóa các phiên không hoạt động quá idle-minutes
+    @Scheduled(fixedDelayString = "${chatbot.session.sweep-interval-ms:60000}")
+    public void evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000;
+        int before = sessions.size();
+        sessions.entrySet().removeIf(entry -> entry.getValue().lastAccess < cutoff);
+        int removed = before - sessions.size();
+        if (removed > 0) {
+            evictedSessions.addAndGet(removed);
+            log.debug("Evicted {} idle chatbot sessions", removed);
+        }
+        if (persist) {
+            try {
+                chatbotSessionRepository.deleteIdleBefore(LocalDateTime.now().minusMinutes(idleMinutes));
+            } catch (Exception e) {
+                log.warn("Could not purge idle chatbot sessions: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Vượt giới hạn số phiên: loại ~10% phiên lâu không dùng nhất trong một lần để không phải sắp xếp
+     * lại ở mỗi request.
+     */
+    private synchronized void evictLeastRecentlyUsed() {
+        int overflow = sessions.size() - maxSessions;
+        if (overflow <= 0) {
+            return;
+        }
+        int toRemove = overflow + Math.max(1, maxSessions / 10);
+        // Chụp lastAccess một lần trước khi sắp xếp: lastAccess đổi trong lúc sort làm hỏng thứ tự của comparator
+        List<Candidate> candidates = new ArrayList<>(sessions.size());
+        sessions.forEach((id, session) -> candidates.add(new Candidate(id, session, session.lastAccess)));
+        candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+        int removed = 0;
+        for (Candidate candidate : candidates) {
+            if (removed >= toRemove) {
+                break;
+            }
+            // Phiên vừa được dùng lại sau khi chụp thì giữ; chỉ đếm những phiên thực sự bị xóa
+            if (candidate.session().lastAccess == candidate.lastAccess()
+                    && sessions.remove(candidate.id(), candidate.session())) {
+                removed++;
+            }
+        }
+        evictedSessions.addAndGet(removed);
+        log.info("Chatbot session store over capacity, evicted {} least recently used sessions", removed);
+    }
+
+    private record Candidate(String id, Session session, long lastAccess) {}
+
+    private Session loadPersisted(String sessionId) {
+        try {
+            return chatbotSessionRepository
+                    .findById(sessionId)
+                    .filter(row -> row.getUpdatedAt().isAfter(LocalDateTime.now().minusMinutes(idleMinutes)))
+                    .map(row -> {
+                        Session session = new Session();
+                        try {
+                            List<Turn> turns = objectMapper.readValue(row.getHistory(), new TypeReference<>() {});
+                            turns.forEach(session::add);
+                        } catch (Exception e) {
+                            log.warn("Corrupted chatbot session {}: {}", sessionId, e.getMessage());
+                        }
+                        Session existing = sessions.putIfAbsent(sessionId, session);
+                        return existing != null ? existing : session;
+                    })
+                    .orElse(null);
+        } catch (Exception e) {
+            log.warn("Could not load chatbot session {}: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void savePersisted(String sessionId, List<Turn> turns) {
+        try {
+            chatbotSessionRepository.save(ChatbotSession.builder()
+                    .sessionId(sessionId)
+                    .history(objectMapper.writeValueAsString(turns))
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+        } catch (Exception e) {
+            // Lưu DB chỉ là tùy chọn, lỗi không được làm hỏng câu trả lời
+            log.warn("Could not persist chatbot session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    public record Turn(String role, String text) {}
+
+    private static final class Session {
+        final Deque<Turn> turns = new ArrayDeque<>();
+        volatile long lastAccess = System.currentTimeMillis();
+        long tokens;
+        long chars;
+
+        void add(Turn turn) {
+            int length = turn.text() != null ? turn.text().length() : 0;
+            turns.addLast(turn);
+            chars += length;
+            tokens += (length + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+        }
+
+        void removeOldest() {
+            Turn turn = turns.pollFirst();
+            if (turn != null) {
+                int length = turn.text() != null ? turn.text().length() : 0;
+                chars -= length;
+                tokens -= (length + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hanoi_metro.backend.entity.ChatMessage;
+import com.hanoi_metro.backend.entity.ConversationSummary;
+import com.hanoi_metro.backend.entity.User;
+import com.hanoi_metro.backend.enums.SupportChatStatus;
+import com.hanoi_metro.backend.repository.ChatMessageRepository;
+import com.hanoi_metro.backend.repository.ConversationSummaryRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Duy trì bảng conversation_summaries (hộp thư chat) cùng transaction với việc gửi tin / đánh dấu đã đọc.
+ *
+ * Mỗi tin nhắn cập nhật hai dòng, một cho mỗi phía:
+ * - Khách hàng - CSKH: dòng (khách hàng, CSKH) và dòng chung của đội CSKH (SUPPORT_TEAM, khách hàng).
+ * - Các cặp khác: (người gửi, người nhận) và (người nhận, người gửi).
+ * Chỉ dòng của phía nhận được cộng unread.
+ *
+ * Dòng của đội CSKH còn giữ trạng thái yêu cầu hỗ trợ, suy ra từ các tin nhắn mốc do giao diện gửi
+ * (khách yêu cầu từ chatbot, CSKH tiếp nhận, khách ngắt kết nối), để hộp thư không phải đọc lại lịch sử.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ConversationSummaryService {
+
+    static final int BACKFILL_BATCH_SIZE = 500;
+
+    // Tin nhắn mốc của luồng hỗ trợ trực tiếp (cùng nội dung với giao diện chatbot / CSKH)
+    static final String SUPPORT_REQUEST_MARKER = "Khách hàng yêu cầu chat trực tiếp với nhân viên hỗ trợ từ chatbot";
+    static final String SUPPORT_ACCEPT_MARKER = "Tôi đã tiếp nhận yêu cầu hỗ trợ của bạn";
+    static final String SUPPORT_DISCONNECT_MARKER = "[SYSTEM_DISCONNECT]";
+
+    ConversationSummaryRepository conversationSummaryRepository;
+    ChatMessageRepository chatMessageRepository;
+
+    public void record(ChatMessage message) {
+        String preview = preview(message.getMessage());
+        for (View view : viewsOf(message.getSender(), message.getReceiver())) {
+            conversationSummaryRepository.recordMessage(
+                    view.ownerId(),
+                    view.partnerId(),
+                    preview,
+                    message.getSender().getId(),
+                    message.getCreatedAt(),
+                    view.unread() ? 1 : 0);
+        }
+        recordSupportStatus(message);
+    }
+
+    private void recordSupportStatus(ChatMessage message) {
+        SupportChatStatus transition = supportTransitionOf(message);
+        if (transition == SupportChatStatus.ACCEPTED) {
+            conversationSummaryRepository.markSupportAccepted(
+                    message.getReceiver().getId(), message.getSender().getId(), displayName(message.getSender()));
+        } else if (transition != null) {
+            conversationSummaryRepository.markSupportStatus(message.getSender().getId(), transition);
+        }
+    }
+
+    public void markRead(String ownerId, String partnerId) {
+        conversationSummaryRepository.markRead(ownerId, partnerId);
+    }
+
+    // Chủ hộp thư của user: đội CSKH dùng chung một hộp thư các hội thoại với khách hàng
+    public static String inboxOwnerOf(User user) {
+        return isSupport(user) ? ConversationSummary.SUPPORT_TEAM : user.getId();
+    }
+
+    public static boolean isSupport(User user) {
+        return user.getRole() != null && "CUSTOMER_SUPPORT".equals(user.getRole().getName());
+    }
+
+    public static boolean isCustomer(User user) {
+        return user.getRole() != null && "CUSTOMER".equals(user.getRole().getName());
+    }
+
+    /**
+     * Dựng hộp thư từ lịch sử chat_messages khi bảng còn trống (lần đầu triển khai).
+     */
+    @Transactional
+    public void backfill() {
+        if (conversationSummaryRepository.count() > 0 || chatMessageRepository.count() == 0) {
+            return;
+        }
+        Map<String, ConversationSummary> summaries = new HashMap<>();
+        for (int page = 0; ; page++) {
+            List<ChatMessage> messages =
+                    chatMessageRepository.findAllInOrder(PageRequest.of(page, BACKFILL_BATCH_SIZE));
+            for (ChatMessage message : messages) {
+                for (View view : viewsOf(message.getSender(), message.getReceiver())) {
+                    ConversationSummary summary = summaries.computeIfAbsent(
+                            view.ownerId() + "|" + view.partnerId(),
+                            key -> ConversationSummary.builder()
+                                    .ownerId(view.ownerId())
+                                    .partnerId(view.partnerId())
+                                    .unreadCount(0L)
+                                    .build());
+                    summary.setLastMessage(preview(message.getMessage()));
+                    summary.setLastSenderId(message.getSender().getId());
+                    summary.setLastMessageAt(message.getCreatedAt());
+                    if (view.unread() && !Boolean.TRUE.equals(message.getIsRead())) {
+                        summary.setUnreadCount(summary.getUnreadCount() + 1);
+                    }
+                    if (ConversationSummary.SUPPORT_TEAM.equals(view.ownerId())) {
+                        applySupportTransition(summary, message);
+                    }
+                }
+            }
+            if (messages.size() < BACKFILL_BATCH_SIZE) {
+                break;
+            }
+        }
+        conversationSummaryRepository.saveAll(summaries.values());
+        log.info("Conversation summaries backfilled: {} inbox rows", summaries.size());
+    }
+
+    /**
+     * Dựng support_status cho hộp thư đã có từ trước khi thêm cột này: đọc lại các tin nhắn mốc theo thứ tự thời gian.
+     * Bỏ qua nếu đã có dòng mang trạng thái.
+     */
+    @Transactional
+    public void backfillSupportStatus() {
+        if (conversationSummaryRepository.existsBySupportStatusIsNotNull()) {
+            return;
+        }
+        Map<String, ConversationSummary> summaries = new HashMap<>();
+        for (int page = 0; ; page++) {
+            List<ChatMessage> messages = chatMessageRepository.findSupportMarkersInOrder(
+                    SUPPORT_REQUEST_MARKER,
+                    SUPPORT_ACCEPT_MARKER,
+                    SUPPORT_DISCONNECT_MARKER,
+                    PageRequest.of(page, BACKFILL_BATCH_SIZE));
+            for (ChatMessage message : messages) {
+                String customerId = isCustomer(message.getSender())
+                        ? message.getSender().getId()
+                        : message.getReceiver().getId();
+                ConversationSummary summary = summaries.computeIfAbsent(customerId, id -> new ConversationSummary());
+                applySupportTransition(summary, message);
+            }
+            if (messages.size() < BACKFILL_BATCH_SIZE) {
+                break;
+            }
+        }
+        summaries.forEach((customerId, state) -> {
+            if (state.getSupportStatus() == SupportChatStatus.ACCEPTED) {
+                conversationSummaryRepository.markSupportAccepted(
+                        customerId, state.getAcceptedById(), state.getAcceptedByName());
+            } else if (state.getSupportStatus() != null) {
+                conversationSummaryRepository.markSupportStatus(customerId, state.getSupportStatus());
+            }
+        });
+        log.info("Support chat status backfilled for {} conversations", summaries.size());
+    }
+
+    // Cùng quy tắc với recordSupportStatus, áp lên bản ghi trong bộ nhớ
+    private static void applySupportTransition(ConversationSummary summary, ChatMessage message) {
+        SupportChatStatus transition = supportTransitionOf(message);
+        if (transition == null) {
+            return;
+        }
+        if (transition == SupportChatStatus.ACCEPTED) {
+            if (summary.getSupportStatus() == null || summary.getSupportStatus() == SupportChatStatus.PENDING) {
+                summary.setSupportStatus(SupportChatStatus.ACCEPTED);
+                summary.setAcceptedById(message.getSender().getId());
+                summary.setAcceptedByName(displayName(message.getSender()));
+            }
+            return;
+        }
+        summary.setSupportStatus(transition);
+        summary.setAcceptedById(null);
+        summary.setAcceptedByName(null);
+    }
+
+    /**
+     * Trạng thái mà tin nhắn chuyển hội thoại hỗ trợ sang, null nếu không phải tin nhắn mốc:
+     * khách gửi yêu cầu từ chatbot -> PENDING, CSKH gửi lời tiếp nhận -> ACCEPTED, khách ngắt kết nối -> DISCONNECTED.
+     */
+    private static SupportChatStatus supportTransitionOf(ChatMessage message) {
+        String text = message.getMessage();
+        if (text == null) {
+            return null;
+        }
+        if (isCustomer(message.getSender()) && isSupport(message.getReceiver())) {
+            if (text.contains(SUPPORT_DISCONNECT_MARKER)) {
+                return SupportChatStatus.DISCONNECTED;
+            }
+            if (text.contains(SUPPORT_REQUEST_MARKER)) {
+                return SupportChatStatus.PENDING;
+            }
+        } else if (isSupport(message.getSender())
+                && isCustomer(message.getReceiver())
+                && text.contains(SUPPORT_ACCEPT_MARKER)) {
+            return SupportChatStatus.ACCEPTED;
+        }
+        return null;
+    }
+
+    private static String displayName(User user) {
+        return user.getFullName() != null ? user.getFullName() : user.getEmail();
+    }
+
+    private static List<View> viewsOf(User sender, User receiver) {
+        if (isCustomer(sender) && isSupport(receiver)) {
+            return List.of(
+                    new View(sender.getId(), receiver.getId(), false),
+                    new View(ConversationSummary.SUPPORT_TEAM, sender.getId(), true));
+        }
+        if (isSupport(sender) && isCustomer(receiver)) {
+            return List.of(
+                    new View(receiver.getId(), sender.getId(), true),
+                    new View(ConversationSummary.SUPPORT_TEAM, receiver.getId(), false));
+        }
+        return List.of(
+                new View(sender.getId(), receiver.getId(), false),
+                new View(receiver.getId(), sender.getId(), true));
+    }
+
+    private static String preview(String message) {
+        if (message == null || message.length() <= ConversationSummary.PREVIEW_LENGTH) {
+            return message;
+        }
+        return message.substring(0, ConversationSummary.PREVIEW_LENGTH - 1) + "…";
+    }
+
+    private record View(String ownerId, String partnerId, boolean unread) {}
+}
@@ -0,0 +1,323 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.entity.Product;
+import com.hanoi_metro.backend.entity.Promotion;
+import com.hanoi_metro.backend.enums.DiscountApplyScope;
+import com.hanoi_metro.backend.enums.DiscountValueType;
+import com.hanoi_metro.backend.enums.ProductStatus;
+import com.hanoi_metro.backend.enums.PromotionStatus;
+import com.hanoi_metro.backend.repository.ProductRepository;
+import com.hanoi_metro.backend.repository.PromotionRepository;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bảng giá hiệu lực dựng sẵn trong bộ nhớ: productId -> giá cuối, số tiền giảm và promotion thắng.
+ *
+ * Toàn bộ index được dựng bằng 2 câu query (sản phẩm, promotion đang hiệu lực kèm phạm vi) cùng đường đi tới
+ * gốc của danh mục lấy từ CategoryTreeCache, khi khởi động và khi sang ngày mới, nên các trang danh sách và
+ * giỏ hàng tra giá O(1) thay vì query promotion theo từng sản phẩm và từng danh mục cha.
+ * PromotionService (approve/update/delete, áp/gỡ promotion - kể cả khi ExpirationService kích hoạt hoặc
+ * hết hạn promotion) và ProductService (tạo/sửa/xóa) chỉ xóa các entry bị ảnh hưởng; entry thiếu được tính
+ * lại ở lần đọc kế tiếp. Mỗi lần xóa tăng generation; giá tính ở đường chậm và bản dựng lại toàn bộ chỉ được
+ * ghi vào index nếu không có lần xóa nào xen giữa, để giá tính từ dữ liệu cũ không đè lên entry vừa bị xóa.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class EffectivePriceIndex {
+
+    ProductRepository productRepository;
+    PromotionRepository promotionRepository;
+    CategoryTreeCache categoryTreeCache;
+
+    @NonFinal
+    volatile Map<String, EffectivePrice> entries = new ConcurrentHashMap<>();
+
+    @NonFinal
+    volatile LocalDate builtFor;
+
+    AtomicLong generation = new AtomicLong();
+
+    /**
+     * Giá hiệu lực của sản phẩm theo cách tính của ProductService: unitPrice * (1 + tax) - discount.
+     */
+    public EffectivePrice get(Product product) {
+        if (product == null || product.getId() == null) {
+            return null;
+        }
+        LocalDate today = LocalDate.now();
+        if (!today.equals(builtFor)) {
+            rebuildIfStale(today);
+        }
+        EffectivePrice cached = entries.get(product.getId());
+        if (cached != null && today.equals(cached.computedOn())) {
+            return cached;
+        }
+        long observed = generation.get();
+        EffectivePrice computed = compute(product, resolvePromotion(product, today), today);
+        // compute() khóa theo key nên không xen được với remove() của invalidate
+        entries.compute(product.getId(), (id, current) -> generation.get() == observed ? computed : current);
+        return computed;
+    }
+
+    // Nhiều luồng cùng thấy index cũ (sang ngày mới) thì chỉ luồng đầu tiên dựng lại
+    private synchronized void rebuildIfStale(LocalDate today) {
+        if (!today.equals(builtFor)) {
+            rebuildAll();
+        }
+    }
+
+    /**
+     * Dựng lại toàn bộ index. Dùng query có JOIN FETCH nên gọi được cả ngoài transaction.
+     */
+    public synchronized void rebuildAll() {
+        LocalDate today = LocalDate.now();
+        long observed = generation.get();
+        try {
+            Map<String, List<Promotion>> byProduct = new HashMap<>();
+            Map<String, List<Promotion>> byCategory = new HashMap<>();
+            for (Promotion promotion : promotionRepository.findEffectiveWithTargets(today)) {
+                if (promotion.getApplyScope() == DiscountApplyScope.PRODUCT) {
+                    promotion.getProductApply().forEach(p ->
+                            byProduct.computeIfAbsent(p.getId(), k -> new ArrayList<>()).add(promotion));
+                } else if (promotion.getApplyScope() == DiscountApplyScope.CATEGORY) {
+                    promotion.getCategoryApply().forEach(c ->
+                            byCategory.computeIfAbsent(c.getId(), k -> new ArrayList<>()).add(promotion));
+                }
+            }
+
+            Map<String, EffectivePrice> rebuilt = new ConcurrentHashMap<>();
+            for (Product product : productRepository.findByStatusWithCategoryAndPromotion(ProductStatus.APPROVED)) {
+                List<Promotion> candidates = new ArrayList<>();
+                if (product.getPromotion() != null) {
+                    candidates.add(product.getPromotion());
+                }
+                candidates.addAll(byProduct.getOrDefault(product.getId(), List.of()));
+                String categoryId = product.getCategory() != null ? product.getCategory().getId() : null;
+                for (String catId : categoryTreeCache.pathToRoot(categoryId)) {
+                    candidates.addAll(byCategory.getOrDefault(catId, List.of()));
+                }
+                rebuilt.put(product.getId(), compute(product, pickWinner(candidates, today), today));
+            }
+
+            if (generation.get() != observed) {
+                // Có lần xóa xen giữa: bản dựng lại có thể chứa giá cũ của entry vừa bị xóa nên bỏ đi, giữ index
+                // hiện tại (entry của ngày trước vẫn được tính lại khi đọc)
+                builtFor = today;
+                log.info("Effective price index rebuild discarded: invalidated while rebuilding");
+                return;
+            }
+            entries = rebuilt;
+            if (generation.get() != observed) {
+                // Lần xóa chen vào giữa bước kiểm tra và bước thay index có thể đã xóa trên index cũ
+                entries = new ConcurrentHashMap<>();
+            }
+            builtFor = today;
+            log.info("Effective price index rebuilt for {} products", rebuilt.size());
+        } catch (Exception e) {
+            // Giữ index cũ; các entry thiếu vẫn được tính lại khi đọc
+            builtFor = today;
+            log.error("Could not rebuild effective price index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Xóa entry của các sản phẩm; nếu đang trong transaction thì xóa lại sau commit để lần đọc kế tiếp
+     * thấy dữ liệu đã commit.
+     */
+    public void invalidate(Collection<String> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        Set<String> ids = new HashSet<>(productIds);
+        ids.remove(null);
+        remove(ids);
+        TransactionUtil.afterCommit(() -> remove(ids));
+    }
+
+    // Tăng generation trước khi xóa: lần tính giá đang chạy sẽ thấy và không ghi đè
+    private void remove(Set<String> ids) {
+        generation.incrementAndGet();
+        ids.forEach(entries::remove);
+    }
+
+    public void invalidate(String productId) {
+        if (productId != null) {
+            invalidate(List.of(productId));
+        }
+    }
+
+    /**
+     * Xóa entry của mọi sản phẩm có thể bị ảnh hưởng bởi promotion: đang thắng bằng promotion này,
+     * nằm trong productApply, hoặc thuộc cây con của một category trong categoryApply.
+     */
+    public void invalidatePromotion(Promotion promotion) {
+        if (promotion == null) {
+            return;
+        }
+        Set<String> affected = new HashSet<>();
+        promotion.getProductApply().forEach(p -> affected.add(p.getId()));
+        Set<String> targetCategories = new HashSet<>();
+        promotion.getCategoryApply().forEach(c -> targetCategories.add(c.getId()));
+
+        entries.forEach((productId, entry) -> {
+            if (Objects.equals(promotion.getId(), entry.promotionId())) {
+                affected.add(productId);
+            } else if (entry.categoryId() != null
+                    && targetCategories.stream()
+                            .anyMatch(catId -> categoryTreeCache.isInSubtree(entry.categoryId(), catId))) {
+                affected.add(productId);
+            }
+        });
+        invalidate(affected);
+    }
+
+    /**
+     * Cây danh mục thay đổi: bỏ toàn bộ index, dựng lại ở lần đọc kế tiếp.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        builtFor = null;
+        TransactionUtil.afterCommit(() -> {
+            generation.incrementAndGet();
+            builtFor = null;
+        });
+    }
+
+    public static double calculateDiscountAmount(
+            DiscountValueType type, Double value, Double maxDiscount, double basePrice) {
+        if (basePrice <= 0 || type == null) return 0;
+
+        double discountValue = value != null ? value : 0;
+        double discountAmount = 0;
+
+        switch (type) {
+            case PERCENTAGE -> {
+                discountAmount = basePrice * (discountValue / 100.0);
+                if (maxDiscount != null && maxDiscount > 0) {
+                    discountAmount = Math.min(discountAmount, maxDiscount);
+                }
+            }
+            case AMOUNT -> discountAmount = discountValue;
+        }
+        return Math.min(discountAmount, basePrice);
+    }
+
+    // Đường chậm khi entry bị thiếu: giống logic cũ của ProductService.findActivePromotionForProduct
+    private Promotion resolvePromotion(Product product, LocalDate today) {
+        List<Promotion> candidates = new ArrayList<>();
+        if (product.getPromotion() != null) {
+            candidates.add(product.getPromotion());
+        }
+        candidates.addAll(promotionRepository.findActiveByProductId(product.getId(), today));
+        String categoryId = product.getCategory() != null ? product.getCategory().getId() : null;
+        for (String catId : categoryTreeCache.pathToRoot(categoryId)) {
+            candidates.addAll(promotionRepository.findActiveByCategoryId(catId, today));
+        }
+        return pickWinner(candidates, today);
+    }
+
+    private Promotion pickWinner(List<Promotion> candidates, LocalDate today) {
+        Map<String, Promotion> distinct = new HashMap<>();
+        for (Promotion candidate : candidates) {
+            if (isPromotionActive(candidate, today)) {
+                distinct.putIfAbsent(candidate.getId(), candidate);
+            }
+        }
+        return distinct.values().stream()
+                .min(Comparator.comparing(Promotion::getStartDate, Comparator.nullsLast(Comparator.naturalOrder())))
+                .orElse(null);
+    }
+
+    private boolean isPromotionActive(Promotion promotion, LocalDate today) {
+        if (promotion == null) return false;
+        if (promotion.getStatus() != PromotionStatus.APPROVED) return false;
+        if (!Boolean.TRUE.equals(promotion.getIsActive())) return false;
+        if (promotion.getStartDate() != null && promotion.getStartDate().isAfter(today)) return false;
+        return promotion.getExpiryDate() == null || !promotion.getExpiryDate().isBefore(today);
+    }
+
+    private EffectivePrice compute(Product product, Promotion promotion, LocalDate today) {
+        double unitPrice = product.getUnitPrice() != null ? product.getUnitPrice() : 0.0;
+        double tax = product.getTax() != null ? product.getTax() : 0.0;
+        double priceWithTax = unitPrice * (1 + tax);
+        String categoryId = product.getCategory() != null ? product.getCategory().getId() : null;
+
+        if (promotion == null) {
+            return new EffectivePrice(
+                    product.getId(), categoryId, priceWithTax, 0.0, priceWithTax,
+                    null, null, null, null, null, null, null, today);
+        }
+        double discountAmount = calculateDiscountAmount(
+                promotion.getDiscountValueType(),
+                promotion.getDiscountValue(),
+                promotion.getMaxDiscountValue(),
+                priceWithTax);
+        return new EffectivePrice(
+                product.getId(),
+                categoryId,
+                Math.max(0, priceWithTax - discountAmount),
+                discountAmount,
+                priceWithTax,
+                promotion.getId(),
+                promotion.getName(),
+                promotion.getStartDate(),
+                promotion.getExpiryDate(),
+                promotion.getDiscountValueType(),
+                promotion.getDiscountValue(),
+                promotion.getMaxDiscountValue(),
+                today);
+    }
+
+    /**
+     * Snapshot giá của một sản phẩm; chỉ chứa giá trị, không giữ entity nên an toàn khi dùng ngoài session.
+     */
+    public record EffectivePrice(
+            String productId,
+            String categoryId,
+            double price,
+            double discountValue,
+            double priceWithTax,
+            String promotionId,
+            String promotionName,
+            LocalDate promotionStartDate,
+            LocalDate promotionExpiryDate,
+            DiscountValueType discountValueType,
+            Double promotionDiscountValue,
+            Double maxDiscountValue,
+            LocalDate computedOn) {
+
+        public boolean hasPromotion() {
+            return promotionId != null;
+        }
+
+        // Số tiền giảm của promotion thắng trên một mức giá khác (giá variant, thuế mặc định của giỏ hàng)
+        public double discountFor(double basePrice) {
+            return hasPromotion()
+                    ? calculateDiscountAmount(discountValueType, promotionDiscountValue, maxDiscountValue, basePrice)
+                    : 0;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import com.hanoi_metro.backend.entity.EmailOutbox;
+import com.hanoi_metro.backend.enums.EmailOutboxStatus;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+import com.hanoi_metro.backend.repository.EmailOutboxRepository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gửi email trong email_outbox ở nền.
+ *
+ * - Mỗi lần quét lấy tối đa batch-size email đến hạn, gửi song song trên virtual thread, nhưng không quá
+ *   số request đồng thời bulkhead Brevo cho phép (outbound-http.destinations.brevo.max-concurrent).
+ * - Bị bulkhead từ chối (email OTP... đang chiếm slot) thì trả email về hàng đợi, không tính là một lần thử.
+ * - Mỗi email được "nhận" bằng UPDATE có điều kiện kèm lease và token của lần nhận, nên nhiều instance chạy cùng
+ *   lúc không gửi trùng; instance chết giữa chừng thì email được gửi lại khi lease hết hạn (tính một lần thử).
+ *   Kết quả gửi chỉ được ghi khi token còn giữ lease, lần nhận đã hết hạn không ghi đè lần nhận mới.
+ * - Lỗi tạm thời (5xx, 429, timeout, lỗi kết nối): retry với backoff lũy thừa có jitter.
+ *   Lỗi 4xx khác hoặc hết max-attempts: chuyển DEAD (dead-letter) để xử lý thủ công.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class EmailOutboxDispatcher {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    final EmailOutboxRepository emailOutboxRepository;
+    final EmailOutboxService emailOutboxService;
+    final BrevoEmailService brevoEmailService;
+    final int maxParallel;
+
+    final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    final AtomicBoolean draining = new AtomicBoolean();
+
+    @Value("${email.outbox.batch-size:50}")
+    int batchSize;
+
+    @Value("${email.outbox.max-attempts:6}")
+    int maxAttempts;
+
+    @Value("${email.outbox.backoff-seconds:30}")
+    long backoffSeconds;
+
+    @Value("${email.outbox.max-backoff-seconds:3600}")
+    long maxBackoffSeconds;
+
+    @Value("${email.outbox.lease-seconds:120}")
+    long leaseSeconds;
+
+    @Value("${email.outbox.retention-days:7}")
+    long retentionDays;
+
+    @Value("${email.outbox.busy-retry-seconds:5}")
+    long busyRetrySeconds;
+
+    public EmailOutboxDispatcher(
+            EmailOutboxRepository emailOutboxRepository,
+            EmailOutboxService emailOutboxService,
+            BrevoEmailService brevoEmailService,
+            OutboundHttpRegistry outboundHttpRegistry) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailOutboxService = emailOutboxService;
+        this.brevoEmailService = brevoEmailService;
+        this.maxParallel = Math.max(1, outboundHttpRegistry.destination("brevo").config().getMaxConcurrent());
+    }
+
+    // Chỉ khởi động việc gửi trên virtual thread, không giữ luồng scheduler chung
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:2000}")
+    public void poll() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    drain();
+                } catch (Exception e) {
+                    log.error("Email outbox dispatch failed: {}", e.getMessage(), e);
+                } finally {
+                    draining.set(false);
+                }
+            });
+        }
+    }
+
+    // Xóa email đã gửi quá retention-days
+    @Scheduled(cron = "0 30 3 * * *")
+    public void purgeSent() {
+        int deleted = emailOutboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            log.info("Purged {} sent emails from outbox", deleted);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void drain() throws InterruptedException {
+        Semaphore slots = new Semaphore(maxParallel);
+        List<String> ids;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            ids = emailOutboxRepository.findDueIds(now, PageRequest.of(0, batchSize));
+            List<Future<?>> sends = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                slots.acquire();
+                sends.add(executor.submit(() -> {
+                    try {
+                        dispatch(id, now);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            for (Future<?> send : sends) {
+                try {
+                    send.get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    log.error("Email dispatch task failed: {}", e.getCause().getMessage());
+                }
+            }
+        } while (ids.size() == batchSize);
+    }
+
+    private void dispatch(String id, LocalDateTime now) {
+        String owner = UUID.randomUUID().toString();
+        if (emailOutboxRepository.claim(id, owner, now, now.plusSeconds(leaseSeconds)) == 0) {
+            return; // Dispatcher khác đã nhận
+        }
+        EmailOutbox email = emailOutboxRepository.findById(id).orElse(null);
+        if (email == null) {
+            return;
+        }
+        if (email.getAttempts() >= maxAttempts) {
+            // Các lần thử trước đều hết lease mà không có kết quả
+            emailOutboxRepository.markFailed(
+                    id, owner, EmailOutboxStatus.DEAD, LocalDateTime.now(), "Lease expired on every attempt");
+            log.error("Email '{}' to {} moved to dead letter after {} expired leases",
+                    email.getSubject(), email.getRecipient(), email.getAttempts());
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            brevoEmailService.deliver(email.getPayload());
+            LocalDateTime sentAt = LocalDateTime.now();
+            if (emailOutboxRepository.markSent(id, owner, sentAt) == 0) {
+                log.warn("Email '{}' to {} sent after its lease expired; another dispatcher may send it again",
+                        email.getSubject(), email.getRecipient());
+            }
+            emailOutboxService.recordSent(
+                    Duration.ofNanos(System.nanoTime() - startedAt).toMillis(),
+                    Duration.between(email.getCreatedAt(), sentAt).toMillis());
+            log.info("Email '{}' sent to {}", email.getSubject(), email.getRecipient());
+        } catch (Exception e) {
+            if (e instanceof AppException appException
+                    && appException.getErrorCode() == ErrorCode.EXTERNAL_SERVICE_BUSY) {
+                // Request chưa được gửi tới Brevo: trả về hàng đợi, không tính lần thử
+                emailOutboxRepository.defer(id, owner, LocalDateTime.now().plusSeconds(busyRetrySeconds));
+                log.debug("Email '{}' to {} deferred: Brevo bulkhead full",
+                        email.getSubject(), email.getRecipient());
+                return;
+            }
+            emailOutboxService.recordFailure();
+            int attempts = email.getAttempts() + 1;
+            String error = truncate(e.getMessage());
+            if (!isRetryable(e) || attempts >= maxAttempts) {
+                emailOutboxRepository.markFailed(id, owner, EmailOutboxStatus.DEAD, LocalDateTime.now(), error);
+                log.error("Email '{}' to {} moved to dead letter after {} attempts: {}",
+                        email.getSubject(), email.getRecipient(), attempts, error);
+            } else {
+                LocalDateTime retryAt = LocalDateTime.now().plus(backoff(attempts));
+                emailOutboxRepository.markFailed(id, owner, EmailOutboxStatus.PENDING, retryAt, error);
+                log.warn("Email '{}' to {} failed (attempt {}), retry at {}: {}",
+                        email.getSubject(), email.getRecipient(), attempts, retryAt, error);
+            }
+        }
+    }
+
+    // backoff * 2^(attempts-1), tối đa max-backoff, jitter 50-100%
+    private Duration backoff(int attempts) {
+        long seconds = backoffSeconds << Math.min(attempts - 1, 20);
+        seconds = Math.min(seconds, maxBackoffSeconds);
+        long jittered = (long) (seconds * 1000 * (0.5 + ThreadLocalRandom.current().nextDouble() * 0.5));
+        return Duration.ofMillis(jittered);
+    }
+
+    private boolean isRetryable(Exception e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            return clientError.getStatusCode().value() == 429;
+        }
+        return true;
+    }
+
+    private String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -0,0 +1,93 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hanoi_metro.backend.dto.response.EmailOutboxStats;
+import com.hanoi_metro.backend.entity.EmailOutbox;
+import com.hanoi_metro.backend.enums.EmailOutboxStatus;
+import com.hanoi_metro.backend.repository.EmailOutboxRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ghi email vào bảng email_outbox (tạo đơn, hoàn tiền, khóa tài khoản...); EmailOutboxDispatcher gửi ở nền nên
+ * request của khách không phải chờ Brevo và không bị ảnh hưởng khi Brevo lỗi.
+ *
+ * Ghi trong cùng transaction với thay đổi nghiệp vụ của nơi gọi: nghiệp vụ rollback thì không có email nào được
+ * gửi, còn lỗi ghi outbox thì làm thất bại luôn thay đổi nghiệp vụ.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class EmailOutboxService {
+
+    EmailOutboxRepository emailOutboxRepository;
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    AtomicLong sent = new AtomicLong();
+    AtomicLong failedAttempts = new AtomicLong();
+    AtomicLong sendLatencyTotalMs = new AtomicLong();
+    AtomicLong sendLatencyMaxMs = new AtomicLong();
+    AtomicLong queueDelayTotalMs = new AtomicLong();
+
+    /**
+     * @param requestBody request body của Brevo /v3/smtp/email
+     */
+    @Transactional
+    public void enqueue(String recipient, String subject, Map<String, Object> requestBody) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(requestBody);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize email to {}: {}", recipient, e.getMessage());
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        emailOutboxRepository.save(EmailOutbox.builder()
+                .recipient(recipient)
+                .subject(subject)
+                .payload(payload)
+                .status(EmailOutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+        log.info("Queued email '{}' to {}", subject, recipient);
+    }
+
+    void recordSent(long latencyMs, long queueDelayMs) {
+        sent.incrementAndGet();
+        sendLatencyTotalMs.addAndGet(latencyMs);
+        sendLatencyMaxMs.accumulateAndGet(latencyMs, Math::max);
+        queueDelayTotalMs.addAndGet(queueDelayMs);
+    }
+
+    void recordFailure() {
+        failedAttempts.incrementAndGet();
+    }
+
+    public EmailOutboxStats stats() {
+        long sentCount = sent.get();
+        return EmailOutboxStats.builder()
+                .pending(emailOutboxRepository.countByStatus(EmailOutboxStatus.PENDING))
+                .sending(emailOutboxRepository.countByStatus(EmailOutboxStatus.SENDING))
+                .dead(emailOutboxRepository.countByStatus(EmailOutboxStatus.DEAD))
+                .sentSinceStart(sentCount)
+                .failedAttemptsSinceStart(failedAttempts.get())
+                .averageSendLatencyMs(sentCount == 0 ? 0 : sendLatencyTotalMs.get() / sentCount)
+                .maxSendLatencyMs(sendLatencyMaxMs.get())
+                .averageQueueDelayMs(sentCount == 0 ? 0 : queueDelayTotalMs.get() / sentCount)
+                .build();
+    }
+}
@@ -32,6 +32,7 @@ public class ExpirationService {
     private final ExpiredVoucherRepository expiredVoucherRepository;
     private final ExpiredPromotionRepository expiredPromotionRepository;
     private final PromotionService promotionService;
+    private final CatalogHttpCache catalogHttpCache;
 
     // Cháº¡y má»—i giá» Ä‘á»ƒ kiá»ƒm tra vÃ  chuyá»ƒn voucher/promotion háº¿t háº¡n vÃ o báº£ng háº¿t háº¡n
     // Cron expression: giÃ¢y phÃºt giá» ngÃ y thÃ¡ng thá»© (0 0 * * * * = má»—i giá»)
@@ -111,6 +112,7 @@ public class ExpirationService {
                 // Cập nhật status của voucher gốc thành EXPIRED
                 voucher.setStatus(VoucherStatus.EXPIRED);
                 voucherRepository.save(voucher);
+                catalogHttpCache.onChanged(CatalogHttpCache.Family.VOUCHERS);
                 
                 log.info("ÄÃ£ chuyá»ƒn voucher {} vÃ o báº£ng háº¿t háº¡n", voucher.getCode());
             }
@@ -151,6 +153,7 @@ public class ExpirationService {
                 // Cập nhật status của promotion gốc thành EXPIRED
                 promotion.setStatus(PromotionStatus.EXPIRED);
                 promotionRepository.save(promotion);
+                catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
                 
                 log.info("ÄÃ£ chuyá»ƒn promotion {} ({}) vÃ o báº£ng háº¿t háº¡n", promotion.getName(), promotion.getId());
             }
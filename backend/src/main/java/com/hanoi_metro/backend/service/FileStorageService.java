@@ -2,21 +2,30 @@ package com.hanoi_metro.backend.service;
 
 
 import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Upload media (ảnh/video) lên Cloudinary hoặc ổ đĩa local (media.storage.backend).
+ *
+ * File upload không bao giờ được đọc nguyên vào heap: multipart đã được servlet container ghi ra đĩa, file được
+ * chuyển sang thư mục spool rồi gửi lên Cloudinary từ file (file lớn hơn media.upload.chunk-size-mb gửi theo
+ * từng chunk bằng uploadLarge). Số upload đồng thời và hàng đợi do MediaUploadGate giới hạn.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class FileStorageService {
 
     private static final String PRODUCT_MEDIA_FOLDER = "product_media";
@@ -26,6 +35,27 @@ public class FileStorageService {
     private static final String BANNER_MEDIA_FOLDER = "banners";
 
     private final Cloudinary cloudinary;
+    private final OutboundHttpRegistry outboundHttpRegistry;
+    private final MediaUploadGate mediaUploadGate;
+    private final LocalMediaStorage localMediaStorage;
+    private final Path spoolDirectory;
+    private final int chunkSizeBytes;
+
+    public FileStorageService(
+            Cloudinary cloudinary,
+            OutboundHttpRegistry outboundHttpRegistry,
+            MediaUploadGate mediaUploadGate,
+            LocalMediaStorage localMediaStorage,
+            @Value("${media.upload.spool-dir:${java.io.tmpdir}/hanoi_metro-uploads}") String spoolDirectory,
+            @Value("${media.upload.chunk-size-mb:6}") int chunkSizeMb) {
+        this.cloudinary = cloudinary;
+        this.outboundHttpRegistry = outboundHttpRegistry;
+        this.mediaUploadGate = mediaUploadGate;
+        this.localMediaStorage = localMediaStorage;
+        this.spoolDirectory = Paths.get(spoolDirectory);
+        // Cloudinary yêu cầu chunk tối thiểu 5 MB
+        this.chunkSizeBytes = Math.max(5, chunkSizeMb) * 1024 * 1024;
+    }
 
     /**
      * Upload product/voucher/promotion/avatar media file to Cloudinary
@@ -34,23 +64,23 @@ public class FileStorageService {
      * @return Cloudinary URL of the uploaded file
      */
     public String storeProductMedia(MultipartFile file) {
-        return uploadToCloudinary(file, PRODUCT_MEDIA_FOLDER);
+        return store(file, PRODUCT_MEDIA_FOLDER);
     }
 
     public String storeVoucherMedia(MultipartFile file) {
-        return uploadToCloudinary(file, VOUCHER_MEDIA_FOLDER);
+        return store(file, VOUCHER_MEDIA_FOLDER);
     }
 
     public String storePromotionMedia(MultipartFile file) {
-        return uploadToCloudinary(file, PROMOTION_MEDIA_FOLDER);
+        return store(file, PROMOTION_MEDIA_FOLDER);
     }
 
     public String storeProfileMedia(MultipartFile file) {
-        return uploadToCloudinary(file, PROFILE_MEDIA_FOLDER);
+        return store(file, PROFILE_MEDIA_FOLDER);
     }
 
     public String storeBannerMedia(MultipartFile file) {
-        return uploadToCloudinary(file, BANNER_MEDIA_FOLDER);
+        return store(file, BANNER_MEDIA_FOLDER);
     }
 
     /**
@@ -59,21 +89,73 @@ public class FileStorageService {
      * @param url Cloudinary URL của file cần xóa
      */
     public void deleteProfileMedia(String url) {
-        deleteFromCloudinary(url);
+        delete(url);
     }
 
     public void deleteFileFromCloudinary(String url) {
-        deleteFromCloudinary(url);
+        delete(url);
+    }
+
+    private void delete(String url) {
+        if (localMediaStorage.owns(url)) {
+            localMediaStorage.delete(url);
+        } else {
+            deleteFromCloudinary(url);
+        }
     }
 
     /**
-     * Upload file to Cloudinary
+     * Spool file upload ra đĩa rồi lưu vào storage đang dùng, trong giới hạn của MediaUploadGate
      *
      * @param file   File to upload
+     * @param folder Folder to store the file
+     * @return URL of the stored file
+     */
+    private String store(MultipartFile file, String folder) {
+        return mediaUploadGate.run(() -> {
+            Path spooled = null;
+            try {
+                spooled = spool(file);
+                return localMediaStorage.isEnabled()
+                        ? localMediaStorage.store(spooled, folder, file.getOriginalFilename())
+                        : uploadToCloudinary(spooled.toFile(), folder);
+            } catch (IOException e) {
+                log.error("Failed to store uploaded file: {}", e.getMessage(), e);
+                throw new AppException(ErrorCode.FILE_UPLOAD_FAILED);
+            } finally {
+                deleteSpooled(spooled);
+            }
+        });
+    }
+
+    // Multipart đã nằm trên đĩa thì transferTo chỉ là đổi tên file tạm của container
+    private Path spool(MultipartFile file) throws IOException {
+        Files.createDirectories(spoolDirectory);
+        Path spooled = Files.createTempFile(spoolDirectory, "upload-", ".part");
+        Files.delete(spooled);
+        file.transferTo(spooled.toFile());
+        return spooled;
+    }
+
+    private void deleteSpooled(Path spooled) {
+        if (spooled == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spooled);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled upload {}: {}", spooled, e.getMessage());
+        }
+    }
+
+    /**
+     * Upload file to Cloudinary
+     *
+     * @param file   Spooled file to upload
      * @param folder Cloudinary folder to store the file
      * @return Cloudinary URL of the uploaded file
      */
-    private String uploadToCloudinary(MultipartFile file, String folder) {
+    private String uploadToCloudinary(File file, String folder) {
         try {
             Map<String, Object> uploadParams = new HashMap<>();
             uploadParams.put("folder", folder);
@@ -82,10 +164,15 @@ public class FileStorageService {
             uploadParams.put("overwrite", false); // Không ghi đè file cũ
             uploadParams.put("resource_type", "auto"); // Tự động detect image/video/raw
 
+            OutboundHttpRegistry.Destination destination = outboundHttpRegistry.destination("cloudinary");
+            applyTimeouts(uploadParams, destination);
+
+            // SDK đọc thẳng từ file; file lớn gửi từng chunk nên heap chỉ giữ tối đa một chunk mỗi upload
             @SuppressWarnings("unchecked")
-            Map<String, Object> uploadResult = (Map<String, Object>) cloudinary.uploader().upload(
-                    file.getBytes(),
-                    uploadParams);
+            Map<String, Object> uploadResult = (Map<String, Object>) destination.call(
+                    () -> file.length() > chunkSizeBytes
+                            ? cloudinary.uploader().uploadLarge(file, uploadParams, chunkSizeBytes)
+                            : cloudinary.uploader().upload(file, uploadParams));
 
             String url = (String) uploadResult.get("secure_url");
             String publicId = (String) uploadResult.get("public_id");
@@ -121,9 +208,13 @@ public class FileStorageService {
                 return;
             }
 
+            OutboundHttpRegistry.Destination destination = outboundHttpRegistry.destination("cloudinary");
+            Map<String, Object> destroyParams = new HashMap<>();
+            applyTimeouts(destroyParams, destination);
+
             @SuppressWarnings("unchecked")
-            Map<String, Object> deleteResult = (Map<String, Object>) cloudinary.uploader().destroy(publicId,
-                    ObjectUtils.emptyMap());
+            Map<String, Object> deleteResult = (Map<String, Object>) destination.call(
+                    () -> cloudinary.uploader().destroy(publicId, destroyParams));
             String result = (String) deleteResult.get("result");
 
             if ("ok".equals(result)) {
@@ -136,6 +227,13 @@ public class FileStorageService {
         }
     }
 
+    // Timeout theo outbound-http.destinations.cloudinary (SDK đọc các option này cho từng request)
+    private void applyTimeouts(Map<String, Object> params, OutboundHttpRegistry.Destination destination) {
+        params.put("connect_timeout", (int) destination.config().getConnectTimeoutMs());
+        params.put("connection_request_timeout", (int) destination.config().getAcquireTimeoutMs());
+        params.put("timeout", (int) destination.config().getReadTimeoutMs());
+    }
+
     /**
      * Extract public_id from Cloudinary URL
      *
@@ -0,0 +1,76 @@
+package com.hanoi_metro.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker cho Gemini API: sau failure-threshold lỗi liên tiếp thì mở mạch trong open-seconds,
+ * mọi request trả lời fallback ngay thay vì chờ timeout. Hết thời gian mở chỉ cho một request thử lại
+ * (half-open); thành công thì đóng mạch, thất bại thì mở lại.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class GeminiCircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @Value("${chatbot.gemini.circuit.failure-threshold:5}")
+    int failureThreshold;
+
+    @Value("${chatbot.gemini.circuit.open-seconds:30}")
+    long openSeconds;
+
+    State state = State.CLOSED;
+
+    int consecutiveFailures;
+    long openedAt;
+
+    /**
+     * true nếu được phép gọi Gemini.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        // OPEN hết hạn, hoặc request thử trước đó không báo kết quả (bị hủy): cho một request thử
+        if (now - openedAt >= openSeconds * 1000) {
+            state = State.HALF_OPEN;
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Gemini circuit closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("Gemini circuit opened after {} consecutive failures", consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+}
@@ -0,0 +1,270 @@
+package com.hanoi_metro.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hanoi_metro.backend.configuration.GhnProperties;
+import com.hanoi_metro.backend.dto.response.GhnDistrictResponse;
+import com.hanoi_metro.backend.dto.response.GhnProvinceResponse;
+import com.hanoi_metro.backend.dto.response.GhnWardResponse;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache dữ liệu hành chính của GHN (tỉnh/quận/phường) - dữ liệu gần như không đổi nên không gọi GHN
+ * mỗi lần người dùng chọn địa chỉ.
+ *
+ * - Khi khởi động nạp snapshot nén (gzip JSON) trên đĩa, tra cứu theo provinceId/districtId trong bộ nhớ.
+ * - Job định kỳ tải lại toàn bộ từ GHN khi snapshot quá max-age-hours, thay snapshot mới một lần và ghi ra đĩa.
+ * - Mỗi danh sách có ETag (MD5 của nội dung) để endpoint trả 304 khi trình duyệt đã có bản mới nhất.
+ * - Khóa chưa có trong snapshot (chưa refresh lần nào) thì gọi GHN rồi giữ lại trong bộ nhớ, nhưng chỉ khi GHN
+ *   trả về dữ liệu và id là tỉnh/quận đã biết: id tùy ý từ request không làm phình cache, lỗi tạm thời
+ *   (danh sách rỗng) không bị giữ lại.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class GhnMasterDataCache {
+
+    private static final ObjectMapper ETAG_MAPPER = new ObjectMapper();
+
+    GhnService ghnService;
+    GhnProperties ghnProperties;
+    ObjectMapper objectMapper = new ObjectMapper();
+    AtomicBoolean refreshing = new AtomicBoolean();
+
+    @NonFinal
+    @Value("${ghn.master-data.snapshot-path:data/ghn-master-data.json.gz}")
+    String snapshotPath;
+
+    @NonFinal
+    @Value("${ghn.master-data.max-age-hours:24}")
+    long maxAgeHours;
+
+    @NonFinal
+    volatile State state = State.empty();
+
+    @PostConstruct
+    void loadSnapshot() {
+        Path path = Path.of(snapshotPath);
+        if (!Files.exists(path)) {
+            log.info("No GHN master data snapshot at {}, will fetch from GHN", path.toAbsolutePath());
+            return;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            state = State.of(objectMapper.readValue(in, Snapshot.class));
+            log.info("Loaded GHN master data snapshot: {} provinces, {} districts, {} ward lists",
+                    state.provinces.items().size(), state.districts.size(), state.wards.size());
+        } catch (Exception e) {
+            log.warn("Could not read GHN master data snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    public Entry<GhnProvinceResponse> provinces() {
+        Entry<GhnProvinceResponse> provinces = state.provinces;
+        if (provinces.items().isEmpty()) {
+            provinces = Entry.of(ghnService.getProvinces());
+            if (!provinces.items().isEmpty()) {
+                state.provinces = provinces;
+            }
+        }
+        return provinces;
+    }
+
+    public Entry<GhnDistrictResponse> districts(Integer provinceId) {
+        State current = state;
+        Entry<GhnDistrictResponse> districts = current.districts.get(provinceId);
+        if (districts == null) {
+            districts = Entry.of(ghnService.getDistricts(provinceId));
+            if (!districts.items().isEmpty() && isKnownProvince(provinceId)) {
+                current.addDistricts(provinceId, districts);
+            }
+        }
+        return districts;
+    }
+
+    public Entry<GhnWardResponse> wards(Integer districtId) {
+        State current = state;
+        Entry<GhnWardResponse> wards = current.wards.get(districtId);
+        if (wards == null) {
+            wards = Entry.of(ghnService.getWards(districtId));
+            if (!wards.items().isEmpty() && current.districtIds.contains(districtId)) {
+                current.wards.putIfAbsent(districtId, wards);
+            }
+        }
+        return wards;
+    }
+
+    private boolean isKnownProvince(Integer provinceId) {
+        return provinceId != null
+                && provinces().items().stream().anyMatch(province -> provinceId.equals(province.getProvinceID()));
+    }
+
+    // Kiểm tra mỗi giờ; chỉ tải lại khi snapshot quá max-age-hours. Chạy trên virtual thread vì một lần tải
+    // gồm vài trăm request và không được giữ luồng scheduler dùng chung.
+    @Scheduled(
+            initialDelayString = "${ghn.master-data.initial-delay-ms:10000}",
+            fixedDelayString = "${ghn.master-data.check-interval-ms:3600000}")
+    public void refreshIfStale() {
+        if (!isGhnConfigured()) {
+            return;
+        }
+        Instant fetchedAt = state.fetchedAt;
+        if (fetchedAt != null && fetchedAt.isAfter(Instant.now().minus(Duration.ofHours(maxAgeHours)))) {
+            return;
+        }
+        if (refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("ghn-master-data-refresh").start(() -> {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    log.warn("GHN master data refresh failed, keeping current snapshot: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+
+    private void refresh() throws IOException {
+        long startedAt = System.currentTimeMillis();
+        List<GhnProvinceResponse> provinces = ghnService.getProvinces();
+        if (provinces.isEmpty()) {
+            return;
+        }
+        List<GhnDistrictResponse> districts = new ArrayList<>();
+        for (GhnProvinceResponse province : provinces) {
+            districts.addAll(ghnService.getDistricts(province.getProvinceID()));
+        }
+        List<GhnWardResponse> wards = new ArrayList<>();
+        for (GhnDistrictResponse district : districts) {
+            wards.addAll(ghnService.getWards(district.getDistrictID()));
+        }
+
+        Snapshot snapshot = new Snapshot(System.currentTimeMillis(), provinces, districts, wards);
+        state = State.of(snapshot);
+        writeSnapshot(snapshot);
+        log.info("GHN master data refreshed in {} ms: {} provinces, {} districts, {} wards",
+                System.currentTimeMillis() - startedAt, provinces.size(), districts.size(), wards.size());
+    }
+
+    // Ghi ra file tạm rồi đổi tên để không bao giờ để lại snapshot ghi dở
+    private void writeSnapshot(Snapshot snapshot) throws IOException {
+        Path path = Path.of(snapshotPath).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "ghn-master-data", ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+            objectMapper.writeValue(out, snapshot);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean isGhnConfigured() {
+        String token = ghnProperties.getToken();
+        return ghnProperties.getBaseUrl() != null && token != null && !token.isBlank() && !"change-me".equals(token);
+    }
+
+    /**
+     * Danh sách bất biến kèm ETag của nó.
+     */
+    public record Entry<T>(List<T> items, String etag) {
+        static <T> Entry<T> of(List<T> items) {
+            List<T> copy = List.copyOf(items);
+            return new Entry<>(copy, etagOf(copy));
+        }
+
+        private static String etagOf(List<?> items) {
+            try {
+                return "\"" + DigestUtils.md5DigestAsHex(ETAG_MAPPER.writeValueAsBytes(items)) + "\"";
+            } catch (Exception e) {
+                return "\"" + Integer.toHexString(items.hashCode()) + "\"";
+            }
+        }
+    }
+
+    // Dạng lưu trên đĩa: danh sách phẳng như GHN trả về
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Snapshot {
+        long fetchedAt; // epoch millis
+        List<GhnProvinceResponse> provinces;
+        List<GhnDistrictResponse> districts;
+        List<GhnWardResponse> wards;
+    }
+
+    private static final class State {
+        final Instant fetchedAt;
+        volatile Entry<GhnProvinceResponse> provinces;
+        final Map<Integer, Entry<GhnDistrictResponse>> districts = new ConcurrentHashMap<>();
+        final Map<Integer, Entry<GhnWardResponse>> wards = new ConcurrentHashMap<>();
+        // Id của mọi quận đã có trong districts, để chỉ cache phường của quận có thật
+        final Set<Integer> districtIds = ConcurrentHashMap.newKeySet();
+
+        State(Instant fetchedAt, Entry<GhnProvinceResponse> provinces) {
+            this.fetchedAt = fetchedAt;
+            this.provinces = provinces;
+        }
+
+        static State empty() {
+            return new State(null, Entry.of(List.of()));
+        }
+
+        static State of(Snapshot snapshot) {
+            State state = new State(
+                    Instant.ofEpochMilli(snapshot.getFetchedAt()), Entry.of(orEmpty(snapshot.getProvinces())));
+            Map<Integer, List<GhnDistrictResponse>> districts = new HashMap<>();
+            for (GhnDistrictResponse district : orEmpty(snapshot.getDistricts())) {
+                districts.computeIfAbsent(district.getProvinceID(), id -> new ArrayList<>()).add(district);
+            }
+            districts.forEach((provinceId, items) -> state.addDistricts(provinceId, Entry.of(items)));
+            Map<Integer, List<GhnWardResponse>> wards = new HashMap<>();
+            for (GhnWardResponse ward : orEmpty(snapshot.getWards())) {
+                wards.computeIfAbsent(ward.getDistrictID(), id -> new ArrayList<>()).add(ward);
+            }
+            wards.forEach((districtId, items) -> state.wards.put(districtId, Entry.of(items)));
+            return state;
+        }
+
+        void addDistricts(Integer provinceId, Entry<GhnDistrictResponse> entry) {
+            if (districts.putIfAbsent(provinceId, entry) == null) {
+                entry.items().forEach(district -> districtIds.add(district.getDistrictID()));
+            }
+        }
+
+        private static <T> List<T> orEmpty(List<T> items) {
+            return items != null ? items : List.of();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hanoi_metro.backend.entity.OrderItem;
+import com.hanoi_metro.backend.entity.StockReservation;
+import com.hanoi_metro.backend.enums.ReservationStatus;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+import com.hanoi_metro.backend.repository.InventoryRepository;
+import com.hanoi_metro.backend.repository.ProductRepository;
+import com.hanoi_metro.backend.repository.ProductVariantRepository;
+import com.hanoi_metro.backend.repository.StockReservationRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Trừ tồn kho bằng các câu UPDATE có điều kiện (stock >= quantity) thay cho đọc-sửa-ghi,
+ * nên các checkout đồng thời không thể làm mất cập nhật hay bán vượt tồn kho.
+ *
+ * - COD: {@link #commitSale} trừ tồn kho và ghi nhận số lượng đã bán ngay.
+ * - MoMo: {@link #reserve} trừ tồn kho và giữ chỗ có thời hạn; {@link #confirmReservation} khi thanh toán
+ *   thành công, {@link #releaseReservation} khi hủy/thất bại; job định kỳ hoàn lại các giữ chỗ quá hạn.
+ * - Đơn đã thanh toán không bao giờ bị chặn vì hết hàng: {@link #confirmReservation} và {@link #commitPaidSale}
+ *   trả về các dòng thiếu hàng để OrderService đánh dấu đơn cần xử lý (bổ sung hàng hoặc hoàn tiền).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class InventoryReservationService {
+
+    InventoryRepository inventoryRepository;
+    ProductVariantRepository productVariantRepository;
+    ProductRepository productRepository;
+    StockReservationRepository stockReservationRepository;
+    CatalogHttpCache catalogHttpCache;
+    TransactionTemplate transactionTemplate;
+
+    @NonFinal
+    @Value("${inventory.reservation.ttl-minutes:15}")
+    long reservationTtlMinutes;
+
+    /**
+     * Trừ tồn kho và ghi nhận bán hàng cho toàn bộ đơn. Nếu một dòng không đủ hàng sẽ ném OUT_OF_STOCK,
+     * transaction của checkout rollback nên các dòng đã trừ trước đó cũng được hoàn lại.
+     */
+    @Transactional
+    public void commitSale(List<OrderItem> items) {
+        for (StockLine line : aggregate(items)) {
+            if (!deduct(line)) {
+                throw new AppException(ErrorCode.OUT_OF_STOCK);
+            }
+            addQuantitySold(line);
+        }
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.STOCK);
+    }
+
+    /**
+     * Trừ tồn kho và giữ chỗ cho đơn chờ thanh toán MoMo.
+     */
+    @Transactional
+    public void reserve(String orderId, List<OrderItem> items) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusMinutes(reservationTtlMinutes);
+        List<StockReservation> reservations = new ArrayList<>();
+        for (StockLine line : aggregate(items)) {
+            if (!deduct(line)) {
+                throw new AppException(ErrorCode.OUT_OF_STOCK);
+            }
+            reservations.add(StockReservation.builder()
+                    .orderId(orderId)
+                    .productId(line.productId())
+                    .colorCode(line.colorCode())
+                    .quantity(line.quantity())
+                    .status(ReservationStatus.HELD)
+                    .createdAt(now)
+                    .expiresAt(expiresAt)
+                    .build());
+        }
+        stockReservationRepository.saveAll(reservations);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.STOCK);
+    }
+
+    /**
+     * Trừ tồn kho cho đơn khách đã thanh toán. Dòng không đủ hàng không làm hỏng đơn: vẫn ghi nhận đã bán
+     * và được trả về (dạng mô tả) để đánh dấu đơn cần xử lý.
+     */
+    @Transactional
+    public List<String> commitPaidSale(String orderId, List<OrderItem> items) {
+        List<String> shortages = new ArrayList<>();
+        for (StockLine line : aggregate(items)) {
+            if (!deduct(line)) {
+                log.error(
+                        "Not enough stock for paid order {} product {} colorCode {} quantity {}",
+                        orderId,
+                        line.productId(),
+                        line.colorCode(),
+                        line.quantity());
+                shortages.add(line.describe());
+            }
+            addQuantitySold(line);
+        }
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.STOCK);
+        return shortages;
+    }
+
+    /**
+     * Thanh toán thành công: chuyển giữ chỗ sang COMMITTED và ghi nhận số lượng đã bán.
+     * Gọi lặp lại (IPN + polling) là no-op. Nếu giữ chỗ đã hết hạn và bị hoàn lại thì trừ tồn kho lại
+     * (không chặn vì khách đã trả tiền); trả về các dòng không còn đủ hàng.
+     */
+    @Transactional
+    public List<String> confirmReservation(String orderId, List<OrderItem> items) {
+        List<StockReservation> held = stockReservationRepository.findByOrderIdAndStatus(orderId, ReservationStatus.HELD);
+        if (!held.isEmpty()) {
+            for (StockReservation reservation : held) {
+                if (stockReservationRepository.transition(
+                                reservation.getId(), ReservationStatus.HELD, ReservationStatus.COMMITTED)
+                        > 0) {
+                    addQuantitySold(new StockLine(
+                            reservation.getProductId(), reservation.getColorCode(), reservation.getQuantity()));
+                }
+            }
+            catalogHttpCache.onChanged(CatalogHttpCache.Family.STOCK);
+            return List.of();
+        }
+
+        if (!stockReservationRepository.findByOrderIdAndStatus(orderId, ReservationStatus.COMMITTED).isEmpty()) {
+            return List.of(); // Đã xác nhận trước đó
+        }
+
+        // Không còn giữ chỗ (đã hết hạn hoặc đơn tạo trước khi có giữ chỗ): trừ tồn kho trực tiếp
+        List<String> shortages = commitPaidSale(orderId, items);
+        LocalDateTime now = LocalDateTime.now();
+        List<StockReservation> committed = new ArrayList<>();
+        for (StockLine line : aggregate(items)) {
+            committed.add(StockReservation.builder()
+                    .orderId(orderId)
+                    .productId(line.productId())
+                    .colorCode(line.colorCode())
+                    .quantity(line.quantity())
+                    .status(ReservationStatus.COMMITTED)
+                    .createdAt(now)
+                    .expiresAt(now)
+                    .build());
+        }
+        stockReservationRepository.saveAll(committed);
+        return shortages;
+    }
+
+    /**
+     * Hoàn lại tồn kho của các giữ chỗ còn HELD (hủy đơn, thanh toán thất bại, hết hạn).
+     */
+    @Transactional
+    public int releaseReservation(String orderId) {
+        int released = 0;
+        LocalDate today = LocalDate.now();
+        for (StockReservation reservation :
+                stockReservationRepository.findByOrderIdAndStatus(orderId, ReservationStatus.HELD)) {
+            if (stockReservationRepository.transition(
+                            reservation.getId(), ReservationStatus.HELD, ReservationStatus.RELEASED)
+                    == 0) {
+                continue; // Luồng khác đã xử lý
+            }
+            if (reservation.getColorCode() != null) {
+                productVariantRepository.increment(
+                        reservation.getProductId(), reservation.getColorCode(), reservation.getQuantity());
+            } else {
+                inventoryRepository.increment(reservation.getProductId(), reservation.getQuantity(), today);
+            }
+            released++;
+        }
+        if (released > 0) {
+            catalogHttpCache.onChanged(CatalogHttpCache.Family.STOCK);
+            log.info("Released {} stock reservations for order {}", released, orderId);
+        }
+        return released;
+    }
+
+    // Mỗi phút hoàn lại tồn kho của các đơn MoMo quá hạn thanh toán, mỗi đơn một transaction riêng
+    // (một đơn lỗi không làm rollback các đơn khác)
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval-ms:60000}")
+    public void releaseExpiredReservations() {
+        for (String orderId : stockReservationRepository.findExpiredHeldOrderIds(LocalDateTime.now())) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> releaseReservation(orderId));
+            } catch (Exception e) {
+                log.error("Could not release expired reservation for order {}: {}", orderId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Trừ tồn kho có điều kiện. Sản phẩm/biến thể không theo dõi tồn kho (không có bản ghi) được coi là còn hàng,
+     * giữ nguyên hành vi cũ.
+     */
+    private boolean deduct(StockLine line) {
+        if (line.colorCode() != null) {
+            if (productVariantRepository.decrementIfAvailable(line.productId(), line.colorCode(), line.quantity()) > 0) {
+                return true;
+            }
+            if (productVariantRepository
+                    .findByProductIdAndCode(line.productId(), line.colorCode())
+                    .isEmpty()) {
+                log.warn("Variant {} not found in product {}, stock not tracked", line.colorCode(), line.productId());
+                return true;
+            }
+            return false;
+        }
+        if (inventoryRepository.decrementIfAvailable(line.productId(), line.quantity(), LocalDate.now()) > 0) {
+            return true;
+        }
+        return !inventoryRepository.existsByProductId(line.productId());
+    }
+
+    private void addQuantitySold(StockLine line) {
+        if (line.colorCode() != null) {
+            productVariantRepository.addQuantitySold(line.productId(), line.colorCode(), line.quantity());
+        }
+        productRepository.addQuantitySold(line.productId(), line.quantity());
+    }
+
+    /**
+     * Gộp các dòng cùng (product, mã màu) và sắp xếp theo khóa để mọi transaction khóa các dòng tồn kho
+     * theo cùng thứ tự, tránh deadlock giữa các checkout đồng thời.
+     */
+    private List<StockLine> aggregate(List<OrderItem> items) {
+        Map<String, StockLine> lines = new TreeMap<>();
+        if (items == null) {
+            return List.of();
+        }
+        for (OrderItem item : items) {
+            if (item.getProduct() == null || item.getProduct().getId() == null) {
+                continue;
+            }
+            int quantity = item.getQuantity() != null ? item.getQuantity() : 0;
+            if (quantity <= 0) {
+                continue;
+            }
+            String productId = item.getProduct().getId();
+            String colorCode = ProductVariantService.normalizeCode(item.getColorCode());
+            String key = productId + "|" + Objects.toString(colorCode, "");
+            lines.merge(
+                    key,
+                    new StockLine(productId, colorCode, quantity),
+                    (a, b) -> new StockLine(a.productId(), a.colorCode(), a.quantity() + b.quantity()));
+        }
+        return new ArrayList<>(lines.values());
+    }
+
+    private record StockLine(String productId, String colorCode, int quantity) {
+
+        String describe() {
+            return colorCode != null
+                    ? productId + " (màu " + colorCode + ") x" + quantity
+                    : productId + " x" + quantity;
+        }
+    }
+}
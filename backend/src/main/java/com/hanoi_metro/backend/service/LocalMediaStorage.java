@@ -0,0 +1,232 @@
+package com.hanoi_metro.backend.service;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lưu media trên ổ đĩa của server thay cho Cloudinary (media.storage.backend=local), dùng khi chạy offline/dev.
+ *
+ * File nằm ở {root}/{folder}/{uuid}.{ext}, được phục vụ qua GET /media/files/{folder}/{file}:
+ * - Hỗ trợ Range một đoạn (206 / 416) để trình duyệt tua video; nhiều đoạn thì trả cả file.
+ * - Tên file không bao giờ đổi nội dung nên cache lâu dài (immutable) và trả 304 theo Last-Modified.
+ * - Chỉ nhận đuôi ảnh/video trong {@link #ALLOWED_EXTENSIONS}; luôn gửi nosniff, file ngoài danh sách
+ *   (lưu từ trước khi có danh sách) bị tải xuống dưới dạng attachment thay vì hiển thị trong trình duyệt.
+ * - Body gửi bằng sendfile của Tomcat (FileChannel.transferTo thẳng vào socket) khi connector hỗ trợ,
+ *   nếu không thì transferTo qua output stream của response; không đọc cả file vào heap.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LocalMediaStorage {
+
+    public static final String URL_PATH = "/media/files/";
+
+    static final Set<String> FOLDERS =
+            Set.of("product_media", "voucher_media", "promotion_media", "profile_media", "banners");
+
+    // Thuộc tính request của Tomcat cho sendfile (xem org.apache.catalina.Globals)
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Không có svg/html: trình duyệt có thể chạy script trong đó khi mở trực tiếp từ domain của API
+    static final Set<String> ALLOWED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "avif", "bmp",
+            "mp4", "m4v", "webm", "mov", "ogv");
+
+    static final CacheControl CACHE_CONTROL =
+            CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+
+    boolean enabled;
+    Path root;
+    String publicUrlPrefix;
+
+    public LocalMediaStorage(
+            @Value("${media.storage.backend:cloudinary}") String backend,
+            @Value("${media.storage.local.root:media-storage}") String root,
+            @Value("${media.storage.local.public-base-url:http://localhost:8080/hanoi_metro}") String publicBaseUrl) {
+        this.enabled = "local".equalsIgnoreCase(backend);
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.publicUrlPrefix = publicBaseUrl.replaceAll("/+$", "") + URL_PATH;
+        if (enabled) {
+            log.info("Media storage backend: local filesystem at {}", this.root);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Chuyển file đã spool vào thư mục lưu trữ (cùng phân vùng thì chỉ là rename) và trả về URL công khai.
+     */
+    public String store(Path spooled, String folder, String originalFilename) throws IOException {
+        String extension = extensionOf(originalFilename);
+        if (!ALLOWED_EXTENSIONS.contains(extension)) {
+            throw new AppException(ErrorCode.FILE_TYPE_NOT_ALLOWED);
+        }
+        Path directory = root.resolve(folder);
+        Files.createDirectories(directory);
+        String filename = UUID.randomUUID() + "." + extension;
+        Files.move(spooled, directory.resolve(filename));
+        log.info("File stored locally. Folder: {}, File: {}", folder, filename);
+        return publicUrlPrefix + folder + "/" + filename;
+    }
+
+    public boolean owns(String url) {
+        return url != null && url.startsWith(publicUrlPrefix);
+    }
+
+    public void delete(String url) {
+        String relative = url.substring(publicUrlPrefix.length());
+        int slash = relative.indexOf('/');
+        if (slash <= 0) {
+            return;
+        }
+        Path file = resolve(relative.substring(0, slash), relative.substring(slash + 1));
+        try {
+            if (file != null && Files.deleteIfExists(file)) {
+                log.info("Local media file deleted: {}", file);
+            }
+        } catch (IOException e) {
+            log.warn("Error deleting local media file {}: {}", file, e.getMessage());
+        }
+    }
+
+    public void serve(String folder, String filename, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Path file = resolve(folder, filename);
+        if (file == null || !Files.isRegularFile(file)) {
+            throw new AppException(ErrorCode.FILE_NOT_EXISTED);
+        }
+
+        long length = Files.size(file);
+        // Header cache gửi cả khi trả 304 để trình duyệt gia hạn bản đang giữ
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL.getHeaderValue());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (new ServletWebRequest(request, response).checkNotModified(Files.getLastModifiedTime(file).toMillis())) {
+            return;
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (ALLOWED_EXTENSIONS.contains(extensionOf(filename))) {
+            response.setContentType(MediaTypeFactory.getMediaType(filename)
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                    .toString());
+        } else {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment");
+        }
+
+        long start = 0;
+        long end = length - 1;
+        List<HttpRange> ranges = parseRanges(request.getHeader(HttpHeaders.RANGE));
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            if (length == 0 || rangeStartsAfterEnd(range, length)) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat gửi đoạn [start, end + 1) của file sau khi controller trả về
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (count > 0) {
+                long sent = channel.transferTo(position, count, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+    // Chỉ nhận thư mục media đã biết và tên file nằm ngay trong thư mục đó (chặn ../)
+    private Path resolve(String folder, String filename) {
+        if (!FOLDERS.contains(folder) || filename == null || filename.isBlank()) {
+            return null;
+        }
+        Path directory = root.resolve(folder);
+        Path file = directory.resolve(filename).normalize();
+        return directory.equals(file.getParent()) ? file : null;
+    }
+
+    private static List<HttpRange> parseRanges(String header) {
+        if (header == null || header.isBlank()) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            // Range sai cú pháp: bỏ qua và trả cả file
+            return List.of();
+        }
+    }
+
+    private static boolean rangeStartsAfterEnd(HttpRange range, long length) {
+        try {
+            range.getRangeStart(length);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    // Đuôi file viết thường, không có dấu chấm; "" nếu không có đuôi
+    private static String extensionOf(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,65 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Giới hạn số file được upload lên storage cùng lúc (media.upload.max-concurrent).
+ *
+ * Upload vượt giới hạn xếp hàng chờ, tối đa media.upload.max-queued file và media.upload.queue-timeout-ms;
+ * hàng đợi đầy hoặc chờ quá lâu thì từ chối ngay (MEDIA_UPLOAD_BUSY) thay vì giữ thêm luồng và file tạm.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MediaUploadGate {
+
+    // Số upload đang chạy
+    Semaphore active;
+    // Số upload đang chạy + đang chờ
+    Semaphore admitted;
+    long queueTimeoutMs;
+
+    public MediaUploadGate(
+            @Value("${media.upload.max-concurrent:4}") int maxConcurrent,
+            @Value("${media.upload.max-queued:16}") int maxQueued,
+            @Value("${media.upload.queue-timeout-ms:30000}") long queueTimeoutMs) {
+        this.active = new Semaphore(maxConcurrent, true);
+        this.admitted = new Semaphore(maxConcurrent + maxQueued);
+        this.queueTimeoutMs = queueTimeoutMs;
+    }
+
+    public <T> T run(Supplier<T> upload) {
+        if (!admitted.tryAcquire()) {
+            log.warn("Media upload rejected: queue is full");
+            throw new AppException(ErrorCode.MEDIA_UPLOAD_BUSY);
+        }
+        try {
+            if (!active.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Media upload rejected: waited {} ms for a slot", queueTimeoutMs);
+                throw new AppException(ErrorCode.MEDIA_UPLOAD_BUSY);
+            }
+            try {
+                return upload.get();
+            } finally {
+                active.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.MEDIA_UPLOAD_BUSY);
+        } finally {
+            admitted.release();
+        }
+    }
+}
@@ -3,7 +3,9 @@ package com.hanoi_metro.backend.service;
 import com.hanoi_metro.backend.client.MomoApi;
 import com.hanoi_metro.backend.dto.request.CreateMomoRequest;
 import com.hanoi_metro.backend.dto.request.MomoIpnRequest;
+import com.hanoi_metro.backend.dto.request.MomoQueryRequest;
 import com.hanoi_metro.backend.dto.response.CreateMomoResponse;
+import com.hanoi_metro.backend.dto.response.MomoQueryResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -91,6 +93,35 @@ public class MomoService {
         return response;
     }
 
+    /**
+     * Hỏi MoMo trạng thái giao dịch của đơn (API /query, có ký HMAC). Dùng khi khách quay lại từ trang MoMo:
+     * resultCode trên URL redirect do client gửi nên không được tin để xác nhận thanh toán.
+     *
+     * @param orderId mã đơn hàng đã gửi cho MoMo khi tạo giao dịch
+     */
+    public MomoQueryResponse queryPaymentStatus(String orderId) {
+        String requestId = UUID.randomUUID().toString();
+        String rawSignature =
+                "accessKey=" + ACCESS_KEY +
+                        "&orderId=" + orderId +
+                        "&partnerCode=" + PARTNER_CODE +
+                        "&requestId=" + requestId;
+
+        MomoQueryRequest request = MomoQueryRequest.builder()
+                .partnerCode(PARTNER_CODE)
+                .requestId(requestId)
+                .orderId(orderId)
+                .lang("vi")
+                .signature(hmacSHA256(rawSignature, SECRET_KEY))
+                .build();
+
+        MomoQueryResponse response = momoApi.queryTransaction(request);
+        log.info("Received MoMo query response for order {}: resultCode={}, transId={}",
+                orderId, response != null ? response.getResultCode() : null,
+                response != null ? response.getTransId() : null);
+        return response;
+    }
+
     public boolean validateIpnSignature(MomoIpnRequest request) {
         if (request == null || request.getSignature() == null) {
             return false;
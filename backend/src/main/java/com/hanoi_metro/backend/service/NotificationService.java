@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.hanoi_metro.backend.dto.response.NotificationResponse;
+import com.hanoi_metro.backend.dto.response.UserEvent;
 import com.hanoi_metro.backend.entity.Notification;
 import com.hanoi_metro.backend.entity.User;
 import com.hanoi_metro.backend.exception.AppException;
@@ -17,6 +18,7 @@ import com.hanoi_metro.backend.exception.ErrorCode;
 import com.hanoi_metro.backend.mapper.NotificationMapper;
 import com.hanoi_metro.backend.repository.NotificationRepository;
 import com.hanoi_metro.backend.repository.UserRepository;
+import com.hanoi_metro.backend.util.TransactionUtil;
 
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -30,6 +32,8 @@ public class NotificationService {
     NotificationRepository notificationRepository;
     UserRepository userRepository;
     NotificationMapper notificationMapper;
+    UnreadCounters unreadCounters;
+    UserEventHub userEventHub;
 
     @Transactional
     public Notification sendToUsers(String title, String message, String type, Set<String> userIds) {
@@ -42,7 +46,12 @@ public class NotificationService {
                 .createdAt(LocalDateTime.now())
                 .users(users)
                 .build();
-        return notificationRepository.save(n);
+        Notification saved = notificationRepository.save(n);
+
+        Set<String> recipientIds = users.stream().map(User::getId).collect(Collectors.toSet());
+        TransactionUtil.afterCommit(() -> recipientIds.forEach(unreadCounters::incrementNotifications));
+        userEventHub.publish(recipientIds, UserEvent.NOTIFICATION, notificationMapper.toResponse(saved));
+        return saved;
     }
 
     @Transactional
@@ -64,7 +73,7 @@ public class NotificationService {
 
     // Đếm số lượng notifications chưa đọc
     public Long getUnreadCount(String userId) {
-        return notificationRepository.countByUsersIdAndIsReadFalse(userId);
+        return unreadCounters.notifications(userId);
     }
 
     // Đánh dấu một notification đã đọc
@@ -84,6 +93,11 @@ public class NotificationService {
         notification.setIsRead(true);
         notification.setReadAt(LocalDateTime.now());
         notificationRepository.save(notification);
+
+        // Trạng thái đã đọc nằm trên notification nên đổi số chưa đọc của mọi người nhận
+        Set<String> recipientIds = notification.getUsers().stream().map(User::getId).collect(Collectors.toSet());
+        TransactionUtil.afterCommit(() -> recipientIds.forEach(unreadCounters::invalidateNotifications));
+        recipientIds.forEach(userEventHub::publishUnread);
     }
 
     // Đánh dấu tất cả notifications của user đã đọc
@@ -97,5 +111,8 @@ public class NotificationService {
                 notificationRepository.save(notification);
             }
         });
+        // Các notification này có thể gửi chung cho nhiều user: đếm lại cho tất cả
+        TransactionUtil.afterCommit(unreadCounters::invalidateAllNotifications);
+        userEventHub.publishUnread(userId);
     }
 }
@@ -1,17 +1,20 @@
 package com.hanoi_metro.backend.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+import jakarta.persistence.EntityManager;
+
 import com.hanoi_metro.backend.entity.*;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -19,6 +22,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -32,6 +36,9 @@ import com.hanoi_metro.backend.dto.request.RejectRefundRequest;
 import com.hanoi_metro.backend.dto.request.ReturnProcessRequest;
 import com.hanoi_metro.backend.dto.request.ReturnRequestRequest;
 import com.hanoi_metro.backend.dto.response.CreateMomoResponse;
+import com.hanoi_metro.backend.dto.response.MomoQueryResponse;
+import com.hanoi_metro.backend.dto.response.OrderCursorPageResponse;
+import com.hanoi_metro.backend.dto.response.OrderResponse;
 import com.hanoi_metro.backend.dto.response.OrderStatistics;
 import com.hanoi_metro.backend.enums.CancellationSource;
 import com.hanoi_metro.backend.enums.OrderStatus;
@@ -40,6 +47,7 @@ import com.hanoi_metro.backend.enums.PaymentStatus;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
 import com.hanoi_metro.backend.repository.AddressRepository;
+import com.hanoi_metro.backend.repository.MomoIpnEventRepository;
 import com.hanoi_metro.backend.repository.OrderItemRepository;
 import com.hanoi_metro.backend.repository.OrderRepository;
 import com.hanoi_metro.backend.repository.ProductRepository;
@@ -58,6 +66,12 @@ import lombok.extern.slf4j.Slf4j;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class OrderService {
 
+    // Kích thước trang danh sách đơn hàng cho staff/admin
+    private static final int DEFAULT_ORDER_PAGE_SIZE = 50;
+    private static final int MAX_ORDER_PAGE_SIZE = 200;
+    // resultCode của MoMo cho giao dịch chưa kết thúc (đang chờ người dùng xác nhận / đang xử lý)
+    private static final Set<Integer> MOMO_PENDING_RESULT_CODES = Set.of(1000, 7000, 7002, 9000);
+
     OrderRepository orderRepository;
     OrderItemRepository orderItemRepository;
     AddressRepository addressRepository;
@@ -69,16 +83,31 @@ public class OrderService {
     VoucherRepository voucherRepository;
     ShipmentService shipmentService;
     FinancialService financialService;
+    InventoryReservationService inventoryReservationService;
+    VoucherUsageService voucherUsageService;
+    MomoIpnEventRepository momoIpnEventRepository;
+    EntityManager entityManager;
+    TransactionTemplate transactionTemplate;
 
     ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * Khởi tạo đơn hàng từ giỏ hàng hiện tại. Nếu là COD sẽ hoàn tất ngay.
      * Nếu là MoMo sẽ trả về payUrl để khách thanh toán sau.
+     *
+     * Đơn và giữ chỗ tồn kho được commit trong một transaction ngắn trước khi gọi MoMo, để khóa trên các dòng
+     * tồn kho không bị giữ suốt lời gọi HTTP ra ngoài.
      */
-    @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
     public CheckoutResult createOrderFromCurrentCart(CreateOrderRequest request) {
+        CheckoutResult result = transactionTemplate.execute(status -> placeOrderFromCurrentCart(request));
+        if (result.getOrder().getPaymentMethod() != PaymentMethod.MOMO) {
+            return result;
+        }
+        return requestMomoPayment(result.getOrder());
+    }
+
+    private CheckoutResult placeOrderFromCurrentCart(CreateOrderRequest request) {
         Cart cart = cartService.getCart();
         String appliedVoucherCode = cart.getAppliedVoucherCode();
         if (cart.getCartItems() == null || cart.getCartItems().isEmpty()) {
@@ -122,43 +151,13 @@ public class OrderService {
                     .build();
 
             Order savedOrder = orderRepository.save(order);
-            // Tạo order items nhưng chưa cập nhật tồn kho (sẽ cập nhật khi thanh toán thành
-            // công)
-            persistOrderItemsWithoutInventoryUpdate(savedOrder, selectedItems);
+            // Tạo order items và giữ chỗ tồn kho có thời hạn (ghi nhận bán hàng khi thanh toán
+            // thành công)
+            persistOrderItemsWithReservation(savedOrder, selectedItems);
             orderRepository.flush();
 
-            // Tạo payment link với order code
-            CreateMomoResponse momoResponse = momoService.createMomoPayment(
-                    Math.round(pricing.orderTotal), orderCode);
-
-            if (momoResponse == null) {
-                log.error("MoMo API returned null response");
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION,
-                        "Không thể tạo đường dẫn thanh toán MoMo. Vui lòng thử lại.");
-            }
-
-            if (momoResponse.getResultCode() != 0) {
-                log.error("MoMo API returned error. resultCode: {}, message: {}",
-                        momoResponse.getResultCode(), momoResponse.getMessage());
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION,
-                        "Không thể tạo đường dẫn thanh toán MoMo: "
-                                + (momoResponse.getMessage() != null ? momoResponse.getMessage()
-                                        : "Lỗi không xác định"));
-            }
-
-            if (momoResponse.getPayUrl() == null || momoResponse.getPayUrl().isBlank()) {
-                log.error("MoMo API returned null or blank payUrl. resultCode: {}",
-                        momoResponse.getResultCode());
-                throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION,
-                        "Không nhận được đường dẫn thanh toán MoMo từ server.");
-            }
-
-            // Lưu requestId vào paymentReference
-            savedOrder.setPaymentReference(momoResponse.getRequestId());
-            orderRepository.save(savedOrder);
-
-            // Trả về payment URL và order đã tạo
-            return new CheckoutResult(savedOrder, momoResponse.getPayUrl());
+            // Payment link được tạo sau khi transaction này commit (requestMomoPayment)
+            return new CheckoutResult(savedOrder, null);
         }
 
         // COD: Tạo đơn hàng ngay
@@ -194,7 +193,7 @@ public class OrderService {
                 persistOrderItems(savedOrder, selectedItems);
                 orderRepository.flush();
 
-                registerVoucherUsage(cart.getUser(), appliedVoucherCode);
+                registerVoucherUsage(cart.getUser(), cart.getAppliedVoucherId());
                 cartService.clearVoucherForUser(cart.getUser());
 
                 // Xóa cart items sau khi tạo đơn hàng
@@ -204,13 +203,15 @@ public class OrderService {
                 }
 
                 // Ghi nhận doanh thu:
-                // - COD: chỉ ghi nhận khi DELIVERED (trong ShipmentService)
+                // - COD: chỉ ghi nhận khi DELIVERED (markDelivered)
                 // - MoMo: chỉ ghi nhận khi đã xác nhận thanh toán thành công (trong IPN
                 // callback hoặc check payment status)
                 // Không gọi recordOrderRevenue ở đây để tránh duplicate khi MoMo callback sau
                 // đó
 
                 break; // Thành công, thoát khỏi retry loop
+            } catch (AppException e) {
+                throw e; // Lỗi nghiệp vụ (ví dụ hết hàng) - không retry
             } catch (Exception e) {
                 if (attempt == maxRetries - 1) {
                     throw e; // Nếu đã thử hết số lần, throw exception
@@ -222,6 +223,54 @@ public class OrderService {
         return new CheckoutResult(savedOrder, null);
     }
 
+    /**
+     * Tạo link thanh toán MoMo cho đơn đã commit (ngoài transaction). MoMo lỗi thì đơn được đánh dấu thanh toán
+     * thất bại và giữ chỗ tồn kho được hoàn lại ngay, không chờ hết hạn.
+     */
+    private CheckoutResult requestMomoPayment(Order order) {
+        CreateMomoResponse momoResponse;
+        try {
+            momoResponse = momoService.createMomoPayment(Math.round(order.getTotalAmount()), order.getCode());
+            validateMomoResponse(momoResponse);
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> markMomoPaymentFailed(order));
+            throw e;
+        }
+
+        // Lưu requestId vào paymentReference
+        transactionTemplate.executeWithoutResult(status -> {
+            order.setPaymentReference(momoResponse.getRequestId());
+            orderRepository.save(order);
+        });
+
+        // Trả về payment URL và order đã tạo
+        return new CheckoutResult(order, momoResponse.getPayUrl());
+    }
+
+    private void validateMomoResponse(CreateMomoResponse momoResponse) {
+        if (momoResponse == null) {
+            log.error("MoMo API returned null response");
+            throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION,
+                    "Không thể tạo đường dẫn thanh toán MoMo. Vui lòng thử lại.");
+        }
+
+        if (momoResponse.getResultCode() != 0) {
+            log.error("MoMo API returned error. resultCode: {}, message: {}",
+                    momoResponse.getResultCode(), momoResponse.getMessage());
+            throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION,
+                    "Không thể tạo đường dẫn thanh toán MoMo: "
+                            + (momoResponse.getMessage() != null ? momoResponse.getMessage()
+                                    : "Lỗi không xác định"));
+        }
+
+        if (momoResponse.getPayUrl() == null || momoResponse.getPayUrl().isBlank()) {
+            log.error("MoMo API returned null or blank payUrl. resultCode: {}",
+                    momoResponse.getResultCode());
+            throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION,
+                    "Không nhận được đường dẫn thanh toán MoMo từ server.");
+        }
+    }
+
     public Order createOrderFromCurrentCartAfterPayment(CreateOrderRequest request) {
         Cart cart = cartService.getCart();
         String appliedVoucherCode = cart.getAppliedVoucherCode();
@@ -279,9 +328,10 @@ public class OrderService {
                         .build();
 
                 Order savedOrder = orderRepository.save(order);
-                persistOrderItems(savedOrder, selectedItems);
+                // Khách đã trả tiền: thiếu hàng thì đánh dấu đơn cần xử lý thay vì hủy đơn
+                persistPaidOrderItems(savedOrder, selectedItems);
                 orderRepository.flush();
-                registerVoucherUsage(cart.getUser(), appliedVoucherCode);
+                registerVoucherUsage(cart.getUser(), cart.getAppliedVoucherId());
                 cartService.clearVoucherForUser(cart.getUser());
 
                 // Xóa cart items sau khi tạo đơn hàng
@@ -291,13 +341,15 @@ public class OrderService {
                 }
 
                 // Ghi nhận doanh thu:
-                // - COD: chỉ ghi nhận khi DELIVERED (trong ShipmentService)
+                // - COD: chỉ ghi nhận khi DELIVERED (markDelivered)
                 // - MoMo: chỉ ghi nhận khi đã xác nhận thanh toán thành công (trong IPN
                 // callback hoặc check payment status)
                 // Không gọi recordOrderRevenue ở đây để tránh duplicate khi MoMo callback sau
                 // đó
 
                 return savedOrder;
+            } catch (AppException e) {
+                throw e; // Lỗi nghiệp vụ (ví dụ hết hàng) - không retry
             } catch (Exception e) {
                 if (attempt == maxRetries - 1) {
                     throw e;
@@ -319,9 +371,17 @@ public class OrderService {
      * Tạo đơn hàng trực tiếp từ sản phẩm (không qua giỏ hàng).
      * Số lượng mặc định là 1.
      */
-    @Transactional
     @PreAuthorize("hasRole('CUSTOMER')")
     public CheckoutResult createOrderDirectly(DirectCheckoutRequest request) {
+        // Đơn và giữ chỗ tồn kho commit trước, link MoMo tạo ngoài transaction (như createOrderFromCurrentCart)
+        CheckoutResult result = transactionTemplate.execute(status -> placeDirectOrder(request));
+        if (result.getOrder().getPaymentMethod() != PaymentMethod.MOMO) {
+            return result;
+        }
+        return requestMomoPayment(result.getOrder());
+    }
+
+    private CheckoutResult placeDirectOrder(DirectCheckoutRequest request) {
         // Lấy user hiện tại
         String email = SecurityUtil.getAuthentication().getName();
         User user = userRepository.findByEmail(email)
@@ -387,13 +447,12 @@ public class OrderService {
         // Sử dụng ArrayList thay vì List.of() để tránh UnsupportedOperationException
         savedOrder.setItems(new ArrayList<>(List.of(orderItem)));
 
-        // Cập nhật tồn kho và số lượng đã bán (giống LuminaBook)
-        // Reload product từ database với inventory được load
-        Product productToUpdate = productRepository.findByIdWithRelations(product.getId())
-                .orElseThrow(
-                        () -> new AppException(ErrorCode.PRODUCT_NOT_EXISTED, "Product not found: " + product.getId()));
-        String colorCode = request.getColorCode(); // Lấy colorCode từ request nếu có
-        updateInventoryAndSales(productToUpdate, quantity, colorCode);
+        // COD: trừ tồn kho và ghi nhận bán hàng ngay; MoMo: giữ chỗ tồn kho chờ thanh toán
+        if (paymentMethod == PaymentMethod.MOMO) {
+            inventoryReservationService.reserve(savedOrder.getId(), savedOrder.getItems());
+        } else {
+            inventoryReservationService.commitSale(savedOrder.getItems());
+        }
 
         // Nếu là COD, finalize ngay nhưng giữ status CREATED để hiển thị "Chờ xác nhận"
         // COD orders sẽ được staff xác nhận thủ công sau đó
@@ -402,16 +461,8 @@ public class OrderService {
             // Giữ status CREATED để hiển thị "Chờ xác nhận"
             orderRepository.save(savedOrder);
             sendOrderConfirmationEmail(savedOrder);
-            return new CheckoutResult(savedOrder, null);
         }
-
-        // Nếu là MoMo, tạo payment link
-        CreateMomoResponse momoResponse = momoService.createMomoPayment(
-                Math.round(orderTotal), savedOrder.getCode());
-        savedOrder.setPaymentReference(momoResponse.getRequestId());
-        orderRepository.save(savedOrder);
-
-        return new CheckoutResult(savedOrder, momoResponse.getPayUrl());
+        return new CheckoutResult(savedOrder, null);
     }
 
     private Address resolveShippingAddressForDirectCheckout(DirectCheckoutRequest request, User user) {
@@ -501,6 +552,25 @@ public class OrderService {
         if (selectedItems == null || selectedItems.isEmpty()) {
             return;
         }
+        List<OrderItem> orderItems = saveOrderItems(order, selectedItems);
+
+        // Trừ tồn kho (có điều kiện) và cập nhật số lượng đã bán
+        inventoryReservationService.commitSale(orderItems);
+    }
+
+    /**
+     * Tạo order items cho đơn khách đã thanh toán: trừ tồn kho nhưng không chặn khi thiếu hàng,
+     * đơn thiếu hàng được đánh dấu để nhân viên bổ sung hàng hoặc hoàn tiền.
+     */
+    private void persistPaidOrderItems(Order order, List<CartItem> selectedItems) {
+        if (selectedItems == null || selectedItems.isEmpty()) {
+            return;
+        }
+        List<OrderItem> orderItems = saveOrderItems(order, selectedItems);
+        flagStockShortage(order, inventoryReservationService.commitPaidSale(order.getId(), orderItems));
+    }
+
+    private List<OrderItem> saveOrderItems(Order order, List<CartItem> selectedItems) {
         List<OrderItem> orderItems = selectedItems.stream()
                 .map(ci -> OrderItem.builder()
                         .order(order)
@@ -514,41 +584,32 @@ public class OrderService {
         orderItemRepository.saveAll(orderItems);
         orderItemRepository.flush(); // Ensure items are persisted immediately
         order.setItems(orderItems);
+        return orderItems;
+    }
 
-        // Cập nhật tồn kho và số lượng đã bán
-        for (CartItem ci : selectedItems) {
-            if (ci.getProduct() != null && ci.getProduct().getId() != null) {
-                Product product = productRepository.findByIdWithRelations(ci.getProduct().getId()).orElse(null);
-                if (product != null) {
-                    updateInventoryAndSales(product, ci.getQuantity(), ci.getColorCode());
-                }
-            }
+    // Ghi chú trên đơn đã thanh toán nhưng thiếu hàng để nhân viên xử lý (bổ sung hàng hoặc hoàn tiền)
+    private void flagStockShortage(Order order, List<String> shortages) {
+        if (shortages == null || shortages.isEmpty()) {
+            return;
         }
+        String flag = "[Cần xử lý] Đơn đã thanh toán nhưng thiếu hàng: " + String.join(", ", shortages)
+                + ". Vui lòng bổ sung hàng hoặc hoàn tiền cho khách.";
+        String current = order.getNote();
+        order.setNote(current == null || current.isBlank() ? flag : current + System.lineSeparator() + flag);
+        orderRepository.save(order);
+        log.error("Paid order {} flagged for stock shortage: {}", order.getCode(), shortages);
     }
 
     /**
-     * Tạo order items mà không cập nhật tồn kho (dùng cho MoMo - sẽ cập nhật khi
-     * thanh toán thành công)
+     * Tạo order items và giữ chỗ tồn kho (dùng cho MoMo - ghi nhận bán hàng khi
+     * thanh toán thành công, hoàn lại tồn kho khi thất bại/hết hạn)
      */
-    private void persistOrderItemsWithoutInventoryUpdate(Order order, List<CartItem> selectedItems) {
+    private void persistOrderItemsWithReservation(Order order, List<CartItem> selectedItems) {
         if (selectedItems == null || selectedItems.isEmpty()) {
             return;
         }
-        List<OrderItem> orderItems = selectedItems.stream()
-                .map(ci -> OrderItem.builder()
-                        .order(order)
-                        .product(ci.getProduct())
-                        .quantity(ci.getQuantity())
-                        .unitPrice(ci.getUnitPrice())
-                        .finalPrice(ci.getFinalPrice())
-                        .colorCode(ci.getColorCode()) // Lưu colorCode từ CartItem
-                        .build())
-                .collect(Collectors.toCollection(ArrayList::new));
-        orderItemRepository.saveAll(orderItems);
-        orderItemRepository.flush(); // Ensure items are persisted immediately
-        order.setItems(orderItems);
-        // KHÔNG cập nhật tồn kho ở đây - sẽ cập nhật khi thanh toán thành công trong
-        // handleMomoIpn
+        List<OrderItem> orderItems = saveOrderItems(order, selectedItems);
+        inventoryReservationService.reserve(order.getId(), orderItems);
     }
 
     private void finalizePaidOrder(Order order, List<String> cartItemIds) {
@@ -563,6 +624,12 @@ public class OrderService {
         sendOrderConfirmationEmail(reloadedOrder);
     }
 
+    /**
+     * Xử lý IPN của MoMo. Idempotent:
+     * - IPN gửi lại/gửi trùng (cùng orderId + requestId) bị bỏ qua nhờ unique key của momo_ipn_events.
+     * - Chuyển sang đã thanh toán bằng UPDATE có điều kiện: IPN và redirect (checkAndUpdateMomoPaymentStatus,
+     *   đã hỏi lại MoMo) chạy đồng thời thì chỉ một bên xác nhận tồn kho, ghi doanh thu, xóa giỏ hàng và gửi email.
+     */
     @Transactional
     public void handleMomoIpn(MomoIpnRequest request) {
         if (request == null || request.getOrderId() == null) {
@@ -570,6 +637,18 @@ public class OrderService {
             return;
         }
 
+        if (request.getRequestId() != null
+                && momoIpnEventRepository.insertIfAbsent(
+                                request.getOrderId(),
+                                request.getRequestId(),
+                                request.getTransId(),
+                                request.getResultCode())
+                        == 0) {
+            log.info("MoMo IPN: duplicate notification ignored - order={}, requestId={}",
+                    request.getOrderId(), request.getRequestId());
+            return;
+        }
+
         Order order = orderRepository.findByCode(request.getOrderId())
                 .orElseThrow(() -> {
                     log.error("MoMo IPN: Order not found - code={}", request.getOrderId());
@@ -579,78 +658,24 @@ public class OrderService {
         if (request.getResultCode() != null && request.getResultCode() != 0) {
             log.warn("MoMo IPN: Payment FAILED - order={}, resultCode={}", request.getOrderId(),
                     request.getResultCode());
-            order.setPaymentStatus(PaymentStatus.FAILED);
-            orderRepository.save(order);
+            markMomoPaymentFailed(order);
             return;
         }
 
-        if (Boolean.TRUE.equals(order.getPaid())) {
-            return; // Already paid, skip
-        }
-
-        // Cập nhật trạng thái thanh toán
-        order.setPaymentStatus(PaymentStatus.PAID);
-        order.setPaid(true);
-        order.setPaymentReference(request.getTransId() != null ? String.valueOf(request.getTransId()) : null);
-        orderRepository.save(order);
-        orderRepository.flush();
-
-        // Reload order với items
-        Order reloadedOrder = orderRepository.findById(order.getId())
-                .orElseThrow(() -> new AppException(ErrorCode.ORDER_NOT_EXISTED));
-
-        if (reloadedOrder.getItems() != null) {
-            reloadedOrder.getItems().size(); // Trigger lazy loading
-        }
-
-        // Cập nhật tồn kho và số lượng đã bán
-        if (reloadedOrder.getItems() != null && !reloadedOrder.getItems().isEmpty()) {
-            for (OrderItem item : reloadedOrder.getItems()) {
-                if (item.getProduct() != null) {
-                    item.getProduct().getId(); // Trigger lazy loading
-                }
-
-                if (item.getProduct() != null && item.getProduct().getId() != null) {
-                    Product product = productRepository.findByIdWithRelations(item.getProduct().getId()).orElse(null);
-                    if (product != null) {
-                        updateInventoryAndSales(product, item.getQuantity(), item.getColorCode());
-                    }
-                }
-            }
-        }
-
-        recordOrderRevenue(reloadedOrder);
-        // Ghi nhận doanh thu cho đơn hàng MoMo đã thanh toán thành công
-        log.info("handleMomoIpn: Attempting to record revenue for order {}", request.getOrderId());
-        if (financialService.hasRecordedRevenue(request.getOrderId())) {
-            log.warn("handleMomoIpn: Revenue already recorded for order {}, skipping", request.getOrderId());
-        } else {
-            recordOrderRevenue(reloadedOrder);
-            log.info("handleMomoIpn: Revenue recording completed for order {}", request.getOrderId());
-        }
-
-        // Parse và xóa cart items
-        List<String> cartItemIds = parseCartItemIds(reloadedOrder.getCartItemIdsSnapshot());
-        log.info("handleMomoIpn: Parsed {} cart item IDs from snapshot: {}",
-                cartItemIds.size(), cartItemIds);
-
-        if (cartItemIds.isEmpty()) {
-            log.warn("handleMomoIpn: No cart item IDs found in snapshot for order {}. Snapshot: {}",
-                    request.getOrderId(), reloadedOrder.getCartItemIdsSnapshot());
+        String paymentReference = request.getTransId() != null ? String.valueOf(request.getTransId()) : null;
+        if (completeMomoPayment(order, paymentReference)) {
+            log.info("MoMo IPN: Payment SUCCESS - order={}", request.getOrderId());
         }
-
-        finalizePaidOrder(reloadedOrder, cartItemIds);
-
-        log.info("MoMo IPN: Payment SUCCESS - order={}", request.getOrderId());
     }
 
     /**
-     * Kiểm tra và cập nhật trạng thái thanh toán MoMo từ frontend redirect
-     * Được gọi khi frontend redirect về từ MoMo với resultCode
-     * Nếu resultCode = 0 (thành công) và order chưa được cập nhật, sẽ cập nhật
-     * tương tự như IPN handler
+     * Kiểm tra trạng thái thanh toán MoMo khi frontend redirect về từ MoMo.
+     *
+     * resultCode trên URL redirect do client gửi nên chỉ dùng để ghi log: đơn chỉ được xác nhận thanh toán theo
+     * IPN đã xác thực chữ ký, hoặc theo kết quả server hỏi trực tiếp MoMo (API /query) khi IPN chưa tới.
+     * Chỉ chủ đơn được gọi; lời gọi MoMo nằm ngoài transaction.
      */
-    @Transactional
+    @PreAuthorize("hasRole('CUSTOMER')")
     public Order checkAndUpdateMomoPaymentStatus(String orderCode, Integer resultCode) {
         if (orderCode == null || orderCode.isBlank()) {
             throw new AppException(ErrorCode.ORDER_NOT_EXISTED, "Order code is required");
@@ -659,81 +684,109 @@ public class OrderService {
         Order order = orderRepository.findByCode(orderCode)
                 .orElseThrow(() -> new AppException(ErrorCode.ORDER_NOT_EXISTED));
 
+        String email = SecurityUtil.getAuthentication().getName();
+        if (order.getUser() == null
+                || order.getUser().getEmail() == null
+                || !order.getUser().getEmail().equalsIgnoreCase(email)) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+
         // Chỉ xử lý nếu là order MoMo và chưa được thanh toán
         if (order.getPaymentMethod() != PaymentMethod.MOMO || Boolean.TRUE.equals(order.getPaid())) {
             return order;
         }
 
-        // Nếu resultCode = 0 (thành công), cập nhật order status
-        if (resultCode != null && resultCode == 0) {
-            order.setPaymentStatus(PaymentStatus.PAID);
-            order.setPaid(true);
-            orderRepository.save(order);
-            orderRepository.flush();
-
-            Order reloadedOrder = orderRepository.findById(order.getId())
-                    .orElseThrow(() -> new AppException(ErrorCode.ORDER_NOT_EXISTED));
+        MomoQueryResponse status;
+        try {
+            status = momoService.queryPaymentStatus(orderCode);
+        } catch (RuntimeException e) {
+            log.warn("MoMo redirect: cannot query payment status - order={}, redirect resultCode={}: {}",
+                    orderCode, resultCode, e.getMessage());
+            return order; // Chờ IPN
+        }
+        if (status == null || status.getResultCode() == null) {
+            return order;
+        }
 
-            if (reloadedOrder.getItems() != null) {
-                reloadedOrder.getItems().size();
+        if (status.getResultCode() == 0) {
+            if (status.getAmount() == null || status.getAmount() != Math.round(order.getTotalAmount())) {
+                log.error("MoMo redirect: amount mismatch - order={}, expected={}, momo={}",
+                        orderCode, Math.round(order.getTotalAmount()), status.getAmount());
+                return order;
             }
-
-            // Cập nhật tồn kho và số lượng đã bán
-            if (reloadedOrder.getItems() != null && !reloadedOrder.getItems().isEmpty()) {
-                for (OrderItem item : reloadedOrder.getItems()) {
-                    if (item.getProduct() != null) {
-                        item.getProduct().getId();
-                    }
-                    if (item.getProduct() != null && item.getProduct().getId() != null) {
-                        Product product = productRepository.findByIdWithRelations(item.getProduct().getId())
-                                .orElse(null);
-                        if (product != null) {
-                            updateInventoryAndSales(product, item.getQuantity(), item.getColorCode());
-                        }
-                    }
+            String paymentReference = status.getTransId() != null ? String.valueOf(status.getTransId()) : null;
+            transactionTemplate.executeWithoutResult(tx -> {
+                if (completeMomoPayment(order, paymentReference)) {
+                    log.info("MoMo redirect: Payment SUCCESS (verified via query) - order={}", orderCode);
                 }
-            }
+            });
+        } else if (!MOMO_PENDING_RESULT_CODES.contains(status.getResultCode())) {
+            log.warn("MoMo redirect: Payment FAILED (verified via query) - order={}, resultCode={}",
+                    orderCode, status.getResultCode());
+            transactionTemplate.executeWithoutResult(tx -> markMomoPaymentFailed(order));
+        }
 
-            // KHÔNG ghi nhận doanh thu ở đây - chỉ ghi nhận trong handleMomoIpn (IPN
-            // callback)
-            // Lý do: IPN callback là nguồn chính thức từ MoMo, và việc ghi nhận doanh thu ở
-            // 2 nơi
-            // có thể gây duplicate do race condition
-            // Nếu IPN chưa đến, doanh thu sẽ được ghi nhận khi IPN đến
-            log.info(
-                    "checkAndUpdateMomoPaymentStatus: Skipping revenue recording for order {} - will be handled by IPN callback",
-                    orderCode);
-            if (financialService.hasRecordedRevenue(reloadedOrder.getId())) {
-                log.info("checkAndUpdateMomoPaymentStatus: Revenue already recorded for order {} (by IPN)", orderCode);
-            } else {
-                log.warn(
-                        "checkAndUpdateMomoPaymentStatus: Revenue not recorded yet for order {} - waiting for IPN callback",
-                        orderCode);
-            }
+        return order;
+    }
 
-            // Xóa cart items
-            List<String> cartItemIds = parseCartItemIds(reloadedOrder.getCartItemIdsSnapshot());
-            finalizePaidOrder(reloadedOrder, cartItemIds);
+    /**
+     * Chuyển đơn MoMo sang đã thanh toán và hoàn tất đơn. Trả về false nếu bên khác (IPN/redirect) đã làm
+     * trước - UPDATE có điều kiện chờ transaction đó commit rồi không cập nhật dòng nào.
+     */
+    private boolean completeMomoPayment(Order order, String paymentReference) {
+        if (orderRepository.markPaidIfUnpaid(order.getId(), paymentReference) == 0) {
+            log.info("MoMo payment for order {} already processed, skipping", order.getCode());
+            // Đọc lại trạng thái bên kia đã ghi (không sửa entity cũ, tránh ghi đè paymentReference khi flush)
+            entityManager.refresh(order);
+            return false;
+        }
+        // Đồng bộ entity đang quản lý với dòng vừa cập nhật
+        order.setPaid(true);
+        order.setPaymentStatus(PaymentStatus.PAID);
+        if (paymentReference != null) {
+            order.setPaymentReference(paymentReference);
+        }
 
-            log.info("MoMo redirect: Payment SUCCESS - order={}", orderCode);
-            return reloadedOrder;
-        } else if (resultCode != null && resultCode != 0) {
-            log.warn("MoMo redirect: Payment FAILED - order={}, resultCode={}", orderCode, resultCode);
-            order.setPaymentStatus(PaymentStatus.FAILED);
-            orderRepository.save(order);
+        if (order.getItems() != null) {
+            order.getItems().size(); // Trigger lazy loading
         }
 
-        return order;
+        // Xác nhận giữ chỗ tồn kho và cập nhật số lượng đã bán; giữ chỗ đã hết hạn mà không còn đủ hàng
+        // thì đánh dấu đơn cần xử lý
+        flagStockShortage(order, inventoryReservationService.confirmReservation(order.getId(), order.getItems()));
+
+        // Chỉ bên thắng UPDATE ở trên chạy tới đây nên doanh thu được ghi đúng một lần
+        recordOrderRevenue(order);
+
+        List<String> cartItemIds = parseCartItemIds(order.getCartItemIdsSnapshot());
+        if (cartItemIds.isEmpty()) {
+            log.warn("No cart item IDs found in snapshot for MoMo order {}. Snapshot: {}",
+                    order.getCode(), order.getCartItemIdsSnapshot());
+        }
+        finalizePaidOrder(order, cartItemIds);
+        return true;
     }
 
-    private void registerVoucherUsage(User user, String voucherCode) {
-        // NovaBeauty không có usedVouchers trong User entity
-        // Method này được giữ lại để tương thích với LuminaBook nhưng không thực hiện
-        // gì
-        if (user == null || voucherCode == null || voucherCode.isBlank()) {
+    private void markMomoPaymentFailed(Order order) {
+        if (orderRepository.markPaymentFailedIfUnpaid(order.getId()) == 0) {
+            return; // Đã thanh toán hoặc đã xử lý thất bại trước đó
+        }
+        order.setPaymentStatus(PaymentStatus.FAILED);
+        inventoryReservationService.releaseReservation(order.getId());
+    }
+
+    /**
+     * Ghi nhận một lượt dùng voucher của user trong sổ voucher_usages. Vượt usagePerUser (ví dụ hai checkout
+     * đồng thời cùng qua bước kiểm tra ở giỏ hàng) thì ném lỗi và rollback đơn hàng.
+     */
+    private void registerVoucherUsage(User user, String voucherId) {
+        if (user == null || voucherId == null || voucherId.isBlank()) {
             return;
         }
-        // Có thể thêm logic tracking voucher usage sau nếu cần
+        Integer usagePerUser = voucherRepository.findById(voucherId)
+                .map(Voucher::getUsagePerUser)
+                .orElse(null);
+        voucherUsageService.consume(voucherId, user.getId(), usagePerUser);
     }
 
     /**
@@ -752,8 +805,11 @@ public class OrderService {
             return;
         }
 
-        // Xóa voucher khỏi order để khách có thể sử dụng lại
+        // Xóa voucher khỏi order và trả lại lượt dùng để khách có thể sử dụng lại
         log.info("Hoàn voucher {} (ID: {}) cho đơn hàng {}", voucherCode, voucherId, order.getCode());
+        if (voucherId != null && order.getUser() != null) {
+            voucherUsageService.release(voucherId, order.getUser().getId());
+        }
         order.setAppliedVoucherCode(null);
         order.setAppliedVoucherId(null);
         order.setVoucherDiscount(null);
@@ -1001,25 +1057,150 @@ public class OrderService {
     }
 
     /**
-     * Danh sách tất cả đơn hàng cho nhân viên / admin.
+     * Danh sách đơn hàng cho nhân viên / admin, phân trang theo keyset (orderDateTime, id) giảm dần.
+     * Chỉ đọc projection các cột hiển thị trong danh sách, không nạp items.
+     *
+     * @param cursor nextCursor của trang trước, null cho trang đầu
+     * @param from   ngày đặt hàng từ (bao gồm), null nếu không lọc
+     * @param to     ngày đặt hàng đến (bao gồm), null nếu không lọc
      */
     @Transactional(readOnly = true)
     @PreAuthorize("hasAnyRole('STAFF','ADMIN')")
-    public List<Order> getAllOrders() {
-        List<Order> orders = orderRepository.findAll();
-        // Đồng bộ trạng thái từ GHN cho các đơn có shipment - Đã xóa integration
-        // for (Order order : orders) {
-        // if (order.getShipment() != null && order.getShipment().getOrderCode() !=
-        // null) {
-        // try {
-        // shipmentService.syncOrderStatusFromGhn(order.getId());
-        // } catch (Exception e) {
-        // log.warn("Không thể đồng bộ trạng thái từ GHN cho order: {}", order.getId(),
-        // e);
-        // }
-        // }
-        // }
-        return orderRepository.findAll();
+    public OrderCursorPageResponse getOrdersPage(
+            String cursor,
+            Integer limit,
+            OrderStatus status,
+            PaymentMethod paymentMethod,
+            LocalDate from,
+            LocalDate to) {
+        int size = limit == null || limit <= 0 ? DEFAULT_ORDER_PAGE_SIZE : Math.min(limit, MAX_ORDER_PAGE_SIZE);
+        OrderCursor after = decodeOrderCursor(cursor);
+
+        List<OrderRepository.OrderListRow> rows = new ArrayList<>(size + 1);
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        if (after == null || !after.legacy()) {
+            rows.addAll(orderRepository.findListRowsAfter(
+                    status,
+                    paymentMethod,
+                    from != null ? from.atStartOfDay() : null,
+                    to != null ? to.plusDays(1).atStartOfDay() : null,
+                    after != null ? after.orderDateTime() : null,
+                    after != null ? after.id() : null,
+                    PageRequest.of(0, size + 1)));
+        }
+        // Hết đơn có orderDateTime: nối tiếp các đơn cũ chỉ có orderDate
+        if (rows.size() <= size) {
+            rows.addAll(orderRepository.findLegacyListRowsAfter(
+                    status,
+                    paymentMethod,
+                    from,
+                    to,
+                    after != null && after.legacy() ? after.id() : null,
+                    PageRequest.of(0, size + 1 - rows.size())));
+        }
+
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+        String nextCursor = hasNext ? encodeOrderCursor(rows.get(rows.size() - 1)) : null;
+        return OrderCursorPageResponse.builder()
+                .orders(rows.stream().map(this::toListResponse).toList())
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .limit(size)
+                .build();
+    }
+
+    // Dòng danh sách (projection, không có items) -> OrderResponse, cùng quy tắc hiển thị với chi tiết đơn hàng
+    private OrderResponse toListResponse(OrderRepository.OrderListRow row) {
+        String customerEmail = row.getUserEmail();
+        String customerName = "Khách hàng";
+        if (row.getUserFullName() != null && !row.getUserFullName().isBlank()) {
+            customerName = row.getUserFullName();
+        } else if (customerEmail != null) {
+            customerName = customerEmail;
+        }
+
+        ShippingSnapshot snapshot = parseSnapshot(row.getShippingAddress());
+        String receiverName = firstNonBlank(snapshot.name, row.getRecipientName());
+        String receiverPhone = firstNonBlank(snapshot.phone, row.getRecipientPhone());
+        String shippingAddress = snapshot.address;
+        if (shippingAddress == null || shippingAddress.isBlank()) {
+            StringBuilder sb = new StringBuilder();
+            appendPart(sb, row.getAddressLine());
+            appendPart(sb, row.getWardName());
+            appendPart(sb, row.getDistrictName());
+            appendPart(sb, row.getProvinceName());
+            appendPart(sb, row.getCountry());
+            shippingAddress = sb.length() > 0 ? sb.toString() : row.getShippingAddress();
+        }
+
+        return OrderResponse.builder()
+                .id(row.getId())
+                .code(row.getCode() != null ? row.getCode() : row.getId())
+                .customerName(customerName)
+                .customerEmail(customerEmail)
+                .receiverName(receiverName != null ? receiverName : customerName)
+                .receiverPhone(receiverPhone != null ? receiverPhone : "")
+                .shippingAddress(shippingAddress)
+                .orderDate(row.getOrderDate())
+                .orderDateTime(row.getOrderDateTime() != null
+                        ? row.getOrderDateTime()
+                        : row.getOrderDate() != null ? row.getOrderDate().atStartOfDay() : null)
+                .shippingFee(row.getShippingFee())
+                .totalAmount(row.getTotalAmount())
+                .status(row.getStatus() != null ? row.getStatus().name() : null)
+                .paymentMethod(row.getPaymentMethod() != null ? row.getPaymentMethod().name() : null)
+                .paymentStatus(row.getPaymentStatus() != null ? row.getPaymentStatus().name() : null)
+                .paid(row.getPaid())
+                .paymentReference(row.getPaymentReference())
+                .refundReasonType(row.getRefundReasonType())
+                .refundDescription(row.getRefundDescription())
+                .refundEmail(row.getRefundEmail())
+                .refundReturnAddress(row.getRefundReturnAddress())
+                .refundMethod(row.getRefundMethod())
+                .refundBank(row.getRefundBank())
+                .refundAccountNumber(row.getRefundAccountNumber())
+                .refundAccountHolder(row.getRefundAccountHolder())
+                .refundAmount(row.getRefundAmount())
+                .refundReturnFee(row.getRefundReturnFee())
+                .build();
+    }
+
+    // Cursor = base64url("orderDateTime|id"), orderDateTime rỗng với đơn cũ không có orderDateTime
+    private String encodeOrderCursor(OrderRepository.OrderListRow row) {
+        String time = row.getOrderDateTime() != null ? row.getOrderDateTime().toString() : "";
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((time + "|" + row.getId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private OrderCursor decodeOrderCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            String id = raw.substring(separator + 1);
+            if (separator < 0 || id.isBlank()) {
+                throw new AppException(ErrorCode.BAD_REQUEST);
+            }
+            String time = raw.substring(0, separator);
+            return new OrderCursor(time.isEmpty() ? null : LocalDateTime.parse(time), id);
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Invalid order cursor: {}", cursor);
+            throw new AppException(ErrorCode.BAD_REQUEST);
+        }
+    }
+
+    private record OrderCursor(LocalDateTime orderDateTime, String id) {
+        boolean legacy() {
+            return orderDateTime == null;
+        }
     }
 
     /**
@@ -1031,6 +1212,14 @@ public class OrderService {
         try {
             String email = SecurityUtil.getAuthentication().getName();
             List<Order> orders = orderRepository.findByUserEmail(email);
+            return orders;
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error loading orders for current user", e);
+            throw new AppException(ErrorCode.UNCATEGORIZED_EXCEPTION);
+        }
+    }
 
     /**
      * Lấy chi tiết một đơn hàng theo id, đảm bảo:
@@ -1114,6 +1303,49 @@ public class OrderService {
         return order;
     }
 
+    /**
+     * Nhân viên xác nhận đã giao hàng (chuyển trạng thái sang DELIVERED) và ghi nhận doanh thu:
+     * - COD: khách trả tiền khi nhận hàng nên đơn được đánh dấu đã thanh toán, doanh thu ghi tại thời điểm giao.
+     * - MoMo: dời bản ghi doanh thu (ghi khi thanh toán) sang thời điểm giao.
+     */
+    @Transactional
+    @PreAuthorize("hasAnyRole('STAFF','ADMIN')")
+    public Order markDelivered(String orderId) {
+        Order order = orderRepository
+                .findById(orderId)
+                .orElseThrow(() -> new AppException(ErrorCode.ORDER_NOT_EXISTED));
+
+        if (order.getStatus() == OrderStatus.DELIVERED) {
+            return order;
+        }
+        if (order.getStatus() != OrderStatus.CONFIRMED
+                && order.getStatus() != OrderStatus.PAID
+                && order.getStatus() != OrderStatus.SHIPPED) {
+            throw new AppException(
+                    ErrorCode.UNCATEGORIZED_EXCEPTION,
+                    "Chỉ có thể xác nhận giao hàng cho đơn đã được xác nhận hoặc đang giao.");
+        }
+
+        if (order.getPaymentMethod() == PaymentMethod.COD) {
+            order.setPaid(true);
+            order.setPaymentStatus(PaymentStatus.PAID);
+        } else if (!Boolean.TRUE.equals(order.getPaid())) {
+            throw new AppException(
+                    ErrorCode.UNCATEGORIZED_EXCEPTION,
+                    "Đơn hàng chưa được thanh toán, không thể xác nhận giao hàng.");
+        }
+
+        order.setStatus(OrderStatus.DELIVERED);
+        Order savedOrder = orderRepository.save(order);
+
+        if (savedOrder.getPaymentMethod() == PaymentMethod.COD) {
+            financialService.ensureCodOrderRevenueRecorded(savedOrder);
+        } else {
+            financialService.ensureMomoOrderRevenueRecorded(savedOrder);
+        }
+        return savedOrder;
+    }
+
     // Thống kê đơn hàng theo khoảng thời gian
     @Transactional(readOnly = true)
     @PreAuthorize("hasRole('ADMIN')")
@@ -1418,15 +1650,7 @@ public class OrderService {
         Order saved = orderRepository.save(order);
 
         // Gửi email thông báo cho khách khi yêu cầu hoàn tiền bị từ chối
-        try {
-            brevoEmailService.sendReturnRejectedEmail(saved);
-        } catch (Exception e) {
-            log.error(
-                    "Failed to send return rejected email for order {}: {}",
-                    orderId,
-                    e.getMessage(),
-                    e);
-        }
+        brevoEmailService.sendReturnRejectedEmail(saved);
 
         return saved;
     }
@@ -1450,15 +1674,7 @@ public class OrderService {
 
         // Gửi email thông báo cho khách hàng: CSKH đã xác nhận yêu cầu hoàn tiền/trả
         // hàng
-        try {
-            brevoEmailService.sendReturnCsConfirmedEmail(saved);
-        } catch (Exception e) {
-            log.error(
-                    "Failed to send CS-confirmed return email for order {}: {}",
-                    orderId,
-                    e.getMessage(),
-                    e);
-        }
+        brevoEmailService.sendReturnCsConfirmedEmail(saved);
 
         return saved;
     }
@@ -1496,11 +1712,7 @@ public class OrderService {
         Order saved = orderRepository.save(order);
 
         // Gửi email cho khách về kết quả kiểm tra hàng
-        try {
-            brevoEmailService.sendReturnStaffInspectionEmail(saved);
-        } catch (Exception e) {
-            log.error("Failed to send staff inspection email for order {}", orderId);
-        }
+        brevoEmailService.sendReturnStaffInspectionEmail(saved);
 
         return saved;
     }
@@ -1537,6 +1749,8 @@ public class OrderService {
         order.setStatus(OrderStatus.REFUNDED);
 
         Order savedOrder = orderRepository.save(order);
+        // Đơn đã hoàn tiền không còn là doanh thu: xóa bản ghi doanh thu và trừ khỏi bảng rollup
+        financialService.deleteOrderRevenueRecords(savedOrder.getId());
         notifyStaffOrderReturned(savedOrder);
         return savedOrder;
     }
@@ -1617,6 +1831,10 @@ public class OrderService {
 
         // Hoàn voucher cho khách hàng khi hủy đơn
         refundVoucher(order);
+        // Hoàn tồn kho đang giữ chỗ (đơn MoMo chưa thanh toán)
+        inventoryReservationService.releaseReservation(order.getId());
+        // Đơn MoMo đã thanh toán rồi bị hủy: đảo doanh thu đã ghi nhận
+        financialService.deleteOrderRevenueRecords(order.getId());
 
         Order savedOrder = orderRepository.save(order);
         if (source == CancellationSource.CUSTOMER) {
@@ -1710,274 +1928,4 @@ public class OrderService {
             order.setNote(current + System.lineSeparator() + note.trim());
         }
     }
-
-    /**
-     * Cập nhật tồn kho và số lượng đã bán khi đơn hàng được tạo thành công
-     * Mỗi mã màu có số lượng đã bán riêng trong manufacturingLocation
-     * 
-     * @param product   Sản phẩm cần cập nhật (đã được load với inventory)
-     * @param quantity  Số lượng đã bán
-     * @param colorCode Mã màu (nếu có) - để giảm tồn kho và tăng số lượng đã bán
-     *                  của variant cụ thể
-     */
-    private void updateInventoryAndSales(Product product, int quantity, String colorCode) {
-        if (product == null || quantity <= 0) {
-            log.warn("updateInventoryAndSales: product is null or quantity <= 0. product={}, quantity={}", product,
-                    quantity);
-            return;
-        }
-
-        log.info("updateInventoryAndSales: Updating product {} with quantity {}, colorCode={}", product.getId(),
-                quantity, colorCode);
-        log.info("updateInventoryAndSales: Product manufacturingLocation is null: {}",
-                product.getManufacturingLocation() == null);
-        if (product.getManufacturingLocation() != null) {
-            log.info("updateInventoryAndSales: Product manufacturingLocation length: {}",
-                    product.getManufacturingLocation().length());
-        }
-
-        // Nếu có colorCode và có manufacturingLocation, cập nhật variant cụ thể
-        if (colorCode != null && !colorCode.isBlank() && product.getManufacturingLocation() != null
-                && !product.getManufacturingLocation().trim().isEmpty()) {
-            log.info("updateInventoryAndSales: Updating color variant for product {} with colorCode {}",
-                    product.getId(), colorCode);
-            // Cập nhật tồn kho và số lượng đã bán của variant cụ thể
-            updateColorVariantStockAndSales(product, colorCode, quantity);
-
-            // Cập nhật số lượng đã bán tổng của product (bằng tổng của tất cả variants)
-            updateTotalQuantitySold(product);
-        } else {
-            log.info(
-                    "updateInventoryAndSales: Updating total inventory for product {} (no colorCode or no manufacturingLocation)",
-                    product.getId());
-            // Nếu không có colorCode, cập nhật tổng của product
-            // Tăng số lượng đã bán tổng
-            int sold = product.getQuantitySold() != null ? product.getQuantitySold() : 0;
-            product.setQuantitySold(sold + quantity);
-            log.info("updateInventoryAndSales: Updated quantitySold from {} to {}", sold, sold + quantity);
-
-            // Giảm tồn kho tổng
-            if (product.getInventory() != null) {
-                Integer stock = product.getInventory().getStockQuantity();
-                if (stock == null) {
-                    stock = 0;
-                }
-                int updatedStock = stock - quantity;
-                int normalizedStock = Math.max(0, updatedStock);
-                product.getInventory().setStockQuantity(normalizedStock);
-                product.getInventory().setLastUpdated(LocalDate.now());
-                log.info("updateInventoryAndSales: Updated stockQuantity from {} to {}", stock, normalizedStock);
-            } else {
-                // Nếu product không có inventory, tạo mới
-                log.warn("updateInventoryAndSales: Product {} has no inventory, creating new inventory",
-                        product.getId());
-                Inventory inventory = Inventory.builder()
-                        .stockQuantity(0) // Bắt đầu từ 0 vì đã bán
-                        .lastUpdated(LocalDate.now())
-                        .product(product)
-                        .build();
-                product.setInventory(inventory);
-                log.info("updateInventoryAndSales: Created new inventory for product {}", product.getId());
-            }
-        }
-
-        // Save và flush để đảm bảo thay đổi được commit ngay
-        productRepository.save(product);
-        productRepository.flush();
-        log.info("updateInventoryAndSales: Successfully updated product {}", product.getId());
-    }
-
-    /**
-     * Cập nhật tồn kho và số lượng đã bán của color variant cụ thể trong manufacturingLocation
-     * Mỗi mã màu có số lượng đã bán riêng
-     */
-    private void updateColorVariantStockAndSales(Product product, String colorCode, int quantity) {
-        try {
-            String manufacturingLocation = product.getManufacturingLocation();
-            if (manufacturingLocation == null || manufacturingLocation.trim().isEmpty()) {
-                log.warn("updateColorVariantStockAndSales: Product {} has no manufacturingLocation", product.getId());
-                return;
-            }
-
-            log.info("updateColorVariantStockAndSales: Parsing manufacturingLocation for product {}: {}", product.getId(), manufacturingLocation);
-
-            // Parse JSON string - có thể là object với {type, variants} hoặc array trực tiếp
-            List<Map<String, Object>> variants = null;
-            try {
-                JsonNode rootNode = objectMapper.readTree(manufacturingLocation);
-                
-                // Kiểm tra xem có phải là object với field "variants" không
-                if (rootNode.isObject() && rootNode.has("variants")) {
-                    JsonNode variantsNode = rootNode.get("variants");
-                    if (variantsNode.isArray()) {
-                        variants = objectMapper.convertValue(variantsNode, new TypeReference<List<Map<String, Object>>>() {});
-                        log.info("updateColorVariantStockAndSales: Parsed as object with variants field, found {} variants", variants != null ? variants.size() : 0);
-                    }
-                } else if (rootNode.isArray()) {
-                    // Nếu là array trực tiếp
-                    variants = objectMapper.convertValue(rootNode, new TypeReference<List<Map<String, Object>>>() {});
-                    log.info("updateColorVariantStockAndSales: Parsed as array directly, found {} variants", variants != null ? variants.size() : 0);
-                } else {
-                    log.warn("updateColorVariantStockAndSales: manufacturingLocation is neither object with variants nor array: {}", rootNode.getNodeType());
-                }
-            } catch (Exception e) {
-                log.error("updateColorVariantStockAndSales: Failed to parse manufacturingLocation: {}", e.getMessage(), e);
-                return;
-            }
-
-            if (variants == null || variants.isEmpty()) {
-                log.warn("updateColorVariantStockAndSales: No variants found in manufacturingLocation for product {}", product.getId());
-                return;
-            }
-
-            // Tìm variant có code trùng với colorCode (case-insensitive)
-            boolean updated = false;
-            for (Map<String, Object> variant : variants) {
-                Object codeObj = variant.get("code");
-                if (codeObj != null) {
-                    String variantCode = codeObj.toString().trim();
-                    if (variantCode.equalsIgnoreCase(colorCode.trim())) {
-                        // Giảm tồn kho của variant này
-                        Object stockObj = variant.get("stockQuantity");
-                        int currentStock = 0;
-                        if (stockObj != null) {
-                            if (stockObj instanceof Number) {
-                                currentStock = ((Number) stockObj).intValue();
-                            } else {
-                                try {
-                                    currentStock = Integer.parseInt(stockObj.toString());
-                                } catch (NumberFormatException e) {
-                                    log.warn("Cannot parse stockQuantity for variant: {}", stockObj);
-                                }
-                            }
-                        }
-                        int updatedStock = Math.max(0, currentStock - quantity);
-                        variant.put("stockQuantity", updatedStock);
-                        log.info("updateColorVariantStockAndSales: Updated stock for variant {}: {} -> {}", colorCode, currentStock, updatedStock);
-
-                        // Tăng số lượng đã bán của variant này
-                        Object soldObj = variant.get("quantitySold");
-                        int currentSold = 0;
-                        if (soldObj != null) {
-                            if (soldObj instanceof Number) {
-                                currentSold = ((Number) soldObj).intValue();
-                            } else {
-                                try {
-                                    currentSold = Integer.parseInt(soldObj.toString());
-                                } catch (NumberFormatException e) {
-                                    log.warn("Cannot parse quantitySold for variant: {}", soldObj);
-                                }
-                            }
-                        }
-                        int updatedSold = currentSold + quantity;
-                        variant.put("quantitySold", updatedSold);
-                        log.info("updateColorVariantStockAndSales: Updated quantitySold for variant {}: {} -> {}", colorCode, currentSold, updatedSold);
-
-                        updated = true;
-                        break;
-                    }
-                }
-            }
-
-            // Nếu đã cập nhật, serialize lại và lưu vào product
-            // Giữ nguyên cấu trúc ban đầu (object với type và variants hoặc array)
-            if (updated) {
-                // Kiểm tra cấu trúc ban đầu để serialize đúng format
-                JsonNode originalRoot = objectMapper.readTree(manufacturingLocation);
-                String updatedManufacturingLocation;
-                
-                if (originalRoot.isObject() && originalRoot.has("variants")) {
-                    // Giữ nguyên cấu trúc object với type và variants
-                    ObjectNode updatedRoot = objectMapper.createObjectNode();
-                    updatedRoot.put("type", originalRoot.has("type") ? originalRoot.get("type").asText() : "COLOR_VARIANT_VERSION");
-                    updatedRoot.set("variants", objectMapper.valueToTree(variants));
-                    updatedManufacturingLocation = objectMapper.writeValueAsString(updatedRoot);
-                } else {
-                    // Nếu ban đầu là array, serialize lại thành array
-                    updatedManufacturingLocation = objectMapper.writeValueAsString(variants);
-                }
-                
-                product.setManufacturingLocation(updatedManufacturingLocation);
-                log.info("updateColorVariantStockAndSales: Updated manufacturingLocation for product {} with variant {}", product.getId(), colorCode);
-                log.debug("updateColorVariantStockAndSales: Updated manufacturingLocation content: {}", updatedManufacturingLocation);
-            } else {
-                log.warn("updateColorVariantStockAndSales: Variant with colorCode {} not found in product {}", colorCode, product.getId());
-            }
-        }catch(
-
-    Exception e)
-    {
-        log.error("Failed to update color variant for product {} colorCode {}", product.getId(), colorCode);
-    }
-    }
-
-    private int parseIntSafe(Object obj) {
-        if (obj == null)
-            return 0;
-        if (obj instanceof Number)
-            return ((Number) obj).intValue();
-        try {
-            return Integer.parseInt(obj.toString());
-        } catch (NumberFormatException e) {
-            return 0;
-        }
-    }
-
-    /**
-     * Cập nhật số lượng đã bán tổng của product bằng tổng quantitySold của tất cả variants
-     */
-    private void updateTotalQuantitySold(Product product) {
-        try {
-            String manufacturingLocation = product.getManufacturingLocation();
-            if (manufacturingLocation == null || manufacturingLocation.trim().isEmpty()) {
-                return;
-            }
-
-            List<Map<String, Object>> variants = null;
-            try {
-                JsonNode rootNode = objectMapper.readTree(manufacturingLocation);
-
-                if (rootNode.isObject() && rootNode.has("variants")) {
-                    JsonNode variantsNode = rootNode.get("variants");
-                    if (variantsNode.isArray()) {
-                        variants = objectMapper.convertValue(variantsNode, new TypeReference<List<Map<String, Object>>>() {});
-                    }
-                } else if (rootNode.isArray()) {
-                    variants = objectMapper.convertValue(rootNode, new TypeReference<List<Map<String, Object>>>() {});
-                }
-            } catch (Exception e) {
-                return;
-            }
-
-            if (variants == null || variants.isEmpty()) {
-                return;
-            }
-
-            // Tính tổng quantitySold của tất cả variants
-            int totalSold = 0;
-            for (Map<String, Object> variant : variants) {
-                Object soldObj = variant.get("quantitySold");
-                if (soldObj != null) {
-                    if (soldObj instanceof Number) {
-                        totalSold += ((Number) soldObj).intValue();
-                    } else {
-                        try {
-                            totalSold += Integer.parseInt(soldObj.toString());
-                        } catch (NumberFormatException e) {
-                            log.warn("Cannot parse quantitySold for variant: {}", soldObj);
-                        }
-                    }
-                }
-            }
-
-            // Cập nhật quantitySold tổng của product
-            product.setQuantitySold(totalSold);
-            log.info("updateTotalQuantitySold: Updated total quantitySold for product {} to {}", product.getId(), totalSold);
-        }catch(
-
-    Exception e)
-    {
-        log.error("updateTotalQuantitySold: Could not update total quantitySold for product {}: {}",
-                product.getId(), e.getMessage(), e);
-    }
-}}
+}
@@ -0,0 +1,257 @@
+package com.hanoi_metro.backend.service;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import com.hanoi_metro.backend.configuration.OutboundHttpProperties;
+import com.hanoi_metro.backend.dto.response.OutboundHttpStats;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Lớp dùng chung cho mọi kết nối ra ngoài (GHN, Gemini, Brevo, MoMo, Cloudinary).
+ *
+ * Mỗi đối tác có một {@link Destination} riêng gồm:
+ * - Bulkhead: giới hạn số request đồng thời; hết slot thì từ chối ngay (EXTERNAL_SERVICE_BUSY) thay vì để
+ *   một đối tác chậm giữ hết luồng của các đối tác khác.
+ * - Retry khi không kết nối được (request chưa tới đối tác nên gửi lại luôn an toàn), backoff lũy thừa.
+ * - Histogram độ trễ, số lỗi, số request bị từ chối (xem /outbound-http/stats).
+ *
+ * Pool kết nối và timeout được dựng trong WebClientConfig / CloudinaryConfig / MomoFeignConfig / BrevoEmailService
+ * từ cùng cấu hình outbound-http.destinations.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class OutboundHttpRegistry {
+
+    // Cận trên (ms) của các ô histogram; ô cuối là "lớn hơn"
+    static final long[] LATENCY_BUCKETS_MS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    OutboundHttpProperties properties;
+    Map<String, Destination> destinations = new ConcurrentHashMap<>();
+
+    public Destination destination(String name) {
+        return destinations.computeIfAbsent(name, n -> new Destination(n, properties.destination(n)));
+    }
+
+    public List<OutboundHttpStats> stats() {
+        return destinations.values().stream()
+                .map(Destination::stats)
+                .sorted((a, b) -> a.getDestination().compareTo(b.getDestination()))
+                .toList();
+    }
+
+    // Không kết nối được tới đối tác (bao gồm connect timeout)
+    static boolean isConnectFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T execute() throws E;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static final class Destination {
+        String name;
+        OutboundHttpProperties.Destination config;
+        Semaphore bulkhead;
+
+        LongAdder calls = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        LongAdder retries = new LongAdder();
+        LongAdder totalLatencyMs = new LongAdder();
+        AtomicLong maxLatencyMs = new AtomicLong();
+        AtomicLongArray histogram = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+
+        Destination(String name, OutboundHttpProperties.Destination config) {
+            this.name = name;
+            this.config = config;
+            this.bulkhead = new Semaphore(config.getMaxConcurrent());
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public OutboundHttpProperties.Destination config() {
+            return config;
+        }
+
+        /**
+         * Gọi đồng bộ (RestTemplate, Feign, Cloudinary SDK) qua bulkhead, retry và đo độ trễ.
+         */
+        public <T, E extends Exception> T call(Call<T, E> call) throws E {
+            acquire();
+            try {
+                for (int attempt = 0; ; attempt++) {
+                    long startedAt = System.nanoTime();
+                    try {
+                        T result = call.execute();
+                        record(startedAt, result instanceof ClientHttpResponse response && isServerError(response));
+                        return result;
+                    } catch (Exception e) {
+                        record(startedAt, true);
+                        if (attempt >= config.getMaxRetries() || !isConnectFailure(e)) {
+                            throw e;
+                        }
+                        retries.increment();
+                        sleep(backoff(attempt));
+                    }
+                }
+            } finally {
+                bulkhead.release();
+            }
+        }
+
+        /**
+         * Interceptor cho RestTemplate.
+         */
+        public ClientHttpRequestInterceptor interceptor() {
+            return (request, body, execution) -> call(() -> execution.execute(request, body));
+        }
+
+        /**
+         * Filter cho WebClient: bulkhead không chặn luồng (hết slot thì lỗi ngay), đo độ trễ tới khi nhận header,
+         * retry khi không kết nối được. Slot được giữ tới khi body đọc xong (hoặc bị hủy), không chỉ tới header,
+         * để response dạng stream (Gemini) cũng bị giới hạn.
+         */
+        public ExchangeFilterFunction filter() {
+            return (request, next) -> Mono.defer(() -> {
+                        if (!bulkhead.tryAcquire()) {
+                            return Mono.error(reject());
+                        }
+                        AtomicBoolean released = new AtomicBoolean();
+                        Runnable release = () -> {
+                            if (released.compareAndSet(false, true)) {
+                                bulkhead.release();
+                            }
+                        };
+                        long startedAt = System.nanoTime();
+                        return next.exchange(request)
+                                .doOnSuccess(response -> record(startedAt, isServerError(response)))
+                                .doOnError(e -> record(startedAt, true))
+                                .map(response -> response.mutate()
+                                        .body(body -> body.doFinally(signal -> release.run()))
+                                        .build())
+                                .doOnError(e -> release.run())
+                                .doOnCancel(release)
+                                .switchIfEmpty(Mono.fromRunnable(release));
+                    })
+                    .retryWhen(Retry.backoff(config.getMaxRetries(), Duration.ofMillis(config.getRetryBackoffMs()))
+                            .filter(OutboundHttpRegistry::isConnectFailure)
+                            .doBeforeRetry(signal -> retries.increment())
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        }
+
+        private void acquire() {
+            try {
+                if (bulkhead.tryAcquire(config.getAcquireTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw reject();
+        }
+
+        private AppException reject() {
+            rejected.increment();
+            log.warn("Outbound HTTP bulkhead full for {} ({} concurrent calls)", name, config.getMaxConcurrent());
+            return new AppException(ErrorCode.EXTERNAL_SERVICE_BUSY);
+        }
+
+        private void record(long startedAtNanos, boolean error) {
+            long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos);
+            calls.increment();
+            if (error) {
+                errors.increment();
+            }
+            totalLatencyMs.add(latencyMs);
+            maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MS.length && latencyMs > LATENCY_BUCKETS_MS[bucket]) {
+                bucket++;
+            }
+            histogram.incrementAndGet(bucket);
+        }
+
+        private long backoff(int attempt) {
+            return config.getRetryBackoffMs() << Math.min(attempt, 10);
+        }
+
+        private static boolean isServerError(ClientHttpResponse response) {
+            try {
+                return response.getStatusCode().is5xxServerError();
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
+        private static boolean isServerError(ClientResponse response) {
+            return response != null && response.statusCode().is5xxServerError();
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        OutboundHttpStats stats() {
+            long callCount = calls.sum();
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            for (int i = 0; i < histogram.length(); i++) {
+                String label = i < LATENCY_BUCKETS_MS.length
+                        ? "<=" + LATENCY_BUCKETS_MS[i] + "ms"
+                        : ">" + LATENCY_BUCKETS_MS[LATENCY_BUCKETS_MS.length - 1] + "ms";
+                buckets.put(label, histogram.get(i));
+            }
+            return OutboundHttpStats.builder()
+                    .destination(name)
+                    .inFlight(config.getMaxConcurrent() - bulkhead.availablePermits())
+                    .maxConcurrent(config.getMaxConcurrent())
+                    .calls(callCount)
+                    .errors(errors.sum())
+                    .rejected(rejected.sum())
+                    .retries(retries.sum())
+                    .averageLatencyMs(callCount == 0 ? 0 : totalLatencyMs.sum() / callCount)
+                    .maxLatencyMs(maxLatencyMs.get())
+                    .latencyHistogram(buckets)
+                    .build();
+        }
+    }
+}
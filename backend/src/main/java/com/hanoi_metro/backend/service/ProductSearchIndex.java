@@ -0,0 +1,307 @@
+package com.hanoi_metro.backend.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.entity.Product;
+import com.hanoi_metro.backend.enums.ProductStatus;
+import com.hanoi_metro.backend.repository.ProductRepository;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Chỉ mục ngược (inverted index) trong bộ nhớ cho sản phẩm đã duyệt, thay cho 7 điều kiện LIKE '%kw%'
+ * trên các cột TEXT.
+ *
+ * - Bỏ dấu tiếng Việt khi tách từ ("son dưỡng" == "son duong", "đ" == "d").
+ * - Xếp hạng BM25; từ trong tên và thương hiệu có trọng số cao hơn mô tả.
+ * - Từ cuối của câu truy vấn được tìm theo tiền tố ("duo" khớp "duong"); các từ khác nếu không có trong
+ *   từ điển cũng được mở rộng theo tiền tố.
+ * - Ưu tiên sản phẩm khớp đủ mọi từ; nếu không có sản phẩm nào khớp đủ thì trả về các sản phẩm khớp một phần.
+ *
+ * ProductService cập nhật index sau khi transaction tạo/sửa/xóa sản phẩm commit.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ProductSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_PENALTY = 0.7;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    ProductRepository productRepository;
+
+    ReadWriteLock lock = new ReentrantReadWriteLock();
+    // term -> (productId -> tần suất có trọng số)
+    TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    // productId -> (term -> tần suất có trọng số)
+    Map<String, Map<String, Integer>> documents = new HashMap<>();
+    // productId -> độ dài tài liệu (tổng tần suất có trọng số)
+    Map<String, Integer> lengths = new HashMap<>();
+
+    @NonFinal
+    long totalLength;
+
+    /**
+     * Dựng lại toàn bộ index từ các sản phẩm đã duyệt.
+     */
+    public void rebuildAll() {
+        List<Product> products = productRepository.findByStatus(ProductStatus.APPROVED);
+        Map<String, Map<String, Integer>> analyzed = new HashMap<>();
+        for (Product product : products) {
+            analyzed.put(product.getId(), analyze(product));
+        }
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            lengths.clear();
+            totalLength = 0;
+            analyzed.forEach(this::putDocument);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product search index rebuilt for {} products", analyzed.size());
+    }
+
+    /**
+     * Cập nhật sản phẩm sau khi transaction commit. Sản phẩm chưa duyệt bị gỡ khỏi index.
+     */
+    public void index(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        String productId = product.getId();
+        if (product.getStatus() != ProductStatus.APPROVED) {
+            remove(productId);
+            return;
+        }
+        // Tách từ ngay (entity còn trong session), chỉ ghi vào index sau khi commit
+        Map<String, Integer> terms = analyze(product);
+        TransactionUtil.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeDocument(productId);
+                putDocument(productId, terms);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void remove(String productId) {
+        if (productId == null) {
+            return;
+        }
+        TransactionUtil.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeDocument(productId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Tìm kiếm và trả về productId theo thứ tự liên quan giảm dần.
+     *
+     * @param page trang (0-based)
+     * @param size số phần tử mỗi trang; null hoặc <= 0 để lấy toàn bộ
+     */
+    public SearchResult search(String query, Integer page, Integer size) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTerms.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+
+        List<ScoredDocument> ranked;
+        lock.readLock().lock();
+        try {
+            if (documents.isEmpty()) {
+                return new SearchResult(List.of(), 0);
+            }
+            double avgLength = (double) totalLength / documents.size();
+            Map<String, ScoredDocument> scores = new HashMap<>();
+            for (int i = 0; i < queryTerms.size(); i++) {
+                String term = queryTerms.get(i);
+                boolean allowPrefix = i == queryTerms.size() - 1 || !postings.containsKey(term);
+                // Điểm của một từ truy vấn = điểm cao nhất trong các từ khớp (chính xác hoặc theo tiền tố)
+                Map<String, Double> termScores = new HashMap<>();
+                for (Map.Entry<String, Map<String, Integer>> match : expand(term, allowPrefix).entrySet()) {
+                    double weight = match.getKey().equals(term) ? 1.0 : PREFIX_PENALTY;
+                    double idf = idf(match.getValue().size());
+                    for (Map.Entry<String, Integer> posting : match.getValue().entrySet()) {
+                        int docLength = lengths.getOrDefault(posting.getKey(), 0);
+                        double tf = posting.getValue();
+                        double score = weight * idf * tf * (K1 + 1)
+                                / (tf + K1 * (1 - B + B * docLength / avgLength));
+                        termScores.merge(posting.getKey(), score, Math::max);
+                    }
+                }
+                termScores.forEach((productId, score) -> {
+                    ScoredDocument doc = scores.computeIfAbsent(productId, ScoredDocument::new);
+                    doc.matchedTerms++;
+                    doc.score += score;
+                });
+            }
+            ranked = new ArrayList<>(scores.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int required = queryTerms.size();
+        if (ranked.stream().anyMatch(doc -> doc.matchedTerms == required)) {
+            ranked.removeIf(doc -> doc.matchedTerms < required);
+        }
+        ranked.sort(Comparator.comparingInt((ScoredDocument doc) -> doc.matchedTerms)
+                .thenComparingDouble(doc -> doc.score)
+                .reversed()
+                .thenComparing(doc -> doc.productId));
+
+        int total = ranked.size();
+        int from = 0;
+        int to = total;
+        if (size != null && size > 0) {
+            int safePage = page != null && page > 0 ? page : 0;
+            from = (int) Math.min((long) safePage * size, total);
+            to = Math.min(from + size, total);
+        }
+        List<String> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(ranked.get(i).productId);
+        }
+        return new SearchResult(ids, total);
+    }
+
+    /**
+     * Chuẩn hóa về chữ thường không dấu và tách từ.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        String folded = Normalizer.normalize(HTML_TAGS.matcher(text).replaceAll(" "), Normalizer.Form.NFD);
+        folded = DIACRITICS.matcher(folded).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+        for (String token : NON_WORD.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private Map<String, Integer> analyze(Product product) {
+        Map<String, Integer> terms = new HashMap<>();
+        addField(terms, product.getName(), 3);
+        addField(terms, product.getBrand(), 2);
+        addField(terms, product.getTexture(), 1);
+        addField(terms, product.getSkinType(), 1);
+        addField(terms, product.getDescription(), 1);
+        addField(terms, product.getUses(), 1);
+        addField(terms, product.getCharacteristics(), 1);
+        return terms;
+    }
+
+    private void addField(Map<String, Integer> terms, String value, int weight) {
+        for (String token : tokenize(value)) {
+            terms.merge(token, weight, Integer::sum);
+        }
+    }
+
+    private NavigableMap<String, Map<String, Integer>> expand(String term, boolean allowPrefix) {
+        if (!allowPrefix) {
+            return postings.subMap(term, true, term, true);
+        }
+        NavigableMap<String, Map<String, Integer>> matches = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+        if (matches.size() <= MAX_PREFIX_EXPANSIONS) {
+            return matches;
+        }
+        // Tiền tố quá ngắn khớp quá nhiều từ: giữ lại từ khớp chính xác và các từ phổ biến nhất
+        TreeMap<String, Map<String, Integer>> limited = new TreeMap<>();
+        matches.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, Map<String, Integer>> e) -> e.getValue().size())
+                        .reversed())
+                .limit(MAX_PREFIX_EXPANSIONS)
+                .forEach(e -> limited.put(e.getKey(), e.getValue()));
+        if (postings.containsKey(term)) {
+            limited.put(term, postings.get(term));
+        }
+        return limited;
+    }
+
+    private double idf(int documentFrequency) {
+        int n = documents.size();
+        return Math.log(1 + (n - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private void putDocument(String productId, Map<String, Integer> terms) {
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(productId, entry.getValue());
+            length += entry.getValue();
+        }
+        documents.put(productId, terms);
+        lengths.put(productId, length);
+        totalLength += length;
+    }
+
+    private void removeDocument(String productId) {
+        Map<String, Integer> terms = documents.remove(productId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms.keySet()) {
+            Map<String, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(productId);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        Integer length = lengths.remove(productId);
+        totalLength -= length != null ? length : 0;
+    }
+
+    public record SearchResult(List<String> productIds, int total) {}
+
+    private static final class ScoredDocument {
+        final String productId;
+        int matchedTerms;
+        double score;
+
+        ScoredDocument(String productId) {
+            this.productId = productId;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import com.hanoi_metro.backend.entity.*;
 
 import com.hanoi_metro.backend.dto.request.ProductCreationRequest;
 import com.hanoi_metro.backend.dto.request.ProductUpdateRequest;
+import com.hanoi_metro.backend.dto.request.VariantStockAdjustRequest;
 import com.hanoi_metro.backend.dto.response.ProductResponse;
 import com.hanoi_metro.backend.enums.ProductStatus;
 import com.hanoi_metro.backend.enums.PromotionStatus;
@@ -39,9 +40,9 @@ import com.hanoi_metro.backend.repository.PromotionRepository;
 import com.hanoi_metro.backend.repository.VoucherRepository;
 import com.hanoi_metro.backend.repository.UserRepository;
 import com.hanoi_metro.backend.repository.CartItemRepository;
+import com.hanoi_metro.backend.repository.CartRepository;
 import com.hanoi_metro.backend.repository.BannerRepository;
 import com.hanoi_metro.backend.repository.OrderItemRepository;
-import com.hanoi_metro.backend.repository.FinancialRecordRepository;
 import com.hanoi_metro.backend.repository.ReviewRepository;
 import com.hanoi_metro.backend.repository.InventoryRepository;
 
@@ -63,13 +64,22 @@ public class ProductService {
     PromotionRepository promotionRepository;
     VoucherRepository voucherRepository;
     CartItemRepository cartItemRepository;
+    CartRepository cartRepository;
     BannerRepository bannerRepository;
     OrderItemRepository orderItemRepository;
-    FinancialRecordRepository financialRecordRepository;
+    FinancialService financialService;
     ReviewRepository reviewRepository;
     InventoryRepository inventoryRepository;
     ProductMapper productMapper;
     FileStorageService fileStorageService;
+    ProductVariantService productVariantService;
+    EffectivePriceIndex effectivePriceIndex;
+    ProductSearchIndex productSearchIndex;
+    ChatbotResponseCache chatbotResponseCache;
+    CartAggregateCache cartAggregateCache;
+    ReviewPageCache reviewPageCache;
+    CategoryTreeCache categoryTreeCache;
+    CatalogHttpCache catalogHttpCache;
 
     // ========== CREATE OPERATIONS ==========
     @Transactional
@@ -131,6 +141,11 @@ public class ProductService {
 
         try {
             Product savedProduct = productRepository.save(product);
+            productVariantService.syncFromManufacturingLocation(savedProduct);
+            effectivePriceIndex.invalidate(savedProduct.getId());
+            productSearchIndex.index(savedProduct);
+            chatbotResponseCache.onCatalogChanged();
+            catalogHttpCache.onChanged(CatalogHttpCache.Family.PRODUCTS);
             log.info("Product created with ID: {} by user: {}", savedProduct.getId(), user.getId());
             return productMapper.toResponse(savedProduct);
         } catch (DataIntegrityViolationException e) {
@@ -244,10 +259,45 @@ public class ProductService {
         }
 
         Product savedProduct = productRepository.save(product);
+        productVariantService.syncFromManufacturingLocation(savedProduct);
+        effectivePriceIndex.invalidate(savedProduct.getId());
+        productSearchIndex.index(savedProduct);
+        chatbotResponseCache.onCatalogChanged();
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PRODUCTS);
+        cartAggregateCache.invalidateAll();
         log.info("Product updated: {} by user: {}", productId, user.getEmail());
         return productMapper.toResponse(savedProduct);
     }
 
+    // Nhập/xuất kho theo mã màu: gửi số lượng thay đổi thay vì số tồn kho tuyệt đối trong manufacturingLocation
+    @Transactional
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public ProductResponse adjustVariantStock(String productId, String colorCode, VariantStockAdjustRequest request) {
+        var context = SecurityContextHolder.getContext();
+        User user = userRepository.findByEmail(context.getAuthentication().getName())
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
+
+        Product product = productRepository
+                .findById(productId)
+                .orElseThrow(() -> new AppException(ErrorCode.PRODUCT_NOT_EXISTED));
+
+        boolean isAdmin = context.getAuthentication().getAuthorities().stream()
+                .anyMatch(auth -> auth.getAuthority().equals("ROLE_ADMIN"));
+        if (!isAdmin && !product.getSubmittedBy().getId().equals(user.getId())) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+
+        productVariantService.adjustStock(productId, colorCode, request.getDelta());
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PRODUCTS);
+        log.info("Variant stock of product {} ({}) adjusted by {} by user: {}",
+                productId, colorCode, request.getDelta(), user.getEmail());
+
+        ProductResponse response = productMapper.toResponse(product);
+        response.setManufacturingLocation(
+                productVariantService.renderWithLiveStock(productId, product.getManufacturingLocation()));
+        return response;
+    }
+
     // ========== DELETE OPERATIONS ==========
     @Transactional
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
@@ -285,6 +335,11 @@ public class ProductService {
         List<CartItem> cartItems = cartItemRepository.findByProductId(productId);
         if (!cartItems.isEmpty()) {
             cartItemRepository.deleteAll(cartItems);
+            // Giỏ hàng bị mất dòng hàng ngoài CartService: tăng version để ảnh chụp đang cache không ghi đè được
+            cartItems.stream()
+                    .map(item -> item.getCart().getId())
+                    .distinct()
+                    .forEach(cartRepository::bumpVersion);
             log.info("Deleted {} cart items for product: {}", cartItems.size(), productId);
         }
 
@@ -296,10 +351,9 @@ public class ProductService {
         }
 
         // 5. Xóa tất cả FinancialRecord liên quan đến product này
-        List<FinancialRecord> financialRecords = financialRecordRepository.findByProductId(productId);
-        if (!financialRecords.isEmpty()) {
-            financialRecordRepository.deleteAll(financialRecords);
-            log.warn("Deleted {} financial records for product: {} (This will affect financial history)", financialRecords.size(), productId);
+        int deletedRecords = financialService.deleteProductRecords(productId);
+        if (deletedRecords > 0) {
+            log.warn("Deleted {} financial records for product: {} (This will affect financial history)", deletedRecords, productId);
         }
 
         // 6. Xóa tất cả Review liên quan đến product này
@@ -307,6 +361,7 @@ public class ProductService {
         if (!reviews.isEmpty()) {
             reviewRepository.deleteAll(reviews);
             log.warn("Deleted {} reviews for product: {} (This will affect product ratings)", reviews.size(), productId);
+            reviewPageCache.invalidate(productId);
         }
 
         // 7. Xóa Inventory liên quan đến product này
@@ -316,6 +371,9 @@ public class ProductService {
             log.info("Deleted inventory for product: {}", productId);
         });
 
+        // 7b. Xóa biến thể màu của product
+        productVariantService.deleteForProduct(productId);
+
         // 8. Xóa product khỏi tất cả Banner.products (bảng banner_products)
         // Load banners từ product để đảm bảo quan hệ được load
         if (product.getBanners() != null && !product.getBanners().isEmpty()) {
@@ -339,6 +397,11 @@ public class ProductService {
 
 
         productRepository.delete(product);
+        effectivePriceIndex.invalidate(productId);
+        productSearchIndex.remove(productId);
+        chatbotResponseCache.onCatalogChanged();
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PRODUCTS);
+        cartAggregateCache.invalidateAll();
         log.info("Product deleted: {} by user: {}", productId, user.getEmail());
     }
 
@@ -348,136 +411,27 @@ public class ProductService {
                 .findByIdWithRelations(productId)
                 .orElseThrow(() -> new AppException(ErrorCode.PRODUCT_NOT_EXISTED));
 
-        applyActivePromotionToProduct(product);
-        return productMapper.toResponse(product);
-    }
-
-
-    private Promotion findActivePromotionForProduct(Product product) {
-        LocalDate today = LocalDate.now();
-        List<Promotion> activePromotions = new ArrayList<>();
-        
-
-        if (product.getPromotion() != null) {
-            Promotion directPromo = product.getPromotion();
-            if (isPromotionActive(directPromo, today)) {
-                activePromotions.add(directPromo);
-            }
-        }
-        
-
-        if (product.getId() != null) {
-            List<Promotion> productPromotions = promotionRepository.findActiveByProductId(product.getId(), today);
-            activePromotions.addAll(productPromotions);
-        }
-
-        if (product.getCategory() != null && product.getCategory().getId() != null) {
-            Category currentCategory = product.getCategory();
-            while (currentCategory != null) {
-                if (currentCategory.getId() != null) {
-                    List<Promotion> categoryPromotions =
-                            promotionRepository.findActiveByCategoryId(currentCategory.getId(), today);
-                    activePromotions.addAll(categoryPromotions);
-                }
-
-                Category parent = currentCategory.getParentCategory();
-                if (parent != null && parent.getId() != null) {
-                    currentCategory = categoryRepository.findById(parent.getId()).orElse(null);
-                } else {
-                    currentCategory = null;
-                }
-            }
-        }
-        
-
-        return activePromotions.stream()
-                .distinct()
-                .filter(p -> isPromotionActive(p, today))
-                .min(Comparator.comparing(Promotion::getStartDate, 
-                        Comparator.nullsLast(Comparator.naturalOrder())))
-                .orElse(null);
-    }
-
-
-    private boolean isPromotionActive(Promotion promotion, LocalDate today) {
-        if (promotion == null) return false;
-
-
-        if (promotion.getStatus() != PromotionStatus.APPROVED) {
-            return false;
-        }
-        if (!promotion.getIsActive()) {
-            return false;
-        }
-        
-
-        if (promotion.getStartDate() != null && promotion.getStartDate().isAfter(today)) {
-            return false;
-        }
-        if (promotion.getExpiryDate() != null && promotion.getExpiryDate().isBefore(today)) {
-            return false;
-        }
-        
-        return true;
+        ProductResponse response = toResponseWithEffectivePrice(product);
+        // Tồn kho theo biến thể lấy từ bảng product_variants (JSON chỉ lưu thông tin mô tả)
+        response.setManufacturingLocation(
+                productVariantService.renderWithLiveStock(product.getId(), product.getManufacturingLocation()));
+        return response;
     }
 
-    // Apply active promotion to a product (calculate discountValue and price)
-    private void applyActivePromotionToProduct(Product product) {
-        // Ensure category is loaded (for lazy loading)
-        if (product.getCategory() != null) {
-            product.getCategory().getId(); // Trigger lazy loading
-        }
-
-        Promotion activePromotion = findActivePromotionForProduct(product);
-
-        if (activePromotion != null) {
-            // Calculate discountValue from promotion
-            double unitPrice = product.getUnitPrice() != null ? product.getUnitPrice() : 0.0;
-            double tax = product.getTax() != null ? product.getTax() : 0.0;
-            // Calculate price with tax first
-            double priceWithTax = unitPrice * (1 + tax);
-            // Calculate discount from price with tax to ensure accurate percentage display
-            double discountAmount = calculateDiscountAmount(activePromotion, priceWithTax);
-
-            // Calculate final price = unitPrice * (1 + tax) - discountAmount
-            double finalPrice = Math.max(0, priceWithTax - discountAmount);
-
-            product.setDiscountValue(discountAmount);
-            product.setPrice(finalPrice);
-            product.setPromotion(activePromotion);
-
-            log.debug("Applied promotion {} to product {}: discountValue={}, finalPrice={}",
-                    activePromotion.getId(), product.getId(), discountAmount, finalPrice);
-        } else {
-            // No active promotion, calculate price without discount
-            double unitPrice = product.getUnitPrice() != null ? product.getUnitPrice() : 0.0;
-            double tax = product.getTax() != null ? product.getTax() : 0.0;
-            double finalPrice = unitPrice * (1 + tax);
 
-            product.setDiscountValue(0.0);
-            product.setPrice(finalPrice);
-            product.setPromotion(null);
-        }
-    }
-
-    // Calculate discount amount from promotion
-    private double calculateDiscountAmount(Promotion promotion, double basePrice) {
-        if (basePrice <= 0 || promotion == null) return 0;
-
-        double discountValue = promotion.getDiscountValue() != null ? promotion.getDiscountValue() : 0;
-        double discountAmount = 0;
-
-        switch (promotion.getDiscountValueType()) {
-            case PERCENTAGE -> {
-                discountAmount = basePrice * (discountValue / 100.0);
-                Double maxDiscount = promotion.getMaxDiscountValue();
-                if (maxDiscount != null && maxDiscount > 0) {
-                    discountAmount = Math.min(discountAmount, maxDiscount);
-                }
-            }
-            case AMOUNT -> discountAmount = discountValue;
+    // Map sản phẩm sang response với giá/khuyến mãi hiện hành lấy từ EffectivePriceIndex (O(1), không query promotion)
+    private ProductResponse toResponseWithEffectivePrice(Product product) {
+        ProductResponse response = productMapper.toResponse(product);
+        EffectivePriceIndex.EffectivePrice effective = effectivePriceIndex.get(product);
+        if (effective != null) {
+            response.setPrice(effective.price());
+            response.setDiscountValue(effective.discountValue());
+            response.setPromotionId(effective.promotionId());
+            response.setPromotionName(effective.promotionName());
+            response.setPromotionStartDate(effective.promotionStartDate());
+            response.setPromotionExpiryDate(effective.promotionExpiryDate());
         }
-        return Math.min(discountAmount, basePrice);
+        return response;
     }
 
     public List<ProductResponse> getAllProducts() {
@@ -487,9 +441,8 @@ public class ProductService {
 
     public List<ProductResponse> getActiveProducts() {
         List<Product> products = productRepository.findByStatusWithCategory(ProductStatus.APPROVED);
-        // Apply active promotions to each product
-        products.forEach(this::applyActivePromotionToProduct);
-        return products.stream().map(productMapper::toResponse).toList();
+        // Giá và khuyến mãi hiện hành lấy từ EffectivePriceIndex
+        return products.stream().map(this::toResponseWithEffectivePrice).toList();
     }
 
     /**
@@ -499,65 +452,36 @@ public class ProductService {
     @Transactional(readOnly = true)
     public List<ProductResponse> getActiveProductsForChatbot() {
         List<Product> products = productRepository.findByStatusWithCategoryAndSubmittedBy(ProductStatus.APPROVED);
-        // Apply active promotions to each product
-        products.forEach(this::applyActivePromotionToProduct);
-        return products.stream().map(productMapper::toResponse).toList();
+        // Giá và khuyến mãi hiện hành lấy từ EffectivePriceIndex
+        return products.stream().map(this::toResponseWithEffectivePrice).toList();
     }
 
     public List<ProductResponse> getProductsByCategory(String categoryId) {
-        // Lấy tất cả category IDs bao gồm category chính và tất cả descendant categories (đệ quy)
-        Set<String> allCategoryIds = getAllDescendantCategoryIds(categoryId);
-        allCategoryIds.add(categoryId); // Thêm category chính vào set
-
-        // Lấy products từ tất cả categories (bao gồm cả danh mục cha và các danh mục con)
-        List<Product> products = new ArrayList<>();
-        for (String catId : allCategoryIds) {
-            List<Product> categoryProducts = productRepository.findByCategoryIdWithCategory(catId);
-            products.addAll(categoryProducts);
-        }
-
-        // Filter chỉ lấy APPROVED products, apply promotions, và map sang response
-        return products.stream()
-                .filter(p -> p.getStatus() == ProductStatus.APPROVED)
-                .peek(this::applyActivePromotionToProduct)
-                .map(productMapper::toResponse)
+        // Danh mục và toàn bộ danh mục con cháu lấy từ cây trong bộ nhớ, sản phẩm lấy bằng một query IN
+        List<String> categoryIds = categoryTreeCache.subtreeIds(categoryId);
+        return productRepository.findByCategoryIdInWithCategory(categoryIds, ProductStatus.APPROVED).stream()
+                .map(this::toResponseWithEffectivePrice)
                 .toList();
     }
 
-    /**
-     * Đệ quy lấy tất cả ID của các danh mục con (descendant categories)
-     * Bao gồm con, cháu, chắt, v.v.
-     */
-    private Set<String> getAllDescendantCategoryIds(String categoryId) {
-        Set<String> allDescendantIds = new HashSet<>();
-        
-        // Lấy tất cả subcategories trực tiếp
-        List<Category> directSubCategories = categoryRepository.findByParentCategoryId(categoryId);
-        
-        for (Category subCategory : directSubCategories) {
-            // Thêm subcategory ID vào set
-            allDescendantIds.add(subCategory.getId());
-            
-            // Đệ quy lấy tất cả descendant của subcategory này
-            Set<String> deeperDescendants = getAllDescendantCategoryIds(subCategory.getId());
-            allDescendantIds.addAll(deeperDescendants);
-        }
-        
-        return allDescendantIds;
+    @Transactional(readOnly = true)
+    public List<ProductResponse> searchProducts(String keyword) {
+        return searchProducts(keyword, null, null);
     }
 
-    public List<ProductResponse> searchProducts(String keyword) {
-        List<Product> products = productRepository.findByKeyword(keyword);
-        // Ensure categories are loaded before applying promotions
-        products.forEach(p -> {
-            if (p.getCategory() != null) {
-                p.getCategory().getId(); // Trigger lazy loading
-            }
-        });
-        return products.stream()
-                .filter(p -> p.getStatus() == ProductStatus.APPROVED)
-                .peek(this::applyActivePromotionToProduct)
-                .map(productMapper::toResponse)
+    // Tìm kiếm qua ProductSearchIndex (không dấu, BM25, tiền tố), chỉ load các sản phẩm của trang kết quả
+    @Transactional(readOnly = true)
+    public List<ProductResponse> searchProducts(String keyword, Integer page, Integer size) {
+        List<String> rankedIds = productSearchIndex.search(keyword, page, size).productIds();
+        if (rankedIds.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Product> byId = new java.util.HashMap<>();
+        productRepository.findAllByIdWithCategory(rankedIds).forEach(p -> byId.put(p.getId(), p));
+        return rankedIds.stream()
+                .map(byId::get)
+                .filter(p -> p != null && p.getStatus() == ProductStatus.APPROVED)
+                .map(this::toResponseWithEffectivePrice)
                 .toList();
     }
 
@@ -571,8 +495,7 @@ public class ProductService {
         });
         return products.stream()
                 .filter(p -> p.getStatus() == ProductStatus.APPROVED)
-                .peek(this::applyActivePromotionToProduct)
-                .map(productMapper::toResponse)
+                .map(this::toResponseWithEffectivePrice)
                 .toList();
     }
 
@@ -639,6 +562,7 @@ public class ProductService {
         // Update product defaultMedia reference
         product.setDefaultMedia(media);
         Product saved = productRepository.save(product);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PRODUCTS);
         return productMapper.toResponse(saved);
     }
 
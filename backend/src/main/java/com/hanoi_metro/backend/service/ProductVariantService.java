@@ -0,0 +1,241 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hanoi_metro.backend.entity.Product;
+import com.hanoi_metro.backend.entity.ProductVariant;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+import com.hanoi_metro.backend.repository.ProductRepository;
+import com.hanoi_metro.backend.repository.ProductVariantRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Quản lý biến thể màu dạng bảng (product_variants).
+ * JSON manufacturingLocation chỉ được parse khi tạo/sửa sản phẩm và khi migrate dữ liệu cũ,
+ * còn giỏ hàng và checkout tra cứu trực tiếp theo (product_id, code).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ProductVariantService {
+
+    ProductVariantRepository productVariantRepository;
+    ProductRepository productRepository;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    public static String normalizeCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        String trimmed = code.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<ProductVariant> findVariant(String productId, String colorCode) {
+        String key = normalizeCode(colorCode);
+        if (productId == null || key == null) {
+            return Optional.empty();
+        }
+        Optional<ProductVariant> byCode = productVariantRepository.findByProductIdAndCode(productId, key);
+        if (byCode.isPresent()) {
+            return byCode;
+        }
+        // Frontend cho phép chọn theo tên biến thể khi không có code - trường hợp hiếm, duyệt danh sách nhỏ
+        return productVariantRepository.findByProductId(productId).stream()
+                .filter(v -> key.equals(normalizeCode(v.getName())))
+                .findFirst();
+    }
+
+    /**
+     * Đồng bộ bảng product_variants theo JSON manufacturingLocation vừa được lưu.
+     * Giá, tên lấy theo JSON (do staff chỉnh sửa). Tồn kho và quantitySold chỉ lấy từ JSON khi tạo biến thể mới:
+     * với biến thể đã có, bảng là nguồn dữ liệu chính (giữ hàng, bán, hoàn kho cập nhật trực tiếp), còn số trong
+     * JSON có thể đã cũ nên ghi đè sẽ làm mất các thay đổi đó.
+     */
+    @Transactional
+    public void syncFromManufacturingLocation(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        Map<String, ParsedVariant> parsed = parseVariants(product.getManufacturingLocation());
+
+        Map<String, ProductVariant> existing = new HashMap<>();
+        for (ProductVariant variant : productVariantRepository.findByProductId(product.getId())) {
+            existing.put(variant.getCode(), variant);
+        }
+
+        List<ProductVariant> toSave = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (ParsedVariant pv : parsed.values()) {
+            ProductVariant variant = existing.remove(pv.code());
+            if (variant == null) {
+                variant = ProductVariant.builder()
+                        .product(product)
+                        .code(pv.code())
+                        .quantitySold(pv.quantitySold())
+                        .stockQuantity(pv.stockQuantity())
+                        .build();
+            }
+            variant.setName(pv.name());
+            variant.setPrice(pv.price());
+            variant.setUpdatedAt(now);
+            toSave.add(variant);
+        }
+
+        if (!existing.isEmpty()) {
+            productVariantRepository.deleteAll(existing.values());
+        }
+        if (!toSave.isEmpty()) {
+            productVariantRepository.saveAll(toSave);
+        }
+    }
+
+    /**
+     * Cộng/trừ tồn kho của một biến thể bằng một câu UPDATE nguyên tử, nên không ghi đè các thay đổi đồng thời
+     * (giữ hàng, hoàn kho) như khi gửi lại số tồn kho tuyệt đối qua JSON.
+     */
+    @Transactional
+    public void adjustStock(String productId, String colorCode, int delta) {
+        String code = normalizeCode(colorCode);
+        if (code == null || productVariantRepository.findByProductIdAndCode(productId, code).isEmpty()) {
+            throw new AppException(ErrorCode.PRODUCT_VARIANT_NOT_EXISTED);
+        }
+        if (delta != 0 && productVariantRepository.adjustStock(productId, code, delta) == 0) {
+            throw new AppException(ErrorCode.OUT_OF_STOCK, "Tồn kho của mã màu không đủ để giảm " + (-delta) + " sản phẩm");
+        }
+    }
+
+    @Transactional
+    public void deleteForProduct(String productId) {
+        productVariantRepository.deleteByProductId(productId);
+    }
+
+    /**
+     * Migrate một lần: chuyển biến thể trong JSON của các sản phẩm cũ sang bảng product_variants.
+     * Bỏ qua sản phẩm đã có dữ liệu trong bảng nên có thể chạy lại an toàn.
+     */
+    @Transactional
+    public int migrateLegacyVariants() {
+        int migrated = 0;
+        for (Product product : productRepository.findWithManufacturingLocation()) {
+            if (productVariantRepository.existsByProductId(product.getId())) {
+                continue;
+            }
+            Map<String, ParsedVariant> parsed = parseVariants(product.getManufacturingLocation());
+            if (parsed.isEmpty()) {
+                continue;
+            }
+            syncFromManufacturingLocation(product);
+            migrated++;
+        }
+        if (migrated > 0) {
+            log.info("Migrated color variants of {} products to product_variants", migrated);
+        }
+        return migrated;
+    }
+
+    /**
+     * Ghi đè stockQuantity/quantitySold trong JSON bằng số liệu hiện tại của bảng product_variants
+     * để trang chi tiết sản phẩm (và kiểm tra tồn kho ở giỏ hàng) hiển thị đúng.
+     */
+    @Transactional(readOnly = true)
+    public String renderWithLiveStock(String productId, String manufacturingLocation) {
+        if (productId == null || manufacturingLocation == null || manufacturingLocation.isBlank()) {
+            return manufacturingLocation;
+        }
+        List<ProductVariant> variants = productVariantRepository.findByProductId(productId);
+        if (variants.isEmpty()) {
+            return manufacturingLocation;
+        }
+        Map<String, ProductVariant> byCode = new HashMap<>();
+        variants.forEach(v -> byCode.put(v.getCode(), v));
+
+        try {
+            JsonNode root = objectMapper.readTree(manufacturingLocation);
+            JsonNode variantsNode = extractVariantsNode(root);
+            if (variantsNode == null || !variantsNode.isArray()) {
+                return manufacturingLocation;
+            }
+            for (JsonNode node : variantsNode) {
+                if (!node.isObject()) {
+                    continue;
+                }
+                ProductVariant live = byCode.get(normalizeCode(node.path("code").asText(null)));
+                if (live != null) {
+                    ((ObjectNode) node).put("stockQuantity", live.getStockQuantity());
+                    ((ObjectNode) node).put("quantitySold", live.getQuantitySold());
+                }
+            }
+            return objectMapper.writeValueAsString(root);
+        } catch (Exception e) {
+            log.warn("Could not render live variant stock for product {}: {}", productId, e.getMessage());
+            return manufacturingLocation;
+        }
+    }
+
+    private Map<String, ParsedVariant> parseVariants(String manufacturingLocation) {
+        Map<String, ParsedVariant> result = new LinkedHashMap<>();
+        if (manufacturingLocation == null || manufacturingLocation.isBlank()) {
+            return result;
+        }
+        try {
+            JsonNode variantsNode = extractVariantsNode(objectMapper.readTree(manufacturingLocation));
+            if (variantsNode == null || !variantsNode.isArray()) {
+                return result;
+            }
+            Iterator<JsonNode> it = variantsNode.elements();
+            while (it.hasNext()) {
+                JsonNode node = it.next();
+                String code = normalizeCode(node.path("code").asText(null));
+                if (code == null || result.containsKey(code)) {
+                    continue;
+                }
+                double price = node.hasNonNull("price") ? node.get("price").asDouble(-1) : -1;
+                result.put(
+                        code,
+                        new ParsedVariant(
+                                code,
+                                node.hasNonNull("name") ? node.get("name").asText() : null,
+                                price > 0 ? price : null,
+                                Math.max(0, node.path("stockQuantity").asInt(0)),
+                                Math.max(0, node.path("quantitySold").asInt(0))));
+            }
+        } catch (Exception e) {
+            log.warn("Could not parse manufacturingLocation as color variants: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    private JsonNode extractVariantsNode(JsonNode root) {
+        if (root == null) return null;
+        if (root.isArray()) return root;
+        if (root.has("variants")) return root.get("variants");
+        if (root.has("colors")) return root.get("colors");
+        if (root.has("data")) return root.get("data");
+        return null;
+    }
+
+    private record ParsedVariant(String code, String name, Double price, int stockQuantity, int quantitySold) {}
+}
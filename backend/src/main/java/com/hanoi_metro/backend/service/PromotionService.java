@@ -51,6 +51,8 @@ public class PromotionService {
     ProductRepository productRepository;
     PromotionMapper promotionMapper;
     FileStorageService fileStorageService;
+    EffectivePriceIndex effectivePriceIndex;
+    CatalogHttpCache catalogHttpCache;
 
     @Transactional
     public PromotionResponse createPromotion(PromotionCreationRequest request) {
@@ -75,6 +77,7 @@ public class PromotionService {
         applyScopeTargets(request.getApplyScope(), request.getCategoryIds(), request.getProductIds(), promotion);
 
         Promotion savedPromotion = promotionRepository.save(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
         log.info("Promotion created with ID: {} by staff: {}", savedPromotion.getId(), staff.getId());
 
         return promotionMapper.toResponse(savedPromotion);
@@ -121,6 +124,7 @@ public class PromotionService {
         }
 
         Promotion savedPromotion = promotionRepository.save(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
         return promotionMapper.toResponse(savedPromotion);
     }
 
@@ -215,6 +219,7 @@ public class PromotionService {
         }
 
         Promotion savedPromotion = promotionRepository.save(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
         if (wasApprovedAndActive) {
             applyPromotionToTargets(savedPromotion);
         }
@@ -265,6 +270,7 @@ public class PromotionService {
 
         // 4. Xóa promotion
         promotionRepository.delete(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
         // log.info("Promotion deleted: {} by user: {}", promotionId, currentUserId);
     }
 
@@ -351,6 +357,8 @@ public class PromotionService {
 
         ensureProductsAvailableForPromotion(targetProducts, promotion);
         applyPricingForProducts(promotion, targetProducts);
+        effectivePriceIndex.invalidatePromotion(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
     }
 
     private List<Product> resolveTargetProducts(Promotion promotion) {
@@ -514,6 +522,8 @@ public class PromotionService {
     }
 
     private void clearPromotionPricing(Promotion promotion) {
+        effectivePriceIndex.invalidatePromotion(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
         List<Product> products = productRepository.findByPromotionId(promotion.getId());
         if (products.isEmpty()) {
             return;
@@ -583,6 +593,7 @@ public class PromotionService {
         clearPromotionPricing(promotion);
         promotion.setIsActive(false);
         promotionRepository.save(promotion);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.PROMOTIONS);
     }
 
     private void deleteMediaFileIfExists(Promotion promotion) {
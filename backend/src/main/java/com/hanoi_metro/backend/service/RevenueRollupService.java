@@ -0,0 +1,137 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hanoi_metro.backend.entity.FinancialRecord;
+import com.hanoi_metro.backend.enums.FinancialRecordType;
+import com.hanoi_metro.backend.enums.PaymentMethod;
+import com.hanoi_metro.backend.repository.FinancialRecordRepository;
+import com.hanoi_metro.backend.repository.RevenueDailyRollupRepository;
+import com.hanoi_metro.backend.repository.RevenueHourlyRollupRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Giữ bảng rollup doanh thu (theo ngày và theo giờ) khớp với financial_records: mọi thao tác thêm/xóa/dời
+ * FinancialRecord đều cộng hoặc trừ phần đóng góp của nó trong cùng transaction, nên báo cáo tài chính chỉ
+ * đọc vài dòng tổng hợp thay vì toàn bộ đơn hàng.
+ *
+ * - Bản ghi ORDER_PAYMENT: doanh thu, giá vốn, số lượng vào ô (ngày, sản phẩm, phương thức).
+ * - Bản ghi REFUND/COMPENSATION: chi phí phát sinh vào dòng cấp đơn hàng (productId = "").
+ * - Số đơn: +1 trên dòng cấp đơn hàng tại thời điểm của dòng doanh thu sớm nhất của đơn.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RevenueRollupService {
+
+    // productId của dòng cấp đơn hàng
+    static final String ORDER_LEVEL = "";
+
+    RevenueDailyRollupRepository dailyRollupRepository;
+    RevenueHourlyRollupRepository hourlyRollupRepository;
+    FinancialRecordRepository financialRecordRepository;
+
+    public void add(FinancialRecord record) {
+        apply(record, 1);
+    }
+
+    public void remove(FinancialRecord record) {
+        apply(record, -1);
+    }
+
+    public void addOrder(LocalDateTime occurredAt, PaymentMethod method) {
+        applyOrder(occurredAt, method, 1);
+    }
+
+    /**
+     * Gỡ toàn bộ đóng góp của các bản ghi doanh thu của một đơn (kể cả số đơn), trước khi xóa hoặc dời chúng.
+     */
+    public void removeOrderRecords(List<FinancialRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        records.forEach(this::remove);
+        FinancialRecord first = records.stream()
+                .min(Comparator.comparing(FinancialRecord::getOccurredAt))
+                .orElseThrow();
+        applyOrder(first.getOccurredAt(), first.getPaymentMethod(), -1);
+    }
+
+    /**
+     * Cộng lại các bản ghi doanh thu của một đơn (sau khi dời occurredAt).
+     */
+    public void addOrderRecords(List<FinancialRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        records.forEach(this::add);
+        FinancialRecord first = records.stream()
+                .min(Comparator.comparing(FinancialRecord::getOccurredAt))
+                .orElseThrow();
+        addOrder(first.getOccurredAt(), first.getPaymentMethod());
+    }
+
+    /**
+     * Dựng bảng rollup từ financial_records khi bảng còn trống (lần đầu triển khai).
+     */
+    @Transactional
+    public void backfill() {
+        if (dailyRollupRepository.count() > 0 || financialRecordRepository.count() == 0) {
+            return;
+        }
+        int filled = financialRecordRepository.backfillQuantityAndCost();
+        int dailyRows = dailyRollupRepository.backfillLines();
+        dailyRollupRepository.backfillOrderCounts();
+        int hourlyRows = hourlyRollupRepository.backfillLines();
+        hourlyRollupRepository.backfillOrderCounts();
+        log.info("Revenue rollups backfilled: {} daily rows, {} hourly rows ({} records got quantity/cost)",
+                dailyRows, hourlyRows, filled);
+    }
+
+    private void apply(FinancialRecord record, int sign) {
+        if (record.getAmount() == null || record.getOccurredAt() == null) {
+            return;
+        }
+        String method = methodOf(record.getPaymentMethod());
+        LocalDateTime occurredAt = record.getOccurredAt();
+        if (record.getRecordType() == FinancialRecordType.ORDER_PAYMENT) {
+            String productId = record.getProduct() != null && record.getProduct().getId() != null
+                    ? record.getProduct().getId()
+                    : ORDER_LEVEL;
+            double revenue = sign * record.getAmount();
+            double cost = record.getCostAmount() != null ? sign * record.getCostAmount() : 0;
+            long units = record.getQuantity() != null ? (long) sign * record.getQuantity() : 0;
+            dailyRollupRepository.add(occurredAt.toLocalDate(), productId, method, revenue, cost, units, 0, 0);
+            hourlyRollupRepository.add(hourOf(occurredAt), method, revenue, 0, 0);
+        } else {
+            // Hoàn tiền/bồi thường là chi phí: lấy giá trị tuyệt đối
+            double expense = sign * Math.abs(record.getAmount());
+            dailyRollupRepository.add(occurredAt.toLocalDate(), ORDER_LEVEL, method, 0, 0, 0, expense, 0);
+            hourlyRollupRepository.add(hourOf(occurredAt), method, 0, expense, 0);
+        }
+    }
+
+    private void applyOrder(LocalDateTime occurredAt, PaymentMethod method, int sign) {
+        dailyRollupRepository.add(occurredAt.toLocalDate(), ORDER_LEVEL, methodOf(method), 0, 0, 0, 0, sign);
+        hourlyRollupRepository.add(hourOf(occurredAt), methodOf(method), 0, 0, sign);
+    }
+
+    private static LocalDateTime hourOf(LocalDateTime time) {
+        return time.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private static String methodOf(PaymentMethod method) {
+        return method != null ? method.name() : "";
+    }
+}
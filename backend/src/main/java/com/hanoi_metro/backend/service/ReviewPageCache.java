@@ -0,0 +1,82 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.dto.response.ReviewPageResponse;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Cache các trang review của trang chi tiết sản phẩm (chủ yếu là trang đầu, được xem nhiều nhất).
+ *
+ * Khóa = (sản phẩm, cursor, limit). Tạo/trả lời/xóa review bỏ mọi trang của sản phẩm đó sau khi transaction
+ * commit; mỗi sản phẩm có phiên bản riêng nên trang đang được tải dở lúc bị bỏ sẽ không được đưa vào cache.
+ * LRU giới hạn số entry, TTL giới hạn tuổi (tên người dùng có thể đổi).
+ */
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ReviewPageCache {
+
+    int maxEntries;
+    long ttlMillis;
+    Map<String, Long> productVersions = new HashMap<>();
+    Map<Key, CachedPage> entries;
+
+    public ReviewPageCache(
+            @Value("${review.page-cache.max-entries:2000}") int maxEntries,
+            @Value("${review.page-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedPage> eldest) {
+                return size() > ReviewPageCache.this.maxEntries;
+            }
+        };
+    }
+
+    public ReviewPageResponse get(String productId, String cursor, int limit, Supplier<ReviewPageResponse> loader) {
+        Key key = new Key(productId, cursor != null ? cursor : "", limit);
+        long version;
+        synchronized (entries) {
+            CachedPage cached = entries.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.createdAt() <= ttlMillis) {
+                return cached.page();
+            }
+            if (cached != null) {
+                entries.remove(key);
+            }
+            version = productVersions.getOrDefault(productId, 0L);
+        }
+
+        ReviewPageResponse page = loader.get();
+        synchronized (entries) {
+            if (productVersions.getOrDefault(productId, 0L) == version) {
+                entries.put(key, new CachedPage(page, System.currentTimeMillis()));
+            }
+        }
+        return page;
+    }
+
+    // Review của sản phẩm thay đổi: bỏ các trang đã cache sau khi transaction commit
+    public void invalidate(String productId) {
+        TransactionUtil.afterCommit(() -> {
+            synchronized (entries) {
+                productVersions.merge(productId, 1L, Long::sum);
+                entries.keySet().removeIf(key -> key.productId().equals(productId));
+            }
+        });
+    }
+
+    private record Key(String productId, String cursor, int limit) {}
+
+    private record CachedPage(ReviewPageResponse page, long createdAt) {}
+}
@@ -1,8 +1,11 @@
 package com.hanoi_metro.backend.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -10,6 +13,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.hanoi_metro.backend.dto.request.ReviewCreationRequest;
 import com.hanoi_metro.backend.dto.request.ReviewReplyRequest;
+import com.hanoi_metro.backend.dto.response.ReviewPageResponse;
 import com.hanoi_metro.backend.dto.response.ReviewResponse;
 import com.hanoi_metro.backend.entity.Order;
 import com.hanoi_metro.backend.entity.OrderItem;
@@ -18,6 +22,7 @@ import com.hanoi_metro.backend.entity.Review;
 import com.hanoi_metro.backend.entity.User;
 import com.hanoi_metro.backend.exception.AppException;
 import com.hanoi_metro.backend.exception.ErrorCode;
+import com.hanoi_metro.backend.mapper.ProductMapper;
 import com.hanoi_metro.backend.mapper.ReviewMapper;
 import com.hanoi_metro.backend.mapper.UserMapper;
 import com.hanoi_metro.backend.repository.OrderItemRepository;
@@ -44,8 +49,14 @@ public class ReviewService {
     OrderRepository orderRepository;
     OrderItemRepository orderItemRepository;
     ReviewMapper reviewMapper;
+    ProductMapper productMapper;
+    ReviewPageCache reviewPageCache;
+    CatalogHttpCache catalogHttpCache;
     private final UserMapper userMapper;
 
+    static final int DEFAULT_PAGE_SIZE = 10;
+    static final int MAX_PAGE_SIZE = 50;
+
     public ReviewResponse getReviewById(String reviewId) {
         Review review =
                 reviewRepository.findById(reviewId).orElseThrow(() -> new AppException(ErrorCode.REVIEW_NOT_EXISTED));
@@ -59,6 +70,43 @@ public class ReviewService {
         return reviews.stream().map(reviewMapper::toReviewResponse).toList();
     }
 
+    /**
+     * Một trang review của sản phẩm (mới nhất trước) kèm tổng hợp đánh giá, phân trang theo cursor.
+     * Các trang được cache cho tới khi review của sản phẩm thay đổi.
+     */
+    public ReviewPageResponse getReviewPageByProduct(String productId, String cursor, Integer limit) {
+        int size = pageSize(limit);
+        return reviewPageCache.get(productId, cursor, size, () -> loadReviewPage(productId, cursor, size));
+    }
+
+    private ReviewPageResponse loadReviewPage(String productId, String cursor, int size) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new AppException(ErrorCode.PRODUCT_NOT_EXISTED));
+
+        Cursor after = decodeCursor(cursor);
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<Review> rows = reviewRepository.findProductPageBefore(
+                productId,
+                after != null ? after.time() : null,
+                after != null ? after.id() : null,
+                PageRequest.of(0, size + 1));
+
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+        Review last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        return ReviewPageResponse.builder()
+                .reviews(rows.stream().map(reviewMapper::toReviewResponse).toList())
+                .nextCursor(hasNext ? encodeCursor(last.getCreatedAt(), last.getId()) : null)
+                .hasNext(hasNext)
+                .limit(size)
+                .reviewCount(productMapper.mapReviewCount(product.getReviewCount()))
+                .averageRating(productMapper.mapAverageRating(product))
+                .ratingHistogram(productMapper.mapRatingHistogram(product))
+                .build();
+    }
+
     public List<ReviewResponse> getMyReviews() {
         // Get current user from security context - giống LuminaBook
         // JWT token subject contains email, not userId
@@ -135,6 +183,9 @@ public class ReviewService {
         review.setOrderItem(orderItem); // Liên kết với OrderItem cụ thể
 
         Review savedReview = reviewRepository.save(review);
+        productRepository.addRating(product.getId(), savedReview.getRating(), 1);
+        reviewPageCache.invalidate(product.getId());
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.REVIEWS);
         log.info("Review created with ID: {} by user: {} (display name: {})", 
             savedReview.getId(), userEmail, request.getNameDisplay());
 
@@ -154,6 +205,8 @@ public class ReviewService {
 
         // Save the updated review
         Review savedReview = reviewRepository.save(review);
+        reviewPageCache.invalidate(review.getProduct().getId());
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.REVIEWS);
         log.info("Reply added to review: {} by customer support", reviewId);
 
         return reviewMapper.toReviewResponse(savedReview);
@@ -165,7 +218,56 @@ public class ReviewService {
         Review review =
                 reviewRepository.findById(reviewId).orElseThrow(() -> new AppException(ErrorCode.REVIEW_NOT_EXISTED));
 
+        String productId = review.getProduct().getId();
         reviewRepository.delete(review);
+        productRepository.addRating(productId, review.getRating(), -1);
+        reviewPageCache.invalidate(productId);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.REVIEWS);
         log.info("Review deleted: {} by admin", reviewId);
     }
+
+    /**
+     * Tính lại tổng hợp đánh giá của mọi sản phẩm từ bảng reviews (khởi động; sửa sai lệch nếu có).
+     */
+    @Transactional
+    public void reconcileRatingAggregates() {
+        int products = productRepository.recomputeRatingAggregates();
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.REVIEWS);
+        log.info("Product rating aggregates recomputed for {} products", products);
+    }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private static String encodeCursor(LocalDateTime time, String id) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((time + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            String id = raw.substring(separator + 1);
+            if (separator < 0 || id.isBlank()) {
+                throw new AppException(ErrorCode.BAD_REQUEST);
+            }
+            return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), id);
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Invalid review cursor: {}", cursor);
+            throw new AppException(ErrorCode.BAD_REQUEST);
+        }
+    }
+
+    private record Cursor(LocalDateTime time, String id) {}
 }
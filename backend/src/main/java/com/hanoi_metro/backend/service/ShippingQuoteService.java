@@ -0,0 +1,292 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.dto.request.GhnCalculateFeeRequest;
+import com.hanoi_metro.backend.dto.request.GhnLeadtimeRequest;
+import com.hanoi_metro.backend.dto.response.GhnFeeResponse;
+import com.hanoi_metro.backend.dto.response.GhnLeadtimeResponse;
+import com.hanoi_metro.backend.dto.response.ShippingQuoteStats;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache báo giá phí vận chuyển / thời gian giao của GHN cho trang giỏ hàng và thanh toán.
+ *
+ * - Khóa = (dịch vụ, quận/phường gửi, quận/phường nhận, nhóm cân nặng, nhóm kích thước, giá trị bảo hiểm).
+ *   Cân nặng và kích thước được làm tròn lên theo nhóm trước khi gọi GHN, nên báo giá dùng được cho mọi
+ *   request trong cùng nhóm (không bao giờ thấp hơn giá thật).
+ * - TTL ngắn; LRU giới hạn số entry.
+ * - Single-flight: các request giống nhau đến cùng lúc chỉ tạo một lần gọi GHN, các request còn lại chờ kết quả.
+ * - Giới hạn tốc độ mỗi client (token bucket) chỉ áp dụng cho request phải gọi GHN.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ShippingQuoteService {
+
+    GhnService ghnService;
+
+    int maxEntries;
+    long ttlMillis;
+    int weightBucketGrams;
+    int dimensionBucketCm;
+    double burst;
+    double refillPerMilli;
+
+    Map<String, CachedQuote> quotes;
+    Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    Map<String, TokenBucket> clients = new ConcurrentHashMap<>();
+
+    AtomicLong hits = new AtomicLong();
+    AtomicLong misses = new AtomicLong();
+    AtomicLong coalesced = new AtomicLong();
+    AtomicLong rateLimited = new AtomicLong();
+
+    public ShippingQuoteService(
+            GhnService ghnService,
+            @Value("${shipping.quote.max-entries:5000}") int maxEntries,
+            @Value("${shipping.quote.ttl-seconds:300}") long ttlSeconds,
+            @Value("${shipping.quote.weight-bucket-grams:100}") int weightBucketGrams,
+            @Value("${shipping.quote.dimension-bucket-cm:5}") int dimensionBucketCm,
+            @Value("${shipping.quote.rate.burst:20}") int burst,
+            @Value("${shipping.quote.rate.per-minute:60}") int perMinute) {
+        this.ghnService = ghnService;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.weightBucketGrams = Math.max(1, weightBucketGrams);
+        this.dimensionBucketCm = Math.max(1, dimensionBucketCm);
+        this.burst = burst;
+        this.refillPerMilli = perMinute / 60_000.0;
+        this.quotes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedQuote> eldest) {
+                return size() > ShippingQuoteService.this.maxEntries;
+            }
+        };
+    }
+
+    public GhnFeeResponse calculateFee(GhnCalculateFeeRequest request, String clientKey) {
+        // Dịch vụ hàng nặng tính theo từng item: không gom nhóm được, gọi thẳng GHN
+        if (request.getItems() != null && !request.getItems().isEmpty()) {
+            acquire(clientKey);
+            return ghnService.calculateShippingFee(request);
+        }
+        GhnCalculateFeeRequest normalized = GhnCalculateFeeRequest.builder()
+                .serviceTypeId(request.getServiceTypeId())
+                .insuranceValue(request.getInsuranceValue())
+                .coupon(request.getCoupon())
+                .fromDistrictId(request.getFromDistrictId())
+                .fromWardCode(request.getFromWardCode())
+                .toDistrictId(request.getToDistrictId())
+                .toWardCode(request.getToWardCode())
+                .weight(roundUp(request.getWeight(), weightBucketGrams))
+                .length(roundUp(request.getLength(), dimensionBucketCm))
+                .width(roundUp(request.getWidth(), dimensionBucketCm))
+                .height(roundUp(request.getHeight(), dimensionBucketCm))
+                .build();
+        String key = key("fee",
+                normalized.getServiceTypeId(),
+                normalized.getFromDistrictId(),
+                normalized.getFromWardCode(),
+                normalized.getToDistrictId(),
+                normalized.getToWardCode(),
+                normalized.getWeight(),
+                normalized.getLength(),
+                normalized.getWidth(),
+                normalized.getHeight(),
+                normalized.getInsuranceValue(),
+                normalized.getCoupon());
+        return quote(key, clientKey, () -> ghnService.calculateShippingFee(normalized));
+    }
+
+    public GhnLeadtimeResponse getLeadtime(GhnLeadtimeRequest request, String clientKey) {
+        String key = key("leadtime",
+                request.getServiceTypeId(),
+                request.getFromDistrictId(),
+                request.getFromWardCode(),
+                request.getToDistrictId(),
+                request.getToWardCode());
+        return quote(key, clientKey, () -> ghnService.getLeadtime(
+                request.getFromDistrictId(),
+                request.getFromWardCode(),
+                request.getToDistrictId(),
+                request.getToWardCode(),
+                request.getServiceTypeId()));
+    }
+
+    public ShippingQuoteStats stats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long coalescedCount = coalesced.get();
+        long total = hitCount + missCount + coalescedCount;
+        int size;
+        synchronized (quotes) {
+            size = quotes.size();
+        }
+        return ShippingQuoteStats.builder()
+                .size(size)
+                .maxEntries(maxEntries)
+                .hits(hitCount)
+                .misses(missCount)
+                .coalesced(coalescedCount)
+                .hitRate(total == 0 ? 0.0 : (double) (hitCount + coalescedCount) / total)
+                .rateLimited(rateLimited.get())
+                .trackedClients(clients.size())
+                .build();
+    }
+
+    // Bỏ báo giá hết hạn và bucket của client đã đầy lại (không còn hoạt động)
+    @Scheduled(fixedDelayString = "${shipping.quote.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        synchronized (quotes) {
+            quotes.values().removeIf(quote -> now - quote.createdAt() > ttlMillis);
+        }
+        clients.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T quote(String key, String clientKey, Supplier<T> loader) {
+        Object cached = getCached(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (T) cached;
+        }
+
+        CompletableFuture<Object> running = inFlight.get(key);
+        if (running == null) {
+            // Chỉ request thực sự gọi GHN mới tốn token; lỗi giới hạn không lan sang client khác đang chờ
+            acquire(clientKey);
+            CompletableFuture<Object> call = new CompletableFuture<>();
+            running = inFlight.putIfAbsent(key, call);
+            if (running == null) {
+                return load(key, call, loader);
+            }
+        }
+        coalesced.incrementAndGet();
+        return (T) await(running);
+    }
+
+    private <T> T load(String key, CompletableFuture<Object> call, Supplier<T> loader) {
+        try {
+            misses.incrementAndGet();
+            T value = loader.get();
+            if (value != null) {
+                synchronized (quotes) {
+                    quotes.put(key, new CachedQuote(value, System.currentTimeMillis()));
+                }
+            }
+            call.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private Object getCached(String key) {
+        synchronized (quotes) {
+            CachedQuote cached = quotes.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - cached.createdAt() > ttlMillis) {
+                quotes.remove(key);
+                return null;
+            }
+            return cached.value();
+        }
+    }
+
+    // Chờ lần gọi GHN đang chạy; lỗi của nó được ném lại nguyên vẹn cho mọi request đang chờ
+    private Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AppException appException) {
+                throw appException;
+            }
+            throw new AppException(ErrorCode.EXTERNAL_SERVICE_ERROR);
+        }
+    }
+
+    private void acquire(String clientKey) {
+        if (clientKey == null) {
+            return;
+        }
+        TokenBucket bucket = clients.computeIfAbsent(clientKey, k -> new TokenBucket(burst, refillPerMilli));
+        if (!bucket.tryConsume(System.currentTimeMillis())) {
+            rateLimited.incrementAndGet();
+            log.warn("Shipping quote rate limit exceeded for client {}", clientKey);
+            throw new AppException(ErrorCode.SHIPPING_QUOTE_RATE_LIMITED);
+        }
+    }
+
+    private static Integer roundUp(Integer value, int bucket) {
+        if (value == null || value <= 0) {
+            return value;
+        }
+        return ((value + bucket - 1) / bucket) * bucket;
+    }
+
+    private static String key(String type, Object... parts) {
+        StringJoiner joiner = new StringJoiner("|", type + "|", "");
+        for (Object part : parts) {
+            joiner.add(String.valueOf(part));
+        }
+        return joiner.toString();
+    }
+
+    private record CachedQuote(Object value, long createdAt) {}
+
+    private static final class TokenBucket {
+        final double capacity;
+        final double refillPerMilli;
+        double tokens;
+        long updatedAt = System.currentTimeMillis();
+
+        TokenBucket(double capacity, double refillPerMilli) {
+            this.capacity = capacity;
+            this.refillPerMilli = refillPerMilli;
+            this.tokens = capacity;
+        }
+
+        synchronized boolean tryConsume(long now) {
+            refill(now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        // Đã hồi đầy token: xóa đi cũng không thay đổi hành vi
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * refillPerMilli);
+            updatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.repository.InvalidatedTokenRepository;
+import com.hanoi_metro.backend.util.CountingBloomFilter;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Danh sách token bị thu hồi (logout, refresh) = bảng invalidated_token + counting Bloom filter đứng trước.
+ *
+ * - Trường hợp phổ biến "token chưa bị thu hồi" được trả lời bởi Bloom filter, không query MySQL.
+ * - Bloom filter báo "có thể có" mới kiểm tra lại bằng existsById (token thật sự bị thu hồi hoặc dương tính giả).
+ * - Filter được dựng lại từ các dòng còn hạn khi khởi động (trước khi nhận request).
+ * - Token bị thu hồi trên node khác được nạp vào filter bởi job đồng bộ (jwt.revocation.sync-interval-ms)
+ *   theo cột revoked_at; giữa hai lần đồng bộ node này có thể chưa thấy thu hồi đó.
+ * - Job định kỳ xóa các dòng đã hết hạn theo từng lô. Chỉ jti đã được thêm vào filter của node này mới được
+ *   bỏ ra (counting filter bị trừ jti chưa từng thêm sẽ sinh âm tính giả cho jti khác).
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TokenRevocationStore {
+
+    InvalidatedTokenRepository invalidatedTokenRepository;
+    CountingBloomFilter filter;
+    int purgeBatchSize;
+    long syncOverlapMs;
+
+    // jti node này đã thêm vào filter và chưa bỏ ra; mỗi jti chỉ được đếm một lần trong filter
+    Set<String> tracked = ConcurrentHashMap.newKeySet();
+    AtomicLong lastSyncAt = new AtomicLong();
+
+    AtomicLong filterHits = new AtomicLong();
+    AtomicLong falsePositives = new AtomicLong();
+
+    public TokenRevocationStore(
+            InvalidatedTokenRepository invalidatedTokenRepository,
+            @Value("${jwt.revocation.bloom.expected-entries:100000}") int expectedEntries,
+            @Value("${jwt.revocation.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${jwt.revocation.purge-batch-size:1000}") int purgeBatchSize,
+            @Value("${jwt.revocation.sync-overlap-ms:60000}") long syncOverlapMs) {
+        this.invalidatedTokenRepository = invalidatedTokenRepository;
+        this.filter = new CountingBloomFilter(expectedEntries, falsePositiveRate);
+        this.purgeBatchSize = purgeBatchSize;
+        this.syncOverlapMs = syncOverlapMs;
+    }
+
+    @PostConstruct
+    void rebuild() {
+        Date now = new Date();
+        synchronized (filter) {
+            filter.clear();
+            tracked.clear();
+        }
+        List<String> live = invalidatedTokenRepository.findLiveIds(now);
+        live.forEach(this::track);
+        lastSyncAt.set(now.getTime());
+        log.info("Token revocation filter rebuilt from {} live rows ({} counters, {} hash functions)",
+                live.size(), filter.size(), filter.hashFunctions());
+    }
+
+    public void revoke(String jti, Date expiryTime) {
+        if (jti == null) {
+            return;
+        }
+        invalidatedTokenRepository.saveOrUpdate(jti, expiryTime, new Date());
+        track(jti);
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        filterHits.incrementAndGet();
+        boolean revoked = invalidatedTokenRepository.existsById(jti);
+        if (!revoked) {
+            falsePositives.incrementAndGet();
+        }
+        return revoked;
+    }
+
+    /**
+     * Nạp các token bị thu hồi gần đây (kể cả trên node khác) vào filter. Lùi mốc thời gian sync-overlap-ms
+     * để bù lệch đồng hồ giữa các node; jti đã có trong filter thì bỏ qua.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:5000}")
+    public void sync() {
+        Date now = new Date();
+        Date since = new Date(lastSyncAt.get() - syncOverlapMs);
+        List<String> recent = invalidatedTokenRepository.findLiveIdsRevokedSince(since, now);
+        long added = recent.stream().filter(this::track).count();
+        lastSyncAt.set(now.getTime());
+        if (added > 0) {
+            log.debug("Token revocation filter synced {} revocations from other nodes", added);
+        }
+    }
+
+    /**
+     * Xóa các dòng đã hết hạn theo lô (purge-batch-size dòng mỗi lần) để không khóa bảng lâu.
+     * Token hết hạn đã bị từ chối theo exp nên không cần giữ lại.
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        Date now = new Date();
+        int purged = 0;
+        List<String> batch;
+        do {
+            batch = invalidatedTokenRepository.findExpiredIds(now, PageRequest.of(0, purgeBatchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            invalidatedTokenRepository.deleteAllByIdInBatch(batch);
+            batch.forEach(this::untrack);
+            purged += batch.size();
+        } while (batch.size() == purgeBatchSize);
+
+        if (purged > 0) {
+            log.info("Purged {} expired rows from invalidated_token (filter hits: {}, false positives: {})",
+                    purged, filterHits.get(), falsePositives.get());
+        }
+    }
+
+    // Thêm jti vào filter nếu node này chưa thêm; trả về true nếu vừa thêm
+    private boolean track(String jti) {
+        synchronized (filter) {
+            if (!tracked.add(jti)) {
+                return false;
+            }
+            filter.add(jti);
+            return true;
+        }
+    }
+
+    // Chỉ bỏ khỏi filter jti mà node này đã thêm
+    private void untrack(String jti) {
+        synchronized (filter) {
+            if (tracked.remove(jti)) {
+                filter.remove(jti);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.hanoi_metro.backend.repository.ChatMessageRepository;
+import com.hanoi_metro.backend.repository.NotificationRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+/**
+ * Số tin nhắn / thông báo chưa đọc của từng user, giữ trong bộ nhớ để badge và sự kiện push không phải COUNT
+ * trên DB mỗi lần.
+ *
+ * - Lần đầu hỏi (hoặc sau khi hết hạn / bị xóa) thì đếm từ DB một lần.
+ * - Tin nhắn / thông báo mới cộng thêm vào bộ đếm đã có (sau commit); user chưa có bộ đếm thì bỏ qua.
+ * - Đánh dấu đã đọc thì xóa bộ đếm, lần sau đếm lại từ DB.
+ * - Bộ đếm hết hạn sau push.unread-ttl-seconds nên sai lệch (nếu có, vd. tin đến đúng lúc đang đếm) chỉ tồn tại
+ *   trong khoảng đó.
+ */
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UnreadCounters {
+
+    ChatMessageRepository chatMessageRepository;
+    NotificationRepository notificationRepository;
+    Map<String, Counter> chatCounters = new ConcurrentHashMap<>();
+    Map<String, Counter> notificationCounters = new ConcurrentHashMap<>();
+
+    @NonFinal
+    @Value("${push.unread-ttl-seconds:300}")
+    long ttlSeconds;
+
+    public long chat(String userId) {
+        return get(chatCounters, userId, () -> orZero(chatMessageRepository.countUnreadMessages(userId)));
+    }
+
+    public long notifications(String userId) {
+        return get(notificationCounters, userId,
+                () -> orZero(notificationRepository.countByUsersIdAndIsReadFalse(userId)));
+    }
+
+    // Số đang có trong bộ nhớ, null nếu chưa đếm (không truy cập DB)
+    public Long peekChat(String userId) {
+        return peek(chatCounters, userId);
+    }
+
+    public Long peekNotifications(String userId) {
+        return peek(notificationCounters, userId);
+    }
+
+    public void incrementChat(String userId) {
+        increment(chatCounters, userId);
+    }
+
+    public void incrementNotifications(String userId) {
+        increment(notificationCounters, userId);
+    }
+
+    public void invalidateChat(String userId) {
+        chatCounters.remove(userId);
+    }
+
+    // Hội thoại dùng chung của đội CSKH được đọc: không biết cụ thể những CSKH nào bị ảnh hưởng
+    public void invalidateAllChat() {
+        chatCounters.clear();
+    }
+
+    public void invalidateNotifications(String userId) {
+        notificationCounters.remove(userId);
+    }
+
+    public void invalidateAllNotifications() {
+        notificationCounters.clear();
+    }
+
+    public int size() {
+        return chatCounters.size() + notificationCounters.size();
+    }
+
+    @Scheduled(fixedDelayString = "${push.unread-sweep-interval-ms:600000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        chatCounters.values().removeIf(counter -> counter.isExpired(now, ttlSeconds));
+        notificationCounters.values().removeIf(counter -> counter.isExpired(now, ttlSeconds));
+    }
+
+    private long get(Map<String, Counter> counters, String userId, LongSupplier loader) {
+        long now = System.currentTimeMillis();
+        Counter counter = counters.get(userId);
+        if (counter == null || counter.isExpired(now, ttlSeconds)) {
+            counter = new Counter(new AtomicLong(loader.getAsLong()), now);
+            counters.put(userId, counter);
+        }
+        return counter.value().get();
+    }
+
+    private Long peek(Map<String, Counter> counters, String userId) {
+        Counter counter = counters.get(userId);
+        if (counter == null || counter.isExpired(System.currentTimeMillis(), ttlSeconds)) {
+            return null;
+        }
+        return counter.value().get();
+    }
+
+    private static void increment(Map<String, Counter> counters, String userId) {
+        counters.computeIfPresent(userId, (id, counter) -> {
+            counter.value().incrementAndGet();
+            return counter;
+        });
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+
+    private record Counter(AtomicLong value, long loadedAt) {
+        boolean isExpired(long now, long ttlSeconds) {
+            return now - loadedAt > ttlSeconds * 1000;
+        }
+    }
+}
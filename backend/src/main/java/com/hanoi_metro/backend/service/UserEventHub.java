@@ -0,0 +1,163 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+
+import com.hanoi_metro.backend.dto.response.PushStats;
+import com.hanoi_metro.backend.dto.response.UserEvent;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Kênh đẩy sự kiện theo từng user (SSE) thay cho việc client poll chat/thông báo mỗi vài giây.
+ *
+ * - Mỗi kết nối /push/stream có hàng đợi riêng (giới hạn push.buffer-size); client đọc quá chậm thì sự kiện
+ *   mới bị bỏ và client tự tải lại khi nhận sự kiện kế tiếp hoặc khi kết nối lại.
+ * - Sự kiện chỉ được phát sau khi transaction commit, client nhận được là dữ liệu đã đọc được từ API.
+ * - Sự kiện đầu tiên của mỗi kết nối là UNREAD với số chưa đọc hiện tại; heartbeat định kỳ giữ kết nối qua proxy.
+ * - Trạng thái nằm trong bộ nhớ của instance: chạy nhiều instance thì cần sticky session hoặc broker chung.
+ */
+@Slf4j
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserEventHub {
+
+    UnreadCounters unreadCounters;
+    Duration heartbeatInterval;
+    Duration maxConnectionTime;
+    int bufferSize;
+
+    // userId -> các kết nối đang mở của user
+    Map<String, Set<Sinks.Many<UserEvent>>> connections = new ConcurrentHashMap<>();
+    AtomicInteger connectionCount = new AtomicInteger();
+    LongAdder published = new LongAdder();
+    LongAdder dropped = new LongAdder();
+
+    public UserEventHub(
+            UnreadCounters unreadCounters,
+            @Value("${push.heartbeat-seconds:25}") long heartbeatSeconds,
+            @Value("${push.max-connection-minutes:30}") long maxConnectionMinutes,
+            @Value("${push.buffer-size:64}") int bufferSize) {
+        this.unreadCounters = unreadCounters;
+        this.heartbeatInterval = Duration.ofSeconds(heartbeatSeconds);
+        this.maxConnectionTime = Duration.ofMinutes(maxConnectionMinutes);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Luồng sự kiện của một user. Kết nối tự đóng sau push.max-connection-minutes, client kết nối lại.
+     */
+    public Flux<ServerSentEvent<UserEvent>> subscribe(String userId) {
+        return Flux.defer(() -> {
+            Sinks.Many<UserEvent> sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<UserEvent>get(bufferSize).get());
+            register(userId, sink);
+
+            UserEvent initial = UserEvent.builder()
+                    .type(UserEvent.UNREAD)
+                    .unreadMessages(unreadCounters.chat(userId))
+                    .unreadNotifications(unreadCounters.notifications(userId))
+                    .build();
+            Flux<ServerSentEvent<UserEvent>> events = sink.asFlux()
+                    .startWith(initial)
+                    .map(event -> ServerSentEvent.builder(event).event(event.getType()).build());
+            Flux<ServerSentEvent<UserEvent>> heartbeats = Flux.interval(heartbeatInterval)
+                    .map(tick -> ServerSentEvent.<UserEvent>builder().comment("heartbeat").build());
+
+            // Ghi ra socket trên boundedElastic: không chặn luồng commit transaction hay luồng timer
+            return Flux.merge(events, heartbeats)
+                    .publishOn(Schedulers.boundedElastic())
+                    .take(maxConnectionTime)
+                    .doFinally(signal -> unregister(userId, sink));
+        });
+    }
+
+    /**
+     * Phát sự kiện tới các user sau khi transaction hiện tại commit. Mỗi user nhận kèm số chưa đọc của mình
+     * (nếu đã có trong bộ nhớ).
+     */
+    public void publish(Collection<String> userIds, String type, Object data) {
+        Set<String> targets = Set.copyOf(userIds);
+        TransactionUtil.afterCommit(() -> targets.forEach(userId -> emit(userId, type, data, false)));
+    }
+
+    // Chỉ báo số chưa đọc đã thay đổi (đánh dấu đã đọc); số mới được đếm lại nếu user đang kết nối
+    public void publishUnread(String userId) {
+        TransactionUtil.afterCommit(() -> {
+            if (connections.containsKey(userId)) {
+                emit(userId, UserEvent.UNREAD, null, true);
+            }
+        });
+    }
+
+    public PushStats stats() {
+        return PushStats.builder()
+                .connectedUsers(connections.size())
+                .connections(connectionCount.get())
+                .published(published.sum())
+                .dropped(dropped.sum())
+                .cachedUnreadCounters(unreadCounters.size())
+                .build();
+    }
+
+    private void emit(String userId, String type, Object data, boolean loadCounts) {
+        Set<Sinks.Many<UserEvent>> sinks = connections.get(userId);
+        if (sinks == null) {
+            return;
+        }
+        UserEvent event = UserEvent.builder()
+                .type(type)
+                .data(data)
+                .unreadMessages(loadCounts ? unreadCounters.chat(userId) : unreadCounters.peekChat(userId))
+                .unreadNotifications(loadCounts
+                        ? unreadCounters.notifications(userId)
+                        : unreadCounters.peekNotifications(userId))
+                .build();
+        for (Sinks.Many<UserEvent> sink : sinks) {
+            Sinks.EmitResult result;
+            // Nhiều transaction có thể commit cùng lúc cho một user: sink unicast cần phát tuần tự
+            synchronized (sink) {
+                result = sink.tryEmitNext(event);
+            }
+            if (result.isSuccess()) {
+                published.increment();
+            } else {
+                dropped.increment();
+                log.debug("Push event {} to user {} dropped: {}", type, userId, result);
+            }
+        }
+    }
+
+    private void register(String userId, Sinks.Many<UserEvent> sink) {
+        connections.compute(userId, (id, sinks) -> {
+            Set<Sinks.Many<UserEvent>> updated = sinks != null ? sinks : ConcurrentHashMap.newKeySet();
+            updated.add(sink);
+            return updated;
+        });
+        connectionCount.incrementAndGet();
+    }
+
+    private void unregister(String userId, Sinks.Many<UserEvent> sink) {
+        connections.computeIfPresent(userId, (id, sinks) -> {
+            sinks.remove(sink);
+            return sinks.isEmpty() ? null : sinks;
+        });
+        connectionCount.decrementAndGet();
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.hanoi_metro.backend.dto.request.StaffCreationRequest;
 import com.hanoi_metro.backend.dto.request.UserCreationRequest;
@@ -39,6 +40,7 @@ public class UserService {
     PasswordEncoder passwordEncoder;
     PasswordGeneratorService passwordGeneratorService;
     BrevoEmailService brevoEmailService;
+    UserStatusCache userStatusCache;
 
     public UserResponse createUser(UserCreationRequest request) {
         User user = userMapper.toUser(request);
@@ -129,6 +131,7 @@ public class UserService {
     }
 
     // User cÃ³ thá»ƒ update chÃ­nh mÃ¬nh, hoáº·c ADMIN cÃ³ thá»ƒ update báº¥t ká»³ user nÃ o
+    @Transactional
     public UserResponse updateUser(String userId, UserUpdateRequest request) {
         User user = userRepository.findById(userId).orElseThrow(() -> new AppException(ErrorCode.USER_NOT_EXISTED));
 
@@ -158,6 +161,7 @@ public class UserService {
             throw new AppException(ErrorCode.UNAUTHORIZED);
         }
 
+        String previousEmail = user.getEmail();
         userMapper.updateUser(user, request);
 
         if (request.getPassword() != null && !request.getPassword().isEmpty()) {
@@ -217,18 +221,12 @@ public class UserService {
                         (userRoleName.equals("CUSTOMER") || 
                          userRoleName.equals("STAFF") || 
                          userRoleName.equals("CUSTOMER_SUPPORT"))) {
-                        try {
-                            brevoEmailService.sendAccountLockedEmail(
-                                user.getEmail(),
-                                user.getFullName(),
-                                userRoleName
-                            );
-                            log.info("Account locked notification email sent to: {} (Role: {})", user.getEmail(), userRoleName);
-                        } catch (Exception e) {
-                            // Log error but don't fail the account lock operation
-                            log.error("Failed to send account locked email to: {} - Error: {}", 
-                                user.getEmail(), e.getMessage(), e);
-                        }
+                        brevoEmailService.sendAccountLockedEmail(
+                            user.getEmail(),
+                            user.getFullName(),
+                            userRoleName
+                        );
+                        log.info("Account locked notification email queued for: {} (Role: {})", user.getEmail(), userRoleName);
                     }
                 }
                 
@@ -242,21 +240,17 @@ public class UserService {
 
         // Save user vÃ o database
         User savedUser = userRepository.save(user);
+        // Trạng thái khóa/mở hoặc email có thể đã đổi: bỏ cache dùng khi xác thực token
+        userStatusCache.invalidate(previousEmail);
+        userStatusCache.invalidate(savedUser.getEmail());
 
         if (isUpdatingOtherUser && savedUser.getRole() != null) {
             String targetRole = savedUser.getRole().getName();
             if ("CUSTOMER".equalsIgnoreCase(targetRole)
                     || "STAFF".equalsIgnoreCase(targetRole)
                     || "CUSTOMER_SUPPORT".equalsIgnoreCase(targetRole)) {
-                try {
-                    brevoEmailService.sendProfileUpdatedEmail(
-                            savedUser.getEmail(), savedUser.getFullName(), targetRole);
-                } catch (Exception e) {
-                    log.error(
-                            "Failed to send profile updated email to {} - Error: {}",
-                            savedUser.getEmail(),
-                            e.getMessage());
-                }
+                brevoEmailService.sendProfileUpdatedEmail(
+                        savedUser.getEmail(), savedUser.getFullName(), targetRole);
             }
         }
         
@@ -265,6 +259,7 @@ public class UserService {
 
     @PreAuthorize("hasRole('ADMIN')")
     public void deleteUser(String userId) {
+        userRepository.findById(userId).ifPresent(user -> userStatusCache.invalidate(user.getEmail()));
         userRepository.deleteById(userId);
     }
 
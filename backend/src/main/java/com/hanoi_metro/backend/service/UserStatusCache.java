@@ -0,0 +1,86 @@
+package com.hanoi_metro.backend.service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.stereotype.Service;
+
+import com.hanoi_metro.backend.entity.User;
+import com.hanoi_metro.backend.repository.UserRepository;
+import com.hanoi_metro.backend.util.TransactionUtil;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache trạng thái khóa/mở của user theo email, dùng khi xác thực token ở mỗi request thay vì load User
+ * từ DB. UserService xóa cache khi khóa/mở, đổi email hoặc xóa user; TTL chỉ là lưới an toàn.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserStatusCache {
+
+    public enum Status {
+        ACTIVE,
+        LOCKED,
+        NOT_FOUND
+    }
+
+    UserRepository userRepository;
+
+    Map<String, CachedStatus> statuses = new ConcurrentHashMap<>();
+
+    @NonFinal
+    @Value("${jwt.user-status-ttl-seconds:300}")
+    long ttlSeconds;
+
+    public Status status(String email) {
+        if (email == null) {
+            return Status.NOT_FOUND;
+        }
+        long now = System.currentTimeMillis();
+        CachedStatus cached = statuses.get(email);
+        if (cached != null && now - cached.loadedAt() <= ttlSeconds * 1000) {
+            return cached.status();
+        }
+        Status status = findUserByEmailSafe(email)
+                .map(user -> user.isActive() ? Status.ACTIVE : Status.LOCKED)
+                .orElse(Status.NOT_FOUND);
+        // Không cache user chưa tồn tại: email có thể được đăng ký ngay sau đó
+        if (status != Status.NOT_FOUND) {
+            statuses.put(email, new CachedStatus(status, now));
+        }
+        return status;
+    }
+
+    /**
+     * Xóa trạng thái đã cache sau khi transaction hiện tại commit.
+     */
+    public void invalidate(String email) {
+        if (email == null) {
+            return;
+        }
+        statuses.remove(email);
+        TransactionUtil.afterCommit(() -> statuses.remove(email));
+    }
+
+    // Email trùng lặp (dữ liệu cũ): lấy user mới nhất, giống AuthenticationService
+    private Optional<User> findUserByEmailSafe(String email) {
+        try {
+            return userRepository.findByEmail(email);
+        } catch (IncorrectResultSizeDataAccessException e) {
+            log.warn("Duplicate email found: {}, using findFirstByEmailOrderByCreateAtDesc", email);
+            return userRepository.findFirstByEmailOrderByCreateAtDesc(email);
+        }
+    }
+
+    private record CachedStatus(Status status, long loadedAt) {}
+}
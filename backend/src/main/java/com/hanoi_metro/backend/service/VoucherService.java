@@ -49,6 +49,8 @@ public class VoucherService {
     ProductRepository productRepository;
     VoucherMapper voucherMapper;
     FileStorageService fileStorageService;
+    CatalogHttpCache catalogHttpCache;
+    CartAggregateCache cartAggregateCache;
 
     @Transactional
     public VoucherResponse createVoucher(VoucherCreationRequest request) {
@@ -68,6 +70,7 @@ public class VoucherService {
         applyScopeTargets(request.getApplyScope(), request.getCategoryIds(), request.getProductIds(), voucher);
 
         Voucher savedVoucher = voucherRepository.save(voucher);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.VOUCHERS);
         // log.info("Voucher created with ID: {} by staff: {}", savedVoucher.getId(), staff.getId());
 
         return voucherMapper.toResponse(savedVoucher);
@@ -103,6 +106,8 @@ public class VoucherService {
         }
 
         Voucher savedVoucher = voucherRepository.save(voucher);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.VOUCHERS);
+        cartAggregateCache.invalidateAll();
         return voucherMapper.toResponse(savedVoucher);
     }
 
@@ -180,6 +185,8 @@ public class VoucherService {
         }
 
         Voucher savedVoucher = voucherRepository.save(voucher);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.VOUCHERS);
+        cartAggregateCache.invalidateAll();
         log.info("Voucher updated: {} by user: {}", voucherId, currentUserId);
 
         return voucherMapper.toResponse(savedVoucher);
@@ -213,6 +220,8 @@ public class VoucherService {
         // 3. XÃ³a voucher
         String voucherCode = voucher.getCode();
         voucherRepository.delete(voucher);
+        catalogHttpCache.onChanged(CatalogHttpCache.Family.VOUCHERS);
+        cartAggregateCache.invalidateAll();
         voucherRepository.flush(); // Đảm bảo xóa được thực hiện ngay
         log.info("Voucher deleted: id={}, code={}, by user: {}", voucherId, voucherCode, currentUserId);
     }
@@ -0,0 +1,98 @@
+package com.hanoi_metro.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hanoi_metro.backend.entity.VoucherUsage;
+import com.hanoi_metro.backend.exception.AppException;
+import com.hanoi_metro.backend.exception.ErrorCode;
+import com.hanoi_metro.backend.repository.OrderRepository;
+import com.hanoi_metro.backend.repository.VoucherUsageRepository;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sổ đếm số lần dùng voucher theo (voucher, user), thay cho việc quét toàn bộ bảng orders.
+ *
+ * - CartService chỉ đọc số lần đã dùng (một lookup theo unique index) để báo lỗi sớm khi áp voucher.
+ * - OrderService ghi nhận khi tạo đơn bằng UPDATE có điều kiện: hai checkout đồng thời không thể cùng
+ *   vượt usagePerUser, request thua bị rollback cả đơn hàng.
+ * - Hủy/hoàn tiền đơn hàng trả lại một lượt dùng.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class VoucherUsageService {
+
+    VoucherUsageRepository voucherUsageRepository;
+    OrderRepository orderRepository;
+
+    @Transactional(readOnly = true)
+    public int usedCount(String voucherId, String userId) {
+        if (voucherId == null || userId == null) {
+            return 0;
+        }
+        return voucherUsageRepository
+                .findByVoucherIdAndUserId(voucherId, userId)
+                .map(VoucherUsage::getUsedCount)
+                .orElse(0);
+    }
+
+    /**
+     * Ghi nhận một lượt dùng, ném VOUCHER_USAGE_LIMIT_EXCEEDED nếu user đã dùng đủ usagePerUser lần.
+     * Phải chạy trong transaction tạo đơn để lỗi làm rollback đơn hàng.
+     */
+    @Transactional
+    public void consume(String voucherId, String userId, Integer usagePerUser) {
+        if (voucherId == null || userId == null) {
+            return;
+        }
+        Integer limit = usagePerUser != null && usagePerUser > 0 ? usagePerUser : null;
+        voucherUsageRepository.insertIfAbsent(voucherId, userId);
+        if (voucherUsageRepository.incrementIfBelow(voucherId, userId, limit) == 0) {
+            log.warn("Voucher {} usage limit ({}) reached for user {}", voucherId, limit, userId);
+            throw new AppException(ErrorCode.VOUCHER_USAGE_LIMIT_EXCEEDED);
+        }
+    }
+
+    /**
+     * Trả lại một lượt dùng khi đơn hàng bị hủy hoặc hoàn tiền.
+     */
+    @Transactional
+    public void release(String voucherId, String userId) {
+        if (voucherId == null || userId == null) {
+            return;
+        }
+        voucherUsageRepository.decrement(voucherId, userId);
+    }
+
+    /**
+     * Dựng sổ đếm từ các đơn hàng hiện có (chỉ chạy khi bảng voucher_usages còn trống).
+     */
+    @Transactional
+    public void backfillFromOrders() {
+        if (voucherUsageRepository.count() > 0) {
+            return;
+        }
+        List<Object[]> rows = orderRepository.countActiveVoucherUsages();
+        LocalDateTime now = LocalDateTime.now();
+        voucherUsageRepository.saveAll(rows.stream()
+                .map(row -> VoucherUsage.builder()
+                        .voucherId((String) row[0])
+                        .userId((String) row[1])
+                        .usedCount(((Number) row[2]).intValue())
+                        .updatedAt(now)
+                        .build())
+                .toList());
+        if (!rows.isEmpty()) {
+            log.info("Voucher usage ledger backfilled with {} (voucher, user) pairs", rows.size());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hanoi_metro.backend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counting Bloom filter cho chuỗi: mightContain == false nghĩa là chắc chắn không có, true có thể là
+ * dương tính giả (xác suất ~ falsePositiveRate khi số phần tử không vượt expectedEntries).
+ * Khác Bloom filter thường, mỗi ô là bộ đếm nên remove() được; bỏ một phần tử chưa từng add có thể gây
+ * âm tính giả, nên chỉ remove những gì đã add. Thread-safe.
+ */
+public final class CountingBloomFilter {
+
+    private final AtomicIntegerArray counters;
+    private final int size;
+    private final int hashFunctions;
+
+    public CountingBloomFilter(int expectedEntries, double falsePositiveRate) {
+        int n = Math.max(expectedEntries, 1);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        // m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        this.size = (int) Math.min(Math.max(m, 64), Integer.MAX_VALUE - 8);
+        this.hashFunctions = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        this.counters = new AtomicIntegerArray(size);
+    }
+
+    public void add(String value) {
+        long[] hashes = hash(value);
+        for (int i = 0; i < hashFunctions; i++) {
+            counters.incrementAndGet(index(hashes, i));
+        }
+    }
+
+    public void remove(String value) {
+        long[] hashes = hash(value);
+        for (int i = 0; i < hashFunctions; i++) {
+            int index = index(hashes, i);
+            counters.getAndUpdate(index, count -> count > 0 ? count - 1 : 0);
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long[] hashes = hash(value);
+        for (int i = 0; i < hashFunctions; i++) {
+            if (counters.get(index(hashes, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    // Double hashing: h_i = h1 + i * h2
+    private int index(long[] hashes, int i) {
+        return (int) Math.floorMod(hashes[0] + i * hashes[1], (long) size);
+    }
+
+    // FNV-1a 64-bit, trộn thêm bằng bước fmix64 của MurmurHash3 để lấy hai hash độc lập
+    private static long[] hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        long h1 = fmix64(h);
+        long h2 = fmix64(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        return new long[] {h1, h2};
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
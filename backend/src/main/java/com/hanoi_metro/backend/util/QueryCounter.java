@@ -0,0 +1,23 @@
+package com.hanoi_metro.backend.util;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Đếm số câu SQL Hibernate gửi đi trên luồng hiện tại (đăng ký qua hibernate.session_factory.statement_inspector),
+ * dùng để đo số query của từng thao tác.
+ */
+public class QueryCounter implements StatementInspector {
+
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    // Số câu SQL đã chạy trên luồng hiện tại từ khi luồng bắt đầu
+    public static long current() {
+        return COUNT.get()[0];
+    }
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+}
@@ -5,6 +5,7 @@ import chatService from '~/services/chat';
 import { storage } from '~/services/utils';
 import { STORAGE_KEYS, API_BASE_URL } from '~/services/config';
 import { notify } from '~/utils/notification';
+import { PUSH_EVENTS, onPushEvent, pollWithPushFallback } from '~/services/push';
 
 const cx = classNames.bind(styles);
 
@@ -209,10 +210,18 @@ function StaffChat({ onBack, onClose }) {
             }
         };
 
-        // Polling mỗi 3 giây
-        const interval = setInterval(fetchNewMessages, 3000);
+        // Tải lại khi server đẩy tin nhắn gửi tới mình; poll 3 giây chỉ là dự phòng khi chưa có kết nối push
+        const stopPolling = pollWithPushFallback(fetchNewMessages, 3000);
+        const offChatMessage = onPushEvent(PUSH_EVENTS.CHAT_MESSAGE, (event) => {
+            if (event?.data?.receiverId === currentUser.id) {
+                fetchNewMessages();
+            }
+        });
 
-        return () => clearInterval(interval);
+        return () => {
+            stopPolling();
+            offChatMessage();
+        };
     }, [csSupportId, currentUser, chatStartTime]);
 
     const scrollToBottom = () => {
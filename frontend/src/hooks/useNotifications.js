@@ -1,8 +1,10 @@
 import { useState, useEffect, useCallback, useRef } from 'react';
 import notificationService from '~/services/notificationService';
+import { PUSH_EVENTS, onPushEvent, pollWithPushFallback } from '~/services/push';
 
 /**
- * Custom hook để polling notifications từ backend
+ * Custom hook lấy notifications từ backend: tải lại khi server đẩy sự kiện NOTIFICATION qua /push/stream,
+ * chỉ poll theo pollInterval khi chưa có kết nối push
  * @param {number} pollInterval - Thời gian giữa mỗi lần poll (ms), default 10000 (10s)
  * @param {boolean} enabled - Bật/tắt polling, default true
  * @returns {object} - { notifications, unreadCount, markAsRead, markAllAsRead, refetch }
@@ -80,9 +82,9 @@ export const useNotifications = (pollInterval = 10000, enabled = true) => {
     // Setup polling
     useEffect(() => {
         if (!enabled) {
-            // Clear interval nếu disabled
+            // Dừng poll nếu disabled
             if (intervalRef.current) {
-                clearInterval(intervalRef.current);
+                intervalRef.current();
                 intervalRef.current = null;
             }
             return;
@@ -91,15 +93,25 @@ export const useNotifications = (pollInterval = 10000, enabled = true) => {
         // Initial fetch
         fetchNotifications();
 
-        // Setup interval polling
-        intervalRef.current = setInterval(fetchNotifications, pollInterval);
+        // Poll dự phòng (thưa hơn khi push đang kết nối)
+        const stopPolling = pollWithPushFallback(fetchNotifications, pollInterval);
+        intervalRef.current = stopPolling;
+
+        // Notification mới: tải lại danh sách; chỉ đổi số chưa đọc: cập nhật badge
+        const offNotification = onPushEvent(PUSH_EVENTS.NOTIFICATION, () => fetchNotifications());
+        const offUnread = onPushEvent(PUSH_EVENTS.UNREAD, (event) => {
+            if (event?.unreadNotifications !== null && event?.unreadNotifications !== undefined) {
+                previousUnreadCountRef.current = event.unreadNotifications;
+                setUnreadCount(event.unreadNotifications);
+            }
+        });
 
         // Cleanup
         return () => {
-            if (intervalRef.current) {
-                clearInterval(intervalRef.current);
-                intervalRef.current = null;
-            }
+            stopPolling();
+            offNotification();
+            offUnread();
+            intervalRef.current = null;
         };
     }, [enabled, pollInterval, fetchNotifications]);
 
@@ -182,6 +182,8 @@ const formatDateOnly = (dateString) => {
 };
 
 const ITEMS_PER_PAGE = 8;
+// Số đơn tải mỗi lần từ server; trang sau được tải khi bấm "Tiếp" ở trang cuối đã tải
+const ORDERS_PAGE_SIZE = 50;
 
 const getOrderDateValue = (order) => {
     if (!order) return null;
@@ -233,6 +235,9 @@ function ManageOrders() {
     const [orders, setOrders] = useState([]);
     const [loading, setLoading] = useState(false);
     const [error, setError] = useState('');
+    const [nextCursor, setNextCursor] = useState(null);
+    const [hasNext, setHasNext] = useState(false);
+    const [loadingMore, setLoadingMore] = useState(false);
 
     const [searchTerm, setSearchTerm] = useState('');
     const [selectedDate, setSelectedDate] = useState('');
@@ -257,13 +262,15 @@ function ManageOrders() {
             try {
                 setLoading(true);
                 setError('');
-                const data = await orderService.getAllOrders();
-                const list = Array.isArray(data) ? data : [];
-                const mapped = list.map(mapOrderFromApi).filter(Boolean);
-                setOrders(mapped);
+                const page = await orderService.getOrdersPage({ limit: ORDERS_PAGE_SIZE });
+                setOrders(page.orders.map(mapOrderFromApi).filter(Boolean));
+                setNextCursor(page.nextCursor);
+                setHasNext(page.hasNext);
             } catch (err) {
                 console.error('ManageOrders: load orders failed', err);
                 setOrders([]);
+                setNextCursor(null);
+                setHasNext(false);
                 setError('Không thể tải danh sách đơn hàng. Vui lòng thử lại.');
             } finally {
                 setLoading(false);
@@ -272,6 +279,28 @@ function ManageOrders() {
         [],
     );
 
+    const loadMoreOrders = async () => {
+        if (!hasNext || !nextCursor || loadingMore) return;
+        try {
+            setLoadingMore(true);
+            const page = await orderService.getOrdersPage({ limit: ORDERS_PAGE_SIZE, cursor: nextCursor });
+            setOrders((prev) => {
+                const loaded = new Set(prev.map((order) => order.id));
+                const more = page.orders
+                    .map(mapOrderFromApi)
+                    .filter((order) => order && !loaded.has(order.id));
+                return [...prev, ...more];
+            });
+            setNextCursor(page.nextCursor);
+            setHasNext(page.hasNext);
+        } catch (err) {
+            console.error('ManageOrders: load more orders failed', err);
+            setError('Không thể tải thêm đơn hàng. Vui lòng thử lại.');
+        } finally {
+            setLoadingMore(false);
+        }
+    };
+
     useEffect(() => {
         fetchOrders();
     }, [fetchOrders]);
@@ -394,8 +423,20 @@ function ManageOrders() {
         }
     }, [refundCurrentPage, totalRefundPages]);
 
+    // Ở trang cuối đã tải mà server còn đơn: tải thêm rồi mới sang trang
+    const goToNextPage = async (page, totalPages, setPage) => {
+        if (page < totalPages) {
+            setPage(page + 1);
+            return;
+        }
+        if (hasNext) {
+            await loadMoreOrders();
+            setPage(page + 1);
+        }
+    };
+
     const renderPagination = (page, totalPages, handlePrev, handleNext) => {
-        if (totalPages <= 1) return null;
+        if (totalPages <= 1 && !hasNext) return null;
         return (
             <div className={cx('pagination')}>
                 <button
@@ -408,11 +449,12 @@ function ManageOrders() {
                 </button>
                 <span className={cx('paginationInfo')}>
                     Trang {page}/{totalPages}
+                    {hasNext ? '+' : ''}
                 </span>
                 <button
                     type="button"
                     className={cx('paginationBtn')}
-                    disabled={page === totalPages}
+                    disabled={(page === totalPages && !hasNext) || loadingMore}
                     onClick={handleNext}
                 >
                     Tiếp
@@ -504,8 +546,13 @@ function ManageOrders() {
                         <div className={cx('stateCard')}>
                             <p>Không có đơn hàng phù hợp với bộ lọc hiện tại.</p>
                             <p style={{ fontSize: '0.9em', color: '#666', marginTop: '8px' }}>
-                                Tổng số đơn hàng: {orders.length} | Đã lọc: {filteredOrders.length}
+                                Đã tải: {orders.length} đơn hàng | Đã lọc: {filteredOrders.length}
                             </p>
+                            {hasNext && (
+                                <button type="button" onClick={loadMoreOrders} disabled={loadingMore}>
+                                    {loadingMore ? 'Đang tải...' : 'Tải thêm đơn hàng'}
+                                </button>
+                            )}
                             <button
                                 type="button"
                                 onClick={() => {
@@ -572,7 +619,7 @@ function ManageOrders() {
                             currentPage,
                             totalOrderPages,
                             () => setCurrentPage((prev) => Math.max(1, prev - 1)),
-                            () => setCurrentPage((prev) => Math.min(totalOrderPages, prev + 1)),
+                            () => goToNextPage(currentPage, totalOrderPages, setCurrentPage),
                         )}
                         </>
                     )}
@@ -608,6 +655,11 @@ function ManageOrders() {
                     ) : refundEligibleOrders.length === 0 ? (
                         <div className={cx('stateCard')}>
                             <p>Không có đơn hoàn tiền.</p>
+                            {hasNext && (
+                                <button type="button" onClick={loadMoreOrders} disabled={loadingMore}>
+                                    {loadingMore ? 'Đang tải...' : 'Tải thêm đơn hàng'}
+                                </button>
+                            )}
                         </div>
                     ) : (
                         <>
@@ -659,7 +711,7 @@ function ManageOrders() {
                                 refundCurrentPage,
                                 totalRefundPages,
                                 () => setRefundCurrentPage((prev) => Math.max(1, prev - 1)),
-                                () => setRefundCurrentPage((prev) => Math.min(totalRefundPages, prev + 1)),
+                                () => goToNextPage(refundCurrentPage, totalRefundPages, setRefundCurrentPage),
                             )}
                         </>
                     )}
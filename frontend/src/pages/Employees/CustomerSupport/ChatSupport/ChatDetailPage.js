@@ -8,6 +8,7 @@ import styles from './ChatDetailPage.module.scss';
 import chatService from '~/services/chat';
 import { storage } from '~/services/utils';
 import { STORAGE_KEYS } from '~/services/config';
+import { PUSH_EVENTS, onPushEvent, pollWithPushFallback } from '~/services/push';
 
 const cx = classNames.bind(styles);
 
@@ -49,21 +50,27 @@ function ChatDetailPage() {
         scrollToBottom();
     }, [messages]);
 
-    // Auto refresh messages mỗi 3 giây
+    // Tải lại khi server đẩy tin nhắn của hội thoại này; poll 3 giây chỉ là dự phòng khi chưa có kết nối push
     useEffect(() => {
         if (!partnerId) return;
 
-        const interval = setInterval(() => {
-            fetchMessages();
-        }, 3000);
+        const stopPolling = pollWithPushFallback(() => fetchMessages(), 3000);
+        const offChatMessage = onPushEvent(PUSH_EVENTS.CHAT_MESSAGE, (event) => {
+            const message = event?.data;
+            if (message && (message.senderId === partnerId || message.receiverId === partnerId)) {
+                fetchMessages();
+            }
+        });
 
-        return () => clearInterval(interval);
+        return () => {
+            stopPolling();
+            offChatMessage();
+        };
     }, [partnerId]);
 
     const fetchPartnerInfo = async () => {
         try {
-            const conversations = await chatService.getConversations();
-            const conversation = conversations.find(c => c.partnerId === partnerId);
+            const conversation = await chatService.getConversationSummary(partnerId);
             if (conversation) {
                 setPartnerInfo({
                     name: conversation.partnerName || 'Khách hàng',
@@ -1,10 +1,11 @@
-import { useState, useEffect } from 'react';
+import { useState, useEffect, useMemo, useRef } from 'react';
 import { useLocation, useNavigate } from 'react-router-dom';
 import classNames from 'classnames/bind';
 import styles from './ChatSupportPage.module.scss';
 import chatService from '~/services/chat';
 import { storage } from '~/services/utils';
 import { STORAGE_KEYS } from '~/services/config';
+import { PUSH_EVENTS, onPushEvent, pollWithPushFallback } from '~/services/push';
 
 const cx = classNames.bind(styles);
 
@@ -15,9 +16,34 @@ function ChatSupportPage() {
     const [loading, setLoading] = useState(true);
     const [sending, setSending] = useState(false);
     const [error, setError] = useState(null);
-    const [conversationsWithPendingRequest, setConversationsWithPendingRequest] = useState(new Set());
-    const [conversationAcceptedBy, setConversationAcceptedBy] = useState(new Map()); // Map<partnerId, {userId, userName}>
-    const [conversationsDisconnected, setConversationsDisconnected] = useState(new Set()); // Set<partnerId> - conversations đã bị ngắt kết nối
+    const [nextCursor, setNextCursor] = useState(null);
+    const [hasNext, setHasNext] = useState(false);
+    const [loadingMore, setLoadingMore] = useState(false);
+    const olderPagesLoaded = useRef(false); // Đã bấm "Tải thêm": làm mới trang đầu không được đặt lại cursor
+
+    // Trạng thái yêu cầu hỗ trợ lấy thẳng từ hộp thư (supportStatus, acceptedById, acceptedByName), không đọc lại tin nhắn
+    const { conversationsWithPendingRequest, conversationAcceptedBy, conversationsDisconnected } = useMemo(() => {
+        const pendingSet = new Set();
+        const acceptedMap = new Map(); // Map<partnerId, {userId, userName}>
+        const disconnectedSet = new Set(); // Set<partnerId> - conversations đã bị ngắt kết nối
+        conversations.forEach((conv) => {
+            if (conv.supportStatus === 'PENDING') {
+                pendingSet.add(conv.partnerId);
+            } else if (conv.supportStatus === 'ACCEPTED') {
+                acceptedMap.set(conv.partnerId, {
+                    userId: conv.acceptedById,
+                    userName: conv.acceptedByName || 'CSKH',
+                });
+            } else if (conv.supportStatus === 'DISCONNECTED') {
+                disconnectedSet.add(conv.partnerId);
+            }
+        });
+        return {
+            conversationsWithPendingRequest: pendingSet,
+            conversationAcceptedBy: acceptedMap,
+            conversationsDisconnected: disconnectedSet,
+        };
+    }, [conversations]);
 
     // Reload khi component mount hoặc khi quay lại trang này
     useEffect(() => {
@@ -29,185 +55,35 @@ function ChatSupportPage() {
         fetchConversations();
     }, [location.pathname]); // Reload khi pathname thay đổi (quay lại trang)
 
-    // Auto refresh conversations mỗi 5 giây
+    // Tải lại hộp thư khi có tin nhắn mới hoặc số chưa đọc thay đổi; poll 5 giây chỉ là dự phòng khi chưa có kết nối push
     useEffect(() => {
-        const interval = setInterval(() => {
-            fetchConversations();
-        }, 5000);
+        const stopPolling = pollWithPushFallback(() => fetchConversations(), 5000);
+        const offChatMessage = onPushEvent(PUSH_EVENTS.CHAT_MESSAGE, () => fetchConversations());
+        const offUnread = onPushEvent(PUSH_EVENTS.UNREAD, () => fetchConversations());
 
-        return () => clearInterval(interval);
+        return () => {
+            stopPolling();
+            offChatMessage();
+            offUnread();
+        };
     }, []);
 
+    // Tải lại trang đầu của hộp thư; các trang cũ hơn đã tải (bằng "Tải thêm") vẫn được giữ
     const fetchConversations = async () => {
         try {
-            const data = await chatService.getConversations();
-            console.log('[ChatSupportPage] Fetched conversations:', data);
-            setConversations(data || []);
-            
-            // Kiểm tra tất cả conversations để tìm welcome messages chưa được phản hồi và ai đã tiếp nhận
-            if (data && data.length > 0) {
-                const pendingSet = new Set();
-                const acceptedMap = new Map();
-                const disconnectedSet = new Set();
-                
-                // Fetch messages cho tất cả conversations để kiểm tra
-                const checkPromises = data.map(async (conv) => {
-                    try {
-                        const messages = await chatService.getConversation(conv.partnerId);
-                        if (messages && messages.length > 0) {
-                            // Kiểm tra tin nhắn cuối cùng - nếu là disconnect và không có welcome message mới sau đó, thì đã disconnect
-                            const lastMessage = messages[messages.length - 1];
-                            const isLastMessageDisconnect = lastMessage.message && 
-                                lastMessage.message.includes('[SYSTEM_DISCONNECT]') &&
-                                lastMessage.senderId === conv.partnerId;
-                            
-                            if (isLastMessageDisconnect) {
-                                // Tin nhắn cuối là disconnect, conversation đã bị ngắt kết nối
-                                disconnectedSet.add(conv.partnerId);
-                                acceptedMap.delete(conv.partnerId);
-                                // Không cần kiểm tra thêm, return để skip logic phía dưới
-                                return;
-                            }
-                            
-                            // Tìm tất cả welcome messages (có thể có nhiều nếu khách hàng kết nối lại)
-                            // Welcome message được gửi từ customer (senderId = partnerId = customerId)
-                            const allWelcomeMessages = messages.filter(msg => 
-                                msg.message && 
-                                msg.message.includes('Khách hàng yêu cầu chat trực tiếp với nhân viên hỗ trợ từ chatbot') &&
-                                msg.senderId === conv.partnerId // Phải là từ customer
-                            );
-                            
-                            // Tìm tin nhắn "Tôi đã tiếp nhận" gần nhất (tìm từ cuối lên đầu)
-                            const allAcceptMessages = messages.filter(msg => 
-                                msg.message && 
-                                msg.message.includes('Tôi đã tiếp nhận yêu cầu hỗ trợ của bạn') &&
-                                msg.senderId !== conv.partnerId // Phải là từ CSKH
-                            );
-                            
-                            // Nếu có welcome message, kiểm tra logic dựa trên welcome message mới nhất
-                            if (allWelcomeMessages.length > 0) {
-                                // Tìm welcome message mới nhất
-                                const latestWelcomeMessage = allWelcomeMessages[allWelcomeMessages.length - 1];
-                                const welcomeIndex = messages.findIndex(msg => msg.id === latestWelcomeMessage.id);
-                                
-                                // Tìm tin nhắn "Tôi đã tiếp nhận" sau welcome message mới nhất
-                                const acceptMessageAfterWelcome = messages.slice(welcomeIndex + 1).find(msg => 
-                                    msg.message && 
-                                    msg.message.includes('Tôi đã tiếp nhận yêu cầu hỗ trợ của bạn') &&
-                                    msg.senderId !== conv.partnerId // Phải là từ CSKH
-                                );
-                                
-                                if (acceptMessageAfterWelcome) {
-                                    const acceptIndex = messages.findIndex(msg => msg.id === acceptMessageAfterWelcome.id);
-                                    
-                                    // Kiểm tra xem có tin nhắn disconnect sau tin nhắn accept không
-                                    const disconnectMessage = messages.slice(acceptIndex + 1).find(msg => 
-                                        msg.message && 
-                                        msg.message.includes('[SYSTEM_DISCONNECT]') &&
-                                        msg.senderId === conv.partnerId // Phải là từ khách hàng
-                                    );
-                                    
-                                        if (disconnectMessage) {
-                                        // Kiểm tra xem có welcome message mới sau disconnect không (khách hàng kết nối lại)
-                                        const disconnectIndex = messages.findIndex(msg => msg.id === disconnectMessage.id);
-                                        const newWelcomeAfterDisconnect = messages.slice(disconnectIndex + 1).find(msg => 
-                                            msg.message && 
-                                            msg.message.includes('Khách hàng yêu cầu chat trực tiếp với nhân viên hỗ trợ từ chatbot') &&
-                                            msg.senderId === conv.partnerId // Phải là từ customer
-                                        );
-                                        
-                                        if (newWelcomeAfterDisconnect) {
-                                            // Khách hàng đã kết nối lại, quay về trạng thái chờ tiếp nhận
-                                            pendingSet.add(conv.partnerId);
-                                            disconnectedSet.delete(conv.partnerId);
-                                            // Xóa khỏi acceptedMap vì đây là request mới
-                                            acceptedMap.delete(conv.partnerId);
-                                        } else {
-                                            // Đã bị ngắt kết nối nhưng chưa kết nối lại
-                                            disconnectedSet.add(conv.partnerId);
-                                            // KHÔNG thêm vào pendingSet vì đã disconnect
-                                            // Xóa khỏi acceptedMap
-                                            acceptedMap.delete(conv.partnerId);
-                                        }
-                                    } else {
-                                        disconnectedSet.delete(conv.partnerId);
-                                        // Đã có người tiếp nhận và chưa bị ngắt kết nối
-                                        acceptedMap.set(conv.partnerId, {
-                                            userId: acceptMessageAfterWelcome.senderId,
-                                            userName: acceptMessageAfterWelcome.senderName || 'CSKH'
-                                        });
-                                    }
-                                } else {
-                                    // Chưa có người tiếp nhận
-                                    // Kiểm tra xem có bị disconnect không (disconnect trước khi có accept)
-                                    const disconnectBeforeAccept = messages.find(msg => 
-                                        msg.message && 
-                                        msg.message.includes('[SYSTEM_DISCONNECT]') &&
-                                        msg.senderId === conv.partnerId
-                                    );
-                                    
-                                    if (disconnectBeforeAccept) {
-                                        // Có disconnect message, kiểm tra xem có welcome message mới sau disconnect không
-                                        const disconnectIndex = messages.findIndex(msg => msg.id === disconnectBeforeAccept.id);
-                                        const newWelcomeAfterDisconnect = messages.slice(disconnectIndex + 1).find(msg => 
-                                            msg.message && 
-                                            msg.message.includes('Khách hàng yêu cầu chat trực tiếp với nhân viên hỗ trợ từ chatbot') &&
-                                            msg.senderId === conv.partnerId // Phải là từ customer
-                                        );
-                                        
-                                        if (!newWelcomeAfterDisconnect) {
-                                            // Đã disconnect và chưa kết nối lại
-                                            disconnectedSet.add(conv.partnerId);
-                                            // KHÔNG thêm vào pendingSet
-                                        } else {
-                                            // Đã kết nối lại, có pending request mới
-                                            pendingSet.add(conv.partnerId);
-                                            disconnectedSet.delete(conv.partnerId);
-                                        }
-                                    } else {
-                                        // Không có disconnect, có pending request
-                                        pendingSet.add(conv.partnerId);
-                                        disconnectedSet.delete(conv.partnerId);
-                                    }
-                                }
-                            } else if (allAcceptMessages.length > 0) {
-                                // Không có welcome message mới, nhưng có accept message (đã được tiếp nhận trước đó)
-                                // Tìm accept message mới nhất
-                                const latestAcceptMessage = allAcceptMessages[allAcceptMessages.length - 1];
-                                const acceptIndex = messages.findIndex(msg => msg.id === latestAcceptMessage.id);
-                                
-                                // Kiểm tra xem có disconnect sau accept message không
-                                const disconnectAfterAccept = messages.slice(acceptIndex + 1).find(msg => 
-                                    msg.message && 
-                                    msg.message.includes('[SYSTEM_DISCONNECT]') &&
-                                    msg.senderId === conv.partnerId
-                                );
-                                
-                                if (!disconnectAfterAccept) {
-                                    // Đã được tiếp nhận và chưa disconnect
-                                    acceptedMap.set(conv.partnerId, {
-                                        userId: latestAcceptMessage.senderId,
-                                        userName: latestAcceptMessage.senderName || 'CSKH'
-                                    });
-                                    disconnectedSet.delete(conv.partnerId);
-                                } else {
-                                    // Đã disconnect
-                                    disconnectedSet.add(conv.partnerId);
-                                    acceptedMap.delete(conv.partnerId);
-                                }
-                            }
-                        }
-                    } catch (err) {
-                        console.warn(`Error checking messages for ${conv.partnerId}:`, err);
-                    }
+            const page = await chatService.getConversationsPage();
+            console.log('[ChatSupportPage] Fetched conversations:', page.conversations);
+            if (!olderPagesLoaded.current) {
+                setConversations(page.conversations);
+                setNextCursor(page.nextCursor);
+                setHasNext(page.hasNext);
+            } else {
+                setConversations((prev) => {
+                    const fresh = new Set(page.conversations.map((conv) => conv.partnerId));
+                    return [...page.conversations, ...prev.filter((conv) => !fresh.has(conv.partnerId))];
                 });
-                
-                await Promise.all(checkPromises);
-                setConversationsWithPendingRequest(pendingSet);
-                setConversationAcceptedBy(acceptedMap);
-                setConversationsDisconnected(disconnectedSet);
             }
-            
+
             // Không tự động chọn conversation đầu tiên - để người dùng tự chọn
             setError(null);
         } catch (err) {
@@ -218,6 +94,26 @@ function ChatSupportPage() {
         }
     };
 
+    const loadMoreConversations = async () => {
+        if (!nextCursor || loadingMore) return;
+        setLoadingMore(true);
+        try {
+            const page = await chatService.getConversationsPage({ cursor: nextCursor });
+            setConversations((prev) => {
+                const loaded = new Set(prev.map((conv) => conv.partnerId));
+                return [...prev, ...page.conversations.filter((conv) => !loaded.has(conv.partnerId))];
+            });
+            setNextCursor(page.nextCursor);
+            setHasNext(page.hasNext);
+            olderPagesLoaded.current = true;
+        } catch (err) {
+            console.error('[ChatSupportPage] Error loading more conversations:', err);
+            alert('Không thể tải thêm cuộc trò chuyện');
+        } finally {
+            setLoadingMore(false);
+        }
+    };
+
 
 
     const handleConversationClick = (conv) => {
@@ -262,14 +158,14 @@ function ChatSupportPage() {
             
             // Cập nhật ngay lập tức để tránh race condition
             const currentUser = storage.get(STORAGE_KEYS.USER);
-            setConversationAcceptedBy(prev => {
-                const newMap = new Map(prev);
-                newMap.set(partnerId, {
-                    userId: currentUserId,
-                    userName: currentUser?.fullName || currentUser?.name || 'CSKH'
-                });
-                return newMap;
-            });
+            setConversations(prev => prev.map(conv => conv.partnerId === partnerId
+                ? {
+                    ...conv,
+                    supportStatus: 'ACCEPTED',
+                    acceptedById: currentUserId,
+                    acceptedByName: currentUser?.fullName || currentUser?.name || 'CSKH',
+                }
+                : conv));
             
             // Refresh conversations
             await fetchConversations();
@@ -353,7 +249,7 @@ function ChatSupportPage() {
                             {conversationsWithPendingRequest.size > 0 && (
                                 <>Có {conversationsWithPendingRequest.size} yêu cầu chờ tiếp nhận. </>
                             )}
-                            Tổng cộng: {conversations.length} cuộc trò chuyện
+                            Đã tải: {conversations.length} cuộc trò chuyện
                         </p>
             </div>
 
@@ -470,6 +366,15 @@ function ChatSupportPage() {
                                 </tbody>
                             </table>
                                     )}
+                        {hasNext && (
+                            <button
+                                className={cx('view-btn')}
+                                onClick={loadMoreConversations}
+                                disabled={loadingMore}
+                            >
+                                {loadingMore ? 'Đang tải...' : 'Tải thêm'}
+                            </button>
+                        )}
                                         </div>
                     </div>
             </div>
@@ -20,6 +20,7 @@ import ticketService from '~/services/ticket';
 import { getAllReviews } from '~/services/review';
 import { getApiBaseUrl, getStoredToken } from '~/services/utils';
 import notificationService from '~/services/notificationService';
+import { PUSH_EVENTS, onPushEvent, pollWithPushFallback } from '~/services/push';
 import { notify } from '~/utils/notification';
 
 const cx = classNames.bind(styles);
@@ -263,9 +264,13 @@ export default function CustomerSupportPage() {
     // Fetch notifications khi component mount và khi path thay đổi
     useEffect(() => {
         fetchNotifications();
-        // Refresh notifications mỗi 30 giây -> giảm xuống 10 giây để real-time hơn cho chat
-        const interval = setInterval(fetchNotifications, 10000);
-        return () => clearInterval(interval);
+        // Tải lại khi server đẩy notification mới; poll 10 giây chỉ là dự phòng khi chưa có kết nối push
+        const stopPolling = pollWithPushFallback(fetchNotifications, 10000);
+        const offNotification = onPushEvent(PUSH_EVENTS.NOTIFICATION, () => fetchNotifications());
+        return () => {
+            stopPolling();
+            offNotification();
+        };
     }, [fetchNotifications]);
 
     useEffect(() => {
@@ -10,6 +10,9 @@ import defaultProductImage from '~/assets/images/products/image1.jpg';
 
 const cx = classNames.bind(styles);
 
+// Số đơn tải mỗi lần từ server; trang sau được tải khi bấm "Tiếp" ở trang cuối đã tải
+const ORDERS_PAGE_SIZE = 50;
+
 // Mapping trạng thái đơn hàng từ backend sang label & class hiển thị
 const mapOrderStatus = (statusRaw) => {
     const status = String(statusRaw || '').toUpperCase();
@@ -146,6 +149,9 @@ export default function StaffOrderPage() {
     const navigate = useNavigate();
     const location = useLocation();
     const [orders, setOrders] = useState([]);
+    const [nextCursor, setNextCursor] = useState(null);
+    const [hasNext, setHasNext] = useState(false);
+    const [loadingMore, setLoadingMore] = useState(false);
     const [loading, setLoading] = useState(false);
     const [error, setError] = useState('');
     const [actionError, setActionError] = useState('');
@@ -207,16 +213,16 @@ export default function StaffOrderPage() {
                 setActionError('');
                 setActionMessage('');
 
-                const data = await orderService.getAllOrders();
-                const list = Array.isArray(data) ? data : [];
-                const mapped = list
-                    .map(mapOrderFromApi)
-                    .filter(Boolean);
-                setOrders(mapped.length > 0 ? mapped : []);
+                const page = await orderService.getOrdersPage({ limit: ORDERS_PAGE_SIZE });
+                setOrders(page.orders.map(mapOrderFromApi).filter(Boolean));
+                setNextCursor(page.nextCursor);
+                setHasNext(page.hasNext);
             } catch (err) {
                 console.error('StaffOrder: Lỗi khi tải đơn hàng:', err);
                 setError('Không thể tải danh sách đơn hàng từ server. Vui lòng thử lại sau.');
                 setOrders([]);
+                setNextCursor(null);
+                setHasNext(false);
             } finally {
                 setLoading(false);
             }
@@ -378,8 +384,54 @@ export default function StaffOrderPage() {
         }
     }, [debouncedRefundKeyword, refundDateFilter, refundStatusFilter, activeTab]);
 
+    const loadMoreOrders = async () => {
+        if (!hasNext || !nextCursor || loadingMore) return;
+        try {
+            setLoadingMore(true);
+            const page = await orderService.getOrdersPage({ limit: ORDERS_PAGE_SIZE, cursor: nextCursor });
+            setOrders((prev) => {
+                const loaded = new Set(prev.map((o) => o.id));
+                const more = page.orders.map(mapOrderFromApi).filter((o) => o && !loaded.has(o.id));
+                return [...prev, ...more];
+            });
+            setNextCursor(page.nextCursor);
+            setHasNext(page.hasNext);
+        } catch (err) {
+            console.error('StaffOrder: Lỗi khi tải thêm đơn hàng:', err);
+            setError('Không thể tải thêm đơn hàng. Vui lòng thử lại sau.');
+        } finally {
+            setLoadingMore(false);
+        }
+    };
+
+    // Ở trang cuối đã tải mà server còn đơn: tải thêm rồi mới sang trang (trang vượt quá sẽ được kéo về)
+    const goToNextPage = async (page, total, setPage) => {
+        if (page < total) {
+            setPage(page + 1);
+            return;
+        }
+        if (hasNext) {
+            await loadMoreOrders();
+            setPage(page + 1);
+        }
+    };
+
+    useEffect(() => {
+        const maxPage = Math.max(1, totalPages);
+        if (currentPage > maxPage) {
+            setCurrentPage(maxPage);
+        }
+    }, [currentPage, totalPages]);
+
+    useEffect(() => {
+        const maxPage = Math.max(1, refundTotalPages);
+        if (refundCurrentPage > maxPage) {
+            setRefundCurrentPage(maxPage);
+        }
+    }, [refundCurrentPage, refundTotalPages]);
+
     const renderPaginationControls = (page, total, handlePrev, handleNext) => {
-        if (total <= 1) return null;
+        if (total <= 1 && !hasNext) return null;
         return (
             <div className={cx('pagination')}>
                 <button
@@ -391,12 +443,13 @@ export default function StaffOrderPage() {
                     Trước
                 </button>
                 <span className={cx('pagination-info')}>
-                    Trang {page}/{total}
+                    Trang {page}/{Math.max(1, total)}
+                    {hasNext ? '+' : ''}
                 </span>
                 <button
                     type="button"
                     className={cx('pagination-btn')}
-                    disabled={page === total}
+                    disabled={(page >= total && !hasNext) || loadingMore}
                     onClick={handleNext}
                 >
                     Tiếp
@@ -652,7 +705,7 @@ export default function StaffOrderPage() {
                     currentPage,
                     totalPages,
                     () => setCurrentPage((prev) => Math.max(1, prev - 1)),
-                    () => setCurrentPage((prev) => Math.min(totalPages, prev + 1)),
+                    () => goToNextPage(currentPage, totalPages, setCurrentPage),
                 )}
             </div>
             <CancelOrderDialog
@@ -783,8 +836,7 @@ export default function StaffOrderPage() {
                     refundCurrentPage,
                     refundTotalPages,
                     () => setRefundCurrentPage((prev) => Math.max(1, prev - 1)),
-                    () =>
-                        setRefundCurrentPage((prev) => Math.min(refundTotalPages, prev + 1)),
+                    () => goToNextPage(refundCurrentPage, refundTotalPages, setRefundCurrentPage),
                 )}
             </div>
         </div>
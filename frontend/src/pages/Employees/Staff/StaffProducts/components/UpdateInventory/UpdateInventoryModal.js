@@ -1,8 +1,8 @@
 import React, { useState, useEffect } from 'react';
 import classNames from 'classnames/bind';
 import styles from './UpdateInventoryModal.module.scss';
-import { updateProduct } from '~/services/product';
-import { normalizeVariantRecords, serializeVariantPayload } from '~/utils/productVariants';
+import { adjustVariantStock, updateProduct } from '~/services/product';
+import { normalizeVariantRecords } from '~/utils/productVariants';
 import notify from '~/utils/notification';
 
 const cx = classNames.bind(styles);
@@ -61,12 +61,18 @@ function UpdateInventoryModal({ open, product, onClose, onSuccess }) {
       if (product.manufacturingLocation) {
         const variants = normalizeVariantRecords(product.manufacturingLocation);
         if (variants.length > 0) {
-          const updatedVariants = variants.map((v, idx) => {
+          const adjustments = [];
+          variants.forEach((v, idx) => {
             const changeQty = variantStockUpdates[idx] ? parseInt(variantStockUpdates[idx], 10) : 0;
-            
+
             // Skip if NaN or 0
             if (Number.isNaN(changeQty) || changeQty === 0) {
-              return v;
+              return;
+            }
+
+            const variantName = v.name || v.code || 'Mã màu';
+            if (!v.code) {
+              throw new Error(`${variantName} chưa có mã màu nên không thể cập nhật tồn kho`);
             }
 
             const currentStock = v.stockQuantity || 0;
@@ -74,22 +80,16 @@ function UpdateInventoryModal({ open, product, onClose, onSuccess }) {
 
             // Kiểm tra giảm xuống dưới 50
             if (newStock < MIN_STOCK) {
-              const variantName = v.name || v.code || 'Mã màu';
               throw new Error(`Không thể giảm tồn kho của ${variantName} xuống dưới ${MIN_STOCK} sản phẩm (hiện tại: ${currentStock}, thay đổi: ${changeQty})`);
             }
 
-            return {
-              ...v,
-              stockQuantity: newStock,
-            };
+            adjustments.push({ code: v.code, delta: changeQty });
           });
-          
-          const updatedManufacturingLocation = serializeVariantPayload(updatedVariants, 'Mã màu');
-          const updatePayload = {
-            ...product,
-            manufacturingLocation: updatedManufacturingLocation,
-          };
-          await updateProduct(product.id, updatePayload);
+
+          // Gửi số lượng thay đổi, server cộng/trừ trực tiếp trên tồn kho hiện tại của từng mã màu
+          for (const { code, delta } of adjustments) {
+            await adjustVariantStock(product.id, code, delta);
+          }
           notify.success('Cập nhật tồn kho thành công');
         }
       } else {
@@ -9,7 +9,7 @@ import { storage } from '~/services/utils';
 import { STORAGE_KEYS } from '~/services/config';
 import notify from '~/utils/notification';
 import { normalizeVariantRecords, getVariantLabel } from '~/utils/productVariants';
-import { getReviewsByProduct, createReview, getMyReviews } from '~/services/review';
+import { getReviewPageByProduct, createReview, getMyReviews } from '~/services/review';
 import orderService from '~/services/order';
 
 const TABS = [
@@ -42,6 +42,10 @@ function ProductDetail() {
   // Review states
   const [reviews, setReviews] = useState([]);
   const [loadingReviews, setLoadingReviews] = useState(false);
+  // Tổng hợp đánh giá từ server (số review, điểm trung bình, phân bố sao) và cursor trang kế tiếp
+  const [reviewSummary, setReviewSummary] = useState(null);
+  const [reviewsCursor, setReviewsCursor] = useState(null);
+  const [loadingMoreReviews, setLoadingMoreReviews] = useState(false);
   const [isReviewModalOpen, setIsReviewModalOpen] = useState(false);
   const [newRating, setNewRating] = useState(5);
   const [hoverRating, setHoverRating] = useState(0);
@@ -491,13 +495,16 @@ function ProductDetail() {
     const fetchReviews = async () => {
       try {
         setLoadingReviews(true);
-        const data = await getReviewsByProduct(id);
-        const serverReviews = Array.isArray(data) ? data : [];
-        console.log(`Fetched ${serverReviews.length} reviews for product ${id}`);
-        setReviews(serverReviews);
+        const page = await getReviewPageByProduct(id);
+        console.log(`Fetched ${page.reviews.length}/${page.reviewCount} reviews for product ${id}`);
+        setReviews(page.reviews);
+        setReviewsCursor(page.hasNext ? page.nextCursor : null);
+        setReviewSummary(page);
       } catch (err) {
         console.error('Error fetching reviews:', err);
         setReviews([]);
+        setReviewsCursor(null);
+        setReviewSummary(null);
       } finally {
         setLoadingReviews(false);
       }
@@ -664,20 +671,32 @@ function ProductDetail() {
 
   // Calculate average rating and review count (will be computed after displayProduct is defined)
 
-  // Rating distribution
+  // Rating distribution (tổng hợp của server, không phụ thuộc số review đã tải)
   const ratingDistribution = useMemo(() => {
     const base = { 5: 0, 4: 0, 3: 0, 2: 0, 1: 0 };
-    if (Array.isArray(reviews) && reviews.length > 0) {
-      reviews.forEach((r) => {
-        const star = Math.round(r.rating || 0);
-        if (base[star] !== undefined) {
-          base[star] += 1;
-        }
+    const histogram = reviewSummary?.ratingHistogram || product?.ratingHistogram;
+    if (histogram) {
+      Object.keys(base).forEach((star) => {
+        base[star] = Number(histogram[star]) || 0;
       });
-      return base;
     }
     return base;
-  }, [reviews]);
+  }, [reviewSummary, product?.ratingHistogram]);
+
+  // Tải trang review kế tiếp
+  const loadMoreReviews = async () => {
+    if (!reviewsCursor || loadingMoreReviews) return;
+    try {
+      setLoadingMoreReviews(true);
+      const page = await getReviewPageByProduct(id, { cursor: reviewsCursor });
+      setReviews((prev) => [...prev, ...page.reviews]);
+      setReviewsCursor(page.hasNext ? page.nextCursor : null);
+    } catch (err) {
+      console.error('Error loading more reviews:', err);
+    } finally {
+      setLoadingMoreReviews(false);
+    }
+  };
 
   const totalRatingCount = useMemo(
     () => Object.values(ratingDistribution).reduce((sum, v) => sum + v, 0),
@@ -795,10 +814,11 @@ function ProductDetail() {
       const reloadReviews = async (retryCount = 0) => {
         try {
           setLoadingReviews(true);
-          const refreshedData = await getReviewsByProduct(id);
-          const refreshedReviews = Array.isArray(refreshedData) ? refreshedData : [];
-          console.log('Reloaded reviews:', refreshedReviews.length, 'reviews');
-          setReviews(refreshedReviews);
+          const refreshedPage = await getReviewPageByProduct(id);
+          console.log('Reloaded reviews:', refreshedPage.reviews.length, 'reviews');
+          setReviews(refreshedPage.reviews);
+          setReviewsCursor(refreshedPage.hasNext ? refreshedPage.nextCursor : null);
+          setReviewSummary(refreshedPage);
 
           // Reload my reviews để cập nhật danh sách order items có thể đánh giá
           const myReviewsData = await getMyReviews();
@@ -1318,28 +1338,18 @@ function ProductDetail() {
               <div className={cx('score-value-row')}>
                 <div className={cx('score-value')}>
                   {(() => {
-                    const count = reviews.length > 0 ? reviews.length : (displayProduct.reviews || 0);
-                    const avg = reviews.length > 0
-                      ? reviews.reduce((sum, r) => sum + (r.rating || 0), 0) / reviews.length
-                      : (displayProduct.rating || 0);
+                    const count = reviewSummary ? reviewSummary.reviewCount : (displayProduct.reviews || 0);
+                    const avg = reviewSummary ? reviewSummary.averageRating : (displayProduct.rating || 0);
                     return count > 0 ? avg.toFixed(1) : '0';
                   })()}
                 </div>
                 <div className={cx('score-max')}>/5</div>
               </div>
               <div className={cx('score-stars')}>
-                {renderStars((() => {
-                  const avg = reviews.length > 0
-                    ? reviews.reduce((sum, r) => sum + (r.rating || 0), 0) / reviews.length
-                    : (displayProduct.rating || 0);
-                  return avg;
-                })())}
+                {renderStars(reviewSummary ? reviewSummary.averageRating : (displayProduct.rating || 0))}
               </div>
               <div className={cx('score-count')}>
-                ({(() => {
-                  const count = reviews.length > 0 ? reviews.length : (displayProduct.reviews || 0);
-                  return count;
-                })()} đánh giá)
+                ({reviewSummary ? reviewSummary.reviewCount : (displayProduct.reviews || 0)} đánh giá)
               </div>
             </div>
             <div className={cx('rating-bars')}>
@@ -1566,6 +1576,16 @@ function ProductDetail() {
               );
             })
           )}
+          {!loadingReviews && reviewsCursor && (
+            <button
+              type="button"
+              className={cx('more-link')}
+              onClick={loadMoreReviews}
+              disabled={loadingMoreReviews}
+            >
+              {loadingMoreReviews ? 'Đang tải...' : 'Xem thêm đánh giá'}
+            </button>
+          )}
         </div>
       </div>
     </div>
@@ -21,18 +21,20 @@ export async function setDefaultAddress(addressId) {
   return apiClient.put(`/addresses/${addressId}/set-default`);
 }
 
-// GHN location helpers removed
+// Danh mục tỉnh/quận/phường (backend phục vụ từ cache GHN, có ETag)
+const unwrapList = (response) =>
+  (response && typeof response === 'object' && 'result' in response ? response.result : response) || [];
 
 export async function getProvinces() {
-  return [];
+  return unwrapList(await apiClient.get('/shipments/ghn/provinces'));
 }
 
 export async function getDistricts(provinceId) {
-  return [];
+  return unwrapList(await apiClient.get(`/shipments/ghn/districts?provinceId=${provinceId}`));
 }
 
 export async function getWards(districtId) {
-  return [];
+  return unwrapList(await apiClient.get(`/shipments/ghn/wards?districtId=${districtId}`));
 }
 
 // Tính phí vận chuyển (đã xóa GHN, trả về 0)
@@ -1,17 +1,48 @@
 import apiClient from './api';
 
+const toQuery = (params) => {
+    const query = new URLSearchParams();
+    Object.entries(params).forEach(([key, value]) => {
+        if (value !== undefined && value !== null && value !== '') {
+            query.append(key, value);
+        }
+    });
+    const qs = query.toString();
+    return qs ? `?${qs}` : '';
+};
+
 /**
  * Chat Service - Quản lý chat messages
  */
 const chatService = {
     /**
-     * Lấy tất cả conversations
+     * Lấy một trang hộp thư, phân trang theo cursor
+     * params: { cursor, limit }
+     * Trả về { conversations, nextCursor, hasNext, limit }
      */
-    async getConversations() {
+    async getConversationsPage(params = {}) {
         try {
-            return await apiClient.get('/chat/conversations');
+            const response = await apiClient.get(`/chat/conversations${toQuery(params)}`);
+            return {
+                conversations: response?.conversations || [],
+                nextCursor: response?.nextCursor || null,
+                hasNext: Boolean(response?.hasNext),
+                limit: response?.limit,
+            };
         } catch (error) {
-            console.error('[Chat Service] getConversations error:', error);
+            console.error('[Chat Service] getConversationsPage error:', error);
+            throw error;
+        }
+    },
+
+    /**
+     * Lấy một hội thoại trong hộp thư (tên/email đối tác, trạng thái hỗ trợ) theo partnerId
+     */
+    async getConversationSummary(partnerId) {
+        try {
+            return await apiClient.get(`/chat/conversations/${partnerId}`);
+        } catch (error) {
+            console.error('[Chat Service] getConversationSummary error:', error);
             throw error;
         }
     },
@@ -28,6 +59,26 @@ const chatService = {
         }
     },
 
+    /**
+     * Lấy một trang lịch sử tin nhắn với partner (mới nhất trước, tin trong trang theo thứ tự thời gian)
+     * params: { cursor, limit } - cursor = nextCursor của trang trước để lấy các tin cũ hơn
+     * Trả về { messages, nextCursor, hasNext, limit }
+     */
+    async getConversationPage(partnerId, params = {}) {
+        try {
+            const response = await apiClient.get(`/chat/conversation/${partnerId}/messages${toQuery(params)}`);
+            return {
+                messages: response?.messages || [],
+                nextCursor: response?.nextCursor || null,
+                hasNext: Boolean(response?.hasNext),
+                limit: response?.limit,
+            };
+        } catch (error) {
+            console.error('[Chat Service] getConversationPage error:', error);
+            throw error;
+        }
+    },
+
     /**
      * Gửi tin nhắn
      */
@@ -39,6 +39,8 @@ export const API_ENDPOINTS = {
         BY_PRICE_RANGE: '/products/price-range',
         MY_PRODUCTS: '/products/my-products',
         UPDATE: (id) => `/products/${id}`,
+        VARIANT_STOCK: (id, colorCode) =>
+            `/products/${encodeURIComponent(id)}/variants/${encodeURIComponent(colorCode)}/stock`,
         DELETE: (id) => `/products/${id}`,
         APPROVAL: '/products/approve',
     },
@@ -95,6 +97,7 @@ export const API_ENDPOINTS = {
         LIST: '/reviews/all-reviews',
         MY_REVIEWS: '/reviews/my-reviews',
         BY_PRODUCT: (productId) => `/reviews/product/${productId}`,
+        BY_PRODUCT_PAGE: (productId) => `/reviews/product/${productId}/page`,
         DETAIL: (id) => `/reviews/${id}`,
         REPLY: (id) => `/reviews/${id}/reply`,
         DELETE: (id) => `/reviews/${id}`,
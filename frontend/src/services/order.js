@@ -101,18 +101,29 @@ const orderService = {
     },
 
     /**
-     * Lấy tất cả orders (cho Staff/Admin)
+     * Lấy một trang orders (cho Staff/Admin), phân trang theo cursor
+     * params: { cursor, limit, status, paymentMethod, from, to }
+     * Trả về { orders, nextCursor, hasNext, limit }
      */
-    async getAllOrders() {
+    async getOrdersPage(params = {}) {
         try {
-            const response = await apiClient.get('/orders');
-            if (Array.isArray(response)) return response;
-            if (response && typeof response === 'object' && 'result' in response) {
-                return response.result || [];
-            }
-            return [];
+            const query = new URLSearchParams();
+            Object.entries(params).forEach(([key, value]) => {
+                if (value !== undefined && value !== null && value !== '') {
+                    query.append(key, value);
+                }
+            });
+            const qs = query.toString();
+            const response = await apiClient.get(qs ? `/orders?${qs}` : '/orders');
+            const page = response && typeof response === 'object' && 'result' in response ? response.result : response;
+            return {
+                orders: page?.orders || [],
+                nextCursor: page?.nextCursor || null,
+                hasNext: Boolean(page?.hasNext),
+                limit: page?.limit,
+            };
         } catch (error) {
-            console.error('[Order Service] getAllOrders error:', error);
+            console.error('[Order Service] getOrdersPage error:', error);
             throw error;
         }
     },
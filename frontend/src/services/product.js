@@ -130,6 +130,16 @@ export async function updateProduct(productId, productData) {
     }
 }
 
+// Adjust stock of one color variant by a signed delta (staff/admin)
+export async function adjustVariantStock(productId, colorCode, delta) {
+    try {
+        return await apiClient.post(API_ENDPOINTS.PRODUCTS.VARIANT_STOCK(productId, colorCode), { delta });
+    } catch (error) {
+        console.error('[Product Service] adjustVariantStock error:', error);
+        throw error;
+    }
+}
+
 // Delete product (requires authentication)
 export async function deleteProduct(productId) {
     try {
@@ -0,0 +1,163 @@
+import apiClient from './api';
+import { API_BASE_URL } from './config';
+
+// Tên window event cho từng loại sự kiện server đẩy về (detail = UserEvent)
+export const PUSH_EVENTS = {
+    CHAT_MESSAGE: 'push:chatMessage',
+    NOTIFICATION: 'push:notification',
+    UNREAD: 'push:unread',
+};
+
+// Khi kết nối push đang mở, các màn hình chỉ poll dự phòng với chu kỳ này
+export const PUSH_FALLBACK_POLL_MS = 60000;
+
+const RECONNECT_MIN_MS = 1000;
+const RECONNECT_MAX_MS = 30000;
+
+let subscribers = 0;
+let controller = null;
+let reconnectTimer = null;
+let reconnectDelay = RECONNECT_MIN_MS;
+let connected = false;
+
+const dispatch = (type, data) => {
+    const name = PUSH_EVENTS[type];
+    if (name) {
+        window.dispatchEvent(new CustomEvent(name, { detail: data }));
+    }
+};
+
+const scheduleReconnect = () => {
+    connected = false;
+    if (subscribers === 0 || reconnectTimer) return;
+    reconnectTimer = setTimeout(() => {
+        reconnectTimer = null;
+        connect();
+    }, reconnectDelay);
+    reconnectDelay = Math.min(reconnectDelay * 2, RECONNECT_MAX_MS);
+};
+
+// Đọc luồng text/event-stream: các field "event:"/"data:", dòng trống kết thúc một sự kiện, dòng ":" là heartbeat
+const readStream = async (body) => {
+    const reader = body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+    let eventType = null;
+    let data = '';
+
+    for (;;) {
+        const { value, done } = await reader.read();
+        if (done) return;
+        buffer += decoder.decode(value, { stream: true });
+
+        let newline;
+        while ((newline = buffer.indexOf('\n')) >= 0) {
+            const line = buffer.slice(0, newline).replace(/\r$/, '');
+            buffer = buffer.slice(newline + 1);
+
+            if (line === '') {
+                if (data) {
+                    try {
+                        const event = JSON.parse(data);
+                        dispatch(eventType || event.type, event);
+                    } catch (e) {
+                        console.warn('[Push] Invalid event payload:', e);
+                    }
+                }
+                eventType = null;
+                data = '';
+            } else if (line.startsWith('event:')) {
+                eventType = line.slice(6).trim();
+            } else if (line.startsWith('data:')) {
+                data += line.slice(5).trim();
+            }
+        }
+    }
+};
+
+const connect = async () => {
+    const token = apiClient.getAuthToken();
+    if (!token || subscribers === 0) {
+        connected = false;
+        return;
+    }
+
+    controller = new AbortController();
+    try {
+        // EventSource không gửi được header Authorization nên dùng fetch + ReadableStream
+        const response = await fetch(`${API_BASE_URL}/push/stream`, {
+            headers: {
+                Accept: 'text/event-stream',
+                Authorization: `Bearer ${token}`,
+            },
+            signal: controller.signal,
+        });
+        if (!response.ok || !response.body) {
+            throw new Error(`Push stream failed: ${response.status}`);
+        }
+        connected = true;
+        reconnectDelay = RECONNECT_MIN_MS;
+        await readStream(response.body);
+    } catch (error) {
+        if (error?.name === 'AbortError') return;
+        console.warn('[Push] Stream error:', error?.message || error);
+    }
+    // Server đóng kết nối định kỳ hoặc mạng lỗi: kết nối lại
+    scheduleReconnect();
+};
+
+const disconnect = () => {
+    connected = false;
+    if (reconnectTimer) {
+        clearTimeout(reconnectTimer);
+        reconnectTimer = null;
+    }
+    if (controller) {
+        controller.abort();
+        controller = null;
+    }
+};
+
+/**
+ * Đăng ký nhận một loại sự kiện push. Kết nối /push/stream dùng chung cho mọi component,
+ * mở khi có component đầu tiên đăng ký và đóng khi component cuối cùng hủy.
+ * Trả về hàm hủy đăng ký (dùng làm cleanup của useEffect).
+ */
+export const onPushEvent = (eventName, handler) => {
+    const listener = (e) => handler(e.detail);
+    window.addEventListener(eventName, listener);
+
+    subscribers += 1;
+    if (subscribers === 1) {
+        reconnectDelay = RECONNECT_MIN_MS;
+        connect();
+    }
+
+    return () => {
+        window.removeEventListener(eventName, listener);
+        subscribers -= 1;
+        if (subscribers === 0) {
+            disconnect();
+        }
+    };
+};
+
+export const isPushConnected = () => connected;
+
+/**
+ * Poll dự phòng: gọi fn mỗi intervalMs khi chưa có kết nối push, còn khi push đang mở thì chỉ gọi
+ * mỗi PUSH_FALLBACK_POLL_MS. Trả về hàm dừng poll.
+ */
+export const pollWithPushFallback = (fn, intervalMs) => {
+    let lastRun = Date.now();
+    const timer = setInterval(() => {
+        if (connected && Date.now() - lastRun < PUSH_FALLBACK_POLL_MS) return;
+        lastRun = Date.now();
+        fn();
+    }, intervalMs);
+    return () => clearInterval(timer);
+};
+
+const pushService = { PUSH_EVENTS, onPushEvent, isPushConnected, pollWithPushFallback };
+
+export default pushService;
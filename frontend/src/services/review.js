@@ -130,6 +130,35 @@ export async function getReviewsByProduct(productId) {
     }
 }
 
+/**
+ * Một trang review của sản phẩm kèm tổng hợp đánh giá, phân trang theo cursor
+ * params: { cursor, limit }
+ * Trả về { reviews, nextCursor, hasNext, limit, reviewCount, averageRating, ratingHistogram }
+ */
+export async function getReviewPageByProduct(productId, params = {}) {
+    try {
+        const query = new URLSearchParams();
+        if (params.cursor) query.append('cursor', params.cursor);
+        if (params.limit) query.append('limit', params.limit);
+        const qs = query.toString();
+        const response = await apiClient.get(
+            `${API_ENDPOINTS.REVIEWS.BY_PRODUCT_PAGE(productId)}${qs ? `?${qs}` : ''}`,
+        );
+        return {
+            reviews: response?.reviews || [],
+            nextCursor: response?.nextCursor || null,
+            hasNext: Boolean(response?.hasNext),
+            limit: response?.limit,
+            reviewCount: response?.reviewCount || 0,
+            averageRating: response?.averageRating || 0,
+            ratingHistogram: response?.ratingHistogram || {},
+        };
+    } catch (error) {
+        console.error('[Review Service] getReviewPageByProduct error:', error);
+        throw error;
+    }
+}
+
 // Get review by ID
 export async function getReviewById(reviewId) {
     try {